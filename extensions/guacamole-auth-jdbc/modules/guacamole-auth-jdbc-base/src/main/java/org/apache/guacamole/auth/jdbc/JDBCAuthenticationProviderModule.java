@@ -29,9 +29,17 @@ import org.apache.guacamole.auth.jdbc.connection.ModeledConnection;
 import org.apache.guacamole.auth.jdbc.permission.SystemPermissionSet;
 import org.apache.guacamole.auth.jdbc.user.ModeledUser;
 import org.apache.guacamole.auth.jdbc.user.UserDirectory;
+import org.apache.guacamole.auth.jdbc.cache.CacheInvalidationBus;
+import org.apache.guacamole.auth.jdbc.cache.CacheInvalidationBuses;
+import org.apache.guacamole.auth.jdbc.cache.CompletionAwareTransactionFactory;
+import org.apache.guacamole.auth.jdbc.cache.ModelCacheService;
+import org.apache.guacamole.auth.jdbc.cache.TransactionCompletionService;
 import org.apache.guacamole.auth.jdbc.connectiongroup.ConnectionGroupMapper;
 import org.apache.guacamole.auth.jdbc.connection.ConnectionMapper;
 import org.apache.guacamole.auth.jdbc.connection.ConnectionRecordMapper;
+import org.apache.guacamole.auth.jdbc.connection.ConnectionRecordRetentionMapper;
+import org.apache.guacamole.auth.jdbc.connection.ConnectionRecordRetentionService;
+import org.apache.guacamole.auth.jdbc.connection.ConnectionRecordWriter;
 import org.apache.guacamole.auth.jdbc.connection.ParameterMapper;
 import org.apache.guacamole.auth.jdbc.permission.SystemPermissionMapper;
 import org.apache.guacamole.auth.jdbc.user.UserMapper;
@@ -44,13 +52,14 @@ import org.apache.guacamole.auth.jdbc.security.SaltService;
 import org.apache.guacamole.auth.jdbc.security.SecureRandomSaltService;
 import org.apache.guacamole.auth.jdbc.permission.SystemPermissionService;
 import org.apache.guacamole.auth.jdbc.user.UserService;
-import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
 import org.apache.guacamole.auth.jdbc.permission.ConnectionGroupPermissionMapper;
 import org.apache.guacamole.auth.jdbc.permission.ConnectionGroupPermissionService;
 import org.apache.guacamole.auth.jdbc.permission.ConnectionGroupPermissionSet;
 import org.apache.guacamole.auth.jdbc.permission.ConnectionPermissionMapper;
 import org.apache.guacamole.auth.jdbc.permission.ConnectionPermissionService;
 import org.apache.guacamole.auth.jdbc.permission.ConnectionPermissionSet;
+import org.apache.guacamole.auth.jdbc.permission.PermissionSnapshotMapper;
+import org.apache.guacamole.auth.jdbc.permission.PermissionSnapshotService;
 import org.apache.guacamole.auth.jdbc.permission.UserPermissionMapper;
 import org.apache.guacamole.auth.jdbc.permission.UserPermissionService;
 import org.apache.guacamole.auth.jdbc.permission.UserPermissionSet;
@@ -60,6 +69,7 @@ import org.apache.guacamole.auth.jdbc.activeconnection.ActiveConnectionPermissio
 import org.apache.guacamole.auth.jdbc.activeconnection.ActiveConnectionService;
 import org.apache.guacamole.auth.jdbc.activeconnection.TrackedActiveConnection;
 import org.apache.guacamole.auth.jdbc.tunnel.RestrictedGuacamoleTunnelService;
+import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.net.auth.AuthenticationProvider;
 import org.mybatis.guice.MyBatisModule;
 import org.mybatis.guice.datasource.builtin.PooledDataSourceProvider;
@@ -85,6 +95,12 @@ public class JDBCAuthenticationProviderModule extends MyBatisModule {
      */
     private final AuthenticationProvider authProvider;
 
+    /**
+     * The bus relaying cache invalidations to and from other Guacamole
+     * servers, as selected within guacamole.properties.
+     */
+    private final CacheInvalidationBus invalidationBus;
+
     /**
      * Creates a new JDBC authentication provider module that configures the
      * various injected base classes using the given environment, and provides
@@ -96,11 +112,15 @@ public class JDBCAuthenticationProviderModule extends MyBatisModule {
      *
      * @param environment
      *     The environment to use to configure injected classes.
+     *
+     * @throws GuacamoleException
+     *     If the configured CacheInvalidationBus cannot be created.
      */
     public JDBCAuthenticationProviderModule(AuthenticationProvider authProvider,
-            JDBCEnvironment environment) {
+            JDBCEnvironment environment) throws GuacamoleException {
         this.authProvider = authProvider;
         this.environment = environment;
+        this.invalidationBus = CacheInvalidationBuses.create(environment);
     }
 
     @Override
@@ -110,7 +130,7 @@ public class JDBCAuthenticationProviderModule extends MyBatisModule {
         bindDataSourceProviderType(PooledDataSourceProvider.class);
         
         // Transaction factory
-        bindTransactionFactoryType(JdbcTransactionFactory.class);
+        bindTransactionFactoryType(CompletionAwareTransactionFactory.class);
         
         // Add MyBatis mappers
         addMapperClass(ConnectionMapper.class);
@@ -118,7 +138,9 @@ public class JDBCAuthenticationProviderModule extends MyBatisModule {
         addMapperClass(ConnectionGroupPermissionMapper.class);
         addMapperClass(ConnectionPermissionMapper.class);
         addMapperClass(ConnectionRecordMapper.class);
+        addMapperClass(ConnectionRecordRetentionMapper.class);
         addMapperClass(ParameterMapper.class);
+        addMapperClass(PermissionSnapshotMapper.class);
         addMapperClass(SystemPermissionMapper.class);
         addMapperClass(UserMapper.class);
         addMapperClass(UserPermissionMapper.class);
@@ -146,14 +168,20 @@ public class JDBCAuthenticationProviderModule extends MyBatisModule {
         // Bind services
         bind(ActiveConnectionService.class);
         bind(ActiveConnectionPermissionService.class);
+        bind(CacheInvalidationBus.class).toInstance(invalidationBus);
         bind(ConnectionGroupPermissionService.class);
         bind(ConnectionGroupService.class);
         bind(ConnectionPermissionService.class);
+        bind(ConnectionRecordRetentionService.class);
+        bind(ConnectionRecordWriter.class);
         bind(ConnectionService.class);
         bind(GuacamoleTunnelService.class).to(RestrictedGuacamoleTunnelService.class);
+        bind(ModelCacheService.class);
         bind(PasswordEncryptionService.class).to(SHA256PasswordEncryptionService.class);
+        bind(PermissionSnapshotService.class);
         bind(SaltService.class).to(SecureRandomSaltService.class);
         bind(SystemPermissionService.class);
+        bind(TransactionCompletionService.class);
         bind(UserPermissionService.class);
         bind(UserService.class);
         
@@ -114,4 +114,119 @@ public abstract class JDBCEnvironment extends LocalEnvironment {
     public abstract int getDefaultMaxGroupConnectionsPerUser()
             throws GuacamoleException;
 
+    /**
+     * Returns the maximum number of connection history records which should
+     * be written to the database within a single statement.
+     *
+     * @return
+     *     The maximum number of history records to write at once.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while retrieving the property.
+     */
+    public abstract int getHistoryBatchSize() throws GuacamoleException;
+
+    /**
+     * Returns the maximum amount of time that a connection history record
+     * may wait for further records before being written to the database, in
+     * milliseconds.
+     *
+     * @return
+     *     The maximum amount of time a history record may wait before being
+     *     written, in milliseconds.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while retrieving the property.
+     */
+    public abstract int getHistoryFlushInterval() throws GuacamoleException;
+
+    /**
+     * Returns the maximum number of connection history records which may be
+     * awaiting writing at any one time. Records beyond this limit are
+     * written immediately by the thread which produced them. Records awaiting
+     * writing are held only in memory, and are lost if the web application
+     * terminates abnormally.
+     *
+     * @return
+     *     The maximum number of history records which may await writing.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while retrieving the property.
+     */
+    public abstract int getHistoryQueueSize() throws GuacamoleException;
+
+    /**
+     * Returns the number of days that connection history should be retained.
+     * Connection history older than this is removed periodically. If zero,
+     * connection history is retained indefinitely.
+     *
+     * @return
+     *     The number of days that connection history should be retained, or
+     *     zero if connection history should be retained indefinitely.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while retrieving the property.
+     */
+    public abstract int getHistoryRetentionDays() throws GuacamoleException;
+
+    /**
+     * Returns the maximum number of connections, connection groups, or sets
+     * of connection parameters which may be cached in memory at any one time,
+     * for each of those types of data. If zero, no such data is cached.
+     *
+     * @return
+     *     The maximum number of cached entries for each type of cached data,
+     *     or zero if caching is disabled.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while retrieving the property.
+     */
+    public abstract int getModelCacheSize() throws GuacamoleException;
+
+    /**
+     * Returns the maximum amount of time that cached connections, connection
+     * groups, and connection parameters may be used before they are read
+     * again from the database, in seconds. This bounds the time that changes
+     * made by other Guacamole servers sharing the same database may go
+     * unnoticed, unless those servers relay changes to each other.
+     *
+     * @return
+     *     The maximum age of any cached entry, in seconds.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while retrieving the property.
+     */
+    public abstract int getModelCacheTTL() throws GuacamoleException;
+
+    /**
+     * Returns the maximum amount of time that a snapshot of a user's own
+     * permissions may be used before it is read again from the database, in
+     * seconds. This bounds the time that permission changes made by other
+     * Guacamole servers sharing the same database may go unnoticed, unless
+     * those servers relay changes to each other. If zero, permissions are
+     * read from the database each time they are checked.
+     *
+     * @return
+     *     The maximum age of any permission snapshot, in seconds.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while retrieving the property.
+     */
+    public abstract int getPermissionSnapshotTTL() throws GuacamoleException;
+
+    /**
+     * Returns the name of the CacheInvalidationBus which should relay cache
+     * invalidations to and from other Guacamole servers sharing the same
+     * database. This may be "local", to relay invalidations only within the
+     * current process, or the fully-qualified class name of any
+     * CacheInvalidationBus implementation having a public constructor which
+     * accepts the JDBCEnvironment.
+     *
+     * @return
+     *     The name of the CacheInvalidationBus to use.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while retrieving the property.
+     */
+    public abstract String getCacheInvalidationBus() throws GuacamoleException;
 }
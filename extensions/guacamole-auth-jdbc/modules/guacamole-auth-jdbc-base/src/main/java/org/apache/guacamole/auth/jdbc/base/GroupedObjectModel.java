@@ -38,6 +38,17 @@ public abstract class GroupedObjectModel extends ObjectModel {
     public GroupedObjectModel() {
     }
 
+    /**
+     * Creates a new object which is a copy of the given object.
+     *
+     * @param object
+     *     The object to copy.
+     */
+    public GroupedObjectModel(GroupedObjectModel object) {
+        super(object);
+        this.parentIdentifier = object.parentIdentifier;
+    }
+
     /**
      * Returns the identifier of the parent connection group, or null if the
      * parent connection group is the root connection group.
@@ -19,6 +19,7 @@
 
 package org.apache.guacamole.auth.jdbc.base;
 
+import com.google.inject.Inject;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -28,6 +29,7 @@ import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.GuacamoleSecurityException;
 import org.apache.guacamole.auth.jdbc.permission.ObjectPermissionMapper;
 import org.apache.guacamole.auth.jdbc.permission.ObjectPermissionModel;
+import org.apache.guacamole.auth.jdbc.permission.PermissionSnapshotService;
 import org.apache.guacamole.auth.jdbc.user.UserModel;
 import org.apache.guacamole.net.auth.Identifiable;
 import org.apache.guacamole.net.auth.permission.ObjectPermission;
@@ -65,6 +67,14 @@ public abstract class ModeledDirectoryObjectService<InternalType extends Modeled
         ObjectPermission.Type.DELETE,
         ObjectPermission.Type.ADMINISTER
     };
+
+    /**
+     * Service for invalidating snapshots of user permissions, which are
+     * affected by the implicit granting and removal of permissions as objects
+     * are created and deleted.
+     */
+    @Inject
+    private PermissionSnapshotService permissionSnapshotService;
     
     /**
      * Returns an instance of a mapper for the type of object used by this
@@ -308,6 +318,36 @@ public abstract class ModeledDirectoryObjectService<InternalType extends Modeled
 
     }
 
+    /**
+     * Retrieves the models of all objects having the given identifiers which
+     * the given user has permission to read.
+     *
+     * @param user
+     *     The user retrieving the objects.
+     *
+     * @param identifiers
+     *     The identifiers of the objects to retrieve. This collection must
+     *     not be empty.
+     *
+     * @return
+     *     The models of all readable objects having the given identifiers.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while checking permissions.
+     */
+    protected Collection<ModelType> selectObjects(AuthenticatedUser user,
+            Collection<String> identifiers) throws GuacamoleException {
+
+        // Bypass permission checks if the user is a system admin
+        if (user.getUser().isAdministrator())
+            return getObjectMapper().select(identifiers);
+
+        // Otherwise only return explicitly readable identifiers
+        else
+            return getObjectMapper().selectReadable(user.getUser().getModel(), identifiers);
+
+    }
+
     @Override
     public Collection<InternalType> retrieveObjects(AuthenticatedUser user,
             Collection<String> identifiers) throws GuacamoleException {
@@ -316,18 +356,8 @@ public abstract class ModeledDirectoryObjectService<InternalType extends Modeled
         if (identifiers.isEmpty())
             return Collections.<InternalType>emptyList();
 
-        Collection<ModelType> objects;
-
-        // Bypass permission checks if the user is a system admin
-        if (user.getUser().isAdministrator())
-            objects = getObjectMapper().select(identifiers);
-
-        // Otherwise only return explicitly readable identifiers
-        else
-            objects = getObjectMapper().selectReadable(user.getUser().getModel(), identifiers);
-        
         // Return collection of requested objects
-        return getObjectInstances(user, objects);
+        return getObjectInstances(user, selectObjects(user, identifiers));
         
     }
 
@@ -387,6 +417,7 @@ public abstract class ModeledDirectoryObjectService<InternalType extends Modeled
 
         // Add implicit permissions
         getPermissionMapper().insert(getImplicitPermissions(user, model));
+        permissionSnapshotService.invalidate();
 
         return getObjectInstance(user, model);
 
@@ -398,8 +429,9 @@ public abstract class ModeledDirectoryObjectService<InternalType extends Modeled
 
         beforeDelete(user, identifier);
         
-        // Delete object
+        // Delete object, implicitly deleting all associated permissions
         getObjectMapper().delete(identifier);
+        permissionSnapshotService.invalidate();
 
     }
 
@@ -43,6 +43,17 @@ public abstract class ObjectModel {
     public ObjectModel() {
     }
 
+    /**
+     * Creates a new object which is a copy of the given object.
+     *
+     * @param object
+     *     The object to copy.
+     */
+    public ObjectModel(ObjectModel object) {
+        this.objectID = object.objectID;
+        this.identifier = object.identifier;
+    }
+
     /**
      * Returns the identifier that uniquely identifies this object.
      *
@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.auth.jdbc.cache;
+
+/**
+ * Means of relaying cache invalidations between Guacamole servers which share
+ * the same database, such that data modified through one server is not served
+ * from the stale cache of another. Each server invalidates its own caches
+ * directly; the bus is only responsible for informing the other servers.
+ *
+ * The implementation used is selected within guacamole.properties, and is
+ * created by CacheInvalidationBuses. Deployments having more than one
+ * Guacamole server should select an implementation which relays
+ * invalidations over the network. Without such an implementation, changes
+ * made through other servers go unnoticed until the affected cache entries
+ * expire.
+ */
+public interface CacheInvalidationBus {
+
+    /**
+     * Registers the given listener, such that it will be notified of all
+     * invalidations published by other listeners.
+     *
+     * @param listener
+     *     The listener to register.
+     */
+    void subscribe(CacheInvalidationListener listener);
+
+    /**
+     * Unregisters the given listener, such that it will no longer be
+     * notified of invalidations.
+     *
+     * @param listener
+     *     The listener to unregister.
+     */
+    void unsubscribe(CacheInvalidationListener listener);
+
+    /**
+     * Notifies all registered listeners other than the given source that the
+     * data identified by the given cache name and identifier has been
+     * modified.
+     *
+     * @param source
+     *     The listener which modified the data, and which has already
+     *     invalidated its own cached copy.
+     *
+     * @param cacheName
+     *     The name of the cache containing the modified data.
+     *
+     * @param identifier
+     *     The identifier of the modified data within the cache, or null if
+     *     all data within the cache must be discarded.
+     */
+    void publish(CacheInvalidationListener source, String cacheName,
+            String identifier);
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.auth.jdbc.cache;
+
+import java.lang.reflect.InvocationTargetException;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.GuacamoleServerException;
+import org.apache.guacamole.auth.jdbc.JDBCEnvironment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Factory which creates the CacheInvalidationBus selected within
+ * guacamole.properties. By default, invalidations are relayed only within
+ * the current process by a LocalCacheInvalidationBus.
+ */
+public class CacheInvalidationBuses {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(CacheInvalidationBuses.class);
+
+    /**
+     * The name of the bus which selects LocalCacheInvalidationBus.
+     */
+    public static final String LOCAL_BUS = "local";
+
+    /**
+     * This class is a utility class and should not be instantiated.
+     */
+    private CacheInvalidationBuses() {}
+
+    /**
+     * Creates the CacheInvalidationBus selected within guacamole.properties,
+     * which may be "local" or the fully-qualified class name of any
+     * CacheInvalidationBus implementation having a public constructor which
+     * accepts the JDBCEnvironment.
+     *
+     * @param environment
+     *     The environment to use when configuring the bus.
+     *
+     * @return
+     *     A new CacheInvalidationBus.
+     *
+     * @throws GuacamoleException
+     *     If guacamole.properties cannot be read, or the selected
+     *     CacheInvalidationBus cannot be created.
+     */
+    public static CacheInvalidationBus create(JDBCEnvironment environment)
+            throws GuacamoleException {
+
+        String name = environment.getCacheInvalidationBus();
+
+        // Bus provided with Guacamole
+        if (LOCAL_BUS.equals(name))
+            return new LocalCacheInvalidationBus();
+
+        // Any other bus by class name
+        try {
+            Class<? extends CacheInvalidationBus> busClass =
+                    Class.forName(name).asSubclass(CacheInvalidationBus.class);
+            CacheInvalidationBus bus = busClass.getConstructor(JDBCEnvironment.class)
+                    .newInstance(environment);
+
+            logger.info("Cache invalidations will be relayed through \"{}\".", name);
+            return bus;
+        }
+        catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof GuacamoleException)
+                throw (GuacamoleException) cause;
+            throw new GuacamoleServerException("Cache invalidation bus \"" + name + "\" could not be created.", cause);
+        }
+        catch (ClassNotFoundException e) {
+            throw new GuacamoleServerException("Cache invalidation bus \"" + name + "\" does not exist.", e);
+        }
+        catch (ClassCastException e) {
+            throw new GuacamoleServerException("Class \"" + name + "\" is not a CacheInvalidationBus.", e);
+        }
+        catch (NoSuchMethodException e) {
+            throw new GuacamoleServerException("Cache invalidation bus \"" + name + "\" lacks a suitable constructor.", e);
+        }
+        catch (InstantiationException e) {
+            throw new GuacamoleServerException("Cache invalidation bus \"" + name + "\" could not be created.", e);
+        }
+        catch (IllegalAccessException e) {
+            throw new GuacamoleServerException("Cache invalidation bus \"" + name + "\" could not be created.", e);
+        }
+
+    }
+
+}
@@ -0,0 +1,41 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.auth.jdbc.cache;
+
+/**
+ * Listener which is notified when cached data has been modified by another
+ * Guacamole server, and thus must be discarded.
+ */
+public interface CacheInvalidationListener {
+
+    /**
+     * Called when the cached data identified by the given cache name and
+     * identifier has been modified by another Guacamole server.
+     *
+     * @param cacheName
+     *     The name of the cache containing the modified data.
+     *
+     * @param identifier
+     *     The identifier of the modified data within the cache, or null if
+     *     all data within the cache must be discarded.
+     */
+    void invalidate(String cacheName, String identifier);
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.auth.jdbc.cache;
+
+import com.google.inject.Inject;
+import java.sql.Connection;
+import java.sql.SQLException;
+import javax.sql.DataSource;
+import org.apache.ibatis.session.TransactionIsolationLevel;
+import org.apache.ibatis.transaction.Transaction;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+
+/**
+ * JdbcTransactionFactory which notifies the TransactionCompletionService
+ * whenever a transaction is closed, such that tasks deferred until the end
+ * of that transaction are run.
+ */
+public class CompletionAwareTransactionFactory extends JdbcTransactionFactory {
+
+    /**
+     * Service for running tasks deferred until transactions complete.
+     */
+    @Inject
+    private TransactionCompletionService transactionCompletionService;
+
+    /**
+     * Transaction which delegates to another Transaction, notifying the
+     * TransactionCompletionService once closed.
+     */
+    private class CompletionAwareTransaction implements Transaction {
+
+        /**
+         * The Transaction to which all calls are delegated.
+         */
+        private final Transaction transaction;
+
+        /**
+         * Creates a new CompletionAwareTransaction which delegates all calls
+         * to the given Transaction.
+         *
+         * @param transaction
+         *     The Transaction to which all calls should be delegated.
+         */
+        public CompletionAwareTransaction(Transaction transaction) {
+            this.transaction = transaction;
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return transaction.getConnection();
+        }
+
+        @Override
+        public void commit() throws SQLException {
+            transaction.commit();
+        }
+
+        @Override
+        public void rollback() throws SQLException {
+            transaction.rollback();
+        }
+
+        @Override
+        public void close() throws SQLException {
+            try {
+                transaction.close();
+            }
+            finally {
+                transactionCompletionService.transactionCompleted();
+            }
+        }
+
+    }
+
+    @Override
+    public Transaction newTransaction(Connection connection) {
+        return new CompletionAwareTransaction(super.newTransaction(connection));
+    }
+
+    @Override
+    public Transaction newTransaction(DataSource dataSource,
+            TransactionIsolationLevel level, boolean autoCommit) {
+        return new CompletionAwareTransaction(
+                super.newTransaction(dataSource, level, autoCommit));
+    }
+
+}
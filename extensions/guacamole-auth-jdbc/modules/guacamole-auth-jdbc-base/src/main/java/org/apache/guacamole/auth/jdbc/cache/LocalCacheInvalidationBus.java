@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.auth.jdbc.cache;
+
+import com.google.inject.Singleton;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * CacheInvalidationBus implementation which relays invalidations only between
+ * listeners within the current process. This is sufficient for deployments
+ * consisting of a single Guacamole server, and stands in for a network-backed
+ * implementation elsewhere.
+ */
+@Singleton
+public class LocalCacheInvalidationBus implements CacheInvalidationBus {
+
+    /**
+     * All registered listeners.
+     */
+    private final Set<CacheInvalidationListener> listeners =
+            new CopyOnWriteArraySet<CacheInvalidationListener>();
+
+    @Override
+    public void subscribe(CacheInvalidationListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void unsubscribe(CacheInvalidationListener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public void publish(CacheInvalidationListener source, String cacheName,
+            String identifier) {
+
+        // Notify all listeners except the source, which is already aware
+        for (CacheInvalidationListener listener : listeners) {
+            if (listener != source)
+                listener.invalidate(cacheName, identifier);
+        }
+
+    }
+
+}
@@ -0,0 +1,229 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.auth.jdbc.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A size-bounded cache of values read from the database, keyed by
+ * identifier. Once the cache is full, the least-recently-used entry is
+ * evicted to make room for each new entry, and entries older than the
+ * configured time-to-live are never returned. Values are returned exactly as
+ * stored, and thus must either be immutable or copied by the caller.
+ *
+ * As a value read from the database may be stored only after that value has
+ * been modified and invalidated by another thread, each value is stored
+ * along with the generation of the cache observed prior to reading that
+ * value. The generation of the cache changes upon each invalidation, and
+ * values read during an older generation are discarded.
+ *
+ * @param <ValueType>
+ *     The type of value stored within the cache.
+ */
+public class ModelCache<ValueType> {
+
+    /**
+     * A single value stored within the cache, along with the time at which
+     * that value expires.
+     *
+     * @param <ValueType>
+     *     The type of value stored.
+     */
+    private static class CacheEntry<ValueType> {
+
+        /**
+         * The value stored.
+         */
+        private final ValueType value;
+
+        /**
+         * The time at which this entry expires, in milliseconds since the
+         * epoch.
+         */
+        private final long expires;
+
+        /**
+         * Creates a new CacheEntry containing the given value.
+         *
+         * @param value
+         *     The value to store.
+         *
+         * @param expires
+         *     The time at which this entry expires, in milliseconds since the
+         *     epoch.
+         */
+        public CacheEntry(ValueType value, long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+
+    }
+
+    /**
+     * The maximum number of entries which may be stored at any one time. If
+     * zero, nothing is stored.
+     */
+    private final int maxSize;
+
+    /**
+     * The length of time that each entry may be used after being stored, in
+     * milliseconds.
+     */
+    private final long timeToLive;
+
+    /**
+     * All stored entries, in order of least-recent to most-recent access.
+     */
+    private final Map<String, CacheEntry<ValueType>> entries;
+
+    /**
+     * The current generation of this cache, incremented upon each
+     * invalidation.
+     */
+    private long generation = 0;
+
+    /**
+     * Creates a new, empty ModelCache.
+     *
+     * @param maxSize
+     *     The maximum number of entries which may be stored at any one time.
+     *     If zero, nothing is stored.
+     *
+     * @param timeToLive
+     *     The length of time that each entry may be used after being stored,
+     *     in milliseconds.
+     */
+    public ModelCache(final int maxSize, long timeToLive) {
+
+        this.maxSize = maxSize;
+        this.timeToLive = timeToLive;
+
+        // Evict least-recently-used entries once full
+        this.entries = new LinkedHashMap<String, CacheEntry<ValueType>>(16, 0.75f, true) {
+
+            /**
+             * Serialization version identifier.
+             */
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry<ValueType>> eldest) {
+                return size() > maxSize;
+            }
+
+        };
+
+    }
+
+    /**
+     * Returns whether this cache stores anything at all.
+     *
+     * @return
+     *     true if this cache may store entries, false if caching is disabled.
+     */
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * Returns the current generation of this cache. The generation must be
+     * retrieved prior to reading any value that will be stored with put().
+     *
+     * @return
+     *     The current generation of this cache.
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Returns the value stored under the given identifier, if present and not
+     * yet expired.
+     *
+     * @param identifier
+     *     The identifier of the value to return. This may be null.
+     *
+     * @return
+     *     The value stored under the given identifier, or null if no such
+     *     value is stored or the value has expired.
+     */
+    public synchronized ValueType get(String identifier) {
+
+        CacheEntry<ValueType> entry = entries.get(identifier);
+        if (entry == null)
+            return null;
+
+        // Remove expired entries upon access
+        if (System.currentTimeMillis() >= entry.expires) {
+            entries.remove(identifier);
+            return null;
+        }
+
+        return entry.value;
+
+    }
+
+    /**
+     * Stores the given value under the given identifier, unless this cache
+     * has been invalidated since the given generation.
+     *
+     * @param identifier
+     *     The identifier to store the value under. This may be null.
+     *
+     * @param value
+     *     The value to store.
+     *
+     * @param valueGeneration
+     *     The generation of this cache, as returned by getGeneration() prior
+     *     to reading the given value.
+     */
+    public synchronized void put(String identifier, ValueType value,
+            long valueGeneration) {
+
+        // Do not store values which may have since been modified
+        if (!isEnabled() || valueGeneration != generation)
+            return;
+
+        entries.put(identifier, new CacheEntry<ValueType>(value,
+                System.currentTimeMillis() + timeToLive));
+
+    }
+
+    /**
+     * Removes the value stored under the given identifier, if any.
+     *
+     * @param identifier
+     *     The identifier of the value to remove. This may be null.
+     */
+    public synchronized void invalidate(String identifier) {
+        generation++;
+        entries.remove(identifier);
+    }
+
+    /**
+     * Removes all values stored within this cache.
+     */
+    public synchronized void invalidateAll() {
+        generation++;
+        entries.clear();
+    }
+
+}
@@ -0,0 +1,604 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.auth.jdbc.cache;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.auth.jdbc.JDBCEnvironment;
+import org.apache.guacamole.auth.jdbc.base.ObjectModel;
+import org.apache.guacamole.auth.jdbc.connection.ConnectionMapper;
+import org.apache.guacamole.auth.jdbc.connection.ConnectionModel;
+import org.apache.guacamole.auth.jdbc.connection.ParameterMapper;
+import org.apache.guacamole.auth.jdbc.connection.ParameterModel;
+import org.apache.guacamole.auth.jdbc.connectiongroup.ConnectionGroupMapper;
+import org.apache.guacamole.auth.jdbc.connectiongroup.ConnectionGroupModel;
+
+/**
+ * Service which caches connections, connection groups, connection parameters,
+ * and the contents of connection groups, reading through to the database
+ * only for data not already cached. Cached data is invalidated by the
+ * services which modify that data, and those invalidations are relayed to
+ * other Guacamole servers through the bound CacheInvalidationBus. Models
+ * returned by this service are always copies, and may be freely modified.
+ */
+@Singleton
+public class ModelCacheService implements CacheInvalidationListener {
+
+    /**
+     * The name of the cache invalidation which affects connections, their
+     * parameters, and the contents of connection groups.
+     */
+    private static final String CONNECTION_CACHE = "connection";
+
+    /**
+     * The name of the cache invalidation which affects connection groups and
+     * the contents of connection groups.
+     */
+    private static final String CONNECTION_GROUP_CACHE = "connection-group";
+
+    /**
+     * Means of selecting and copying models of a particular type.
+     *
+     * @param <ModelType>
+     *     The type of model selected.
+     */
+    private interface ModelLoader<ModelType extends ObjectModel> {
+
+        /**
+         * Reads the models having the given identifiers from the database.
+         *
+         * @param identifiers
+         *     The identifiers of the models to read.
+         *
+         * @return
+         *     All models having the given identifiers which exist.
+         */
+        Collection<ModelType> select(Collection<String> identifiers);
+
+        /**
+         * Returns a copy of the given model.
+         *
+         * @param model
+         *     The model to copy.
+         *
+         * @return
+         *     A new copy of the given model.
+         */
+        ModelType copy(ModelType model);
+
+    }
+
+    /**
+     * Invalidation which has been deferred until the end of the current
+     * transaction. Deferred invalidations having the same cache name and
+     * identifier are equal, such that each is performed only once per
+     * transaction.
+     */
+    private class DeferredInvalidation implements Runnable {
+
+        /**
+         * The name of the cache invalidation: either CONNECTION_CACHE or
+         * CONNECTION_GROUP_CACHE.
+         */
+        private final String cacheName;
+
+        /**
+         * The identifier of the modified connection or connection group, or
+         * null if all connections or connection groups must be discarded.
+         */
+        private final String identifier;
+
+        /**
+         * Creates a new DeferredInvalidation which discards the cached data
+         * described by the given cache name and identifier.
+         *
+         * @param cacheName
+         *     The name of the cache invalidation: either CONNECTION_CACHE or
+         *     CONNECTION_GROUP_CACHE.
+         *
+         * @param identifier
+         *     The identifier of the modified connection or connection group,
+         *     or null if all connections or connection groups must be
+         *     discarded.
+         */
+        public DeferredInvalidation(String cacheName, String identifier) {
+            this.cacheName = cacheName;
+            this.identifier = identifier;
+        }
+
+        @Override
+        public void run() {
+            invalidateLocally(cacheName, identifier);
+            invalidationBus.publish(ModelCacheService.this, cacheName, identifier);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(new Object[] { cacheName, identifier });
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+
+            if (!(obj instanceof DeferredInvalidation))
+                return false;
+
+            DeferredInvalidation other = (DeferredInvalidation) obj;
+            return cacheName.equals(other.cacheName)
+                && (identifier == null ? other.identifier == null
+                        : identifier.equals(other.identifier));
+
+        }
+
+    }
+
+    /**
+     * The environment of the Guacamole server.
+     */
+    @Inject
+    private JDBCEnvironment environment;
+
+    /**
+     * Service for deferring invalidations until the current transaction has
+     * completed.
+     */
+    @Inject
+    private TransactionCompletionService transactionCompletionService;
+
+    /**
+     * Bus for relaying invalidations to and from other Guacamole servers.
+     */
+    @Inject
+    private CacheInvalidationBus invalidationBus;
+
+    /**
+     * Mapper for accessing connections.
+     */
+    @Inject
+    private ConnectionMapper connectionMapper;
+
+    /**
+     * Mapper for accessing connection groups.
+     */
+    @Inject
+    private ConnectionGroupMapper connectionGroupMapper;
+
+    /**
+     * Mapper for accessing connection parameters.
+     */
+    @Inject
+    private ParameterMapper parameterMapper;
+
+    /**
+     * Cached connections, keyed by connection identifier.
+     */
+    private volatile ModelCache<ConnectionModel> connections =
+            new ModelCache<ConnectionModel>(0, 0);
+
+    /**
+     * Cached connection groups, keyed by connection group identifier.
+     */
+    private volatile ModelCache<ConnectionGroupModel> connectionGroups =
+            new ModelCache<ConnectionGroupModel>(0, 0);
+
+    /**
+     * Cached connection parameters, keyed by connection identifier.
+     */
+    private volatile ModelCache<Map<String, String>> parameters =
+            new ModelCache<Map<String, String>>(0, 0);
+
+    /**
+     * Cached identifiers of the connections within each connection group,
+     * keyed by connection group identifier, where the root connection group
+     * is represented by null.
+     */
+    private volatile ModelCache<Set<String>> connectionsWithin =
+            new ModelCache<Set<String>>(0, 0);
+
+    /**
+     * Cached identifiers of the connection groups within each connection
+     * group, keyed by connection group identifier, where the root connection
+     * group is represented by null.
+     */
+    private volatile ModelCache<Set<String>> connectionGroupsWithin =
+            new ModelCache<Set<String>>(0, 0);
+
+    /**
+     * Loader for connections.
+     */
+    private final ModelLoader<ConnectionModel> connectionLoader =
+            new ModelLoader<ConnectionModel>() {
+
+        @Override
+        public Collection<ConnectionModel> select(Collection<String> identifiers) {
+            return connectionMapper.select(identifiers);
+        }
+
+        @Override
+        public ConnectionModel copy(ConnectionModel model) {
+            return new ConnectionModel(model);
+        }
+
+    };
+
+    /**
+     * Loader for connection groups.
+     */
+    private final ModelLoader<ConnectionGroupModel> connectionGroupLoader =
+            new ModelLoader<ConnectionGroupModel>() {
+
+        @Override
+        public Collection<ConnectionGroupModel> select(Collection<String> identifiers) {
+            return connectionGroupMapper.select(identifiers);
+        }
+
+        @Override
+        public ConnectionGroupModel copy(ConnectionGroupModel model) {
+            return new ConnectionGroupModel(model);
+        }
+
+    };
+
+    /**
+     * Creates all caches using the configured size and time-to-live, and
+     * begins receiving invalidations from other Guacamole servers. Until this
+     * function is invoked, nothing is cached.
+     *
+     * @throws GuacamoleException
+     *     If the configured cache size or time-to-live cannot be read.
+     */
+    public synchronized void start() throws GuacamoleException {
+
+        int size = environment.getModelCacheSize();
+        long timeToLive = environment.getModelCacheTTL() * 1000L;
+
+        connections = new ModelCache<ConnectionModel>(size, timeToLive);
+        connectionGroups = new ModelCache<ConnectionGroupModel>(size, timeToLive);
+        parameters = new ModelCache<Map<String, String>>(size, timeToLive);
+        connectionsWithin = new ModelCache<Set<String>>(size, timeToLive);
+        connectionGroupsWithin = new ModelCache<Set<String>>(size, timeToLive);
+
+        invalidationBus.subscribe(this);
+
+    }
+
+    /**
+     * Stops receiving invalidations from other Guacamole servers and
+     * discards all cached data. Nothing is cached after this function is
+     * invoked.
+     */
+    public synchronized void shutdown() {
+
+        invalidationBus.unsubscribe(this);
+
+        connections = new ModelCache<ConnectionModel>(0, 0);
+        connectionGroups = new ModelCache<ConnectionGroupModel>(0, 0);
+        parameters = new ModelCache<Map<String, String>>(0, 0);
+        connectionsWithin = new ModelCache<Set<String>>(0, 0);
+        connectionGroupsWithin = new ModelCache<Set<String>>(0, 0);
+
+    }
+
+    /**
+     * Returns copies of the models having the given identifiers, reading from
+     * the database only those models which are not already cached.
+     *
+     * @param <ModelType>
+     *     The type of model being retrieved.
+     *
+     * @param cache
+     *     The cache containing models of the requested type.
+     *
+     * @param loader
+     *     The loader to use to read and copy models of the requested type.
+     *
+     * @param identifiers
+     *     The identifiers of the models to retrieve.
+     *
+     * @return
+     *     Copies of all models having the given identifiers which exist, in
+     *     the order their identifiers were given if any are cached.
+     */
+    private <ModelType extends ObjectModel> Collection<ModelType> select(
+            ModelCache<ModelType> cache, ModelLoader<ModelType> loader,
+            Collection<String> identifiers) {
+
+        // Do not query if no identifiers given
+        if (identifiers.isEmpty())
+            return Collections.<ModelType>emptyList();
+
+        // Read directly from the database if caching is disabled
+        if (!cache.isEnabled())
+            return loader.select(identifiers);
+
+        long generation = cache.getGeneration();
+
+        // Use cached copies of all models present within the cache
+        Map<String, ModelType> models = new HashMap<String, ModelType>(identifiers.size());
+        Collection<String> missing = new ArrayList<String>();
+        for (String identifier : identifiers) {
+            ModelType model = cache.get(identifier);
+            if (model != null)
+                models.put(identifier, loader.copy(model));
+            else
+                missing.add(identifier);
+        }
+
+        // Read and cache all models not present within the cache
+        if (!missing.isEmpty()) {
+            for (ModelType model : loader.select(missing)) {
+                cache.put(model.getIdentifier(), loader.copy(model), generation);
+                models.put(model.getIdentifier(), model);
+            }
+        }
+
+        // Return models in the order requested, regardless of which were
+        // cached
+        List<ModelType> orderedModels = new ArrayList<ModelType>(models.size());
+        for (String identifier : identifiers) {
+            ModelType model = models.remove(identifier);
+            if (model != null)
+                orderedModels.add(model);
+        }
+
+        return orderedModels;
+
+    }
+
+    /**
+     * Returns copies of the connections having the given identifiers.
+     *
+     * @param identifiers
+     *     The identifiers of the connections to retrieve.
+     *
+     * @return
+     *     Copies of all connections having the given identifiers which
+     *     exist.
+     */
+    public Collection<ConnectionModel> selectConnections(Collection<String> identifiers) {
+        return select(connections, connectionLoader, identifiers);
+    }
+
+    /**
+     * Returns copies of the connection groups having the given identifiers.
+     *
+     * @param identifiers
+     *     The identifiers of the connection groups to retrieve.
+     *
+     * @return
+     *     Copies of all connection groups having the given identifiers which
+     *     exist.
+     */
+    public Collection<ConnectionGroupModel> selectConnectionGroups(Collection<String> identifiers) {
+        return select(connectionGroups, connectionGroupLoader, identifiers);
+    }
+
+    /**
+     * Returns the identifiers of all connections within the connection group
+     * having the given identifier.
+     *
+     * @param parentIdentifier
+     *     The identifier of the connection group, or null for the root
+     *     connection group.
+     *
+     * @return
+     *     A new set of the identifiers of all connections within the given
+     *     connection group.
+     */
+    public Set<String> selectConnectionIdentifiersWithin(String parentIdentifier) {
+
+        ModelCache<Set<String>> cache = connectionsWithin;
+        long generation = cache.getGeneration();
+
+        // Read and cache identifiers if not already cached
+        Set<String> identifiers = cache.get(parentIdentifier);
+        if (identifiers == null) {
+            identifiers = Collections.unmodifiableSet(
+                    connectionMapper.selectIdentifiersWithin(parentIdentifier));
+            cache.put(parentIdentifier, identifiers, generation);
+        }
+
+        return new HashSet<String>(identifiers);
+
+    }
+
+    /**
+     * Returns the identifiers of all connection groups within the connection
+     * group having the given identifier.
+     *
+     * @param parentIdentifier
+     *     The identifier of the connection group, or null for the root
+     *     connection group.
+     *
+     * @return
+     *     A new set of the identifiers of all connection groups within the
+     *     given connection group.
+     */
+    public Set<String> selectConnectionGroupIdentifiersWithin(String parentIdentifier) {
+
+        ModelCache<Set<String>> cache = connectionGroupsWithin;
+        long generation = cache.getGeneration();
+
+        // Read and cache identifiers if not already cached
+        Set<String> identifiers = cache.get(parentIdentifier);
+        if (identifiers == null) {
+            identifiers = Collections.unmodifiableSet(
+                    connectionGroupMapper.selectIdentifiersWithin(parentIdentifier));
+            cache.put(parentIdentifier, identifiers, generation);
+        }
+
+        return new HashSet<String>(identifiers);
+
+    }
+
+    /**
+     * Returns all parameters of the connection having the given identifier.
+     *
+     * @param identifier
+     *     The identifier of the connection whose parameters should be
+     *     retrieved.
+     *
+     * @return
+     *     A new map of all parameter name/value pairs of the given
+     *     connection, which will be empty if the connection has no
+     *     parameters or does not exist.
+     */
+    public Map<String, String> selectParameters(String identifier) {
+
+        ModelCache<Map<String, String>> cache = parameters;
+        long generation = cache.getGeneration();
+
+        // Read and cache parameters if not already cached
+        Map<String, String> parameterMap = cache.get(identifier);
+        if (parameterMap == null) {
+
+            parameterMap = new HashMap<String, String>();
+            for (ParameterModel parameter : parameterMapper.select(identifier))
+                parameterMap.put(parameter.getName(), parameter.getValue());
+
+            parameterMap = Collections.unmodifiableMap(parameterMap);
+            cache.put(identifier, parameterMap, generation);
+
+        }
+
+        return new HashMap<String, String>(parameterMap);
+
+    }
+
+    /**
+     * Discards the cached data described by the given cache name and
+     * identifier from the caches of this Guacamole server only.
+     *
+     * @param cacheName
+     *     The name of the cache invalidation: either CONNECTION_CACHE or
+     *     CONNECTION_GROUP_CACHE.
+     *
+     * @param identifier
+     *     The identifier of the modified connection or connection group, or
+     *     null if all connections or connection groups must be discarded.
+     */
+    private void invalidateLocally(String cacheName, String identifier) {
+
+        // Connection changes may affect the contents of any group
+        if (CONNECTION_CACHE.equals(cacheName)) {
+
+            if (identifier != null) {
+                connections.invalidate(identifier);
+                parameters.invalidate(identifier);
+            }
+            else {
+                connections.invalidateAll();
+                parameters.invalidateAll();
+            }
+
+            connectionsWithin.invalidateAll();
+
+        }
+
+        // Connection group changes may affect the contents of any group
+        else if (CONNECTION_GROUP_CACHE.equals(cacheName)) {
+
+            if (identifier != null)
+                connectionGroups.invalidate(identifier);
+            else
+                connectionGroups.invalidateAll();
+
+            connectionGroupsWithin.invalidateAll();
+
+        }
+
+    }
+
+    /**
+     * Discards the cached data described by the given cache name and
+     * identifier, both from the caches of this Guacamole server and from the
+     * caches of all other servers. If invoked within a transaction, the
+     * local caches are invalidated immediately and again once that
+     * transaction completes, and other servers are notified only once that
+     * transaction completes, as data cached in the meantime may not reflect
+     * the changes made within that transaction.
+     *
+     * @param cacheName
+     *     The name of the cache invalidation: either CONNECTION_CACHE or
+     *     CONNECTION_GROUP_CACHE.
+     *
+     * @param identifier
+     *     The identifier of the modified connection or connection group, or
+     *     null if all connections or connection groups must be discarded.
+     */
+    private void invalidateEverywhere(String cacheName, String identifier) {
+        invalidateLocally(cacheName, identifier);
+        transactionCompletionService.afterCompletion(
+                new DeferredInvalidation(cacheName, identifier));
+    }
+
+    /**
+     * Discards all cached data related to the connection having the given
+     * identifier, including its parameters and its membership within its
+     * parent connection group. This function must be invoked after the
+     * connection is created, modified, or deleted.
+     *
+     * @param identifier
+     *     The identifier of the modified connection.
+     */
+    public void invalidateConnection(String identifier) {
+        invalidateEverywhere(CONNECTION_CACHE, identifier);
+    }
+
+    /**
+     * Discards all cached data related to the connection group having the
+     * given identifier, including its membership within its parent
+     * connection group. This function must be invoked after the connection
+     * group is created or modified. As deleting a connection group also
+     * deletes its contents, invalidateAll() must be invoked instead when a
+     * connection group is deleted.
+     *
+     * @param identifier
+     *     The identifier of the modified connection group.
+     */
+    public void invalidateConnectionGroup(String identifier) {
+        invalidateEverywhere(CONNECTION_GROUP_CACHE, identifier);
+    }
+
+    /**
+     * Discards all cached connections, connection groups, and connection
+     * parameters.
+     */
+    public void invalidateAll() {
+        invalidateEverywhere(CONNECTION_CACHE, null);
+        invalidateEverywhere(CONNECTION_GROUP_CACHE, null);
+    }
+
+    @Override
+    public void invalidate(String cacheName, String identifier) {
+        invalidateLocally(cacheName, identifier);
+    }
+
+}
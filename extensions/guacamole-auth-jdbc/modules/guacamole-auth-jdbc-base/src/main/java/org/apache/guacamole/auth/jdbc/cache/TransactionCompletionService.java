@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.auth.jdbc.cache;
+
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import org.apache.ibatis.session.SqlSessionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Service which defers tasks until the database transaction of the current
+ * thread has completed. Invalidating a cache from within a transaction is not
+ * sufficient on its own, as a concurrent reader may repopulate the cache with
+ * data read before that transaction commits. Tasks deferred through this
+ * service run once the transaction has been committed or rolled back, when
+ * its changes are either visible to all readers or have been discarded.
+ */
+@Singleton
+public class TransactionCompletionService {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(TransactionCompletionService.class);
+
+    /**
+     * Provider of the SqlSessionManager which tracks whether the current
+     * thread is within a transaction. A provider is used as the
+     * SqlSessionManager itself depends on the TransactionFactory which
+     * notifies this service.
+     */
+    @Inject
+    private Provider<SqlSessionManager> sqlSessionManagerProvider;
+
+    /**
+     * The tasks awaiting completion of the transaction of the current thread,
+     * if any.
+     */
+    private final ThreadLocal<Set<Runnable>> pendingTasks =
+            new ThreadLocal<Set<Runnable>>();
+
+    /**
+     * Runs the given task once the transaction of the current thread has
+     * completed. If the current thread is not within a transaction, the task
+     * is run immediately. A task which is deferred more than once within the
+     * same transaction is run only once.
+     *
+     * @param task
+     *     The task to run.
+     */
+    public void afterCompletion(Runnable task) {
+
+        // Without a transaction, all changes have already been committed
+        if (!sqlSessionManagerProvider.get().isManagedSessionStarted()) {
+            task.run();
+            return;
+        }
+
+        Set<Runnable> tasks = pendingTasks.get();
+        if (tasks == null) {
+            tasks = new LinkedHashSet<Runnable>();
+            pendingTasks.set(tasks);
+        }
+
+        tasks.add(task);
+
+    }
+
+    /**
+     * Runs all tasks deferred by the current thread. This function must be
+     * invoked whenever a transaction is closed, after it has been committed
+     * or rolled back.
+     */
+    public void transactionCompleted() {
+
+        Set<Runnable> tasks = pendingTasks.get();
+        if (tasks == null)
+            return;
+
+        pendingTasks.remove();
+
+        // Failure of one task must not prevent the others
+        for (Runnable task : tasks) {
+            try {
+                task.run();
+            }
+            catch (RuntimeException e) {
+                logger.warn("Task deferred until end of transaction failed: {}", e.getMessage());
+                logger.debug("Deferred task failed.", e);
+            }
+        }
+
+    }
+
+}
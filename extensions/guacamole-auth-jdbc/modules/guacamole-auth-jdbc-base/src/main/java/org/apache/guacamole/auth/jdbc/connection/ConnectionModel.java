@@ -53,12 +53,42 @@ public class ConnectionModel extends GroupedObjectModel {
      */
     private Integer maxConnectionsPerUser;
 
+    /**
+     * The maximum rate at which data may be sent to the client of any tunnel
+     * to this connection, in kilobytes per second, zero if no restriction
+     * applies, or null if the default restrictions should be applied.
+     */
+    private Integer maxBandwidth;
+
+    /**
+     * The maximum number of frames per second which may be sent to the
+     * client of any tunnel to this connection, zero if no restriction
+     * applies, or null if the default restrictions should be applied.
+     */
+    private Integer maxFrameRate;
+
     /**
      * Creates a new, empty connection.
      */
     public ConnectionModel() {
     }
 
+    /**
+     * Creates a new connection which is a copy of the given connection.
+     *
+     * @param connection
+     *     The connection to copy.
+     */
+    public ConnectionModel(ConnectionModel connection) {
+        super(connection);
+        this.name = connection.name;
+        this.protocol = connection.protocol;
+        this.maxConnections = connection.maxConnections;
+        this.maxConnectionsPerUser = connection.maxConnectionsPerUser;
+        this.maxBandwidth = connection.maxBandwidth;
+        this.maxFrameRate = connection.maxFrameRate;
+    }
+
     /**
      * Returns the name associated with this connection.
      *
@@ -152,6 +182,60 @@ public class ConnectionModel extends GroupedObjectModel {
         this.maxConnectionsPerUser = maxConnectionsPerUser;
     }
 
+    /**
+     * Returns the maximum rate at which data may be sent to the client of any
+     * tunnel to this connection.
+     *
+     * @return
+     *     The maximum rate at which data may be sent to the client of any
+     *     tunnel to this connection, in kilobytes per second, zero if no
+     *     restriction applies, or null if the default restrictions should be
+     *     applied.
+     */
+    public Integer getMaxBandwidth() {
+        return maxBandwidth;
+    }
+
+    /**
+     * Sets the maximum rate at which data may be sent to the client of any
+     * tunnel to this connection.
+     *
+     * @param maxBandwidth
+     *     The maximum rate at which data may be sent to the client of any
+     *     tunnel to this connection, in kilobytes per second, zero if no
+     *     restriction applies, or null if the default restrictions should be
+     *     applied.
+     */
+    public void setMaxBandwidth(Integer maxBandwidth) {
+        this.maxBandwidth = maxBandwidth;
+    }
+
+    /**
+     * Returns the maximum number of frames per second which may be sent to
+     * the client of any tunnel to this connection.
+     *
+     * @return
+     *     The maximum number of frames per second which may be sent to the
+     *     client of any tunnel to this connection, zero if no restriction
+     *     applies, or null if the default restrictions should be applied.
+     */
+    public Integer getMaxFrameRate() {
+        return maxFrameRate;
+    }
+
+    /**
+     * Sets the maximum number of frames per second which may be sent to the
+     * client of any tunnel to this connection.
+     *
+     * @param maxFrameRate
+     *     The maximum number of frames per second which may be sent to the
+     *     client of any tunnel to this connection, zero if no restriction
+     *     applies, or null if the default restrictions should be applied.
+     */
+    public void setMaxFrameRate(Integer maxFrameRate) {
+        this.maxFrameRate = maxFrameRate;
+    }
+
     @Override
     public String getIdentifier() {
 
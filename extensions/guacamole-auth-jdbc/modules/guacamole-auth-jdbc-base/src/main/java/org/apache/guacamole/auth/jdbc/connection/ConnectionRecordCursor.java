@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.auth.jdbc.connection;
+
+import java.util.Date;
+import org.apache.guacamole.GuacamoleClientException;
+import org.apache.guacamole.GuacamoleException;
+
+/**
+ * The position of a connection record within the sorted connection history,
+ * identified by the start date and database ID of that record. As connection
+ * history is sorted by start date, with ties broken by database ID, the
+ * records following any given record can be located using the index on those
+ * columns alone, regardless of how deep within the history that record lies.
+ */
+public class ConnectionRecordCursor {
+
+    /**
+     * The character separating the start date from the database ID within
+     * the string form of a cursor.
+     */
+    private static final char SEPARATOR = ':';
+
+    /**
+     * The start date of the connection record.
+     */
+    private final Date startDate;
+
+    /**
+     * The database ID of the connection record.
+     */
+    private final int recordID;
+
+    /**
+     * Creates a new ConnectionRecordCursor pointing to the connection record
+     * having the given start date and database ID.
+     *
+     * @param startDate
+     *     The start date of the connection record.
+     *
+     * @param recordID
+     *     The database ID of the connection record.
+     */
+    public ConnectionRecordCursor(Date startDate, int recordID) {
+        this.startDate = startDate;
+        this.recordID = recordID;
+    }
+
+    /**
+     * Parses the given string, as produced by toString(), into a new
+     * ConnectionRecordCursor.
+     *
+     * @param value
+     *     The string form of the cursor to parse.
+     *
+     * @return
+     *     A new ConnectionRecordCursor pointing to the connection record
+     *     described by the given string.
+     *
+     * @throws GuacamoleException
+     *     If the given string is not a valid cursor.
+     */
+    public static ConnectionRecordCursor parse(String value)
+            throws GuacamoleException {
+
+        int separator = value.indexOf(SEPARATOR);
+        if (separator == -1)
+            throw new GuacamoleClientException("Invalid history cursor.");
+
+        try {
+            return new ConnectionRecordCursor(
+                new Date(Long.parseLong(value.substring(0, separator))),
+                Integer.parseInt(value.substring(separator + 1))
+            );
+        }
+        catch (NumberFormatException e) {
+            throw new GuacamoleClientException("Invalid history cursor.", e);
+        }
+
+    }
+
+    /**
+     * Returns the start date of the connection record.
+     *
+     * @return
+     *     The start date of the connection record.
+     */
+    public Date getStartDate() {
+        return startDate;
+    }
+
+    /**
+     * Returns the database ID of the connection record.
+     *
+     * @return
+     *     The database ID of the connection record.
+     */
+    public int getRecordID() {
+        return recordID;
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(startDate.getTime()) + SEPARATOR + recordID;
+    }
+
+}
@@ -56,6 +56,18 @@ public interface ConnectionRecordMapper {
      */
     int insert(@Param("record") ConnectionRecordModel record);
 
+    /**
+     * Inserts all of the given connection records within a single statement.
+     *
+     * @param records
+     *     The connection records to insert. This collection MUST NOT be
+     *     empty.
+     *
+     * @return
+     *     The number of rows inserted.
+     */
+    int insertAll(@Param("records") Collection<ConnectionRecordModel> records);
+
     /**
      * Searches for up to <code>limit</code> connection records that contain
      * the given terms, sorted by the given predicates, regardless of whether
@@ -71,6 +83,11 @@ public interface ConnectionRecordMapper {
      *     A list of predicates to sort the returned records by, in order of
      *     priority.
      *
+     * @param cursor
+     *     The cursor of the record after which the returned records should
+     *     begin, or null if records should be returned from the beginning of
+     *     the sorted history.
+     *
      * @param limit
      *     The maximum number of records that should be returned.
      *
@@ -79,6 +96,7 @@ public interface ConnectionRecordMapper {
      */
     List<ConnectionRecordModel> search(@Param("terms") Collection<ConnectionRecordSearchTerm> terms,
             @Param("sortPredicates") List<ConnectionRecordSortPredicate> sortPredicates,
+            @Param("cursor") ConnectionRecordCursor cursor,
             @Param("limit") int limit);
 
     /**
@@ -99,6 +117,11 @@ public interface ConnectionRecordMapper {
      *     A list of predicates to sort the returned records by, in order of
      *     priority.
      *
+     * @param cursor
+     *     The cursor of the record after which the returned records should
+     *     begin, or null if records should be returned from the beginning of
+     *     the sorted history.
+     *
      * @param limit
      *     The maximum number of records that should be returned.
      *
@@ -108,6 +131,74 @@ public interface ConnectionRecordMapper {
     List<ConnectionRecordModel> searchReadable(@Param("user") UserModel user,
             @Param("terms") Collection<ConnectionRecordSearchTerm> terms,
             @Param("sortPredicates") List<ConnectionRecordSortPredicate> sortPredicates,
+            @Param("cursor") ConnectionRecordCursor cursor,
             @Param("limit") int limit);
 
+    /**
+     * Adds the given usage totals to the daily usage totals already stored,
+     * creating new rows as necessary. Each combination of day, user, and
+     * connection MUST occur at most once within the given collection.
+     *
+     * @param summaries
+     *     The usage totals to add. This collection MUST NOT be empty.
+     *
+     * @return
+     *     The number of rows inserted or updated.
+     */
+    int updateSummaries(@Param("summaries") Collection<ConnectionRecordSummaryModel> summaries);
+
+    /**
+     * Searches for up to <code>limit</code> daily usage totals that contain
+     * the given terms, sorted by the given predicates, regardless of whether
+     * the data they are associated with is readable by any particular user.
+     * This should only be called on behalf of a system administrator. If
+     * totals are needed by a non-administrative user who must have explicit
+     * read rights, use searchReadableSummaries() instead.
+     *
+     * @param terms
+     *     The search terms that must match the returned totals.
+     *
+     * @param sortPredicates
+     *     A list of predicates to sort the returned totals by, in order of
+     *     priority.
+     *
+     * @param limit
+     *     The maximum number of totals that should be returned.
+     *
+     * @return
+     *     The results of the search performed with the given parameters.
+     */
+    List<ConnectionRecordSummaryModel> searchSummaries(@Param("terms") Collection<ConnectionRecordSearchTerm> terms,
+            @Param("sortPredicates") List<ConnectionRecordSortPredicate> sortPredicates,
+            @Param("limit") int limit);
+
+    /**
+     * Searches for up to <code>limit</code> daily usage totals that contain
+     * the given terms, sorted by the given predicates. Only totals that are
+     * associated with data explicitly readable by the given user will be
+     * returned. If totals are needed by a system administrator (who, by
+     * definition, does not need explicit read rights), use searchSummaries()
+     * instead.
+     *
+     * @param user
+     *    The user whose permissions should determine whether a total is
+     *    returned.
+     *
+     * @param terms
+     *     The search terms that must match the returned totals.
+     *
+     * @param sortPredicates
+     *     A list of predicates to sort the returned totals by, in order of
+     *     priority.
+     *
+     * @param limit
+     *     The maximum number of totals that should be returned.
+     *
+     * @return
+     *     The results of the search performed with the given parameters.
+     */
+    List<ConnectionRecordSummaryModel> searchReadableSummaries(@Param("user") UserModel user,
+            @Param("terms") Collection<ConnectionRecordSearchTerm> terms,
+            @Param("sortPredicates") List<ConnectionRecordSortPredicate> sortPredicates,
+            @Param("limit") int limit);
 }
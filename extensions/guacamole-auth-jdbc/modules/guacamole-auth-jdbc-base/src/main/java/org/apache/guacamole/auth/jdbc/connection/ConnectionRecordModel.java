@@ -29,6 +29,12 @@ import java.util.Date;
  */
 public class ConnectionRecordModel {
 
+    /**
+     * The database ID of this connection record, or null if this record has
+     * not yet been inserted.
+     */
+    private Integer recordID;
+
     /**
      * The identifier of the connection associated with this connection record.
      */
@@ -60,6 +66,27 @@ public class ConnectionRecordModel {
      */
     private Date endDate;
 
+    /**
+     * Returns the database ID of this connection record.
+     *
+     * @return
+     *     The database ID of this connection record, or null if this record
+     *     has not yet been inserted.
+     */
+    public Integer getRecordID() {
+        return recordID;
+    }
+
+    /**
+     * Sets the database ID of this connection record.
+     *
+     * @param recordID
+     *     The database ID of this connection record.
+     */
+    public void setRecordID(Integer recordID) {
+        this.recordID = recordID;
+    }
+
     /**
      * Returns the identifier of the connection associated with this connection
      * record.
@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.auth.jdbc.connection;
+
+import java.util.Date;
+import java.util.List;
+import org.apache.ibatis.annotations.Param;
+
+/**
+ * Mapper for the maintenance of stored connection history, including the
+ * monthly partitions of that history if the history table is partitioned.
+ * Partitions are named such that their names end with the year and month
+ * they contain, in "YYYYMM" form. A partition named for a particular month
+ * contains all records which began before the end of that month and are not
+ * contained by another partition.
+ */
+public interface ConnectionRecordRetentionMapper {
+
+    /**
+     * Returns the names of all partitions of the connection history table.
+     *
+     * @return
+     *     The names of all partitions of the connection history table, or an
+     *     empty list if the connection history table is not partitioned.
+     */
+    List<String> selectPartitions();
+
+    /**
+     * Creates a new partition of the connection history table containing all
+     * records which begin within the given month.
+     *
+     * @param month
+     *     The year and month contained by the new partition, in "YYYYMM"
+     *     form.
+     *
+     * @param start
+     *     The first day of the month, in "YYYY-MM-DD" form.
+     *
+     * @param end
+     *     The first day of the following month, in "YYYY-MM-DD" form.
+     */
+    void createPartition(@Param("month") String month,
+            @Param("start") String start, @Param("end") String end);
+
+    /**
+     * Drops the partition of the connection history table having the given
+     * name, discarding all records that partition contains.
+     *
+     * @param name
+     *     The name of the partition to drop, as returned by
+     *     selectPartitions().
+     */
+    void dropPartition(@Param("name") String name);
+
+    /**
+     * Deletes up to <code>limit</code> connection records which began before
+     * the given date. This is used only when the connection history table is
+     * not partitioned.
+     *
+     * @param before
+     *     The date before which records should be deleted.
+     *
+     * @param limit
+     *     The maximum number of records to delete.
+     *
+     * @return
+     *     The number of records deleted.
+     */
+    int deleteRecords(@Param("before") Date before, @Param("limit") int limit);
+
+}
@@ -0,0 +1,336 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.auth.jdbc.connection;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.auth.jdbc.JDBCEnvironment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Service which periodically removes connection history older than the
+ * configured retention period. If the connection history table is
+ * partitioned by month, partitions for upcoming months are created ahead of
+ * time, and expired history is removed by dropping entire partitions.
+ * Otherwise, expired history is deleted in batches. Daily usage totals are
+ * unaffected, and remain available after the history they summarize has been
+ * removed.
+ */
+@Singleton
+public class ConnectionRecordRetentionService {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(ConnectionRecordRetentionService.class);
+
+    /**
+     * The number of minutes between each run of the maintenance task.
+     */
+    private static final int MAINTENANCE_INTERVAL = 60;
+
+    /**
+     * The maximum number of records to delete within a single statement, if
+     * the connection history table is not partitioned.
+     */
+    private static final int DELETE_BATCH_SIZE = 10000;
+
+    /**
+     * Pattern matching the year and month at the end of the name of each
+     * partition of the connection history table.
+     */
+    private static final Pattern PARTITION_MONTH = Pattern.compile("([0-9]{4})([0-9]{2})$");
+
+    /**
+     * The environment of the Guacamole server.
+     */
+    @Inject
+    private JDBCEnvironment environment;
+
+    /**
+     * Mapper for maintaining stored connection history.
+     */
+    @Inject
+    private ConnectionRecordRetentionMapper retentionMapper;
+
+    /**
+     * Executor running the maintenance task, or null if the task has not
+     * been started.
+     */
+    private ScheduledExecutorService executor;
+
+    /**
+     * Returns the number of the given month, counting from year zero, such
+     * that consecutive months have consecutive numbers.
+     *
+     * @param calendar
+     *     A calendar set to any time within the month.
+     *
+     * @return
+     *     The number of the given month.
+     */
+    private static int getMonthNumber(Calendar calendar) {
+        return calendar.get(Calendar.YEAR) * 12 + calendar.get(Calendar.MONTH);
+    }
+
+    /**
+     * Returns a new calendar set to the start of the first day of the month
+     * having the given number.
+     *
+     * @param month
+     *     The number of the month, as returned by getMonthNumber().
+     *
+     * @return
+     *     A new calendar set to the start of the given month.
+     */
+    private static Calendar getMonthStart(int month) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(month / 12, month % 12, 1);
+        return calendar;
+    }
+
+    /**
+     * Returns the first day of the month having the given number, in
+     * "YYYY-MM-DD" form.
+     *
+     * @param month
+     *     The number of the month, as returned by getMonthNumber().
+     *
+     * @return
+     *     The first day of the given month, in "YYYY-MM-DD" form.
+     */
+    private static String formatMonthStart(int month) {
+        return String.format("%04d-%02d-01", month / 12, month % 12 + 1);
+    }
+
+    /**
+     * Returns the partitions of the connection history table which contain
+     * records for specific months, keyed by the number of the month each
+     * contains. Partitions not named for any particular month, such as
+     * partitions receiving records beyond the last month, are not included.
+     *
+     * @return
+     *     The partitions of the connection history table, keyed by month
+     *     number, or null if the connection history table is not
+     *     partitioned.
+     */
+    private TreeMap<Integer, String> getPartitions() {
+
+        List<String> names = retentionMapper.selectPartitions();
+        if (names.isEmpty())
+            return null;
+
+        TreeMap<Integer, String> partitions = new TreeMap<Integer, String>();
+        for (String name : names) {
+            Matcher matcher = PARTITION_MONTH.matcher(name);
+            if (matcher.find()) {
+                int year = Integer.parseInt(matcher.group(1));
+                int month = Integer.parseInt(matcher.group(2));
+                partitions.put(year * 12 + month - 1, name);
+            }
+        }
+
+        return partitions;
+
+    }
+
+    /**
+     * Creates partitions for each month following the last partitioned month
+     * up to and including the month after the current month, such that
+     * records are always stored within monthly partitions.
+     *
+     * @param partitions
+     *     The existing partitions of the connection history table, keyed by
+     *     month number.
+     *
+     * @param currentMonth
+     *     The number of the current month.
+     */
+    private void createPartitions(TreeMap<Integer, String> partitions,
+            int currentMonth) {
+
+        int month = partitions.isEmpty() ? currentMonth : partitions.lastKey() + 1;
+        for (; month <= currentMonth + 1; month++) {
+
+            String name = String.format("%04d%02d", month / 12, month % 12 + 1);
+            logger.debug("Creating connection history partition for {}.", name);
+
+            retentionMapper.createPartition(name, formatMonthStart(month),
+                    formatMonthStart(month + 1));
+
+        }
+
+    }
+
+    /**
+     * Drops all partitions containing only records which began before the
+     * given cutoff.
+     *
+     * @param partitions
+     *     The existing partitions of the connection history table, keyed by
+     *     month number.
+     *
+     * @param cutoff
+     *     The calendar set to the time before which records have expired.
+     */
+    private void dropPartitions(TreeMap<Integer, String> partitions,
+            Calendar cutoff) {
+
+        for (Map.Entry<Integer, String> partition : partitions.entrySet()) {
+
+            // Stop at first partition containing unexpired records
+            Calendar end = getMonthStart(partition.getKey() + 1);
+            if (end.after(cutoff))
+                break;
+
+            logger.info("Dropping expired connection history partition \"{}\".",
+                    partition.getValue());
+            retentionMapper.dropPartition(partition.getValue());
+
+        }
+
+    }
+
+    /**
+     * Deletes all records which began before the given cutoff, in batches.
+     *
+     * @param cutoff
+     *     The calendar set to the time before which records have expired.
+     */
+    private void deleteRecords(Calendar cutoff) {
+
+        int total = 0;
+        int deleted;
+
+        do {
+            deleted = retentionMapper.deleteRecords(cutoff.getTime(), DELETE_BATCH_SIZE);
+            total += deleted;
+        } while (deleted == DELETE_BATCH_SIZE);
+
+        if (total > 0)
+            logger.info("Deleted {} expired connection history record(s).", total);
+
+    }
+
+    /**
+     * Performs all maintenance of the stored connection history, creating
+     * partitions for upcoming months and removing expired history.
+     *
+     * @throws GuacamoleException
+     *     If the configured retention period cannot be read.
+     */
+    private void maintain() throws GuacamoleException {
+
+        int retention = environment.getHistoryRetentionDays();
+
+        Calendar now = Calendar.getInstance();
+        Calendar cutoff = Calendar.getInstance();
+        cutoff.add(Calendar.DAY_OF_MONTH, -retention);
+
+        // Maintain partitions if history is partitioned
+        TreeMap<Integer, String> partitions = getPartitions();
+        if (partitions != null) {
+
+            // Failure to create partitions must not prevent expired
+            // partitions from being dropped
+            try {
+                createPartitions(partitions, getMonthNumber(now));
+            }
+            catch (RuntimeException e) {
+                logger.warn("Unable to create connection history partitions: {}", e.getMessage());
+                logger.debug("Connection history partitions could not be created.", e);
+            }
+
+            if (retention > 0)
+                dropPartitions(partitions, cutoff);
+
+        }
+
+        // Otherwise delete expired records directly
+        else if (retention > 0)
+            deleteRecords(cutoff);
+
+    }
+
+    /**
+     * Starts periodic maintenance of the stored connection history. The first
+     * run of the maintenance task begins immediately, in the background.
+     */
+    public synchronized void start() {
+
+        if (executor != null)
+            return;
+
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, "guacamole-history-retention");
+                thread.setDaemon(true);
+                return thread;
+            }
+
+        });
+
+        executor.scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    maintain();
+                }
+                catch (GuacamoleException e) {
+                    logger.error("Connection history retention period could "
+                            + "not be read: {}", e.getMessage());
+                    logger.debug("Unable to read connection history retention period.", e);
+                }
+                catch (RuntimeException e) {
+                    logger.warn("Maintenance of connection history failed: {}", e.getMessage());
+                    logger.debug("Unable to maintain connection history.", e);
+                }
+            }
+
+        }, 0, MAINTENANCE_INTERVAL, TimeUnit.MINUTES);
+
+    }
+
+    /**
+     * Stops periodic maintenance of the stored connection history. Any run of
+     * the maintenance task already in progress is allowed to complete.
+     */
+    public synchronized void shutdown() {
+        if (executor != null)
+            executor.shutdown();
+    }
+
+}
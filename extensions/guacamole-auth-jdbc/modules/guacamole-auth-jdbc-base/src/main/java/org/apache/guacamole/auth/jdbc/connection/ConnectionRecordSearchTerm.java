@@ -275,6 +275,31 @@ public class ConnectionRecordSearchTerm {
         return term;
     }
 
+    /**
+     * Returns the search term with all characters having special meaning
+     * within a LIKE pattern escaped using backslashes, such that the term
+     * matches only itself.
+     *
+     * @return
+     *     The search term, escaped for use within a LIKE pattern.
+     */
+    private String getEscapedTerm() {
+        return term.replace("\\", "\\\\")
+                   .replace("%", "\\%")
+                   .replace("_", "\\_");
+    }
+
+    /**
+     * Returns a LIKE pattern which matches any value containing the search
+     * term.
+     *
+     * @return
+     *     A LIKE pattern matching any value containing the search term.
+     */
+    public String getSubstringPattern() {
+        return "%" + getEscapedTerm() + "%";
+    }
+
     @Override
     public int hashCode() {
         return term.hashCode();
@@ -28,6 +28,9 @@ import java.util.Set;
 import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.auth.jdbc.base.RestrictedObject;
 import org.apache.guacamole.net.auth.ConnectionRecord;
+import org.apache.guacamole.net.auth.ConnectionRecordSummary;
+import org.apache.guacamole.net.auth.CursorPageableConnectionRecordSet;
+import org.apache.guacamole.net.auth.SummarizableConnectionRecordSet;
 
 /**
  * A JDBC implementation of ConnectionRecordSet. Calls to asCollection() will 
@@ -37,7 +40,8 @@ import org.apache.guacamole.net.auth.ConnectionRecord;
  * @author James Muehlner
  */
 public class ConnectionRecordSet extends RestrictedObject
-        implements org.apache.guacamole.net.auth.ConnectionRecordSet {
+        implements CursorPageableConnectionRecordSet,
+        SummarizableConnectionRecordSet {
 
     /**
      * Service for managing connection objects.
@@ -60,6 +64,13 @@ public class ConnectionRecordSet extends RestrictedObject
      * by a call to asCollection().
      */
     private int limit = Integer.MAX_VALUE;
+
+    /**
+     * The cursor of the record after which the returned records should begin,
+     * or null if records should be returned from the beginning of the sorted
+     * history.
+     */
+    private ConnectionRecordCursor cursor;
     
     /**
      * A list of predicates to apply while sorting the resulting connection
@@ -73,6 +84,14 @@ public class ConnectionRecordSet extends RestrictedObject
     public Collection<ConnectionRecord> asCollection()
             throws GuacamoleException {
         return connectionService.retrieveHistory(getCurrentUser(),
+                requiredContents, connectionRecordSortPredicates, cursor,
+                limit);
+    }
+
+    @Override
+    public Collection<ConnectionRecordSummary> summarize()
+            throws GuacamoleException {
+        return connectionService.retrieveHistorySummaries(getCurrentUser(),
                 requiredContents, connectionRecordSortPredicates, limit);
     }
 
@@ -89,6 +108,24 @@ public class ConnectionRecordSet extends RestrictedObject
         return this;
     }
 
+    @Override
+    public String getCursor(ConnectionRecord record) {
+
+        // Only records retrieved from the database have a position
+        if (record instanceof ModeledConnectionRecord)
+            return ((ModeledConnectionRecord) record).getCursor();
+
+        return null;
+
+    }
+
+    @Override
+    public ConnectionRecordSet after(String cursor)
+            throws GuacamoleException {
+        this.cursor = ConnectionRecordCursor.parse(cursor);
+        return this;
+    }
+
     @Override
     public ConnectionRecordSet sort(SortableProperty property, boolean desc)
             throws GuacamoleException {
@@ -0,0 +1,214 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.auth.jdbc.connection;
+
+import java.util.Date;
+
+/**
+ * A single row of the daily connection usage totals, summarizing all
+ * connection records associated with a particular day, user, and connection.
+ */
+public class ConnectionRecordSummaryModel {
+
+    /**
+     * The day summarized by this row.
+     */
+    private Date date;
+
+    /**
+     * The database ID of the user whose usage is summarized, if that user
+     * exists within the database.
+     */
+    private Integer userID;
+
+    /**
+     * The username of the user whose usage is summarized.
+     */
+    private String username;
+
+    /**
+     * The identifier of the connection whose usage is summarized.
+     */
+    private String connectionIdentifier;
+
+    /**
+     * The name of the connection whose usage is summarized.
+     */
+    private String connectionName;
+
+    /**
+     * The number of sessions which began on the summarized day.
+     */
+    private int sessionCount;
+
+    /**
+     * The combined duration of all sessions which began on the summarized
+     * day, in seconds.
+     */
+    private long totalDuration;
+
+    /**
+     * Returns the day summarized by this row.
+     *
+     * @return
+     *     The day summarized by this row.
+     */
+    public Date getDate() {
+        return date;
+    }
+
+    /**
+     * Sets the day summarized by this row.
+     *
+     * @param date
+     *     The day summarized by this row.
+     */
+    public void setDate(Date date) {
+        this.date = date;
+    }
+
+    /**
+     * Returns the database ID of the user whose usage is summarized.
+     *
+     * @return
+     *     The database ID of the user whose usage is summarized, or null if
+     *     that user does not exist within the database.
+     */
+    public Integer getUserID() {
+        return userID;
+    }
+
+    /**
+     * Sets the database ID of the user whose usage is summarized.
+     *
+     * @param userID
+     *     The database ID of the user whose usage is summarized, or null if
+     *     that user does not exist within the database.
+     */
+    public void setUserID(Integer userID) {
+        this.userID = userID;
+    }
+
+    /**
+     * Returns the username of the user whose usage is summarized.
+     *
+     * @return
+     *     The username of the user whose usage is summarized.
+     */
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * Sets the username of the user whose usage is summarized.
+     *
+     * @param username
+     *     The username of the user whose usage is summarized.
+     */
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    /**
+     * Returns the identifier of the connection whose usage is summarized.
+     *
+     * @return
+     *     The identifier of the connection whose usage is summarized, or null
+     *     if that connection no longer exists.
+     */
+    public String getConnectionIdentifier() {
+        return connectionIdentifier;
+    }
+
+    /**
+     * Sets the identifier of the connection whose usage is summarized.
+     *
+     * @param connectionIdentifier
+     *     The identifier of the connection whose usage is summarized.
+     */
+    public void setConnectionIdentifier(String connectionIdentifier) {
+        this.connectionIdentifier = connectionIdentifier;
+    }
+
+    /**
+     * Returns the name of the connection whose usage is summarized.
+     *
+     * @return
+     *     The name of the connection whose usage is summarized.
+     */
+    public String getConnectionName() {
+        return connectionName;
+    }
+
+    /**
+     * Sets the name of the connection whose usage is summarized.
+     *
+     * @param connectionName
+     *     The name of the connection whose usage is summarized.
+     */
+    public void setConnectionName(String connectionName) {
+        this.connectionName = connectionName;
+    }
+
+    /**
+     * Returns the number of sessions which began on the summarized day.
+     *
+     * @return
+     *     The number of sessions which began on the summarized day.
+     */
+    public int getSessionCount() {
+        return sessionCount;
+    }
+
+    /**
+     * Sets the number of sessions which began on the summarized day.
+     *
+     * @param sessionCount
+     *     The number of sessions which began on the summarized day.
+     */
+    public void setSessionCount(int sessionCount) {
+        this.sessionCount = sessionCount;
+    }
+
+    /**
+     * Returns the combined duration of all sessions which began on the
+     * summarized day, in seconds.
+     *
+     * @return
+     *     The combined duration of all sessions which began on the summarized
+     *     day, in seconds.
+     */
+    public long getTotalDuration() {
+        return totalDuration;
+    }
+
+    /**
+     * Sets the combined duration of all sessions which began on the
+     * summarized day, in seconds.
+     *
+     * @param totalDuration
+     *     The combined duration of all sessions which began on the summarized
+     *     day, in seconds.
+     */
+    public void setTotalDuration(long totalDuration) {
+        this.totalDuration = totalDuration;
+    }
+
+}
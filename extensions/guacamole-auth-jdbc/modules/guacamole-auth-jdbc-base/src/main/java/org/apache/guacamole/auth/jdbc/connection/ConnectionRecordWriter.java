@@ -0,0 +1,443 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.auth.jdbc.connection;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.auth.jdbc.JDBCEnvironment;
+import org.mybatis.guice.transactional.Transactional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writer which inserts connection history records into the database in the
+ * background, combining records which are produced close together into a
+ * single multi-row insert. Records wait for at most the configured flush
+ * interval, and are written as soon as a full batch is available. If the
+ * number of records awaiting writing reaches the configured queue size, or if
+ * the writer has been shut down, further records are written immediately by
+ * the thread which produced them, such that no record is ever discarded.
+ * Each record written is also added to the daily usage totals of its user and
+ * connection, within the same transaction as the record itself, such that
+ * those totals never need be computed from the records themselves.
+ *
+ * Queued records are held only in memory. Records are written before a clean
+ * shutdown completes, but if the web application terminates abnormally, any
+ * records still queued are lost. At most the configured queue size may be
+ * lost in this way, and records are normally queued for no longer than the
+ * flush interval plus the time taken to write the preceding batches. A queue
+ * size of 1 and a flush interval of 0 effectively disable queueing where this
+ * window is unacceptable, at the cost of closing threads more often waiting
+ * on the database.
+ */
+@Singleton
+public class ConnectionRecordWriter {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(ConnectionRecordWriter.class);
+
+    /**
+     * Placeholder record which, when taken from the queue, signals the writer
+     * thread to stop. This record is never written.
+     */
+    private static final ConnectionRecordModel STOP = new ConnectionRecordModel();
+
+    /**
+     * The environment of the Guacamole server.
+     */
+    @Inject
+    private JDBCEnvironment environment;
+
+    /**
+     * Mapper for accessing connection history.
+     */
+    @Inject
+    private ConnectionRecordMapper connectionRecordMapper;
+
+    /**
+     * All records which are awaiting writing, or null if the writer thread
+     * has not yet been started.
+     */
+    private BlockingQueue<ConnectionRecordModel> queue;
+
+    /**
+     * The thread which writes queued records, or null if the writer thread
+     * has not yet been started.
+     */
+    private Thread writerThread;
+
+    /**
+     * The maximum number of records to write within a single statement.
+     */
+    private int batchSize;
+
+    /**
+     * The maximum amount of time that a record may wait for further records
+     * before being written, in milliseconds.
+     */
+    private int flushInterval;
+
+    /**
+     * Whether this writer has been shut down.
+     */
+    private volatile boolean shutdown = false;
+
+    /**
+     * Thread which repeatedly waits for queued records and writes them to the
+     * database in batches, until the writer is shut down.
+     */
+    private class WriterThread extends Thread {
+
+        /**
+         * Creates a new WriterThread which writes records from the queue of
+         * the containing ConnectionRecordWriter.
+         */
+        public WriterThread() {
+            super("guacamole-history-writer");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+
+            List<ConnectionRecordModel> batch =
+                    new ArrayList<ConnectionRecordModel>(batchSize);
+
+            try {
+                for (;;) {
+
+                    // Wait for the first record of the next batch
+                    ConnectionRecordModel record = queue.take();
+                    if (record == STOP)
+                        return;
+
+                    batch.add(record);
+
+                    // Gather further records until the batch is full or the
+                    // first record has waited long enough
+                    long deadline = System.nanoTime()
+                            + TimeUnit.MILLISECONDS.toNanos(flushInterval);
+
+                    while (batch.size() < batchSize) {
+
+                        long remaining = deadline - System.nanoTime();
+                        if (remaining <= 0)
+                            break;
+
+                        record = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                        if (record == null)
+                            break;
+
+                        // Write what has been gathered before stopping
+                        if (record == STOP) {
+                            insert(batch);
+                            return;
+                        }
+
+                        batch.add(record);
+
+                    }
+
+                    insert(batch);
+                    batch.clear();
+
+                }
+            }
+
+            // Records gathered but not written are written by shutdown()
+            catch (InterruptedException e) {
+                logger.debug("Connection history writer interrupted.", e);
+                queue.addAll(batch);
+            }
+
+        }
+
+    }
+
+    /**
+     * Starts the writer thread if it has not yet been started, reading the
+     * batch size, flush interval, and queue size from the environment.
+     *
+     * @throws GuacamoleException
+     *     If the configuration of the writer cannot be read.
+     */
+    private void start() throws GuacamoleException {
+
+        if (queue != null)
+            return;
+
+        batchSize = Math.max(1, environment.getHistoryBatchSize());
+        flushInterval = Math.max(0, environment.getHistoryFlushInterval());
+        queue = new ArrayBlockingQueue<ConnectionRecordModel>(
+                Math.max(1, environment.getHistoryQueueSize()));
+
+        writerThread = new WriterThread();
+        writerThread.start();
+
+    }
+
+    /**
+     * Returns the start of the day containing the given date, in the local
+     * time zone.
+     *
+     * @param date
+     *     The date whose day should be returned.
+     *
+     * @return
+     *     The start of the day containing the given date.
+     */
+    private static Date getDay(Date date) {
+
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(date);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+
+        return calendar.getTime();
+
+    }
+
+    /**
+     * Totals the given records by the day they began, their user, and their
+     * connection.
+     *
+     * @param records
+     *     The records to total.
+     *
+     * @return
+     *     The daily usage totals of the given records, with exactly one total
+     *     for each combination of day, user, and connection.
+     */
+    private static Collection<ConnectionRecordSummaryModel> summarize(
+            List<ConnectionRecordModel> records) {
+
+        Map<List<Object>, ConnectionRecordSummaryModel> summaries =
+                new LinkedHashMap<List<Object>, ConnectionRecordSummaryModel>();
+
+        for (ConnectionRecordModel record : records) {
+
+            Date day = getDay(record.getStartDate());
+
+            // Retrieve total for record's day, user, and connection
+            List<Object> key = Arrays.<Object>asList(day, record.getUsername(),
+                    record.getConnectionIdentifier());
+            ConnectionRecordSummaryModel summary = summaries.get(key);
+            if (summary == null) {
+                summary = new ConnectionRecordSummaryModel();
+                summary.setDate(day);
+                summary.setUsername(record.getUsername());
+                summary.setConnectionIdentifier(record.getConnectionIdentifier());
+                summaries.put(key, summary);
+            }
+
+            // Add record to total
+            long duration = record.getEndDate().getTime() - record.getStartDate().getTime();
+            summary.setConnectionName(record.getConnectionName());
+            summary.setSessionCount(summary.getSessionCount() + 1);
+            summary.setTotalDuration(summary.getTotalDuration()
+                    + TimeUnit.MILLISECONDS.toSeconds(Math.max(0, duration)));
+
+        }
+
+        return summaries.values();
+
+    }
+
+    /**
+     * Inserts the given records into the database and adds them to the daily
+     * usage totals, all within a single transaction, such that the totals
+     * always agree with the records which were actually written.
+     *
+     * @param records
+     *     The records to insert, which must not be empty.
+     */
+    @Transactional
+    protected void insertAndTotal(List<ConnectionRecordModel> records) {
+
+        // Write all records within a single statement
+        if (records.size() == 1)
+            connectionRecordMapper.insert(records.get(0));
+        else
+            connectionRecordMapper.insertAll(records);
+
+        connectionRecordMapper.updateSummaries(summarize(records));
+
+    }
+
+    /**
+     * Inserts the given records into the database, adding them to the daily
+     * usage totals. If the records cannot be inserted together, each record is
+     * inserted individually, such that a single bad record does not prevent
+     * the others from being written.
+     *
+     * @param records
+     *     The records to insert.
+     */
+    private void insert(List<ConnectionRecordModel> records) {
+
+        if (records.isEmpty())
+            return;
+
+        // Write all records within a single transaction, if possible
+        try {
+            insertAndTotal(records);
+            return;
+        }
+        catch (RuntimeException e) {
+            if (records.size() == 1) {
+                logRejected(records.get(0), e);
+                return;
+            }
+            logger.debug("Unable to write batch of connection history records.", e);
+        }
+
+        // Otherwise, write records individually
+        for (ConnectionRecordModel record : records) {
+            try {
+                insertAndTotal(Collections.singletonList(record));
+            }
+            catch (RuntimeException e) {
+                logRejected(record, e);
+            }
+        }
+
+    }
+
+    /**
+     * Logs that the given record could not be written to the database.
+     *
+     * @param record
+     *     The record which could not be written.
+     *
+     * @param e
+     *     The error which prevented the record from being written.
+     */
+    private void logRejected(ConnectionRecordModel record, RuntimeException e) {
+        logger.error("Unable to write history of connection \"{}\" by user "
+                + "\"{}\": {}", record.getConnectionIdentifier(),
+                record.getUsername(), e.getMessage());
+        logger.debug("Connection history record could not be inserted.", e);
+    }
+
+    /**
+     * Schedules the given record for insertion into the database. If the
+     * record cannot be queued, it is inserted immediately by the current
+     * thread.
+     *
+     * @param record
+     *     The connection record to write.
+     */
+    public void write(ConnectionRecordModel record) {
+
+        synchronized (this) {
+
+            if (!shutdown) {
+
+                try {
+                    start();
+                }
+                catch (GuacamoleException e) {
+                    logger.warn("Connection history will not be written in "
+                            + "the background: {}", e.getMessage());
+                    logger.debug("Unable to start connection history writer.", e);
+                    shutdown = true;
+                }
+
+                // Queue record if possible
+                if (!shutdown && queue.offer(record))
+                    return;
+
+            }
+
+        }
+
+        // Write immediately if the queue is full or not available
+        List<ConnectionRecordModel> records = new ArrayList<ConnectionRecordModel>(1);
+        records.add(record);
+        insert(records);
+
+    }
+
+    /**
+     * Stops the writer thread, writing any records which have not yet been
+     * written. Records passed to write() after this function has been invoked
+     * are inserted immediately.
+     */
+    public void shutdown() {
+
+        BlockingQueue<ConnectionRecordModel> pending;
+        Thread thread;
+
+        // No further records will be queued once shut down
+        synchronized (this) {
+            shutdown = true;
+            pending = queue;
+            thread = writerThread;
+        }
+
+        // Nothing to do if the writer thread was never started
+        if (thread == null)
+            return;
+
+        int remaining = pending.size();
+
+        // Allow the writer thread to write all queued records and stop
+        try {
+            pending.put(STOP);
+            thread.join();
+        }
+        catch (InterruptedException e) {
+            logger.debug("Interrupted while awaiting connection history writer.", e);
+            thread.interrupt();
+            Thread.currentThread().interrupt();
+        }
+
+        // Write any records left behind by the writer thread
+        List<ConnectionRecordModel> batch = new ArrayList<ConnectionRecordModel>(batchSize);
+        while (pending.drainTo(batch, batchSize) > 0) {
+            batch.remove(STOP);
+            insert(batch);
+            batch.clear();
+        }
+
+        if (remaining > 0)
+            logger.info("Wrote {} pending connection history record(s) during "
+                    + "shutdown.", remaining);
+
+    }
+
+}
@@ -25,6 +25,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -35,11 +36,13 @@ import org.apache.guacamole.GuacamoleClientException;
 import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.GuacamoleSecurityException;
 import org.apache.guacamole.auth.jdbc.base.ModeledGroupedDirectoryObjectService;
+import org.apache.guacamole.auth.jdbc.cache.ModelCacheService;
 import org.apache.guacamole.auth.jdbc.permission.ConnectionPermissionMapper;
 import org.apache.guacamole.auth.jdbc.permission.ObjectPermissionMapper;
 import org.apache.guacamole.net.GuacamoleTunnel;
 import org.apache.guacamole.net.auth.Connection;
 import org.apache.guacamole.net.auth.ConnectionRecord;
+import org.apache.guacamole.net.auth.ConnectionRecordSummary;
 import org.apache.guacamole.net.auth.permission.ObjectPermission;
 import org.apache.guacamole.net.auth.permission.ObjectPermissionSet;
 import org.apache.guacamole.net.auth.permission.SystemPermission;
@@ -89,6 +92,12 @@ public class ConnectionService extends ModeledGroupedDirectoryObjectService<Mode
      */
     @Inject
     private GuacamoleTunnelService tunnelService;
+
+    /**
+     * Service for retrieving cached connections and connection parameters.
+     */
+    @Inject
+    private ModelCacheService modelCacheService;
     
     @Override
     protected ModeledDirectoryObjectMapper<ConnectionModel> getObjectMapper() {
@@ -228,6 +237,19 @@ public class ConnectionService extends ModeledGroupedDirectoryObjectService<Mode
 
     }
 
+    @Override
+    protected Collection<ConnectionModel> selectObjects(AuthenticatedUser user,
+            Collection<String> identifiers) throws GuacamoleException {
+
+        // Restrict to explicitly readable connections if not a system admin
+        if (!user.getUser().isAdministrator())
+            identifiers = getPermissionSet(user).getAccessibleObjects(
+                    Collections.singleton(ObjectPermission.Type.READ), identifiers);
+
+        return modelCacheService.selectConnections(identifiers);
+
+    }
+
     @Override
     public ModeledConnection createObject(AuthenticatedUser user, Connection object)
             throws GuacamoleException {
@@ -241,9 +263,20 @@ public class ConnectionService extends ModeledGroupedDirectoryObjectService<Mode
         if (!parameterModels.isEmpty())
             parameterMapper.insert(parameterModels);
 
+        modelCacheService.invalidateConnection(connection.getIdentifier());
         return connection;
 
     }
+
+    @Override
+    public void deleteObject(AuthenticatedUser user, String identifier)
+            throws GuacamoleException {
+
+        // Delete connection, implicitly deleting its parameters
+        super.deleteObject(user, identifier);
+        modelCacheService.invalidateConnection(identifier);
+
+    }
     
     @Override
     public void updateObject(AuthenticatedUser user, ModeledConnection object)
@@ -257,6 +290,8 @@ public class ConnectionService extends ModeledGroupedDirectoryObjectService<Mode
         parameterMapper.delete(object.getIdentifier());
         if (!parameterModels.isEmpty())
             parameterMapper.insert(parameterModels);
+
+        modelCacheService.invalidateConnection(object.getIdentifier());
         
     }
 
@@ -286,13 +321,16 @@ public class ConnectionService extends ModeledGroupedDirectoryObjectService<Mode
             String identifier)
             throws GuacamoleException {
 
+        Set<String> identifiers = modelCacheService.selectConnectionIdentifiersWithin(identifier);
+
         // Bypass permission checks if the user is a system admin
         if (user.getUser().isAdministrator())
-            return connectionMapper.selectIdentifiersWithin(identifier);
+            return identifiers;
 
         // Otherwise only return explicitly readable identifiers
         else
-            return connectionMapper.selectReadableIdentifiersWithin(user.getUser().getModel(), identifier);
+            return new HashSet<String>(getPermissionSet(user).getAccessibleObjects(
+                    Collections.singleton(ObjectPermission.Type.READ), identifiers));
 
     }
 
@@ -331,10 +369,8 @@ public class ConnectionService extends ModeledGroupedDirectoryObjectService<Mode
         }
 
         // Populate parameter map if we have permission to do so
-        if (canRetrieveParameters) {
-            for (ParameterModel parameter : parameterMapper.select(identifier))
-                parameterMap.put(parameter.getName(), parameter.getValue());
-        }
+        if (canRetrieveParameters)
+            return modelCacheService.selectParameters(identifier);
 
         return parameterMap;
 
@@ -440,6 +476,11 @@ public class ConnectionService extends ModeledGroupedDirectoryObjectService<Mode
      *     A list of predicates to sort the returned records by, in order of
      *     priority.
      *
+     * @param cursor
+     *     The cursor of the record after which the returned records should
+     *     begin, or null if records should be returned from the beginning of
+     *     the sorted history.
+     *
      * @param limit
      *     The maximum number of records that should be returned.
      *
@@ -452,7 +493,8 @@ public class ConnectionService extends ModeledGroupedDirectoryObjectService<Mode
      */
     public List<ConnectionRecord> retrieveHistory(AuthenticatedUser user,
             Collection<ConnectionRecordSearchTerm> requiredContents,
-            List<ConnectionRecordSortPredicate> sortPredicates, int limit)
+            List<ConnectionRecordSortPredicate> sortPredicates,
+            ConnectionRecordCursor cursor, int limit)
             throws GuacamoleException {
 
         List<ConnectionRecordModel> searchResults;
@@ -460,17 +502,70 @@ public class ConnectionService extends ModeledGroupedDirectoryObjectService<Mode
         // Bypass permission checks if the user is a system admin
         if (user.getUser().isAdministrator())
             searchResults = connectionRecordMapper.search(requiredContents,
-                    sortPredicates, limit);
+                    sortPredicates, cursor, limit);
 
         // Otherwise only return explicitly readable history records
         else
             searchResults = connectionRecordMapper.searchReadable(user.getUser().getModel(),
-                    requiredContents, sortPredicates, limit);
+                    requiredContents, sortPredicates, cursor, limit);
 
         return getObjectInstances(searchResults);
 
     }
 
+    /**
+     * Retrieves the daily usage totals matching the given criteria. Retrieves
+     * up to <code>limit</code> totals matching the given terms and sorted by
+     * the given predicates. Only totals associated with data that the given
+     * user can read are returned.
+     *
+     * @param user
+     *     The user retrieving the usage totals.
+     *
+     * @param requiredContents
+     *     The search terms that must be contained somewhere within each of the
+     *     returned totals.
+     *
+     * @param sortPredicates
+     *     A list of predicates to sort the returned totals by, in order of
+     *     priority.
+     *
+     * @param limit
+     *     The maximum number of totals that should be returned.
+     *
+     * @return
+     *     The daily usage totals matching the given criteria.
+     *
+     * @throws GuacamoleException
+     *     If permission to read the usage totals is denied.
+     */
+    public List<ConnectionRecordSummary> retrieveHistorySummaries(AuthenticatedUser user,
+            Collection<ConnectionRecordSearchTerm> requiredContents,
+            List<ConnectionRecordSortPredicate> sortPredicates, int limit)
+            throws GuacamoleException {
+
+        List<ConnectionRecordSummaryModel> searchResults;
+
+        // Bypass permission checks if the user is a system admin
+        if (user.getUser().isAdministrator())
+            searchResults = connectionRecordMapper.searchSummaries(
+                    requiredContents, sortPredicates, limit);
+
+        // Otherwise only return explicitly readable totals
+        else
+            searchResults = connectionRecordMapper.searchReadableSummaries(
+                    user.getUser().getModel(), requiredContents,
+                    sortPredicates, limit);
+
+        List<ConnectionRecordSummary> summaries =
+                new ArrayList<ConnectionRecordSummary>(searchResults.size());
+        for (ConnectionRecordSummaryModel model : searchResults)
+            summaries.add(new ModeledConnectionRecordSummary(model));
+
+        return summaries;
+
+    }
+
     /**
      * Connects to the given connection as the given user, using the given
      * client information. If the user does not have permission to read the
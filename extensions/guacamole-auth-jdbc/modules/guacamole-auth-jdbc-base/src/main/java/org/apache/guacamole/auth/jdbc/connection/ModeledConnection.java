@@ -78,12 +78,34 @@ public class ModeledConnection extends ModeledGroupedDirectoryObject<ConnectionM
         new NumericField(MAX_CONNECTIONS_PER_USER_NAME)
     ));
 
+    /**
+     * The name of the attribute which controls the maximum rate at which data
+     * may be sent to the client of each tunnel, in kilobytes per second.
+     */
+    public static final String MAX_BANDWIDTH_NAME = "max-bandwidth";
+
+    /**
+     * The name of the attribute which controls the maximum number of frames
+     * per second which may be sent to the client of each tunnel.
+     */
+    public static final String MAX_FRAME_RATE_NAME = "max-frame-rate";
+
+    /**
+     * All attributes related to limiting the outbound traffic of each tunnel,
+     * within a logical form.
+     */
+    public static final Form SHAPING_LIMITS = new Form("shaping", Arrays.<Field>asList(
+        new NumericField(MAX_BANDWIDTH_NAME),
+        new NumericField(MAX_FRAME_RATE_NAME)
+    ));
+
     /**
      * All possible attributes of connection objects organized as individual,
      * logical forms.
      */
     public static final Collection<Form> ATTRIBUTES = Collections.unmodifiableCollection(Arrays.asList(
-        CONCURRENCY_LIMITS
+        CONCURRENCY_LIMITS,
+        SHAPING_LIMITS
     ));
 
     /**
@@ -182,6 +204,12 @@ public class ModeledConnection extends ModeledGroupedDirectoryObject<ConnectionM
         // Set per-user connection limit attribute
         attributes.put(MAX_CONNECTIONS_PER_USER_NAME, NumericField.format(getModel().getMaxConnectionsPerUser()));
 
+        // Set bandwidth limit attribute
+        attributes.put(MAX_BANDWIDTH_NAME, NumericField.format(getModel().getMaxBandwidth()));
+
+        // Set frame rate limit attribute
+        attributes.put(MAX_FRAME_RATE_NAME, NumericField.format(getModel().getMaxFrameRate()));
+
         return attributes;
     }
 
@@ -202,6 +230,20 @@ public class ModeledConnection extends ModeledGroupedDirectoryObject<ConnectionM
             logger.debug("Unable to parse numeric attribute.", e);
         }
 
+        // Translate bandwidth limit attribute
+        try { getModel().setMaxBandwidth(NumericField.parse(attributes.get(MAX_BANDWIDTH_NAME))); }
+        catch (NumberFormatException e) {
+            logger.warn("Not setting maximum bandwidth: {}", e.getMessage());
+            logger.debug("Unable to parse numeric attribute.", e);
+        }
+
+        // Translate frame rate limit attribute
+        try { getModel().setMaxFrameRate(NumericField.parse(attributes.get(MAX_FRAME_RATE_NAME))); }
+        catch (NumberFormatException e) {
+            logger.warn("Not setting maximum frame rate: {}", e.getMessage());
+            logger.debug("Unable to parse numeric attribute.", e);
+        }
+
     }
 
     /**
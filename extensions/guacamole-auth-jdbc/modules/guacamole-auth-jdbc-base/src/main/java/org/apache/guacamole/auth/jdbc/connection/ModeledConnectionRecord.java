@@ -83,4 +83,25 @@ public class ModeledConnectionRecord implements ConnectionRecord {
         return false;
     }
 
+    /**
+     * Returns an opaque value identifying the position of this record within
+     * the overall connection history, such that the records following this
+     * record can be retrieved using ConnectionRecordSet.after().
+     *
+     * @return
+     *     An opaque value identifying the position of this record within the
+     *     connection history, or null if this record has not yet been
+     *     retrieved from the database.
+     */
+    public String getCursor() {
+
+        // Records not yet retrieved from the database have no position
+        Integer recordID = model.getRecordID();
+        if (recordID == null)
+            return null;
+
+        return new ConnectionRecordCursor(model.getStartDate(), recordID).toString();
+
+    }
+
 }
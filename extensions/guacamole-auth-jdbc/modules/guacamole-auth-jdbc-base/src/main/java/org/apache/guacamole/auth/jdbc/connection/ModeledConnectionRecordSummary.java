@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.auth.jdbc.connection;
+
+import java.util.Date;
+import org.apache.guacamole.net.auth.ConnectionRecordSummary;
+
+/**
+ * A ConnectionRecordSummary which is backed by a database model.
+ */
+public class ModeledConnectionRecordSummary implements ConnectionRecordSummary {
+
+    /**
+     * The model object backing this summary.
+     */
+    private final ConnectionRecordSummaryModel model;
+
+    /**
+     * Creates a new ModeledConnectionRecordSummary backed by the given model
+     * object.
+     *
+     * @param model
+     *     The model object to use to back this summary.
+     */
+    public ModeledConnectionRecordSummary(ConnectionRecordSummaryModel model) {
+        this.model = model;
+    }
+
+    @Override
+    public Date getDate() {
+        return model.getDate();
+    }
+
+    @Override
+    public String getUsername() {
+        return model.getUsername();
+    }
+
+    @Override
+    public String getConnectionIdentifier() {
+        return model.getConnectionIdentifier();
+    }
+
+    @Override
+    public String getConnectionName() {
+        return model.getConnectionName();
+    }
+
+    @Override
+    public int getSessionCount() {
+        return model.getSessionCount();
+    }
+
+    @Override
+    public long getTotalDuration() {
+        return model.getTotalDuration();
+    }
+
+}
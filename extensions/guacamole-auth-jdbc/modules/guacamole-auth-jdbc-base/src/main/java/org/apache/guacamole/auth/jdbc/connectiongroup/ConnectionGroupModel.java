@@ -66,6 +66,22 @@ public class ConnectionGroupModel extends GroupedObjectModel {
     public ConnectionGroupModel() {
     }
 
+    /**
+     * Creates a new connection group which is a copy of the given connection
+     * group.
+     *
+     * @param connectionGroup
+     *     The connection group to copy.
+     */
+    public ConnectionGroupModel(ConnectionGroupModel connectionGroup) {
+        super(connectionGroup);
+        this.name = connectionGroup.name;
+        this.type = connectionGroup.type;
+        this.maxConnections = connectionGroup.maxConnections;
+        this.maxConnectionsPerUser = connectionGroup.maxConnectionsPerUser;
+        this.sessionAffinityEnabled = connectionGroup.sessionAffinityEnabled;
+    }
+
     /**
      * Returns the name associated with this connection group.
      *
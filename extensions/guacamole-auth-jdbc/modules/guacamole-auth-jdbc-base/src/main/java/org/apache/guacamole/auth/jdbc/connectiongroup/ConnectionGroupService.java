@@ -21,6 +21,9 @@ package org.apache.guacamole.auth.jdbc.connectiongroup;
 
 import com.google.inject.Inject;
 import com.google.inject.Provider;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Set;
 import org.apache.guacamole.auth.jdbc.user.AuthenticatedUser;
 import org.apache.guacamole.auth.jdbc.base.ModeledDirectoryObjectMapper;
@@ -30,6 +33,7 @@ import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.GuacamoleSecurityException;
 import org.apache.guacamole.GuacamoleUnsupportedException;
 import org.apache.guacamole.auth.jdbc.base.ModeledGroupedDirectoryObjectService;
+import org.apache.guacamole.auth.jdbc.cache.ModelCacheService;
 import org.apache.guacamole.auth.jdbc.permission.ConnectionGroupPermissionMapper;
 import org.apache.guacamole.auth.jdbc.permission.ObjectPermissionMapper;
 import org.apache.guacamole.net.GuacamoleTunnel;
@@ -72,6 +76,12 @@ public class ConnectionGroupService extends ModeledGroupedDirectoryObjectService
      */
     @Inject
     private GuacamoleTunnelService tunnelService;
+
+    /**
+     * Service for retrieving cached connection groups.
+     */
+    @Inject
+    private ModelCacheService modelCacheService;
     
     @Override
     protected ModeledDirectoryObjectMapper<ConnectionGroupModel> getObjectMapper() {
@@ -181,6 +191,51 @@ public class ConnectionGroupService extends ModeledGroupedDirectoryObjectService
 
     }
 
+    @Override
+    protected Collection<ConnectionGroupModel> selectObjects(AuthenticatedUser user,
+            Collection<String> identifiers) throws GuacamoleException {
+
+        // Restrict to explicitly readable groups if not a system admin
+        if (!user.getUser().isAdministrator())
+            identifiers = getPermissionSet(user).getAccessibleObjects(
+                    Collections.singleton(ObjectPermission.Type.READ), identifiers);
+
+        return modelCacheService.selectConnectionGroups(identifiers);
+
+    }
+
+    @Override
+    public ModeledConnectionGroup createObject(AuthenticatedUser user,
+            ConnectionGroup object) throws GuacamoleException {
+
+        // Create connection group
+        ModeledConnectionGroup connectionGroup = super.createObject(user, object);
+        modelCacheService.invalidateConnectionGroup(connectionGroup.getIdentifier());
+
+        return connectionGroup;
+
+    }
+
+    @Override
+    public void updateObject(AuthenticatedUser user,
+            ModeledConnectionGroup object) throws GuacamoleException {
+
+        // Update connection group
+        super.updateObject(user, object);
+        modelCacheService.invalidateConnectionGroup(object.getIdentifier());
+
+    }
+
+    @Override
+    public void deleteObject(AuthenticatedUser user, String identifier)
+            throws GuacamoleException {
+
+        // Delete connection group, implicitly deleting all of its contents
+        super.deleteObject(user, identifier);
+        modelCacheService.invalidateAll();
+
+    }
+
     /**
      * Returns the set of all identifiers for all connection groups within the
      * connection group having the given identifier. Only connection groups
@@ -208,13 +263,16 @@ public class ConnectionGroupService extends ModeledGroupedDirectoryObjectService
             String identifier)
             throws GuacamoleException {
 
+        Set<String> identifiers = modelCacheService.selectConnectionGroupIdentifiersWithin(identifier);
+
         // Bypass permission checks if the user is a system admin
         if (user.getUser().isAdministrator())
-            return connectionGroupMapper.selectIdentifiersWithin(identifier);
+            return identifiers;
 
         // Otherwise only return explicitly readable identifiers
         else
-            return connectionGroupMapper.selectReadableIdentifiersWithin(user.getUser().getModel(), identifier);
+            return new HashSet<String>(getPermissionSet(user).getAccessibleObjects(
+                    Collections.singleton(ObjectPermission.Type.READ), identifiers));
 
     }
 
@@ -51,6 +51,12 @@ public class ConnectionGroupPermissionService extends ModeledObjectPermissionSer
         return connectionGroupPermissionMapper;
     }
 
+    @Override
+    protected PermissionSnapshot.ObjectPermissions getSnapshotPermissions(
+            PermissionSnapshot snapshot) {
+        return snapshot.getConnectionGroupPermissions();
+    }
+
     @Override
     public ObjectPermissionSet getPermissionSet(AuthenticatedUser user,
             ModeledUser targetUser) throws GuacamoleException {
@@ -51,6 +51,12 @@ public class ConnectionPermissionService extends ModeledObjectPermissionService
         return connectionPermissionMapper;
     }
 
+    @Override
+    protected PermissionSnapshot.ObjectPermissions getSnapshotPermissions(
+            PermissionSnapshot snapshot) {
+        return snapshot.getConnectionPermissions();
+    }
+
     @Override
     public ObjectPermissionSet getPermissionSet(AuthenticatedUser user,
             ModeledUser targetUser) throws GuacamoleException {
@@ -19,9 +19,11 @@
 
 package org.apache.guacamole.auth.jdbc.permission;
 
+import com.google.inject.Inject;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Set;
 import org.apache.guacamole.auth.jdbc.user.AuthenticatedUser;
 import org.apache.guacamole.auth.jdbc.user.ModeledUser;
 import org.apache.guacamole.GuacamoleException;
@@ -40,9 +42,29 @@ public abstract class ModeledObjectPermissionService
     extends ModeledPermissionService<ObjectPermissionSet, ObjectPermission, ObjectPermissionModel>
     implements ObjectPermissionService {
 
+    /**
+     * Service for retrieving snapshots of the current user's permissions.
+     */
+    @Inject
+    private PermissionSnapshotService permissionSnapshotService;
+
     @Override
     protected abstract ObjectPermissionMapper getPermissionMapper();
 
+    /**
+     * Returns the permissions within the given snapshot which are of the
+     * type handled by this service.
+     *
+     * @param snapshot
+     *     The snapshot containing the permissions to return.
+     *
+     * @return
+     *     The permissions within the given snapshot which are of the type
+     *     handled by this service.
+     */
+    protected abstract PermissionSnapshot.ObjectPermissions getSnapshotPermissions(
+            PermissionSnapshot snapshot);
+
     @Override
     protected ObjectPermission getPermissionInstance(ObjectPermissionModel model) {
         return new ObjectPermission(model.getType(), model.getObjectIdentifier());
@@ -131,6 +153,7 @@ public abstract class ModeledObjectPermissionService
         if (canAlterPermissions(user, targetUser, permissions)) {
             Collection<ObjectPermissionModel> models = getModelInstances(targetUser, permissions);
             getPermissionMapper().insert(models);
+            permissionSnapshotService.invalidate();
             return;
         }
         
@@ -148,6 +171,7 @@ public abstract class ModeledObjectPermissionService
         if (canAlterPermissions(user, targetUser, permissions)) {
             Collection<ObjectPermissionModel> models = getModelInstances(targetUser, permissions);
             getPermissionMapper().delete(models);
+            permissionSnapshotService.invalidate();
             return;
         }
         
@@ -156,11 +180,32 @@ public abstract class ModeledObjectPermissionService
 
     }
 
+    @Override
+    public Set<ObjectPermission> retrievePermissions(AuthenticatedUser user,
+            ModeledUser targetUser) throws GuacamoleException {
+
+        // Use snapshot for the current user's own permissions
+        PermissionSnapshot snapshot = permissionSnapshotService.getSnapshot(user, targetUser);
+        if (snapshot != null)
+            return getSnapshotPermissions(snapshot).getPermissions();
+
+        return super.retrievePermissions(user, targetUser);
+
+    }
+
     @Override
     public ObjectPermission retrievePermission(AuthenticatedUser user,
             ModeledUser targetUser, ObjectPermission.Type type,
             String identifier) throws GuacamoleException {
 
+        // Use snapshot for the current user's own permissions
+        PermissionSnapshot snapshot = permissionSnapshotService.getSnapshot(user, targetUser);
+        if (snapshot != null) {
+            if (getSnapshotPermissions(snapshot).hasPermission(type, identifier))
+                return new ObjectPermission(type, identifier);
+            return null;
+        }
+
         // Retrieve permissions only if allowed
         if (canReadPermissions(user, targetUser)) {
 
@@ -194,6 +239,11 @@ public abstract class ModeledObjectPermissionService
             if (user.getUser().isAdministrator())
                 return identifiers;
 
+            // Use snapshot for the current user's own permissions
+            PermissionSnapshot snapshot = permissionSnapshotService.getSnapshot(user, targetUser);
+            if (snapshot != null)
+                return getSnapshotPermissions(snapshot).getAccessibleObjects(permissions, identifiers);
+
             // Otherwise, return explicitly-retrievable identifiers
             return getPermissionMapper().selectAccessibleIdentifiers(targetUser.getModel(), permissions, identifiers);
             
@@ -0,0 +1,343 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.auth.jdbc.permission;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import org.apache.guacamole.net.auth.permission.ObjectPermission;
+import org.apache.guacamole.net.auth.permission.SystemPermission;
+
+/**
+ * An immutable copy of all system, connection, connection group, and user
+ * permissions granted to a particular user, as of a particular version of the
+ * permissions stored within the database. The object permissions of each
+ * object are stored as a bitmask of permission types, keyed by object
+ * identifier, such that any permission check can be answered with a single
+ * hash lookup.
+ */
+public class PermissionSnapshot {
+
+    /**
+     * An immutable copy of all permissions granted to a particular user for
+     * one type of object.
+     */
+    public static class ObjectPermissions {
+
+        /**
+         * Bitmask of the permissions granted for each object, where each bit
+         * corresponds to the ordinal of an ObjectPermission.Type, keyed by
+         * object identifier.
+         */
+        private final Map<String, Integer> permissions;
+
+        /**
+         * Creates a new ObjectPermissions containing the given permission
+         * bitmasks. The given map is used directly and must not be modified
+         * after this ObjectPermissions is created.
+         *
+         * @param permissions
+         *     Bitmask of the permissions granted for each object, keyed by
+         *     object identifier.
+         */
+        private ObjectPermissions(Map<String, Integer> permissions) {
+            this.permissions = permissions;
+        }
+
+        /**
+         * Returns the bit representing the given permission type within the
+         * permission bitmask of an object.
+         *
+         * @param type
+         *     The permission type to represent.
+         *
+         * @return
+         *     The bit representing the given permission type.
+         */
+        private static int getMask(ObjectPermission.Type type) {
+            return 1 << type.ordinal();
+        }
+
+        /**
+         * Returns the bitmask of all permissions granted for the object having
+         * the given identifier.
+         *
+         * @param identifier
+         *     The identifier of the object.
+         *
+         * @return
+         *     The bitmask of all permissions granted for the given object,
+         *     which will be zero if no permissions are granted.
+         */
+        private int getPermissions(String identifier) {
+            Integer mask = permissions.get(identifier);
+            return mask == null ? 0 : mask;
+        }
+
+        /**
+         * Returns whether the given permission is granted for the object
+         * having the given identifier.
+         *
+         * @param type
+         *     The permission to check.
+         *
+         * @param identifier
+         *     The identifier of the object.
+         *
+         * @return
+         *     true if the given permission is granted, false otherwise.
+         */
+        public boolean hasPermission(ObjectPermission.Type type,
+                String identifier) {
+            return (getPermissions(identifier) & getMask(type)) != 0;
+        }
+
+        /**
+         * Returns the subset of the given identifiers for which at least one
+         * of the given permissions is granted.
+         *
+         * @param types
+         *     The permissions to check.
+         *
+         * @param identifiers
+         *     The identifiers of the objects to check.
+         *
+         * @return
+         *     The distinct identifiers of all given objects for which at least
+         *     one of the given permissions is granted.
+         */
+        public Collection<String> getAccessibleObjects(
+                Collection<ObjectPermission.Type> types,
+                Collection<String> identifiers) {
+
+            // Combine requested permissions into a single mask
+            int mask = 0;
+            for (ObjectPermission.Type type : types)
+                mask |= getMask(type);
+
+            // Include only objects having any requested permission
+            Collection<String> accessible = new LinkedHashSet<String>();
+            for (String identifier : identifiers) {
+                if ((getPermissions(identifier) & mask) != 0)
+                    accessible.add(identifier);
+            }
+
+            return accessible;
+
+        }
+
+        /**
+         * Returns all permissions within this ObjectPermissions.
+         *
+         * @return
+         *     A new set of all permissions within this ObjectPermissions.
+         */
+        public Set<ObjectPermission> getPermissions() {
+
+            Set<ObjectPermission> all = new HashSet<ObjectPermission>();
+            for (Map.Entry<String, Integer> entry : permissions.entrySet()) {
+                for (ObjectPermission.Type type : ObjectPermission.Type.values()) {
+                    if ((entry.getValue() & getMask(type)) != 0)
+                        all.add(new ObjectPermission(type, entry.getKey()));
+                }
+            }
+
+            return all;
+
+        }
+
+    }
+
+    /**
+     * The version of the permissions stored within the database at the time
+     * this snapshot was taken.
+     */
+    private final long version;
+
+    /**
+     * The time at which the permissions within this snapshot were retrieved,
+     * in milliseconds since midnight of January 1, 1970 UTC.
+     */
+    private final long timestamp;
+
+    /**
+     * All system permissions granted.
+     */
+    private final Set<SystemPermission.Type> systemPermissions;
+
+    /**
+     * All connection permissions granted.
+     */
+    private final ObjectPermissions connectionPermissions;
+
+    /**
+     * All connection group permissions granted.
+     */
+    private final ObjectPermissions connectionGroupPermissions;
+
+    /**
+     * All user permissions granted.
+     */
+    private final ObjectPermissions userPermissions;
+
+    /**
+     * Adds the given permission to the given map of permission bitmasks.
+     *
+     * @param permissions
+     *     The map of permission bitmasks to update.
+     *
+     * @param model
+     *     The permission to add.
+     */
+    private static void addPermission(Map<String, Integer> permissions,
+            PermissionSnapshotModel model) {
+
+        String identifier = model.getObjectIdentifier();
+        ObjectPermission.Type type = ObjectPermission.Type.valueOf(model.getPermission());
+
+        Integer mask = permissions.get(identifier);
+        permissions.put(identifier, (mask == null ? 0 : mask) | ObjectPermissions.getMask(type));
+
+    }
+
+    /**
+     * Creates a new PermissionSnapshot containing the given permissions.
+     *
+     * @param version
+     *     The version of the permissions stored within the database at the
+     *     time the given permissions were retrieved.
+     *
+     * @param timestamp
+     *     The time at which the given permissions were retrieved, in
+     *     milliseconds since midnight of January 1, 1970 UTC.
+     *
+     * @param models
+     *     All permissions granted to the user, as retrieved from the
+     *     database.
+     */
+    public PermissionSnapshot(long version, long timestamp,
+            Collection<PermissionSnapshotModel> models) {
+
+        Set<SystemPermission.Type> system = EnumSet.noneOf(SystemPermission.Type.class);
+        Map<String, Integer> connections = new HashMap<String, Integer>();
+        Map<String, Integer> connectionGroups = new HashMap<String, Integer>();
+        Map<String, Integer> users = new HashMap<String, Integer>();
+
+        // Sort each permission by the type of object affected
+        for (PermissionSnapshotModel model : models) {
+
+            String objectType = model.getObjectType();
+
+            if ("SYSTEM".equals(objectType))
+                system.add(SystemPermission.Type.valueOf(model.getPermission()));
+
+            else if ("CONNECTION".equals(objectType))
+                addPermission(connections, model);
+
+            else if ("CONNECTION_GROUP".equals(objectType))
+                addPermission(connectionGroups, model);
+
+            else if ("USER".equals(objectType))
+                addPermission(users, model);
+
+        }
+
+        this.version = version;
+        this.timestamp = timestamp;
+        this.systemPermissions = Collections.unmodifiableSet(system);
+        this.connectionPermissions = new ObjectPermissions(connections);
+        this.connectionGroupPermissions = new ObjectPermissions(connectionGroups);
+        this.userPermissions = new ObjectPermissions(users);
+
+    }
+
+    /**
+     * Returns the version of the permissions stored within the database at
+     * the time this snapshot was taken. If permissions have since been
+     * modified, this snapshot is out of date.
+     *
+     * @return
+     *     The version of the permissions stored within the database at the
+     *     time this snapshot was taken.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the time at which the permissions within this snapshot were
+     * retrieved. Snapshots older than the configured maximum age are out of
+     * date regardless of version, as permissions may have been modified by
+     * another Guacamole server sharing the same database.
+     *
+     * @return
+     *     The time at which the permissions within this snapshot were
+     *     retrieved, in milliseconds since midnight of January 1, 1970 UTC.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Returns all system permissions granted.
+     *
+     * @return
+     *     An unmodifiable set of all system permissions granted.
+     */
+    public Set<SystemPermission.Type> getSystemPermissions() {
+        return systemPermissions;
+    }
+
+    /**
+     * Returns all connection permissions granted.
+     *
+     * @return
+     *     All connection permissions granted.
+     */
+    public ObjectPermissions getConnectionPermissions() {
+        return connectionPermissions;
+    }
+
+    /**
+     * Returns all connection group permissions granted.
+     *
+     * @return
+     *     All connection group permissions granted.
+     */
+    public ObjectPermissions getConnectionGroupPermissions() {
+        return connectionGroupPermissions;
+    }
+
+    /**
+     * Returns all user permissions granted.
+     *
+     * @return
+     *     All user permissions granted.
+     */
+    public ObjectPermissions getUserPermissions() {
+        return userPermissions;
+    }
+
+}
@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.auth.jdbc.permission;
+
+import java.util.Collection;
+import org.apache.guacamole.auth.jdbc.user.UserModel;
+import org.apache.ibatis.annotations.Param;
+
+/**
+ * Mapper which retrieves all permissions of a user at once, for the sake of
+ * building a PermissionSnapshot.
+ */
+public interface PermissionSnapshotMapper {
+
+    /**
+     * Retrieves all system, connection, connection group, and user
+     * permissions granted to the given user.
+     *
+     * @param user
+     *     The user whose permissions should be retrieved.
+     *
+     * @return
+     *     All permissions granted to the given user.
+     */
+    Collection<PermissionSnapshotModel> select(@Param("user") UserModel user);
+
+}
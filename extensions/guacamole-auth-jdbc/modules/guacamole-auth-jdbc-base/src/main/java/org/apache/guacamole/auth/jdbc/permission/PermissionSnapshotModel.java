@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.auth.jdbc.permission;
+
+/**
+ * A single permission of any type, as read from the database when building a
+ * PermissionSnapshot. System permissions, connection permissions, connection
+ * group permissions, and user permissions are all represented by the same
+ * model such that all permissions of a user can be retrieved with one query.
+ */
+public class PermissionSnapshotModel {
+
+    /**
+     * The type of object affected by this permission: "SYSTEM",
+     * "CONNECTION", "CONNECTION_GROUP", or "USER".
+     */
+    private String objectType;
+
+    /**
+     * The unique identifier of the object affected by this permission, or
+     * null if this is a system permission.
+     */
+    private String objectIdentifier;
+
+    /**
+     * The name of the permission granted, as stored in the database.
+     */
+    private String permission;
+
+    /**
+     * Creates a new, empty permission snapshot model.
+     */
+    public PermissionSnapshotModel() {
+    }
+
+    /**
+     * Returns the type of object affected by this permission: "SYSTEM",
+     * "CONNECTION", "CONNECTION_GROUP", or "USER".
+     *
+     * @return
+     *     The type of object affected by this permission.
+     */
+    public String getObjectType() {
+        return objectType;
+    }
+
+    /**
+     * Sets the type of object affected by this permission.
+     *
+     * @param objectType
+     *     The type of object affected by this permission: "SYSTEM",
+     *     "CONNECTION", "CONNECTION_GROUP", or "USER".
+     */
+    public void setObjectType(String objectType) {
+        this.objectType = objectType;
+    }
+
+    /**
+     * Returns the unique identifier of the object affected by this
+     * permission.
+     *
+     * @return
+     *     The unique identifier of the object affected by this permission,
+     *     or null if this is a system permission.
+     */
+    public String getObjectIdentifier() {
+        return objectIdentifier;
+    }
+
+    /**
+     * Sets the unique identifier of the object affected by this permission.
+     *
+     * @param objectIdentifier
+     *     The unique identifier of the object affected by this permission,
+     *     or null if this is a system permission.
+     */
+    public void setObjectIdentifier(String objectIdentifier) {
+        this.objectIdentifier = objectIdentifier;
+    }
+
+    /**
+     * Returns the name of the permission granted, as stored in the
+     * database.
+     *
+     * @return
+     *     The name of the permission granted.
+     */
+    public String getPermission() {
+        return permission;
+    }
+
+    /**
+     * Sets the name of the permission granted, as stored in the database.
+     *
+     * @param permission
+     *     The name of the permission granted.
+     */
+    public void setPermission(String permission) {
+        this.permission = permission;
+    }
+
+}
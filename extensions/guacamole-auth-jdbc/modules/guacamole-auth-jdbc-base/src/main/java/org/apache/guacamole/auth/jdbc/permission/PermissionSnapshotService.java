@@ -0,0 +1,223 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.auth.jdbc.permission;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.auth.jdbc.JDBCEnvironment;
+import org.apache.guacamole.auth.jdbc.cache.CacheInvalidationBus;
+import org.apache.guacamole.auth.jdbc.cache.CacheInvalidationListener;
+import org.apache.guacamole.auth.jdbc.cache.TransactionCompletionService;
+import org.apache.guacamole.auth.jdbc.user.AuthenticatedUser;
+import org.apache.guacamole.auth.jdbc.user.ModeledUser;
+
+/**
+ * Service which maintains a PermissionSnapshot for each authenticated user,
+ * such that checks against a user's own permissions need not query the
+ * database. All snapshots share a single version counter, which must be
+ * incremented through a call to invalidate() whenever permissions are added
+ * or removed. Any snapshot taken prior to the most recent invalidation is
+ * reloaded upon next use. Invalidations are relayed to and from other
+ * Guacamole servers through the bound CacheInvalidationBus.
+ *
+ * As the version counter is local to this server, and the bound
+ * CacheInvalidationBus may not relay invalidations between servers at all,
+ * each snapshot is additionally reloaded once older than the configured
+ * time-to-live. This bounds the time that permissions revoked through another
+ * Guacamole server sharing the same database may continue to be honored.
+ */
+@Singleton
+public class PermissionSnapshotService implements CacheInvalidationListener {
+
+    /**
+     * The name of the cache invalidation which affects permission snapshots.
+     */
+    private static final String PERMISSION_CACHE = "permission";
+
+    /**
+     * Bus for relaying invalidations to and from other Guacamole servers.
+     */
+    @Inject
+    private CacheInvalidationBus invalidationBus;
+
+    /**
+     * The environment of the Guacamole server.
+     */
+    @Inject
+    private JDBCEnvironment environment;
+
+    /**
+     * Mapper for retrieving all permissions of a user at once.
+     */
+    @Inject
+    private PermissionSnapshotMapper permissionSnapshotMapper;
+
+    /**
+     * The current version of the permissions stored within the database.
+     * This value is incremented each time permissions are modified.
+     */
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * The maximum age of any snapshot, in milliseconds. Until start() is
+     * invoked, snapshots are never reused.
+     */
+    private volatile long timeToLive = 0;
+
+    /**
+     * Service for deferring invalidations until the current transaction has
+     * completed.
+     */
+    @Inject
+    private TransactionCompletionService transactionCompletionService;
+
+    /**
+     * Task which marks all existing permission snapshots as out of date, both
+     * locally and on other Guacamole servers, once the transaction modifying
+     * permissions has completed.
+     */
+    private final Runnable invalidateTask = new Runnable() {
+
+        @Override
+        public void run() {
+            version.incrementAndGet();
+            invalidationBus.publish(PermissionSnapshotService.this, PERMISSION_CACHE, null);
+        }
+
+    };
+
+    /**
+     * Marks all existing permission snapshots as out of date. This function
+     * must be invoked after any permission is added or removed, including
+     * permissions which are implicitly added or removed due to the creation
+     * or deletion of objects. If invoked within a transaction, snapshots are
+     * invalidated immediately and again once that transaction completes, as
+     * snapshots taken in the meantime may not reflect the changes made
+     * within that transaction.
+     */
+    public void invalidate() {
+        version.incrementAndGet();
+        transactionCompletionService.afterCompletion(invalidateTask);
+    }
+
+    @Override
+    public void invalidate(String cacheName, String identifier) {
+        if (PERMISSION_CACHE.equals(cacheName))
+            version.incrementAndGet();
+    }
+
+    /**
+     * Reads the configured snapshot time-to-live and begins receiving
+     * invalidations from other Guacamole servers.
+     *
+     * @throws GuacamoleException
+     *     If the configured snapshot time-to-live cannot be read.
+     */
+    public void start() throws GuacamoleException {
+        timeToLive = environment.getPermissionSnapshotTTL() * 1000L;
+        invalidationBus.subscribe(this);
+    }
+
+    /**
+     * Stops receiving invalidations from other Guacamole servers.
+     */
+    public void shutdown() {
+        invalidationBus.unsubscribe(this);
+    }
+
+    /**
+     * Retrieves all permissions of the given user from the database, storing
+     * a new snapshot of those permissions within the given user.
+     *
+     * @param user
+     *     The user whose permissions should be retrieved.
+     *
+     * @return
+     *     A new snapshot of the permissions of the given user.
+     */
+    public PermissionSnapshot refreshSnapshot(AuthenticatedUser user) {
+
+        // Read version and time prior to querying, such that any concurrent
+        // change results in a snapshot which is already out of date
+        long currentVersion = version.get();
+        long timestamp = System.currentTimeMillis();
+
+        PermissionSnapshot snapshot = new PermissionSnapshot(currentVersion,
+                timestamp, permissionSnapshotMapper.select(user.getUser().getModel()));
+
+        user.setPermissionSnapshot(snapshot);
+        return snapshot;
+
+    }
+
+    /**
+     * Returns an up-to-date snapshot of the permissions of the given user,
+     * reloading those permissions from the database only if they have been
+     * modified since the user's current snapshot was taken, or if that
+     * snapshot is older than the configured time-to-live.
+     *
+     * @param user
+     *     The user whose permissions should be returned.
+     *
+     * @return
+     *     An up-to-date snapshot of the permissions of the given user.
+     */
+    public PermissionSnapshot getSnapshot(AuthenticatedUser user) {
+
+        // Use existing snapshot if still current and not too old
+        PermissionSnapshot snapshot = user.getPermissionSnapshot();
+        if (snapshot != null && snapshot.getVersion() == version.get()
+                && System.currentTimeMillis() - snapshot.getTimestamp() < timeToLive)
+            return snapshot;
+
+        return refreshSnapshot(user);
+
+    }
+
+    /**
+     * Returns an up-to-date snapshot of the permissions of the given target
+     * user, if that user is the given authenticated user. Snapshots are only
+     * maintained for authenticated users, thus the permissions of any other
+     * user must still be retrieved from the database.
+     *
+     * @param user
+     *     The user checking permissions.
+     *
+     * @param targetUser
+     *     The user whose permissions are being checked.
+     *
+     * @return
+     *     An up-to-date snapshot of the permissions of the given target user,
+     *     or null if the target user is not the given authenticated user.
+     */
+    public PermissionSnapshot getSnapshot(AuthenticatedUser user,
+            ModeledUser targetUser) {
+
+        // Snapshots are only available for the authenticated user
+        if (!user.getUser().getIdentifier().equals(targetUser.getIdentifier()))
+            return null;
+
+        return getSnapshot(user);
+
+    }
+
+}
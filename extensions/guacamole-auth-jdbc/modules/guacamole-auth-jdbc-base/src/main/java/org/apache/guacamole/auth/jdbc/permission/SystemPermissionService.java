@@ -22,6 +22,8 @@ package org.apache.guacamole.auth.jdbc.permission;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
 import org.apache.guacamole.auth.jdbc.user.AuthenticatedUser;
 import org.apache.guacamole.auth.jdbc.user.ModeledUser;
 import org.apache.guacamole.GuacamoleException;
@@ -51,6 +53,12 @@ public class SystemPermissionService
     @Inject
     private Provider<SystemPermissionSet> systemPermissionSetProvider;
 
+    /**
+     * Service for retrieving snapshots of the current user's permissions.
+     */
+    @Inject
+    private PermissionSnapshotService permissionSnapshotService;
+
     @Override
     protected SystemPermissionMapper getPermissionMapper() {
         return systemPermissionMapper;
@@ -96,6 +104,7 @@ public class SystemPermissionService
         if (user.getUser().isAdministrator()) {
             Collection<SystemPermissionModel> models = getModelInstances(targetUser, permissions);
             systemPermissionMapper.insert(models);
+            permissionSnapshotService.invalidate();
             return;
         }
 
@@ -117,6 +126,7 @@ public class SystemPermissionService
             
             Collection<SystemPermissionModel> models = getModelInstances(targetUser, permissions);
             systemPermissionMapper.delete(models);
+            permissionSnapshotService.invalidate();
             return;
         }
 
@@ -125,6 +135,23 @@ public class SystemPermissionService
         
     }
 
+    @Override
+    public Set<SystemPermission> retrievePermissions(AuthenticatedUser user,
+            ModeledUser targetUser) throws GuacamoleException {
+
+        // Use snapshot for the current user's own permissions
+        PermissionSnapshot snapshot = permissionSnapshotService.getSnapshot(user, targetUser);
+        if (snapshot != null) {
+            Set<SystemPermission> permissions = new HashSet<SystemPermission>();
+            for (SystemPermission.Type type : snapshot.getSystemPermissions())
+                permissions.add(new SystemPermission(type));
+            return permissions;
+        }
+
+        return super.retrievePermissions(user, targetUser);
+
+    }
+
     /**
      * Retrieves the permission of the given type associated with the given
      * user, if it exists. If no such permission exists, null is returned.
@@ -148,6 +175,14 @@ public class SystemPermissionService
     public SystemPermission retrievePermission(AuthenticatedUser user,
             ModeledUser targetUser, SystemPermission.Type type) throws GuacamoleException {
 
+        // Use snapshot for the current user's own permissions
+        PermissionSnapshot snapshot = permissionSnapshotService.getSnapshot(user, targetUser);
+        if (snapshot != null) {
+            if (snapshot.getSystemPermissions().contains(type))
+                return new SystemPermission(type);
+            return null;
+        }
+
         // Retrieve permissions only if allowed
         if (canReadPermissions(user, targetUser)) {
 
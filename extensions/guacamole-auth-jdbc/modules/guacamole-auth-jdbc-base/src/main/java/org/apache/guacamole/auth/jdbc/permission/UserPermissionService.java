@@ -51,6 +51,12 @@ public class UserPermissionService extends ModeledObjectPermissionService {
         return userPermissionMapper;
     }
 
+    @Override
+    protected PermissionSnapshot.ObjectPermissions getSnapshotPermissions(
+            PermissionSnapshot snapshot) {
+        return snapshot.getUserPermissions();
+    }
+
     @Override
     public ObjectPermissionSet getPermissionSet(AuthenticatedUser user,
             ModeledUser targetUser) throws GuacamoleException {
@@ -34,22 +34,20 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import org.apache.guacamole.auth.jdbc.user.AuthenticatedUser;
 import org.apache.guacamole.auth.jdbc.connection.ModeledConnection;
 import org.apache.guacamole.auth.jdbc.connectiongroup.ModeledConnectionGroup;
-import org.apache.guacamole.auth.jdbc.connection.ConnectionRecordMapper;
-import org.apache.guacamole.auth.jdbc.connection.ParameterMapper;
+import org.apache.guacamole.auth.jdbc.connection.ConnectionRecordWriter;
 import org.apache.guacamole.auth.jdbc.connection.ConnectionModel;
 import org.apache.guacamole.auth.jdbc.connection.ConnectionRecordModel;
-import org.apache.guacamole.auth.jdbc.connection.ParameterModel;
 import org.apache.guacamole.auth.jdbc.user.UserModel;
 import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.GuacamoleSecurityException;
 import org.apache.guacamole.auth.jdbc.JDBCEnvironment;
+import org.apache.guacamole.auth.jdbc.cache.ModelCacheService;
 import org.apache.guacamole.auth.jdbc.connection.ConnectionMapper;
-import org.apache.guacamole.environment.Environment;
+import org.apache.guacamole.environment.GuacamoleProxyRouters;
 import org.apache.guacamole.net.GuacamoleSocket;
 import org.apache.guacamole.net.GuacamoleTunnel;
 import org.apache.guacamole.net.auth.Connection;
 import org.apache.guacamole.net.auth.ConnectionGroup;
-import org.apache.guacamole.protocol.ConfiguredGuacamoleSocket;
 import org.apache.guacamole.protocol.GuacamoleClientInformation;
 import org.apache.guacamole.protocol.GuacamoleConfiguration;
 import org.apache.guacamole.token.StandardTokens;
@@ -85,28 +83,16 @@ public abstract class AbstractGuacamoleTunnelService implements GuacamoleTunnelS
     private Provider<ModeledConnection> connectionProvider;
 
     /**
-     * Mapper for accessing connection parameters.
+     * Service for retrieving cached connections and connection parameters.
      */
     @Inject
-    private ParameterMapper parameterMapper;
+    private ModelCacheService modelCacheService;
 
     /**
-     * Mapper for accessing connection history.
+     * Writer for recording connection history.
      */
     @Inject
-    private ConnectionRecordMapper connectionRecordMapper;
-
-    /**
-     * The hostname to use when connecting to guacd if no hostname is provided
-     * within guacamole.properties.
-     */
-    private static final String DEFAULT_GUACD_HOSTNAME = "localhost";
-
-    /**
-     * The port to use when connecting to guacd if no port is provided within
-     * guacamole.properties.
-     */
-    private static final int DEFAULT_GUACD_PORT = 4822;
+    private ConnectionRecordWriter connectionRecordWriter;
 
     /**
      * All active connections through the tunnel having a given UUID.
@@ -217,9 +203,9 @@ public abstract class AbstractGuacamoleTunnelService implements GuacamoleTunnelS
         config.setProtocol(model.getProtocol());
 
         // Set parameters from associated data
-        Collection<ParameterModel> parameters = parameterMapper.select(connection.getIdentifier());
-        for (ParameterModel parameter : parameters)
-            config.setParameter(parameter.getName(), parameter.getValue());
+        Map<String, String> parameters = modelCacheService.selectParameters(connection.getIdentifier());
+        for (Map.Entry<String, String> parameter : parameters.entrySet())
+            config.setParameter(parameter.getKey(), parameter.getValue());
 
         // Build token filter containing credential tokens
         TokenFilter tokenFilter = new TokenFilter();
@@ -256,38 +242,7 @@ public abstract class AbstractGuacamoleTunnelService implements GuacamoleTunnelS
         recordModel.setEndDate(new Date());
 
         // Insert connection record
-        connectionRecordMapper.insert(recordModel);
-
-    }
-
-    /**
-     * Returns an unconfigured GuacamoleSocket that is already connected to
-     * guacd as specified in guacamole.properties, using SSL if necessary.
-     *
-     * @return
-     *     An unconfigured GuacamoleSocket, already connected to guacd.
-     *
-     * @throws GuacamoleException 
-     *     If an error occurs while connecting to guacd, or while parsing
-     *     guacd-related properties.
-     */
-    private GuacamoleSocket getUnconfiguredGuacamoleSocket(Runnable socketClosedCallback)
-        throws GuacamoleException {
-
-        // Use SSL if requested
-        if (environment.getProperty(Environment.GUACD_SSL, false))
-            return new ManagedSSLGuacamoleSocket(
-                environment.getProperty(Environment.GUACD_HOSTNAME, DEFAULT_GUACD_HOSTNAME),
-                environment.getProperty(Environment.GUACD_PORT,     DEFAULT_GUACD_PORT),
-                socketClosedCallback
-            );
-
-        // Otherwise, just use straight TCP
-        return new ManagedInetGuacamoleSocket(
-            environment.getProperty(Environment.GUACD_HOSTNAME, DEFAULT_GUACD_HOSTNAME),
-            environment.getProperty(Environment.GUACD_PORT,     DEFAULT_GUACD_PORT),
-            socketClosedCallback
-        );
+        connectionRecordWriter.write(recordModel);
 
     }
 
@@ -392,11 +347,14 @@ public abstract class AbstractGuacamoleTunnelService implements GuacamoleTunnelS
 
         try {
 
-            // Obtain socket which will automatically run the cleanup task
-            GuacamoleSocket socket = new ConfiguredGuacamoleSocket(
-                getUnconfiguredGuacamoleSocket(cleanupTask),
-                getGuacamoleConfiguration(activeConnection.getUser(), connection),
-                info
+            // Obtain socket to least-loaded guacd which will automatically
+            // run the cleanup task
+            GuacamoleSocket socket = new ManagedGuacamoleSocket(
+                GuacamoleProxyRouters.getRouter(environment).getSocket(
+                    getGuacamoleConfiguration(activeConnection.getUser(), connection),
+                    info
+                ),
+                cleanupTask
             );
 
             // Assign and return new tunnel 
@@ -473,7 +431,7 @@ public abstract class AbstractGuacamoleTunnelService implements GuacamoleTunnelS
             return Collections.<ModeledConnection>emptyList();
 
         // If group has no children, there are no balanced connections
-        Collection<String> identifiers = connectionMapper.selectIdentifiersWithin(connectionGroup.getIdentifier());
+        Collection<String> identifiers = modelCacheService.selectConnectionIdentifiersWithin(connectionGroup.getIdentifier());
         if (identifiers.isEmpty())
             return Collections.<ModeledConnection>emptyList();
 
@@ -482,7 +440,7 @@ public abstract class AbstractGuacamoleTunnelService implements GuacamoleTunnelS
             identifiers = getPreferredConnections(user, identifiers);
 
         // Retrieve all children
-        Collection<ConnectionModel> models = connectionMapper.select(identifiers);
+        Collection<ConnectionModel> models = modelCacheService.selectConnections(identifiers);
         List<ModeledConnection> connections = new ArrayList<ModeledConnection>(models.size());
 
         // Convert each retrieved model to a modeled connection
@@ -20,15 +20,15 @@
 package org.apache.guacamole.auth.jdbc.tunnel;
 
 import org.apache.guacamole.GuacamoleException;
-import org.apache.guacamole.net.SSLGuacamoleSocket;
+import org.apache.guacamole.net.DelegatingGuacamoleSocket;
+import org.apache.guacamole.net.GuacamoleSocket;
 
 /**
- * Implementation of GuacamoleSocket which connects via SSL to a given hostname
- * and port. If the socket is closed for any reason, a given task is run.
- *
- * @author Michael Jumper
+ * Implementation of GuacamoleSocket which wraps an arbitrary, already
+ * connected GuacamoleSocket, such as a socket obtained from a pool. If the
+ * socket is closed for any reason, a given task is run.
  */
-public class ManagedSSLGuacamoleSocket extends SSLGuacamoleSocket {
+public class ManagedGuacamoleSocket extends DelegatingGuacamoleSocket {
 
     /**
      * The task to run when the socket is closed.
@@ -36,26 +36,18 @@ public class ManagedSSLGuacamoleSocket extends SSLGuacamoleSocket {
     private final Runnable socketClosedTask;
 
     /**
-     * Creates a new socket which connects via SSL to a given hostname and
-     * port. If the socket is closed for any reason, the given task is run.
-     * 
-     * @param hostname
-     *     The hostname of the Guacamole proxy server to connect to.
+     * Wraps the given socket, such that the given task is run if the socket
+     * is closed for any reason.
      *
-     * @param port
-     *     The port of the Guacamole proxy server to connect to.
+     * @param socket
+     *     The GuacamoleSocket to wrap.
      *
      * @param socketClosedTask
-     *     The task to run when the socket is closed. This task will NOT be
-     *     run if an exception occurs during connection, and this
-     *     ManagedInetGuacamoleSocket instance is ultimately not created.
-     *
-     * @throws GuacamoleException
-     *     If an error occurs while connecting to the Guacamole proxy server.
+     *     The task to run when the socket is closed.
      */
-    public ManagedSSLGuacamoleSocket(String hostname, int port,
-            Runnable socketClosedTask) throws GuacamoleException {
-        super(hostname, port);
+    public ManagedGuacamoleSocket(GuacamoleSocket socket,
+            Runnable socketClosedTask) {
+        super(socket);
         this.socketClosedTask = socketClosedTask;
     }
 
@@ -64,5 +56,5 @@ public class ManagedSSLGuacamoleSocket extends SSLGuacamoleSocket {
         super.close();
         socketClosedTask.run();
     }
-    
+
 }
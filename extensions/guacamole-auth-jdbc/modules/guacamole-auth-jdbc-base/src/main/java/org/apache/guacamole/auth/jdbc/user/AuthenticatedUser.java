@@ -25,6 +25,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.servlet.http.HttpServletRequest;
+import org.apache.guacamole.auth.jdbc.permission.PermissionSnapshot;
 import org.apache.guacamole.net.auth.AuthenticationProvider;
 import org.apache.guacamole.net.auth.Credentials;
 
@@ -87,6 +88,12 @@ public class AuthenticatedUser implements org.apache.guacamole.net.auth.Authenti
     private final Set<String> preferredConnections =
             Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
+    /**
+     * The most recent snapshot of this user's permissions, or null if no
+     * snapshot has yet been taken.
+     */
+    private volatile PermissionSnapshot permissionSnapshot;
+
     /**
      * Derives the remote host of the authenticating user from the given
      * credentials object. The remote host is derived from X-Forwarded-For
@@ -201,6 +208,30 @@ public class AuthenticatedUser implements org.apache.guacamole.net.auth.Authenti
         preferredConnections.add(identifier);
     }
 
+    /**
+     * Returns the most recent snapshot of this user's permissions. The
+     * snapshot returned may be out of date, and should generally be obtained
+     * through PermissionSnapshotService instead.
+     *
+     * @return
+     *     The most recent snapshot of this user's permissions, or null if no
+     *     snapshot has yet been taken.
+     */
+    public PermissionSnapshot getPermissionSnapshot() {
+        return permissionSnapshot;
+    }
+
+    /**
+     * Replaces the snapshot of this user's permissions with the given
+     * snapshot.
+     *
+     * @param permissionSnapshot
+     *     The new snapshot of this user's permissions.
+     */
+    public void setPermissionSnapshot(PermissionSnapshot permissionSnapshot) {
+        this.permissionSnapshot = permissionSnapshot;
+    }
+
     @Override
     public AuthenticationProvider getAuthenticationProvider() {
         return authenticationProvider;
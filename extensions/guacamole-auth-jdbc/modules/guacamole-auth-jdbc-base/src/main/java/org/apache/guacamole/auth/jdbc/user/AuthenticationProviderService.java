@@ -82,6 +82,34 @@ public class AuthenticationProviderService  {
 
     }
 
+    /**
+     * Recreates the AuthenticatedUser for a user whose session was previously
+     * authenticated by the given AuthenticationProvider, without verifying
+     * the user's password. The account restrictions applied when logging in
+     * are applied again.
+     *
+     * @param authenticationProvider
+     *     The AuthenticationProvider on behalf of which the user is being
+     *     recreated.
+     *
+     * @param credentials
+     *     The credentials identifying the user, which need not contain a
+     *     password.
+     *
+     * @return
+     *     A new AuthenticatedUser instance for the user identified by the
+     *     given credentials, or null if that user no longer exists or may no
+     *     longer log in.
+     *
+     * @throws GuacamoleException
+     *     If the account of the user is not valid as of today, or may not be
+     *     used at the current time.
+     */
+    public AuthenticatedUser restoreUser(AuthenticationProvider authenticationProvider,
+            Credentials credentials) throws GuacamoleException {
+        return userService.retrieveRestoredUser(authenticationProvider, credentials);
+    }
+
     /**
      * Returning a new UserContext instance for the given already-authenticated
      * user. A new placeholder account will be created for any user that does
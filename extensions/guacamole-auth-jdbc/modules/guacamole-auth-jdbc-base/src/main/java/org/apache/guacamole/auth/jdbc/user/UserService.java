@@ -32,6 +32,7 @@ import org.apache.guacamole.GuacamoleClientException;
 import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.GuacamoleUnsupportedException;
 import org.apache.guacamole.auth.jdbc.permission.ObjectPermissionMapper;
+import org.apache.guacamole.auth.jdbc.permission.PermissionSnapshotService;
 import org.apache.guacamole.auth.jdbc.permission.ObjectPermissionModel;
 import org.apache.guacamole.auth.jdbc.permission.UserPermissionMapper;
 import org.apache.guacamole.auth.jdbc.security.PasswordEncryptionService;
@@ -129,6 +130,12 @@ public class UserService extends ModeledDirectoryObjectService<ModeledUser, User
     @Inject
     private PasswordEncryptionService encryptionService;
 
+    /**
+     * Service for retrieving snapshots of user permissions.
+     */
+    @Inject
+    private PermissionSnapshotService permissionSnapshotService;
+
     @Override
     protected ModeledDirectoryObjectMapper<UserModel> getObjectMapper() {
         return userMapper;
@@ -257,6 +264,29 @@ public class UserService extends ModeledDirectoryObjectService<ModeledUser, User
 
     }
 
+    /**
+     * Verifies that the account of the given user is valid as of today and
+     * may be used at the current time, as required of any user logging in.
+     *
+     * @param user
+     *     The user whose account should be verified.
+     *
+     * @throws GuacamoleException
+     *     If the account of the given user is not valid as of today, or may
+     *     not be used at the current time.
+     */
+    private void verifyAccountAccess(ModeledUser user) throws GuacamoleException {
+
+        // Verify user account is still valid as of today
+        if (!user.isAccountValid())
+            throw new GuacamoleClientException("LOGIN.ERROR_NOT_VALID");
+
+        // Verify user account is allowed to be used at the current time
+        if (!user.isAccountAccessible())
+            throw new GuacamoleClientException("LOGIN.ERROR_NOT_ACCESSIBLE");
+
+    }
+
     /**
      * Retrieves the user corresponding to the given credentials from the
      * database. If the user account is expired, and the credentials contain
@@ -302,13 +332,8 @@ public class UserService extends ModeledDirectoryObjectService<ModeledUser, User
         ModeledUser user = getObjectInstance(null, userModel);
         user.setCurrentUser(new AuthenticatedUser(authenticationProvider, user, credentials));
 
-        // Verify user account is still valid as of today
-        if (!user.isAccountValid())
-            throw new GuacamoleClientException("LOGIN.ERROR_NOT_VALID");
-
-        // Verify user account is allowed to be used at the current time
-        if (!user.isAccountAccessible())
-            throw new GuacamoleClientException("LOGIN.ERROR_NOT_ACCESSIBLE");
+        // Verify user account may currently be used
+        verifyAccountAccess(user);
 
         // Update password if password is expired
         if (userModel.isExpired()) {
@@ -344,8 +369,66 @@ public class UserService extends ModeledDirectoryObjectService<ModeledUser, User
 
         }
 
+        // Load all permissions of the now-authenticated user at once
+        AuthenticatedUser authenticatedUser = user.getCurrentUser();
+        permissionSnapshotService.refreshSnapshot(authenticatedUser);
+
         // Return now-authenticated user
-        return user.getCurrentUser();
+        return authenticatedUser;
+
+    }
+
+    /**
+     * Retrieves the user corresponding to the given credentials from the
+     * database, without verifying any password, for a user whose session was
+     * previously authenticated by the given AuthenticationProvider. All other
+     * restrictions applied when logging in are applied, and the user is not
+     * recreated if the account is disabled or its password has expired.
+     *
+     * @param authenticationProvider
+     *     The AuthenticationProvider on behalf of which the user is being
+     *     retrieved.
+     *
+     * @param credentials
+     *     The credentials to use when locating the user, which need not
+     *     contain a password.
+     *
+     * @return
+     *     An AuthenticatedUser containing the existing ModeledUser object if
+     *     the user exists and may still log in, null otherwise.
+     *
+     * @throws GuacamoleException
+     *     If the account of the user is not valid as of today, or may not be
+     *     used at the current time.
+     */
+    public AuthenticatedUser retrieveRestoredUser(AuthenticationProvider authenticationProvider,
+            Credentials credentials) throws GuacamoleException {
+
+        // Retrieve corresponding user model, if such a user exists
+        UserModel userModel = userMapper.selectOne(credentials.getUsername());
+        if (userModel == null)
+            return null;
+
+        // If user is disabled, pretend user does not exist
+        if (userModel.isDisabled())
+            return null;
+
+        // Expired passwords can only be reset by logging in again
+        if (userModel.isExpired())
+            return null;
+
+        // Create corresponding user object, set up cyclic reference
+        ModeledUser user = getObjectInstance(null, userModel);
+        user.setCurrentUser(new AuthenticatedUser(authenticationProvider, user, credentials));
+
+        // Verify user account may currently be used
+        verifyAccountAccess(user);
+
+        // Load all permissions of the restored user at once
+        AuthenticatedUser authenticatedUser = user.getCurrentUser();
+        permissionSnapshotService.refreshSnapshot(authenticatedUser);
+
+        return authenticatedUser;
 
     }
 
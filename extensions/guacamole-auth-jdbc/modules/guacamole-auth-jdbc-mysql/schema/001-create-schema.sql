@@ -61,6 +61,10 @@ CREATE TABLE `guacamole_connection` (
   `max_connections`          int(11),
   `max_connections_per_user` int(11),
 
+  -- Outbound shaping limits
+  `max_bandwidth`            int(11),
+  `max_frame_rate`           int(11),
+
   PRIMARY KEY (`connection_id`),
   UNIQUE KEY `connection_name_parent` (`connection_name`, `parent_id`),
 
@@ -256,3 +260,35 @@ CREATE TABLE `guacamole_connection_history` (
 
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8;
 
+--
+-- Table of daily connection usage totals. Each row totals the sessions which
+-- a specific user began on a specific connection on a specific day, such that
+-- usage can be reported without examining individual history records.
+--
+
+CREATE TABLE `guacamole_connection_history_daily` (
+
+  `summary_id`      int(11)      NOT NULL AUTO_INCREMENT,
+  `history_date`    date         NOT NULL,
+  `user_id`         int(11)      DEFAULT NULL,
+  `username`        varchar(128) NOT NULL,
+  `connection_id`   int(11)      DEFAULT NULL,
+  `connection_name` varchar(128) NOT NULL,
+  `session_count`   int(11)      NOT NULL,
+  `total_duration`  bigint(20)   NOT NULL,
+
+  PRIMARY KEY (`summary_id`),
+  UNIQUE KEY `history_date_username_connection_id` (`history_date`, `username`, `connection_id`),
+  KEY `user_id` (`user_id`),
+  KEY `connection_id` (`connection_id`),
+
+  CONSTRAINT `guacamole_connection_history_daily_ibfk_1`
+    FOREIGN KEY (`user_id`)
+    REFERENCES `guacamole_user` (`user_id`) ON DELETE SET NULL,
+
+  CONSTRAINT `guacamole_connection_history_daily_ibfk_2`
+    FOREIGN KEY (`connection_id`)
+    REFERENCES `guacamole_connection` (`connection_id`) ON DELETE SET NULL
+
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
@@ -0,0 +1,53 @@
+--
+-- Licensed to the Apache Software Foundation (ASF) under one
+-- or more contributor license agreements.  See the NOTICE file
+-- distributed with this work for additional information
+-- regarding copyright ownership.  The ASF licenses this file
+-- to you under the Apache License, Version 2.0 (the
+-- "License"); you may not use this file except in compliance
+-- with the License.  You may obtain a copy of the License at
+--
+--   http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing,
+-- software distributed under the License is distributed on an
+-- "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+-- KIND, either express or implied.  See the License for the
+-- specific language governing permissions and limitations
+-- under the License.
+--
+
+
+--
+-- Partitions connection history by month, allowing expired history to be
+-- removed by dropping entire partitions rather than deleting individual
+-- records (see the "mysql-history-retention-days" property). This script is
+-- optional, and must be run only after the schema is otherwise up to date.
+--
+-- Initially, all history is stored within a single catch-all partition,
+-- "p_future". Monthly partitions are split from that partition automatically
+-- once Guacamole starts, beginning with the current month, which will
+-- contain all existing history. Each monthly partition is named "pYYYYMM".
+--
+-- MySQL does not support foreign keys on partitioned tables. The foreign keys
+-- of the history table are therefore removed, and the user and connection
+-- IDs of history records are no longer cleared when the associated user or
+-- connection is deleted.
+--
+
+ALTER TABLE guacamole_connection_history
+    DROP FOREIGN KEY guacamole_connection_history_ibfk_1,
+    DROP FOREIGN KEY guacamole_connection_history_ibfk_2;
+
+--
+-- The partitioning column must be part of the primary key
+--
+
+ALTER TABLE guacamole_connection_history
+    DROP PRIMARY KEY,
+    ADD PRIMARY KEY (history_id, start_date);
+
+ALTER TABLE guacamole_connection_history
+    PARTITION BY RANGE (TO_DAYS(start_date)) (
+        PARTITION p_future VALUES LESS THAN MAXVALUE
+    );
@@ -94,3 +94,69 @@ ALTER TABLE guacamole_connection_history
 ALTER TABLE guacamole_connection_group
     ADD COLUMN enable_session_affinity boolean NOT NULL DEFAULT 0;
 
+
+--
+-- Add outbound shaping limit columns
+--
+
+ALTER TABLE guacamole_connection
+    ADD COLUMN max_bandwidth INT(11);
+
+ALTER TABLE guacamole_connection
+    ADD COLUMN max_frame_rate INT(11);
+
+--
+-- Add table of daily connection usage totals. Each row totals the sessions which
+-- a specific user began on a specific connection on a specific day, such that
+-- usage can be reported without examining individual history records.
+--
+
+CREATE TABLE `guacamole_connection_history_daily` (
+
+  `summary_id`      int(11)      NOT NULL AUTO_INCREMENT,
+  `history_date`    date         NOT NULL,
+  `user_id`         int(11)      DEFAULT NULL,
+  `username`        varchar(128) NOT NULL,
+  `connection_id`   int(11)      DEFAULT NULL,
+  `connection_name` varchar(128) NOT NULL,
+  `session_count`   int(11)      NOT NULL,
+  `total_duration`  bigint(20)   NOT NULL,
+
+  PRIMARY KEY (`summary_id`),
+  UNIQUE KEY `history_date_username_connection_id` (`history_date`, `username`, `connection_id`),
+  KEY `user_id` (`user_id`),
+  KEY `connection_id` (`connection_id`),
+
+  CONSTRAINT `guacamole_connection_history_daily_ibfk_1`
+    FOREIGN KEY (`user_id`)
+    REFERENCES `guacamole_user` (`user_id`) ON DELETE SET NULL,
+
+  CONSTRAINT `guacamole_connection_history_daily_ibfk_2`
+    FOREIGN KEY (`connection_id`)
+    REFERENCES `guacamole_connection` (`connection_id`) ON DELETE SET NULL
+
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+--
+-- Populate daily connection usage totals from existing history
+--
+
+INSERT INTO guacamole_connection_history_daily (
+    history_date,
+    user_id,
+    username,
+    connection_id,
+    connection_name,
+    session_count,
+    total_duration
+)
+SELECT
+    DATE(start_date),
+    MAX(user_id),
+    username,
+    connection_id,
+    MAX(connection_name),
+    COUNT(*),
+    SUM(TIMESTAMPDIFF(SECOND, start_date, COALESCE(end_date, start_date)))
+FROM guacamole_connection_history
+GROUP BY DATE(start_date), username, connection_id;
@@ -22,10 +22,15 @@ package org.apache.guacamole.auth.mysql;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import org.apache.guacamole.GuacamoleException;
-import org.apache.guacamole.net.auth.AuthenticationProvider;
+import org.apache.guacamole.net.auth.RestorableAuthenticationProvider;
+import org.apache.guacamole.net.auth.StoppableAuthenticationProvider;
 import org.apache.guacamole.net.auth.Credentials;
 import org.apache.guacamole.net.auth.UserContext;
 import org.apache.guacamole.auth.jdbc.JDBCAuthenticationProviderModule;
+import org.apache.guacamole.auth.jdbc.cache.ModelCacheService;
+import org.apache.guacamole.auth.jdbc.connection.ConnectionRecordRetentionService;
+import org.apache.guacamole.auth.jdbc.connection.ConnectionRecordWriter;
+import org.apache.guacamole.auth.jdbc.permission.PermissionSnapshotService;
 import org.apache.guacamole.auth.jdbc.user.AuthenticationProviderService;
 import org.apache.guacamole.net.auth.AuthenticatedUser;
 
@@ -36,7 +41,8 @@ import org.apache.guacamole.net.auth.AuthenticatedUser;
  * @author James Muehlner
  * @author Michael Jumper
  */
-public class MySQLAuthenticationProvider implements AuthenticationProvider {
+public class MySQLAuthenticationProvider implements StoppableAuthenticationProvider,
+        RestorableAuthenticationProvider {
 
     /**
      * Injector which will manage the object graph of this authentication
@@ -69,6 +75,13 @@ public class MySQLAuthenticationProvider implements AuthenticationProvider {
 
         );
 
+        // Begin removing expired connection history
+        injector.getInstance(ConnectionRecordRetentionService.class).start();
+
+        // Begin caching, receiving invalidations from other servers
+        injector.getInstance(ModelCacheService.class).start();
+        injector.getInstance(PermissionSnapshotService.class).start();
+
     }
 
     @Override
@@ -86,6 +99,16 @@ public class MySQLAuthenticationProvider implements AuthenticationProvider {
 
     }
 
+    @Override
+    public AuthenticatedUser restoreAuthenticatedUser(String identifier,
+            Credentials credentials) throws GuacamoleException {
+
+        // Recreate AuthenticatedUser, if the account may still be used
+        AuthenticationProviderService authProviderService = injector.getInstance(AuthenticationProviderService.class);
+        return authProviderService.restoreUser(this, credentials);
+
+    }
+
     @Override
     public AuthenticatedUser updateAuthenticatedUser(AuthenticatedUser authenticatedUser,
             Credentials credentials) throws GuacamoleException {
@@ -114,4 +137,19 @@ public class MySQLAuthenticationProvider implements AuthenticationProvider {
 
     }
 
+    @Override
+    public void shutdown() {
+
+        // Stop removing expired connection history
+        injector.getInstance(ConnectionRecordRetentionService.class).shutdown();
+
+        // Stop receiving invalidations from other servers
+        injector.getInstance(ModelCacheService.class).shutdown();
+        injector.getInstance(PermissionSnapshotService.class).shutdown();
+
+        // Write any connection history not yet written
+        ConnectionRecordWriter recordWriter = injector.getInstance(ConnectionRecordWriter.class);
+        recordWriter.shutdown();
+
+    }
 }
@@ -178,4 +178,113 @@ public class MySQLGuacamoleProperties {
 
     };
 
+    /**
+     * The maximum number of connection history records to write to the
+     * database within a single statement.
+     */
+    public static final IntegerGuacamoleProperty
+            MYSQL_HISTORY_BATCH_SIZE =
+            new IntegerGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "mysql-history-batch-size"; }
+
+    };
+
+    /**
+     * The maximum amount of time, in milliseconds, that a connection history
+     * record may wait for further records before being written.
+     */
+    public static final IntegerGuacamoleProperty
+            MYSQL_HISTORY_FLUSH_INTERVAL =
+            new IntegerGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "mysql-history-flush-interval"; }
+
+    };
+
+    /**
+     * The maximum number of connection history records which may be awaiting
+     * writing at any one time. Records beyond this limit are written
+     * immediately by the thread which closed the connection. Records awaiting
+     * writing are held only in memory, thus up to this many records may be
+     * lost if the web application terminates abnormally.
+     */
+    public static final IntegerGuacamoleProperty
+            MYSQL_HISTORY_QUEUE_SIZE =
+            new IntegerGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "mysql-history-queue-size"; }
+
+    };
+
+    /**
+     * The number of days that connection history should be retained. If zero
+     * or omitted, connection history is retained indefinitely.
+     */
+    public static final IntegerGuacamoleProperty
+            MYSQL_HISTORY_RETENTION_DAYS =
+            new IntegerGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "mysql-history-retention-days"; }
+
+    };
+
+    /**
+     * The maximum number of connections, connection groups, or sets of
+     * connection parameters which may be cached in memory at any one time.
+     * If zero, no such data is cached.
+     */
+    public static final IntegerGuacamoleProperty
+            MYSQL_MODEL_CACHE_SIZE =
+            new IntegerGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "mysql-model-cache-size"; }
+
+    };
+
+    /**
+     * The maximum amount of time that cached connections, connection groups,
+     * and connection parameters may be used before they are read again from
+     * the database, in seconds.
+     */
+    public static final IntegerGuacamoleProperty
+            MYSQL_MODEL_CACHE_TTL =
+            new IntegerGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "mysql-model-cache-ttl"; }
+
+    };
+
+    /**
+     * The maximum amount of time that a snapshot of a user's own permissions
+     * may be used before it is read again from the database, in seconds.
+     */
+    public static final IntegerGuacamoleProperty
+            MYSQL_PERMISSION_SNAPSHOT_TTL =
+            new IntegerGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "mysql-permission-snapshot-ttl"; }
+
+    };
+
+    /**
+     * The CacheInvalidationBus which should relay cache invalidations to and
+     * from other Guacamole servers sharing the same database: "local", or the
+     * fully-qualified class name of a CacheInvalidationBus implementation.
+     */
+    public static final StringGuacamoleProperty
+            MYSQL_CACHE_INVALIDATION_BUS =
+            new StringGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "mysql-cache-invalidation-bus"; }
+
+    };
 }
@@ -96,6 +96,10 @@ CREATE TABLE guacamole_connection (
   max_connections          integer,
   max_connections_per_user integer,
 
+  -- Outbound shaping limits
+  max_bandwidth            integer,
+  max_frame_rate           integer,
+
   PRIMARY KEY (connection_id),
 
   CONSTRAINT connection_name_parent
@@ -297,5 +301,53 @@ CREATE TABLE guacamole_connection_history (
 
 CREATE INDEX ON guacamole_connection_history(user_id);
 CREATE INDEX ON guacamole_connection_history(connection_id);
-CREATE INDEX ON guacamole_connection_history(start_date);
+CREATE INDEX ON guacamole_connection_history(start_date, history_id);
 CREATE INDEX ON guacamole_connection_history(end_date);
+
+--
+-- Trigram indexes allowing connection history to be searched by any substring
+-- of the username or connection name
+--
+
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+CREATE INDEX ON guacamole_connection_history
+    USING gin (username gin_trgm_ops);
+
+CREATE INDEX ON guacamole_connection_history
+    USING gin (connection_name gin_trgm_ops);
+
+--
+-- Table of daily connection usage totals. Each row totals the sessions which
+-- a specific user began on a specific connection on a specific day, such that
+-- usage can be reported without examining individual history records.
+--
+
+CREATE TABLE guacamole_connection_history_daily (
+
+  summary_id      serial       NOT NULL,
+  history_date    date         NOT NULL,
+  user_id         integer      DEFAULT NULL,
+  username        varchar(128) NOT NULL,
+  connection_id   integer      DEFAULT NULL,
+  connection_name varchar(128) NOT NULL,
+  session_count   integer      NOT NULL,
+  total_duration  bigint       NOT NULL,
+
+  PRIMARY KEY (summary_id),
+
+  CONSTRAINT history_date_username_connection_id
+    UNIQUE (history_date, username, connection_id),
+
+  CONSTRAINT guacamole_connection_history_daily_ibfk_1
+    FOREIGN KEY (user_id)
+    REFERENCES guacamole_user (user_id) ON DELETE SET NULL,
+
+  CONSTRAINT guacamole_connection_history_daily_ibfk_2
+    FOREIGN KEY (connection_id)
+    REFERENCES guacamole_connection (connection_id) ON DELETE SET NULL
+
+);
+
+CREATE INDEX ON guacamole_connection_history_daily(user_id);
+CREATE INDEX ON guacamole_connection_history_daily(connection_id);
@@ -0,0 +1,100 @@
+--
+-- Licensed to the Apache Software Foundation (ASF) under one
+-- or more contributor license agreements.  See the NOTICE file
+-- distributed with this work for additional information
+-- regarding copyright ownership.  The ASF licenses this file
+-- to you under the Apache License, Version 2.0 (the
+-- "License"); you may not use this file except in compliance
+-- with the License.  You may obtain a copy of the License at
+--
+--   http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing,
+-- software distributed under the License is distributed on an
+-- "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+-- KIND, either express or implied.  See the License for the
+-- specific language governing permissions and limitations
+-- under the License.
+--
+
+
+--
+-- Partitions connection history by month, allowing expired history to be
+-- removed by dropping entire partitions rather than deleting individual
+-- records (see the "postgresql-history-retention-days" property). This script
+-- is optional, requires PostgreSQL 11 or later, and must be run only after the
+-- schema is otherwise up to date.
+--
+-- All existing history becomes the partition for the current month. Further
+-- monthly partitions are created automatically by Guacamole ahead of time.
+-- Each monthly partition is named "guacamole_connection_history_YYYYMM".
+-- Records outside any monthly partition are stored within the default
+-- partition, "guacamole_connection_history_default".
+--
+
+BEGIN;
+
+DO $$
+DECLARE
+    current_partition text := 'guacamole_connection_history_' || to_char(CURRENT_DATE, 'YYYYMM');
+    next_month date := date_trunc('month', CURRENT_DATE) + INTERVAL '1 month';
+BEGIN
+
+    -- Existing history becomes partition for current month
+    EXECUTE format('ALTER TABLE guacamole_connection_history RENAME TO %I',
+        current_partition);
+
+    -- Recreate history table as partitioned table, with the partitioning
+    -- column as part of the primary key
+    CREATE TABLE guacamole_connection_history (
+
+      history_id      integer      NOT NULL
+                      DEFAULT nextval('guacamole_connection_history_history_id_seq'),
+      user_id         integer      DEFAULT NULL,
+      username        varchar(128) NOT NULL,
+      connection_id   integer      DEFAULT NULL,
+      connection_name varchar(128) NOT NULL,
+      start_date      timestamptz  NOT NULL,
+      end_date        timestamptz  DEFAULT NULL,
+
+      PRIMARY KEY (history_id, start_date),
+
+      FOREIGN KEY (user_id)
+        REFERENCES guacamole_user (user_id) ON DELETE SET NULL,
+
+      FOREIGN KEY (connection_id)
+        REFERENCES guacamole_connection (connection_id) ON DELETE SET NULL
+
+    ) PARTITION BY RANGE (start_date);
+
+    -- History IDs must continue to be allocated after the existing history
+    -- is dropped
+    ALTER SEQUENCE guacamole_connection_history_history_id_seq
+        OWNED BY guacamole_connection_history.history_id;
+
+    EXECUTE format('ALTER TABLE guacamole_connection_history '
+        'ATTACH PARTITION %I FOR VALUES FROM (MINVALUE) TO (%L)',
+        current_partition, next_month);
+
+    CREATE TABLE guacamole_connection_history_default
+        PARTITION OF guacamole_connection_history DEFAULT;
+
+END $$;
+
+--
+-- Recreate indexes on partitioned table, reusing the existing indexes of the
+-- current month
+--
+
+CREATE INDEX ON guacamole_connection_history(user_id);
+CREATE INDEX ON guacamole_connection_history(connection_id);
+CREATE INDEX ON guacamole_connection_history(start_date, history_id);
+CREATE INDEX ON guacamole_connection_history(end_date);
+
+CREATE INDEX ON guacamole_connection_history
+    USING gin (username gin_trgm_ops);
+
+CREATE INDEX ON guacamole_connection_history
+    USING gin (connection_name gin_trgm_ops);
+
+COMMIT;
@@ -95,3 +95,94 @@ ALTER TABLE guacamole_connection_history
 ALTER TABLE guacamole_connection_group
     ADD COLUMN enable_session_affinity boolean NOT NULL DEFAULT FALSE;
 
+
+--
+-- Add outbound shaping limit columns
+--
+
+ALTER TABLE guacamole_connection
+    ADD COLUMN max_bandwidth integer;
+
+ALTER TABLE guacamole_connection
+    ADD COLUMN max_frame_rate integer;
+
+--
+-- Replace start date index with an index covering the full sort order of
+-- connection history, such that history can be paged by start date and ID
+--
+
+DROP INDEX IF EXISTS guacamole_connection_history_start_date_idx;
+
+CREATE INDEX ON guacamole_connection_history(start_date, history_id);
+
+--
+-- Add trigram indexes allowing connection history to be searched by any
+-- substring of the username or connection name
+--
+
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+CREATE INDEX ON guacamole_connection_history
+    USING gin (username gin_trgm_ops);
+
+CREATE INDEX ON guacamole_connection_history
+    USING gin (connection_name gin_trgm_ops);
+
+--
+-- Add table of daily connection usage totals. Each row totals the sessions which
+-- a specific user began on a specific connection on a specific day, such that
+-- usage can be reported without examining individual history records.
+--
+
+CREATE TABLE guacamole_connection_history_daily (
+
+  summary_id      serial       NOT NULL,
+  history_date    date         NOT NULL,
+  user_id         integer      DEFAULT NULL,
+  username        varchar(128) NOT NULL,
+  connection_id   integer      DEFAULT NULL,
+  connection_name varchar(128) NOT NULL,
+  session_count   integer      NOT NULL,
+  total_duration  bigint       NOT NULL,
+
+  PRIMARY KEY (summary_id),
+
+  CONSTRAINT history_date_username_connection_id
+    UNIQUE (history_date, username, connection_id),
+
+  CONSTRAINT guacamole_connection_history_daily_ibfk_1
+    FOREIGN KEY (user_id)
+    REFERENCES guacamole_user (user_id) ON DELETE SET NULL,
+
+  CONSTRAINT guacamole_connection_history_daily_ibfk_2
+    FOREIGN KEY (connection_id)
+    REFERENCES guacamole_connection (connection_id) ON DELETE SET NULL
+
+);
+
+CREATE INDEX ON guacamole_connection_history_daily(user_id);
+CREATE INDEX ON guacamole_connection_history_daily(connection_id);
+
+--
+-- Populate daily connection usage totals from existing history
+--
+
+INSERT INTO guacamole_connection_history_daily (
+    history_date,
+    user_id,
+    username,
+    connection_id,
+    connection_name,
+    session_count,
+    total_duration
+)
+SELECT
+    CAST(start_date AS date),
+    MAX(user_id),
+    username,
+    connection_id,
+    MAX(connection_name),
+    COUNT(*),
+    SUM(CAST(EXTRACT(EPOCH FROM COALESCE(end_date, start_date) - start_date) AS bigint))
+FROM guacamole_connection_history
+GROUP BY CAST(start_date AS date), username, connection_id;
@@ -22,11 +22,16 @@ package org.apache.guacamole.auth.postgresql;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import org.apache.guacamole.GuacamoleException;
-import org.apache.guacamole.net.auth.AuthenticationProvider;
+import org.apache.guacamole.net.auth.RestorableAuthenticationProvider;
+import org.apache.guacamole.net.auth.StoppableAuthenticationProvider;
 import org.apache.guacamole.net.auth.Credentials;
 import org.apache.guacamole.net.auth.UserContext;
 import org.apache.guacamole.auth.jdbc.JDBCAuthenticationProviderModule;
+import org.apache.guacamole.auth.jdbc.cache.ModelCacheService;
+import org.apache.guacamole.auth.jdbc.connection.ConnectionRecordRetentionService;
+import org.apache.guacamole.auth.jdbc.connection.ConnectionRecordWriter;
 import org.apache.guacamole.auth.jdbc.JDBCEnvironment;
+import org.apache.guacamole.auth.jdbc.permission.PermissionSnapshotService;
 import org.apache.guacamole.auth.jdbc.user.AuthenticationProviderService;
 import org.apache.guacamole.net.auth.AuthenticatedUser;
 import org.slf4j.Logger;
@@ -39,7 +44,8 @@ import org.slf4j.LoggerFactory;
  * @author James Muehlner
  * @author Michael Jumper
  */
-public class PostgreSQLAuthenticationProvider implements AuthenticationProvider {
+public class PostgreSQLAuthenticationProvider implements StoppableAuthenticationProvider,
+        RestorableAuthenticationProvider {
 
     /**
      * Logger for this class.
@@ -77,6 +83,13 @@ public class PostgreSQLAuthenticationProvider implements AuthenticationProvider
 
         );
 
+        // Begin removing expired connection history
+        injector.getInstance(ConnectionRecordRetentionService.class).start();
+
+        // Begin caching, receiving invalidations from other servers
+        injector.getInstance(ModelCacheService.class).start();
+        injector.getInstance(PermissionSnapshotService.class).start();
+
     }
 
     @Override
@@ -94,6 +107,16 @@ public class PostgreSQLAuthenticationProvider implements AuthenticationProvider
 
     }
 
+    @Override
+    public AuthenticatedUser restoreAuthenticatedUser(String identifier,
+            Credentials credentials) throws GuacamoleException {
+
+        // Recreate AuthenticatedUser, if the account may still be used
+        AuthenticationProviderService authProviderService = injector.getInstance(AuthenticationProviderService.class);
+        return authProviderService.restoreUser(this, credentials);
+
+    }
+
     @Override
     public AuthenticatedUser updateAuthenticatedUser(AuthenticatedUser authenticatedUser,
             Credentials credentials) throws GuacamoleException {
@@ -122,4 +145,19 @@ public class PostgreSQLAuthenticationProvider implements AuthenticationProvider
 
     }
 
+    @Override
+    public void shutdown() {
+
+        // Stop removing expired connection history
+        injector.getInstance(ConnectionRecordRetentionService.class).shutdown();
+
+        // Stop receiving invalidations from other servers
+        injector.getInstance(ModelCacheService.class).shutdown();
+        injector.getInstance(PermissionSnapshotService.class).shutdown();
+
+        // Write any connection history not yet written
+        ConnectionRecordWriter recordWriter = injector.getInstance(ConnectionRecordWriter.class);
+        recordWriter.shutdown();
+
+    }
 }
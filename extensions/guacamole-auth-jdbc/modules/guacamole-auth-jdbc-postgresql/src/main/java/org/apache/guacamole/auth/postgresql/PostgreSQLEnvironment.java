@@ -21,6 +21,7 @@ package org.apache.guacamole.auth.postgresql;
 
 import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.auth.jdbc.JDBCEnvironment;
+import org.apache.guacamole.auth.jdbc.cache.CacheInvalidationBuses;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -91,6 +92,48 @@ public class PostgreSQLEnvironment extends JDBCEnvironment {
      */
     private int DEFAULT_MAX_GROUP_CONNECTIONS = 0;
 
+    /**
+     * The default maximum number of connection history records to write to
+     * the database within a single statement.
+     */
+    private static final int DEFAULT_HISTORY_BATCH_SIZE = 100;
+
+    /**
+     * The default maximum amount of time, in milliseconds, that a connection
+     * history record may wait for further records before being written.
+     */
+    private static final int DEFAULT_HISTORY_FLUSH_INTERVAL = 1000;
+
+    /**
+     * The default maximum number of connection history records which may be
+     * awaiting writing at any one time.
+     */
+    private static final int DEFAULT_HISTORY_QUEUE_SIZE = 10000;
+
+    /**
+     * The default number of days that connection history should be retained,
+     * where zero means connection history is retained indefinitely.
+     */
+    private static final int DEFAULT_HISTORY_RETENTION_DAYS = 0;
+
+    /**
+     * The default maximum number of connections, connection groups, or sets
+     * of connection parameters which may be cached at any one time.
+     */
+    private static final int DEFAULT_MODEL_CACHE_SIZE = 1000;
+
+    /**
+     * The default maximum age of any cached connection, connection group, or
+     * set of connection parameters, in seconds.
+     */
+    private static final int DEFAULT_MODEL_CACHE_TTL = 60;
+
+    /**
+     * The default maximum age of any snapshot of a user's own permissions, in
+     * seconds.
+     */
+    private static final int DEFAULT_PERMISSION_SNAPSHOT_TTL = 10;
+
     /**
      * Constructs a new PostgreSQLEnvironment, providing access to PostgreSQL-specific
      * configuration options.
@@ -205,6 +248,70 @@ public class PostgreSQLEnvironment extends JDBCEnvironment {
         );
     }
 
+    @Override
+    public int getHistoryBatchSize() throws GuacamoleException {
+        return getProperty(
+            PostgreSQLGuacamoleProperties.POSTGRESQL_HISTORY_BATCH_SIZE,
+            DEFAULT_HISTORY_BATCH_SIZE
+        );
+    }
+
+    @Override
+    public int getHistoryFlushInterval() throws GuacamoleException {
+        return getProperty(
+            PostgreSQLGuacamoleProperties.POSTGRESQL_HISTORY_FLUSH_INTERVAL,
+            DEFAULT_HISTORY_FLUSH_INTERVAL
+        );
+    }
+
+    @Override
+    public int getHistoryQueueSize() throws GuacamoleException {
+        return getProperty(
+            PostgreSQLGuacamoleProperties.POSTGRESQL_HISTORY_QUEUE_SIZE,
+            DEFAULT_HISTORY_QUEUE_SIZE
+        );
+    }
+
+    @Override
+    public int getHistoryRetentionDays() throws GuacamoleException {
+        return getProperty(
+            PostgreSQLGuacamoleProperties.POSTGRESQL_HISTORY_RETENTION_DAYS,
+            DEFAULT_HISTORY_RETENTION_DAYS
+        );
+    }
+
+    @Override
+    public int getModelCacheSize() throws GuacamoleException {
+        return getProperty(
+            PostgreSQLGuacamoleProperties.POSTGRESQL_MODEL_CACHE_SIZE,
+            DEFAULT_MODEL_CACHE_SIZE
+        );
+    }
+
+    @Override
+    public int getModelCacheTTL() throws GuacamoleException {
+        return getProperty(
+            PostgreSQLGuacamoleProperties.POSTGRESQL_MODEL_CACHE_TTL,
+            DEFAULT_MODEL_CACHE_TTL
+        );
+    }
+
+    @Override
+    public int getPermissionSnapshotTTL() throws GuacamoleException {
+        return getProperty(
+            PostgreSQLGuacamoleProperties.POSTGRESQL_PERMISSION_SNAPSHOT_TTL,
+            DEFAULT_PERMISSION_SNAPSHOT_TTL
+        );
+    }
+
+    @Override
+    public String getCacheInvalidationBus() throws GuacamoleException {
+        return getProperty(
+            PostgreSQLGuacamoleProperties.POSTGRESQL_CACHE_INVALIDATION_BUS,
+            CacheInvalidationBuses.LOCAL_BUS
+        );
+    }
+
     /**
      * Returns the hostname of the PostgreSQL server hosting the Guacamole
      * authentication tables. If unspecified, this will be "localhost".
@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+import java.nio.charset.Charset;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import javax.xml.bind.DatatypeConverter;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark of Base64Codec, comparing the decoding and encoding of blob
+ * data directly between reusable buffers against the String-based
+ * DatatypeConverter previously used by the stream-intercepting filters. Each
+ * benchmark operation decodes or encodes exactly one blob. The "bytes" counter
+ * gives the rate of decoded data processed, from which throughput in MB/s can
+ * be read directly, and allocation per blob is reported by the "gc" profiler
+ * as "gc.alloc.rate.norm" (allocation per MB is that figure multiplied by the
+ * number of blobs per MB). The benchmark can be run following
+ * "mvn -Pbenchmark package" with:
+ *
+ *     java -jar guacamole-common-benchmark/target/benchmarks.jar \
+ *         Base64CodecBenchmark -prof gc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class Base64CodecBenchmark {
+
+    /**
+     * The number of bytes of decoded data within each blob. By default, this
+     * is the size of the blobs sent by guacd for file downloads.
+     */
+    @Param({"6048"})
+    public int blobSize;
+
+    /**
+     * The decoded contents of the blob.
+     */
+    private byte[] data;
+
+    /**
+     * The base64 form of the blob, as characters.
+     */
+    private char[] encodedChars;
+
+    /**
+     * The base64 form of the blob, as UTF-8.
+     */
+    private byte[] encodedBytes;
+
+    /**
+     * The base64 form of the blob, as a String.
+     */
+    private String encodedString;
+
+    /**
+     * Reusable buffer receiving decoded data.
+     */
+    private byte[] decodeBuffer;
+
+    /**
+     * Reusable buffer receiving encoded data.
+     */
+    private char[] encodeBuffer;
+
+    /**
+     * Counters reported alongside the primary benchmark result.
+     */
+    @State(Scope.Thread)
+    @AuxCounters
+    public static class Counters {
+
+        /**
+         * The number of decoded bytes processed during the current
+         * iteration.
+         */
+        public long bytes;
+
+        /**
+         * Resets all counters at the beginning of each iteration.
+         */
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+
+    }
+
+    /**
+     * Generates the blob processed by each benchmark.
+     */
+    @Setup(Level.Trial)
+    public void generateBlob() {
+
+        data = new byte[blobSize];
+        new Random(0).nextBytes(data);
+
+        encodedString = DatatypeConverter.printBase64Binary(data);
+        encodedChars = encodedString.toCharArray();
+        encodedBytes = encodedString.getBytes(Charset.forName("UTF-8"));
+
+        decodeBuffer = new byte[Base64Codec.getDecodedLength(encodedChars.length)];
+        encodeBuffer = new char[Base64Codec.getEncodedLength(blobSize)];
+
+    }
+
+    /**
+     * Decodes a blob using DatatypeConverter, including the conversion of the
+     * raw instruction data to a String which that requires.
+     *
+     * @param counters
+     *     The counters to update with the amount of data processed.
+     *
+     * @return
+     *     The decoded data.
+     */
+    @Benchmark
+    public byte[] decodeDatatypeConverter(Counters counters) {
+        byte[] decoded = DatatypeConverter.parseBase64Binary(new String(encodedChars));
+        counters.bytes += decoded.length;
+        return decoded;
+    }
+
+    /**
+     * Decodes a blob from characters into a reusable buffer using
+     * Base64Codec.
+     *
+     * @param counters
+     *     The counters to update with the amount of data processed.
+     *
+     * @return
+     *     The buffer containing the decoded data.
+     */
+    @Benchmark
+    public byte[] decodeChars(Counters counters) {
+        counters.bytes += Base64Codec.decode(encodedChars, 0,
+                encodedChars.length, decodeBuffer, 0);
+        return decodeBuffer;
+    }
+
+    /**
+     * Decodes a blob from UTF-8 into a reusable buffer using Base64Codec.
+     *
+     * @param counters
+     *     The counters to update with the amount of data processed.
+     *
+     * @return
+     *     The buffer containing the decoded data.
+     */
+    @Benchmark
+    public byte[] decodeUTF8(Counters counters) {
+        counters.bytes += Base64Codec.decode(encodedBytes, 0,
+                encodedBytes.length, decodeBuffer, 0);
+        return decodeBuffer;
+    }
+
+    /**
+     * Encodes a blob using DatatypeConverter.
+     *
+     * @param counters
+     *     The counters to update with the amount of data processed.
+     *
+     * @return
+     *     The encoded data.
+     */
+    @Benchmark
+    public String encodeDatatypeConverter(Counters counters) {
+        counters.bytes += data.length;
+        return DatatypeConverter.printBase64Binary(data);
+    }
+
+    /**
+     * Encodes a blob into a reusable buffer using Base64Codec.
+     *
+     * @param counters
+     *     The counters to update with the amount of data processed.
+     *
+     * @return
+     *     The buffer containing the encoded data.
+     */
+    @Benchmark
+    public char[] encodeChars(Counters counters) {
+        Base64Codec.encode(data, 0, data.length, encodeBuffer, 0);
+        counters.bytes += data.length;
+        return encodeBuffer;
+    }
+
+}
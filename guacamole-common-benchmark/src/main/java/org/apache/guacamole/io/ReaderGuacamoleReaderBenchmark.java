@@ -0,0 +1,336 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+import java.io.CharArrayReader;
+import java.io.CharArrayWriter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.protocol.GuacamoleInstruction;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * JMH benchmark of the ReaderGuacamoleReader implementation of GuacamoleReader,
+ * comparing the copying read() and readInstruction() calls against the
+ * zero-copy readSlice(). Each benchmark operation reads exactly one
+ * instruction, thus the reported throughput is in instructions per second,
+ * and the "characters" counter gives the corresponding rate of characters
+ * read (equivalent to bytes for the ASCII-only data typical of guacd output).
+ * Allocation per instruction is reported by the "gc" profiler as
+ * "gc.alloc.rate.norm".
+ *
+ * By default, synthetic traffic resembling the output of guacd during a
+ * graphical session is used. Recorded guacd traffic (the raw instruction
+ * stream, as captured from the guacd socket) can be used instead by setting
+ * the "recording" parameter to the path of the recording. The benchmark can
+ * be run following "mvn -Pbenchmark package" with:
+ *
+ *     java -jar guacamole-common-benchmark/target/benchmarks.jar \
+ *         ReaderGuacamoleReaderBenchmark -prof gc \
+ *         [-p recording=/path/to/recording]
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReaderGuacamoleReaderBenchmark {
+
+    /**
+     * The number of frames of synthetic traffic to generate if no recording
+     * is provided.
+     */
+    private static final int SYNTHETIC_FRAMES = 2000;
+
+    /**
+     * The path to a file containing recorded guacd traffic, or the empty
+     * string if synthetic traffic should be generated.
+     */
+    @Param({""})
+    public String recording;
+
+    /**
+     * The full Guacamole instruction stream read by each benchmark.
+     */
+    private char[] traffic;
+
+    /**
+     * The reader currently being benchmarked. This reader is recreated each
+     * time the end of the traffic is reached.
+     */
+    private ReaderGuacamoleReader reader;
+
+    /**
+     * Counters reported alongside the primary benchmark result.
+     */
+    @State(Scope.Thread)
+    @AuxCounters
+    public static class Counters {
+
+        /**
+         * The number of characters read during the current iteration.
+         */
+        public long characters;
+
+        /**
+         * Resets all counters at the beginning of each iteration.
+         */
+        @Setup(Level.Iteration)
+        public void reset() {
+            characters = 0;
+        }
+
+    }
+
+    /**
+     * Appends a random base64 string of the given length to the given
+     * builder.
+     *
+     * @param builder
+     *     The builder to append to.
+     *
+     * @param random
+     *     The source of randomness to use.
+     *
+     * @param length
+     *     The number of base64 characters to append.
+     */
+    private static void appendBase64(StringBuilder builder, Random random,
+            int length) {
+
+        final String alphabet =
+                "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+        for (int i = 0; i < length; i++)
+            builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+
+    }
+
+    /**
+     * Generates synthetic traffic resembling that sent by guacd during a
+     * graphical session: streamed image updates split into blobs, cursor
+     * updates, and frame boundaries.
+     *
+     * @return
+     *     The synthetic instruction stream.
+     */
+    private static char[] generateTraffic() {
+
+        Random random = new Random(0);
+        StringBuilder data = new StringBuilder();
+        StringBuilder output = new StringBuilder();
+
+        for (int frame = 0; frame < SYNTHETIC_FRAMES; frame++) {
+
+            // Several image updates per frame
+            int updates = 1 + random.nextInt(4);
+            for (int update = 0; update < updates; update++) {
+
+                String stream = Integer.toString(update);
+
+                output.append(new GuacamoleInstruction("img", stream, "14",
+                        "0", "image/png",
+                        Integer.toString(random.nextInt(1024)),
+                        Integer.toString(random.nextInt(768))));
+
+                // Each image is split into blobs of at most 6048 bytes
+                int blobs = 1 + random.nextInt(3);
+                for (int blob = 0; blob < blobs; blob++) {
+                    data.setLength(0);
+                    appendBase64(data, random, 64 + random.nextInt(8000));
+                    output.append(new GuacamoleInstruction("blob", stream,
+                            data.toString()));
+                }
+
+                output.append(new GuacamoleInstruction("end", stream));
+
+            }
+
+            // Occasional mouse cursor movement
+            if (random.nextInt(4) == 0)
+                output.append(new GuacamoleInstruction("mouse",
+                        Integer.toString(random.nextInt(1024)),
+                        Integer.toString(random.nextInt(768))));
+
+            // End of frame
+            output.append(new GuacamoleInstruction("sync",
+                    Long.toString(1000000L + frame * 16L)));
+
+        }
+
+        return output.toString().toCharArray();
+
+    }
+
+    /**
+     * Reads the entire contents of the recording at the given path.
+     *
+     * @param path
+     *     The path to the recorded guacd traffic.
+     *
+     * @return
+     *     The recorded instruction stream.
+     *
+     * @throws IOException
+     *     If the recording cannot be read.
+     */
+    private static char[] readRecording(String path) throws IOException {
+
+        Reader input = new InputStreamReader(new FileInputStream(path), "UTF-8");
+        try {
+
+            CharArrayWriter output = new CharArrayWriter();
+            char[] buffer = new char[8192];
+
+            int length;
+            while ((length = input.read(buffer)) != -1)
+                output.write(buffer, 0, length);
+
+            return output.toCharArray();
+
+        }
+        finally {
+            input.close();
+        }
+
+    }
+
+    /**
+     * Loads or generates the traffic to be read by each benchmark.
+     *
+     * @throws IOException
+     *     If the recording cannot be read.
+     */
+    @Setup(Level.Trial)
+    public void loadTraffic() throws IOException {
+
+        if (recording.isEmpty())
+            traffic = generateTraffic();
+        else
+            traffic = readRecording(recording);
+
+        reader = new ReaderGuacamoleReader(new CharArrayReader(traffic));
+
+    }
+
+    /**
+     * Restarts reading from the beginning of the traffic.
+     */
+    private void rewind() {
+        reader = new ReaderGuacamoleReader(new CharArrayReader(traffic));
+    }
+
+    /**
+     * Reads a single instruction using read(), which copies the instruction
+     * data into a newly-allocated array.
+     *
+     * @param counters
+     *     The counters to update with the amount of data read.
+     *
+     * @return
+     *     The instruction read.
+     *
+     * @throws GuacamoleException
+     *     If the traffic cannot be read.
+     */
+    @Benchmark
+    public char[] read(Counters counters) throws GuacamoleException {
+
+        char[] instruction = reader.read();
+        if (instruction == null) {
+            rewind();
+            instruction = reader.read();
+        }
+
+        counters.characters += instruction.length;
+        return instruction;
+
+    }
+
+    /**
+     * Reads a single instruction using readSlice(), which references the
+     * instruction data within the internal buffer of the reader.
+     *
+     * @param counters
+     *     The counters to update with the amount of data read.
+     *
+     * @param blackhole
+     *     The Blackhole which should consume the instruction data.
+     *
+     * @throws GuacamoleException
+     *     If the traffic cannot be read.
+     */
+    @Benchmark
+    public void readSlice(Counters counters, Blackhole blackhole)
+            throws GuacamoleException {
+
+        GuacamoleInstructionSlice slice = reader.readSlice();
+        if (slice == null) {
+            rewind();
+            slice = reader.readSlice();
+        }
+
+        counters.characters += slice.getLength();
+        blackhole.consume(slice.getBuffer()[slice.getOffset()]);
+
+    }
+
+    /**
+     * Reads and fully parses a single instruction using readInstruction().
+     *
+     * @return
+     *     The instruction read.
+     *
+     * @throws GuacamoleException
+     *     If the traffic cannot be read.
+     */
+    @Benchmark
+    public GuacamoleInstruction readInstruction() throws GuacamoleException {
+
+        GuacamoleInstruction instruction = reader.readInstruction();
+        if (instruction == null) {
+            rewind();
+            instruction = reader.readInstruction();
+        }
+
+        return instruction;
+
+    }
+
+}
@@ -53,6 +53,12 @@ Guacamole.ArrayBufferReader = function(stream) {
 
     };
 
+    // Receive binary blobs without conversion
+    stream.onbinaryblob = function(data) {
+        if (guac_reader.ondata)
+            guac_reader.ondata(data);
+    };
+
     // Simply call onend when end received
     stream.onend = function() {
         if (guac_reader.onend)
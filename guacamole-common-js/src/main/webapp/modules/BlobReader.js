@@ -66,6 +66,27 @@ Guacamole.BlobReader = function(stream, mimetype) {
 
         })();
 
+    /**
+     * Appends the given data to the blob being built, acknowledging its
+     * receipt.
+     *
+     * @private
+     * @param {ArrayBuffer} arrayBuffer The received data.
+     */
+    function appendData(arrayBuffer) {
+
+        blob_builder.append(arrayBuffer);
+        length += arrayBuffer.byteLength;
+
+        // Call handler, if present
+        if (guac_reader.onprogress)
+            guac_reader.onprogress(arrayBuffer.byteLength);
+
+        // Send success response
+        stream.sendAck("OK", 0x0000);
+
+    }
+
     // Append received blobs
     stream.onblob = function(data) {
 
@@ -77,18 +98,13 @@ Guacamole.BlobReader = function(stream, mimetype) {
         for (var i=0; i<binary.length; i++)
             bufferView[i] = binary.charCodeAt(i);
 
-        blob_builder.append(arrayBuffer);
-        length += arrayBuffer.byteLength;
-
-        // Call handler, if present
-        if (guac_reader.onprogress)
-            guac_reader.onprogress(arrayBuffer.byteLength);
-
-        // Send success response
-        stream.sendAck("OK", 0x0000);
+        appendData(arrayBuffer);
 
     };
 
+    // Append received binary blobs without conversion
+    stream.onbinaryblob = appendData;
+
     // Simply call onend when end received
     stream.onend = function() {
         if (guac_reader.onend)
@@ -600,6 +600,28 @@ Guacamole.Client = function(tunnel) {
 
     };
 
+    /**
+     * Encodes the contents of the given ArrayBuffer as base64.
+     *
+     * @private
+     * @param {ArrayBuffer} buffer
+     *     The data to encode.
+     *
+     * @returns {String}
+     *     The base64-encoded data.
+     */
+    function toBase64(buffer) {
+
+        var bytes = new Uint8Array(buffer);
+        var binary = "";
+
+        for (var i=0; i<bytes.length; i++)
+            binary += String.fromCharCode(bytes[i]);
+
+        return window.btoa(binary);
+
+    }
+
     function getParser(index) {
 
         var parser = parsers[index];
@@ -710,8 +732,21 @@ Guacamole.Client = function(tunnel) {
             var data = parameters[1];
             var stream = streams[stream_index];
 
-            // Write data
-            if (stream && stream.onblob)
+            // Ignore blobs for unknown streams
+            if (!stream)
+                return;
+
+            // Write binary data directly if supported by the stream,
+            // converting to base64 otherwise
+            if (data instanceof ArrayBuffer) {
+                if (stream.onbinaryblob)
+                    stream.onbinaryblob(data);
+                else if (stream.onblob)
+                    stream.onblob(toBase64(data));
+            }
+
+            // Write base64 data
+            else if (stream.onblob)
                 stream.onblob(data);
 
         },
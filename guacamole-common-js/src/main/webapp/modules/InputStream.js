@@ -49,6 +49,16 @@ Guacamole.InputStream = function(client, index) {
      */
     this.onblob = null;
 
+    /**
+     * Called when a blob of data is received in binary form, as is possible
+     * if the tunnel in use supports binary messages. If not defined, binary
+     * data is converted to base64 and passed to onblob instead.
+     * 
+     * @event
+     * @param {ArrayBuffer} data The received data.
+     */
+    this.onbinaryblob = null;
+
     /**
      * Called when this stream is closed.
      * 
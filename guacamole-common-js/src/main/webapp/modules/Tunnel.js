@@ -97,6 +97,9 @@ Guacamole.Tunnel = function() {
 
     /**
      * Fired once for every complete Guacamole instruction received, in order.
+     * If the tunnel receives blob data in binary form, the data parameter of
+     * the corresponding "blob" instruction will be an ArrayBuffer containing
+     * the raw data, rather than a base64-encoded string.
      * 
      * @event
      * @param {String} opcode The Guacamole instruction opcode.
@@ -591,7 +594,10 @@ Guacamole.HTTPTunnel = function(tunnelURL, crossDomain) {
 Guacamole.HTTPTunnel.prototype = new Guacamole.Tunnel();
 
 /**
- * Guacamole Tunnel implemented over WebSocket via XMLHttpRequest.
+ * Guacamole Tunnel implemented over WebSocket via XMLHttpRequest. If the
+ * server supports the "guacamole-binary" subprotocol, the data of each blob is
+ * received as a binary message rather than as base64 within a "blob"
+ * instruction, and is passed to the oninstruction handler as an ArrayBuffer.
  * 
  * @constructor
  * @augments Guacamole.Tunnel
@@ -747,8 +753,9 @@ Guacamole.WebSocketTunnel = function(tunnelURL) {
 
         reset_timeout();
 
-        // Connect socket
-        socket = new WebSocket(tunnelURL + "?" + data, "guacamole");
+        // Connect socket, preferring binary blob data if supported
+        socket = new WebSocket(tunnelURL + "?" + data, ["guacamole-binary", "guacamole"]);
+        socket.binaryType = "arraybuffer";
 
         socket.onopen = function(event) {
             reset_timeout();
@@ -766,6 +773,19 @@ Guacamole.WebSocketTunnel = function(tunnelURL) {
 
             reset_timeout();
 
+            // Binary messages contain the data of a single blob, preceded by
+            // the index of the stream as a 32-bit big-endian integer
+            if (event.data instanceof ArrayBuffer) {
+
+                var index = new DataView(event.data).getUint32(0);
+
+                if (tunnel.oninstruction)
+                    tunnel.oninstruction("blob", [String(index), event.data.slice(4)]);
+
+                return;
+
+            }
+
             var message = event.data;
             var startIndex = 0;
             var elementEnd;
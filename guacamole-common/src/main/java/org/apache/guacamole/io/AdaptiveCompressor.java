@@ -0,0 +1,483 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compresses the outbound instruction data of a single tunnel using gzip,
+ * periodically measuring how much data compression actually saves. Once a
+ * full sample of data fails to compress by the minimum percentage required by
+ * the GuacamoleCompressionSettings, compression is considered a waste of CPU
+ * for that tunnel and is disabled, as is typical of tunnels whose traffic
+ * consists mostly of already-compressed images. As the nature of that traffic
+ * may change, compression is tried again for a single sample once
+ * PROBE_INTERVAL samples worth of data have been sent uncompressed. All data
+ * written is recorded within the traffic counters of the tunnel.
+ */
+public class AdaptiveCompressor {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveCompressor.class);
+
+    /**
+     * The size of the buffer used by the gzip compressor, in bytes.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * The number of samples worth of data which must be sent uncompressed
+     * after compression is abandoned before compression is tried again.
+     */
+    public static final int PROBE_INTERVAL = 16;
+
+    /**
+     * The settings determining whether compression is enabled and when it
+     * should be abandoned.
+     */
+    private final GuacamoleCompressionSettings settings;
+
+    /**
+     * The counters recording all traffic of the tunnel.
+     */
+    private final TunnelTrafficCounters counters;
+
+    /**
+     * Whether data should currently be compressed.
+     */
+    private volatile boolean active;
+
+    /**
+     * The number of bytes of instruction data compressed within the current
+     * sample.
+     */
+    private long sampleLength;
+
+    /**
+     * The number of bytes written as a result of compressing the current
+     * sample.
+     */
+    private long sampleSentLength;
+
+    /**
+     * The number of bytes of instruction data sent uncompressed since
+     * compression was last abandoned.
+     */
+    private long uncompressedLength;
+
+    /**
+     * Counts the bytes written to an underlying OutputStream.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        /**
+         * The number of bytes written thus far.
+         */
+        private long count;
+
+        /**
+         * Creates a new CountingOutputStream which writes to the given
+         * OutputStream.
+         *
+         * @param out
+         *     The OutputStream to write to.
+         */
+        public CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+    }
+
+    /**
+     * GZIPOutputStream whose flush() writes all data written thus far in a
+     * form which can be decompressed immediately. The "syncFlush" mode of
+     * GZIPOutputStream requires Java 7, thus the deflater is instead forced
+     * to flush by changing its compression level. A level change takes
+     * effect only once further input is given, and that input is processed
+     * using the previous level, thus the final byte of each write is held
+     * back such that it can be written alone after the level is lowered, and
+     * the level is restored using only the first byte of the next write.
+     */
+    private static class FlushableGZIPOutputStream extends GZIPOutputStream {
+
+        /**
+         * Buffer containing the final byte written, if held back.
+         */
+        private final byte[] lastByte = new byte[1];
+
+        /**
+         * Whether the final byte written is being held back.
+         */
+        private boolean hasLastByte = false;
+
+        /**
+         * Whether compression was disabled to force a flush, and must be
+         * restored before further data is compressed.
+         */
+        private boolean reenableCompression = false;
+
+        /**
+         * Creates a new FlushableGZIPOutputStream which writes compressed
+         * data to the given OutputStream.
+         *
+         * @param out
+         *     The OutputStream to write to.
+         *
+         * @param size
+         *     The size of the output buffer, in bytes.
+         *
+         * @throws IOException
+         *     If an error occurs while writing the gzip header.
+         */
+        public FlushableGZIPOutputStream(OutputStream out, int size)
+                throws IOException {
+            super(out, size);
+        }
+
+        /**
+         * Writes the final byte written, if held back.
+         *
+         * @throws IOException
+         *     If an error occurs while writing.
+         */
+        private void writeLastByte() throws IOException {
+            if (hasLastByte) {
+                hasLastByte = false;
+                super.write(lastByte, 0, 1);
+            }
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len)
+                throws IOException {
+
+            if (len <= 0)
+                return;
+
+            writeLastByte();
+
+            // Restore compression using a single byte, as that byte is
+            // processed at the level used to force the previous flush
+            if (reenableCompression && len > 1 && !def.finished()) {
+                def.setLevel(Deflater.DEFAULT_COMPRESSION);
+                reenableCompression = false;
+                super.write(b, off++, 1);
+                len--;
+            }
+
+            if (len > 1)
+                super.write(b, off, len - 1);
+
+            lastByte[0] = b[off + len - 1];
+            hasLastByte = true;
+
+        }
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        protected void deflate() throws IOException {
+
+            // Unlike the default implementation, continue until the
+            // deflater has no further output, such that no data remains
+            // within the deflater once flushed
+            int len;
+            while ((len = def.deflate(buf, 0, buf.length)) > 0)
+                out.write(buf, 0, len);
+
+        }
+
+        @Override
+        public synchronized void flush() throws IOException {
+
+            // Force the deflater to flush by writing the final byte without
+            // compression (there is nothing to flush if no byte is held back)
+            if (hasLastByte && !def.finished()) {
+                def.setLevel(Deflater.NO_COMPRESSION);
+                writeLastByte();
+                reenableCompression = true;
+            }
+
+            out.flush();
+
+        }
+
+        @Override
+        public synchronized void finish() throws IOException {
+            writeLastByte();
+            super.finish();
+        }
+
+    }
+
+    /**
+     * Records the amount of instruction data written and the amount of data
+     * actually sent as a result each time the stream is flushed or closed.
+     */
+    private class MeasuredOutputStream extends FilterOutputStream {
+
+        /**
+         * The stream counting the bytes actually sent.
+         */
+        private final CountingOutputStream sent;
+
+        /**
+         * Whether data written to this stream is compressed.
+         */
+        private final boolean compressed;
+
+        /**
+         * The number of bytes of instruction data written thus far.
+         */
+        private long length;
+
+        /**
+         * The number of bytes of instruction data written as of the last
+         * time the counters were updated.
+         */
+        private long recordedLength;
+
+        /**
+         * The number of bytes actually sent as of the last time the counters
+         * were updated.
+         */
+        private long recordedSentLength;
+
+        /**
+         * Creates a new MeasuredOutputStream which writes to the given
+         * OutputStream, which ultimately writes to the given
+         * CountingOutputStream.
+         *
+         * @param out
+         *     The OutputStream to write to, which may compress the data
+         *     written.
+         *
+         * @param sent
+         *     The stream counting the bytes actually sent.
+         *
+         * @param compressed
+         *     Whether the given OutputStream compresses the data written.
+         */
+        public MeasuredOutputStream(OutputStream out,
+                CountingOutputStream sent, boolean compressed) {
+            super(out);
+            this.sent = sent;
+            this.compressed = compressed;
+        }
+
+        /**
+         * Records all data written and sent since the last update within the
+         * counters of the tunnel.
+         */
+        private void update() {
+            record(length - recordedLength, sent.count - recordedSentLength,
+                    compressed);
+            recordedLength = length;
+            recordedSentLength = sent.count;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            length++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            length += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+            update();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                out.close();
+            }
+            finally {
+                update();
+            }
+        }
+
+    }
+
+    /**
+     * Creates a new AdaptiveCompressor for a single tunnel, compressing data
+     * according to the given settings. The traffic counters of the tunnel
+     * also update the totals of those settings.
+     *
+     * @param settings
+     *     The settings determining whether compression is enabled and when it
+     *     should be abandoned.
+     */
+    public AdaptiveCompressor(GuacamoleCompressionSettings settings) {
+        this.settings = settings;
+        this.counters = new TunnelTrafficCounters(settings.getTotals());
+        this.active = settings.isEnabled();
+    }
+
+    /**
+     * Returns whether data should currently be compressed. This will be false
+     * if compression is disabled by the settings of this compressor, or if
+     * compression was abandoned because the data of the tunnel did not
+     * compress sufficiently well.
+     *
+     * @return
+     *     true if data should be compressed, false otherwise.
+     */
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Returns the counters recording all traffic of the tunnel.
+     *
+     * @return
+     *     The counters recording all traffic of the tunnel.
+     */
+    public TunnelTrafficCounters getCounters() {
+        return counters;
+    }
+
+    /**
+     * Records the given amounts of data within the traffic counters, updating
+     * the current sample and abandoning compression if the sample is
+     * complete and did not compress sufficiently well.
+     *
+     * @param length
+     *     The number of bytes of instruction data written.
+     *
+     * @param sentLength
+     *     The number of bytes actually sent as a result.
+     *
+     * @param compressed
+     *     Whether the data was compressed.
+     */
+    private synchronized void record(long length, long sentLength,
+            boolean compressed) {
+
+        counters.addBytesOut(length, sentLength);
+
+        // Try compression again once enough data has been sent without it
+        if (!compressed) {
+
+            if (!active && settings.isEnabled()) {
+                uncompressedLength += length;
+                if (uncompressedLength >= (long) settings.getSampleSize() * PROBE_INTERVAL) {
+                    logger.debug("Compression will be tried again after {} "
+                            + "bytes were sent uncompressed.", uncompressedLength);
+                    uncompressedLength = 0;
+                    active = true;
+                }
+            }
+
+            return;
+
+        }
+
+        // Only compressed data contributes to samples
+        if (!active)
+            return;
+
+        sampleLength += length;
+        sampleSentLength += sentLength;
+
+        // Wait until sample is complete
+        if (sampleLength < settings.getSampleSize())
+            return;
+
+        // Abandon compression if not sufficiently effective
+        int savings = (int) (100 - sampleSentLength * 100 / sampleLength);
+        if (savings < settings.getMinSavings()) {
+            logger.debug("Compression saved only {}% of {} bytes. Compression "
+                    + "will not be used until {} samples have been sent "
+                    + "uncompressed.", savings, sampleLength, PROBE_INTERVAL);
+            active = false;
+        }
+
+        sampleLength = 0;
+        sampleSentLength = 0;
+
+    }
+
+    /**
+     * Returns an OutputStream which writes to the given OutputStream,
+     * recording all data written within the traffic counters of the tunnel
+     * each time the returned stream is flushed or closed. If requested, data
+     * is compressed in gzip format, and each flush of the returned stream
+     * flushes all data written thus far in a form which the client can
+     * decompress immediately. Closing the returned stream closes the given
+     * stream.
+     *
+     * @param out
+     *     The OutputStream to write to.
+     *
+     * @param compress
+     *     Whether the data written should be compressed. This should only be
+     *     true if isActive() returns true and the client supports gzip.
+     *
+     * @return
+     *     An OutputStream which writes to the given OutputStream.
+     *
+     * @throws IOException
+     *     If an error occurs while writing the gzip header.
+     */
+    public OutputStream getOutputStream(OutputStream out, boolean compress)
+            throws IOException {
+
+        CountingOutputStream sent = new CountingOutputStream(out);
+
+        if (compress)
+            return new MeasuredOutputStream(
+                    new FlushableGZIPOutputStream(sent, BUFFER_SIZE), sent, true);
+
+        return new MeasuredOutputStream(sent, sent, false);
+
+    }
+
+}
@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.guacamole.GuacamoleException;
+
+/**
+ * A GuacamoleReader which can wait a bounded amount of time for data to
+ * become available, such that a consumer which must not block indefinitely,
+ * like a GuacamoleBatchReader waiting to fill a batch, need not poll
+ * available(). Readers which merely wrap another reader may implement this
+ * interface by delegation, returning the result of available() without
+ * waiting if the wrapped reader does not implement it.
+ */
+public interface AwaitableGuacamoleReader extends GuacamoleReader {
+
+    /**
+     * Waits up to the given amount of time for available() to return true,
+     * returning immediately if data is already available or if reading can
+     * no longer block, such as once the end of the stream has been reached.
+     * If the current thread is interrupted while waiting, the interrupted
+     * status of the thread is preserved and false is returned.
+     *
+     * @param timeout
+     *     The maximum amount of time to wait.
+     *
+     * @param unit
+     *     The unit of the timeout.
+     *
+     * @return
+     *     true if available() would now return true, false if the timeout
+     *     elapsed first.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while checking for available data.
+     */
+    boolean awaitAvailable(long timeout, TimeUnit unit) throws GuacamoleException;
+
+}
@@ -0,0 +1,345 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+import java.util.Arrays;
+
+/**
+ * Base64 encoder and decoder which operates directly on ranges of existing
+ * arrays, such as the raw form of a received Guacamole instruction, without
+ * creating intermediate strings or arrays. Data may be processed in chunks of
+ * any size, provided each chunk is itself valid base64 (for decoding) or the
+ * chunk boundaries fall on multiples of three bytes (for encoding), as is the
+ * case for the blobs of a Guacamole stream.
+ */
+public final class Base64Codec {
+
+    /**
+     * The base64 alphabet, indexed by the 6-bit value of each character.
+     */
+    private static final char[] ENCODE = (
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/"
+    ).toCharArray();
+
+    /**
+     * The 6-bit value of each ASCII character within the base64 alphabet,
+     * or -1 for characters which are not part of the alphabet.
+     */
+    private static final int[] DECODE = new int[128];
+
+    static {
+        Arrays.fill(DECODE, -1);
+        for (int i = 0; i < ENCODE.length; i++)
+            DECODE[ENCODE[i]] = i;
+    }
+
+    /**
+     * This class is a utility class and should not be instantiated.
+     */
+    private Base64Codec() {}
+
+    /**
+     * Returns the number of characters which result from encoding the given
+     * number of bytes, including padding.
+     *
+     * @param length
+     *     The number of bytes to be encoded.
+     *
+     * @return
+     *     The number of base64 characters required to encode the given number
+     *     of bytes.
+     */
+    public static int getEncodedLength(int length) {
+        return (length + 2) / 3 * 4;
+    }
+
+    /**
+     * Returns the maximum number of bytes which may result from decoding the
+     * given number of base64 characters. The actual number of bytes will be
+     * smaller if the data is padded.
+     *
+     * @param length
+     *     The number of base64 characters to be decoded.
+     *
+     * @return
+     *     The maximum number of bytes which may be decoded from the given
+     *     number of characters.
+     */
+    public static int getDecodedLength(int length) {
+        return length / 4 * 3;
+    }
+
+    /**
+     * Encodes the given range of bytes as base64, storing the resulting
+     * characters in the given array. The destination array must have room
+     * for at least getEncodedLength(length) characters.
+     *
+     * @param src
+     *     The array containing the bytes to encode.
+     *
+     * @param offset
+     *     The offset of the first byte to encode.
+     *
+     * @param length
+     *     The number of bytes to encode.
+     *
+     * @param dst
+     *     The array which should receive the base64 characters.
+     *
+     * @param dstOffset
+     *     The offset within the destination array at which the first
+     *     character should be stored.
+     *
+     * @return
+     *     The number of characters stored.
+     */
+    public static int encode(byte[] src, int offset, int length,
+            char[] dst, int dstOffset) {
+
+        int end = offset + length;
+        int out = dstOffset;
+        int i = offset;
+
+        // Encode each complete group of three bytes
+        for (; i + 2 < end; i += 3) {
+            int value = (src[i] & 0xFF) << 16
+                      | (src[i + 1] & 0xFF) << 8
+                      | (src[i + 2] & 0xFF);
+            dst[out++] = ENCODE[value >>> 18];
+            dst[out++] = ENCODE[(value >>> 12) & 0x3F];
+            dst[out++] = ENCODE[(value >>> 6) & 0x3F];
+            dst[out++] = ENCODE[value & 0x3F];
+        }
+
+        // Encode and pad any remaining bytes
+        int remaining = end - i;
+        if (remaining > 0) {
+
+            int value = (src[i] & 0xFF) << 16;
+            if (remaining == 2)
+                value |= (src[i + 1] & 0xFF) << 8;
+
+            dst[out++] = ENCODE[value >>> 18];
+            dst[out++] = ENCODE[(value >>> 12) & 0x3F];
+            dst[out++] = remaining == 2 ? ENCODE[(value >>> 6) & 0x3F] : '=';
+            dst[out++] = '=';
+
+        }
+
+        return out - dstOffset;
+
+    }
+
+    /**
+     * Decodes the given range of base64 characters, storing the resulting
+     * bytes in the given array. The destination array must have room for at
+     * least getDecodedLength(length) bytes.
+     *
+     * @param src
+     *     The array containing the base64 characters to decode.
+     *
+     * @param offset
+     *     The offset of the first character to decode.
+     *
+     * @param length
+     *     The number of characters to decode, which must be a multiple of
+     *     four.
+     *
+     * @param dst
+     *     The array which should receive the decoded bytes.
+     *
+     * @param dstOffset
+     *     The offset within the destination array at which the first byte
+     *     should be stored.
+     *
+     * @return
+     *     The number of bytes stored.
+     *
+     * @throws IllegalArgumentException
+     *     If the given range does not contain valid base64 data.
+     */
+    public static int decode(char[] src, int offset, int length,
+            byte[] dst, int dstOffset) {
+
+        if (length % 4 != 0)
+            throw new IllegalArgumentException("Length of base64 data is not a multiple of 4.");
+
+        // Nothing to decode if no data
+        if (length == 0)
+            return 0;
+
+        int end = offset + length;
+        int padding = getPadding(src[end - 1], src[end - 2]);
+
+        int out = dstOffset;
+        int fullEnd = padding > 0 ? end - 4 : end;
+
+        // Decode each complete group of four characters
+        for (int i = offset; i < fullEnd; i += 4) {
+            int value = decodeGroup(src[i], src[i + 1], src[i + 2], src[i + 3]);
+            dst[out++] = (byte) (value >> 16);
+            dst[out++] = (byte) (value >> 8);
+            dst[out++] = (byte) value;
+        }
+
+        // Decode final, padded group
+        if (padding > 0) {
+            int i = fullEnd;
+            int value = decodeGroup(src[i], src[i + 1],
+                    padding == 1 ? src[i + 2] : 'A', 'A');
+            dst[out++] = (byte) (value >> 16);
+            if (padding == 1)
+                dst[out++] = (byte) (value >> 8);
+        }
+
+        return out - dstOffset;
+
+    }
+
+    /**
+     * Decodes the given range of base64 characters, each stored as a single
+     * byte, as is the case for base64 data within UTF-8. The resulting bytes
+     * are stored in the given array, which must have room for at least
+     * getDecodedLength(length) bytes. The source and destination may be the
+     * same array, provided the destination range does not begin after the
+     * source range.
+     *
+     * @param src
+     *     The array containing the base64 characters to decode.
+     *
+     * @param offset
+     *     The offset of the first character to decode.
+     *
+     * @param length
+     *     The number of characters to decode, which must be a multiple of
+     *     four.
+     *
+     * @param dst
+     *     The array which should receive the decoded bytes.
+     *
+     * @param dstOffset
+     *     The offset within the destination array at which the first byte
+     *     should be stored.
+     *
+     * @return
+     *     The number of bytes stored.
+     *
+     * @throws IllegalArgumentException
+     *     If the given range does not contain valid base64 data.
+     */
+    public static int decode(byte[] src, int offset, int length,
+            byte[] dst, int dstOffset) {
+
+        if (length % 4 != 0)
+            throw new IllegalArgumentException("Length of base64 data is not a multiple of 4.");
+
+        // Nothing to decode if no data
+        if (length == 0)
+            return 0;
+
+        int end = offset + length;
+        int padding = getPadding(src[end - 1], src[end - 2]);
+
+        int out = dstOffset;
+        int fullEnd = padding > 0 ? end - 4 : end;
+
+        // Decode each complete group of four characters
+        for (int i = offset; i < fullEnd; i += 4) {
+            int value = decodeGroup(src[i] & 0xFF, src[i + 1] & 0xFF,
+                    src[i + 2] & 0xFF, src[i + 3] & 0xFF);
+            dst[out++] = (byte) (value >> 16);
+            dst[out++] = (byte) (value >> 8);
+            dst[out++] = (byte) value;
+        }
+
+        // Decode final, padded group
+        if (padding > 0) {
+            int i = fullEnd;
+            int value = decodeGroup(src[i] & 0xFF, src[i + 1] & 0xFF,
+                    padding == 1 ? src[i + 2] & 0xFF : 'A', 'A');
+            dst[out++] = (byte) (value >> 16);
+            if (padding == 1)
+                dst[out++] = (byte) (value >> 8);
+        }
+
+        return out - dstOffset;
+
+    }
+
+    /**
+     * Returns the number of padding characters at the end of non-empty base64
+     * data having the given final two characters.
+     *
+     * @param last
+     *     The final character of the base64 data.
+     *
+     * @param secondLast
+     *     The second-to-last character of the base64 data.
+     *
+     * @return
+     *     The number of padding characters, from 0 to 2 inclusive.
+     */
+    private static int getPadding(int last, int secondLast) {
+
+        if (last != '=')
+            return 0;
+
+        return secondLast == '=' ? 2 : 1;
+
+    }
+
+    /**
+     * Decodes a single group of four base64 characters into the 24-bit value
+     * they represent.
+     *
+     * @param c0
+     *     The first character of the group.
+     *
+     * @param c1
+     *     The second character of the group.
+     *
+     * @param c2
+     *     The third character of the group.
+     *
+     * @param c3
+     *     The fourth character of the group.
+     *
+     * @return
+     *     The 24-bit value represented by the given characters.
+     *
+     * @throws IllegalArgumentException
+     *     If any of the given characters is not part of the base64 alphabet.
+     */
+    private static int decodeGroup(int c0, int c1, int c2, int c3) {
+
+        if ((c0 | c1 | c2 | c3) > 0x7F)
+            throw new IllegalArgumentException("Invalid character within base64 data.");
+
+        // Any invalid character results in a negative value, as -1 remains
+        // negative when shifted left
+        int value = DECODE[c0] << 18 | DECODE[c1] << 12 | DECODE[c2] << 6 | DECODE[c3];
+        if (value < 0)
+            throw new IllegalArgumentException("Invalid character within base64 data.");
+
+        return value;
+
+    }
+
+}
@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe histogram of the sizes of the batches of instruction data sent
+ * to clients. Sizes are counted within power-of-two buckets, such that the
+ * distribution of batch sizes can be observed with negligible overhead.
+ */
+public class BatchSizeHistogram {
+
+    /**
+     * The number of buckets within the histogram. The final bucket counts all
+     * batches larger than the upper bound of the preceding bucket.
+     */
+    public static final int BUCKETS = 21;
+
+    /**
+     * The number of batches recorded within each bucket. Bucket N counts
+     * batches whose size is at most 2^N and greater than 2^(N-1).
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * The total number of batches recorded.
+     */
+    private final AtomicLong batches = new AtomicLong();
+
+    /**
+     * The sum of the sizes of all batches recorded.
+     */
+    private final AtomicLong totalSize = new AtomicLong();
+
+    /**
+     * Returns the index of the bucket which counts batches of the given
+     * size.
+     *
+     * @param size
+     *     The size of a batch.
+     *
+     * @return
+     *     The index of the bucket which counts batches of the given size.
+     */
+    private static int getBucket(int size) {
+
+        if (size <= 1)
+            return 0;
+
+        // Smallest N such that size <= 2^N
+        return Math.min(BUCKETS - 1, 32 - Integer.numberOfLeadingZeros(size - 1));
+
+    }
+
+    /**
+     * Returns the largest batch size counted by the given bucket.
+     *
+     * @param bucket
+     *     The index of the bucket.
+     *
+     * @return
+     *     The largest batch size counted by the given bucket, or
+     *     Integer.MAX_VALUE for the final bucket.
+     */
+    public static int getUpperBound(int bucket) {
+
+        if (bucket >= BUCKETS - 1)
+            return Integer.MAX_VALUE;
+
+        return 1 << bucket;
+
+    }
+
+    /**
+     * Records a single batch of the given size.
+     *
+     * @param size
+     *     The size of the batch, in bytes or characters.
+     */
+    public void record(int size) {
+        counts.incrementAndGet(getBucket(size));
+        batches.incrementAndGet();
+        totalSize.addAndGet(size);
+    }
+
+    /**
+     * Returns the number of batches recorded within the given bucket.
+     *
+     * @param bucket
+     *     The index of the bucket.
+     *
+     * @return
+     *     The number of batches recorded within the given bucket.
+     */
+    public long getCount(int bucket) {
+        return counts.get(bucket);
+    }
+
+    /**
+     * Returns the total number of batches recorded.
+     *
+     * @return
+     *     The total number of batches recorded.
+     */
+    public long getBatchCount() {
+        return batches.get();
+    }
+
+    /**
+     * Returns the sum of the sizes of all batches recorded.
+     *
+     * @return
+     *     The sum of the sizes of all batches recorded.
+     */
+    public long getTotalSize() {
+        return totalSize.get();
+    }
+
+    /**
+     * Returns a human-readable summary of the distribution of batch sizes,
+     * listing the count of each non-empty bucket.
+     *
+     * @return
+     *     A human-readable summary of this histogram.
+     */
+    @Override
+    public String toString() {
+
+        StringBuilder summary = new StringBuilder();
+        summary.append(getBatchCount()).append(" batches, ")
+               .append(getTotalSize()).append(" total");
+
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+
+            long count = getCount(bucket);
+            if (count == 0)
+                continue;
+
+            summary.append(", ");
+            if (bucket == BUCKETS - 1)
+                summary.append('>').append(getUpperBound(bucket - 1));
+            else
+                summary.append("<=").append(getUpperBound(bucket));
+            summary.append(": ").append(count);
+
+        }
+
+        return summary.toString();
+
+    }
+
+}
@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Bounded pool of byte arrays of a fixed size, allowing the buffers used for
+ * short-lived chunks of data, such as the decoded contents of blobs, to be
+ * reused rather than allocated for each chunk. Requests for arrays larger
+ * than the size of the pooled arrays are satisfied with newly-allocated
+ * arrays which are simply discarded when released.
+ */
+public class ByteArrayPool {
+
+    /**
+     * The size of each pooled array, in bytes.
+     */
+    private final int bufferSize;
+
+    /**
+     * All arrays which are currently available for reuse.
+     */
+    private final BlockingQueue<byte[]> available;
+
+    /**
+     * Creates a new ByteArrayPool which retains at most the given number of
+     * arrays of the given size.
+     *
+     * @param bufferSize
+     *     The size of each pooled array, in bytes.
+     *
+     * @param maxPooled
+     *     The maximum number of arrays to retain for reuse. Arrays released
+     *     while this many arrays are already available are discarded.
+     */
+    public ByteArrayPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.available = new ArrayBlockingQueue<byte[]>(maxPooled);
+    }
+
+    /**
+     * Returns the size of each pooled array, in bytes.
+     *
+     * @return
+     *     The size of each pooled array, in bytes.
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Returns an array of at least the given length. If the given length does
+     * not exceed the size of the pooled arrays, a pooled array is returned if
+     * available, and a new array of the pooled size is allocated otherwise.
+     * The contents of the returned array are undefined.
+     *
+     * @param minLength
+     *     The minimum length of the array required.
+     *
+     * @return
+     *     An array of at least the given length, which should be returned to
+     *     the pool via release() once no longer needed.
+     */
+    public byte[] acquire(int minLength) {
+
+        // Allocate oversized arrays directly
+        if (minLength > bufferSize)
+            return new byte[minLength];
+
+        // Reuse a pooled array if possible
+        byte[] buffer = available.poll();
+        if (buffer != null)
+            return buffer;
+
+        return new byte[bufferSize];
+
+    }
+
+    /**
+     * Returns the given array to the pool, such that it may be reused by a
+     * future call to acquire(). The array MUST NOT be used after it is
+     * released. Arrays not of the pooled size, or released while the pool is
+     * full, are discarded.
+     *
+     * @param buffer
+     *     The array to release.
+     */
+    public void release(byte[] buffer) {
+        if (buffer.length == bufferSize)
+            available.offer(buffer);
+    }
+
+}
@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+import org.apache.guacamole.GuacamoleException;
+
+/**
+ * A GuacamoleReader which additionally provides access to the instruction
+ * stream in its original UTF-8 form. Instructions read as bytes can be
+ * forwarded to byte-oriented destinations, such as an HTTP response, without
+ * being decoded and then encoded again.
+ */
+public interface ByteGuacamoleReader extends GuacamoleReader {
+
+    /**
+     * Reads exactly one complete Guacamole instruction in UTF-8 form,
+     * returning a slice which references that instruction within the
+     * internal buffer of this reader. The contents of the returned slice are
+     * valid only until the next read of any kind from this reader.
+     *
+     * @return
+     *     A slice referencing the next complete instruction, or null if no
+     *     more instructions are available for reading.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while reading from the stream.
+     */
+    public GuacamoleInstructionByteSlice readBytes() throws GuacamoleException;
+
+}
@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+import org.apache.guacamole.GuacamoleException;
+
+/**
+ * A GuacamoleWriter which additionally accepts instruction data already in
+ * UTF-8 form, such that data received as bytes can be forwarded without being
+ * decoded and then encoded again.
+ */
+public interface ByteGuacamoleWriter extends GuacamoleWriter {
+
+    /**
+     * Writes a portion of the given array of UTF-8 bytes to the Guacamole
+     * instruction stream, without modification.
+     *
+     * @param chunk
+     *     An array of bytes containing UTF-8 Guacamole instruction data.
+     *
+     * @param off
+     *     The start offset of the portion of the array to write.
+     *
+     * @param len
+     *     The length of the portion of the array to write.
+     *
+     * @throws GuacamoleException
+     *     If an error occurred while writing the portion of the array
+     *     specified.
+     */
+    public void writeBytes(byte[] chunk, int off, int len) throws GuacamoleException;
+
+}
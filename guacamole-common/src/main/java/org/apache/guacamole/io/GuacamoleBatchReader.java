@@ -0,0 +1,336 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+import org.apache.guacamole.GuacamoleException;
+
+/**
+ * Reads batches of complete Guacamole instructions from a GuacamoleReader,
+ * such that many instructions can be sent to the client as a single message
+ * or write. A batch ends once it reaches the maximum batch size, or once no
+ * further data is available and the maximum batch latency has elapsed since
+ * the first instruction of the batch was read. The size of every batch is
+ * recorded within the histogram of the batch settings. Batches wait for
+ * further data only if the underlying reader is an AwaitableGuacamoleReader;
+ * batches read from other readers end as soon as no further data is
+ * immediately available.
+ *
+ * If the underlying reader is a ByteGuacamoleReader, instructions are
+ * accumulated in their original UTF-8 form, and each batch is either written
+ * as-is or decoded exactly once, rather than decoding each instruction
+ * individually and copying the decoded data again to produce the batch.
+ */
+public class GuacamoleBatchReader {
+
+    /**
+     * The character set of all Guacamole protocol data.
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * The number of nanoseconds in one millisecond.
+     */
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    /**
+     * The reader from which all instructions should be read.
+     */
+    private final GuacamoleReader reader;
+
+    /**
+     * The reader from which all instructions should be read, if that reader
+     * provides access to UTF-8 data, or null otherwise.
+     */
+    private final ByteGuacamoleReader byteReader;
+
+    /**
+     * The limits determining when each batch is complete.
+     */
+    private final GuacamoleBatchSettings settings;
+
+    /**
+     * Buffer of UTF-8 instruction data, used if the underlying reader is a
+     * ByteGuacamoleReader.
+     */
+    private byte[] byteBatch;
+
+    /**
+     * The number of bytes of the current batch within byteBatch.
+     */
+    private int byteBatchLength;
+
+    /**
+     * Buffer of instruction data, used if the underlying reader is not a
+     * ByteGuacamoleReader.
+     */
+    private StringBuilder charBatch;
+
+    /**
+     * Creates a new GuacamoleBatchReader which reads instructions from the
+     * given GuacamoleReader, ending each batch according to the given
+     * settings.
+     *
+     * @param reader
+     *     The GuacamoleReader from which all instructions should be read.
+     *
+     * @param settings
+     *     The limits determining when each batch is complete.
+     */
+    public GuacamoleBatchReader(GuacamoleReader reader,
+            GuacamoleBatchSettings settings) {
+
+        this.reader = reader;
+        this.settings = settings;
+
+        if (reader instanceof ByteGuacamoleReader) {
+            this.byteReader = (ByteGuacamoleReader) reader;
+            this.byteBatch = new byte[settings.getMaxSize()];
+        }
+        else {
+            this.byteReader = null;
+            this.charBatch = new StringBuilder(settings.getMaxSize());
+        }
+
+    }
+
+    /**
+     * Creates a new GuacamoleBatchReader which reads instructions from the
+     * given GuacamoleReader, ending each batch according to the shared
+     * default settings.
+     *
+     * @param reader
+     *     The GuacamoleReader from which all instructions should be read.
+     */
+    public GuacamoleBatchReader(GuacamoleReader reader) {
+        this(reader, GuacamoleBatchSettings.getDefault());
+    }
+
+    /**
+     * Returns whether the current batch should remain open for further
+     * instructions, waiting up to the maximum batch latency for further data
+     * if none is immediately available and the reader supports waiting.
+     *
+     * @param reader
+     *     The reader from which the instructions of the batch are being read.
+     *
+     * @param settings
+     *     The limits determining when the batch is complete.
+     *
+     * @param batchStart
+     *     The value of System.nanoTime() when the first instruction of the
+     *     current batch was read.
+     *
+     * @param size
+     *     The current size of the batch.
+     *
+     * @return
+     *     true if further data is available for the current batch, false if
+     *     the batch is complete.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while checking for available data.
+     */
+    static boolean continueBatch(GuacamoleReader reader,
+            GuacamoleBatchSettings settings, long batchStart, int size)
+            throws GuacamoleException {
+
+        // End batch if full
+        if (size >= settings.getMaxSize())
+            return false;
+
+        // Continue immediately if data is available
+        if (reader.available())
+            return true;
+
+        // Otherwise, wait for more data only until latency limit is reached
+        if (reader instanceof AwaitableGuacamoleReader) {
+            long remaining = batchStart
+                    + settings.getMaxLatency() * NANOS_PER_MILLI - System.nanoTime();
+            if (remaining > 0)
+                return ((AwaitableGuacamoleReader) reader).awaitAvailable(
+                        remaining, TimeUnit.NANOSECONDS);
+        }
+
+        // No more data within time allowed
+        return false;
+
+    }
+
+    /**
+     * Reads UTF-8 data until the current batch is complete, storing the
+     * batch within byteBatch.
+     *
+     * @return
+     *     The length of the batch in bytes, or zero if the end of the stream
+     *     was reached before any instructions were read.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while reading.
+     */
+    private int readByteBatch() throws GuacamoleException {
+
+        int length = 0;
+        long batchStart = 0;
+
+        GuacamoleInstructionByteSlice slice;
+        while ((slice = byteReader.readBytes()) != null) {
+
+            if (length == 0)
+                batchStart = System.nanoTime();
+
+            // Grow buffer if instruction will not fit
+            int required = length + slice.getLength();
+            if (required > byteBatch.length) {
+                byte[] biggerBatch = new byte[Math.max(required, byteBatch.length * 2)];
+                System.arraycopy(byteBatch, 0, biggerBatch, 0, length);
+                byteBatch = biggerBatch;
+            }
+
+            // Append instruction
+            System.arraycopy(slice.getBuffer(), slice.getOffset(),
+                    byteBatch, length, slice.getLength());
+            length = required;
+
+            // Stop once batch is complete
+            if (!continueBatch(reader, settings, batchStart, length))
+                break;
+
+        }
+
+        if (length != 0)
+            settings.getHistogram().record(length);
+
+        byteBatchLength = length;
+        return length;
+
+    }
+
+    /**
+     * Reads character data until the current batch is complete, storing the
+     * batch within charBatch.
+     *
+     * @return
+     *     The length of the batch in characters, or zero if the end of the
+     *     stream was reached before any instructions were read.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while reading.
+     */
+    private int readCharBatch() throws GuacamoleException {
+
+        charBatch.setLength(0);
+        long batchStart = 0;
+
+        char[] message;
+        while ((message = reader.read()) != null) {
+
+            if (charBatch.length() == 0)
+                batchStart = System.nanoTime();
+
+            // Append instruction
+            charBatch.append(message);
+
+            // Stop once batch is complete
+            if (!continueBatch(reader, settings, batchStart, charBatch.length()))
+                break;
+
+        }
+
+        int length = charBatch.length();
+        if (length != 0)
+            settings.getHistogram().record(length);
+
+        return length;
+
+    }
+
+    /**
+     * Reads one or more complete instructions, returning the batch of all
+     * instructions read. This function blocks until at least one instruction
+     * is available, and then returns as soon as the batch is complete.
+     *
+     * @return
+     *     A batch of one or more complete instructions, or null if no more
+     *     instructions are available for reading.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while reading.
+     */
+    public String readBatch() throws GuacamoleException {
+
+        // Decode entire batch at once
+        if (byteReader != null) {
+            if (readByteBatch() == 0)
+                return null;
+            return new String(byteBatch, 0, byteBatchLength, UTF_8);
+        }
+
+        if (readCharBatch() == 0)
+            return null;
+
+        return charBatch.toString();
+
+    }
+
+    /**
+     * Reads one or more complete instructions, writing the batch of all
+     * instructions read to the given OutputStream in UTF-8 form with a single
+     * write. This function blocks until at least one instruction is
+     * available, and then returns as soon as the batch is complete. The
+     * OutputStream is not flushed.
+     *
+     * @param output
+     *     The OutputStream to write the batch to.
+     *
+     * @return
+     *     true if a batch was written, false if no more instructions are
+     *     available for reading.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while reading.
+     *
+     * @throws IOException
+     *     If an error occurs while writing to the given OutputStream.
+     */
+    public boolean writeBatch(OutputStream output)
+            throws GuacamoleException, IOException {
+
+        // Write UTF-8 data as received
+        if (byteReader != null) {
+            if (readByteBatch() == 0)
+                return false;
+            output.write(byteBatch, 0, byteBatchLength);
+            return true;
+        }
+
+        // Otherwise, encode batch
+        if (readCharBatch() == 0)
+            return false;
+
+        output.write(charBatch.toString().getBytes(UTF_8));
+        return true;
+
+    }
+
+}
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+/**
+ * The limits which determine when a batch of outbound instructions is
+ * complete and should be sent to the client, along with the histogram which
+ * should record the size of each batch sent. The same settings are shared by
+ * all tunnel transports which do not provide their own.
+ */
+public class GuacamoleBatchSettings {
+
+    /**
+     * The default maximum size of each batch, in bytes or characters.
+     */
+    public static final int DEFAULT_MAX_SIZE = 8192;
+
+    /**
+     * The default maximum time that a batch may be held open waiting for
+     * further instructions, in milliseconds.
+     */
+    public static final int DEFAULT_MAX_LATENCY = 0;
+
+    /**
+     * The settings shared by default, or null if no settings have yet been
+     * set or created.
+     */
+    private static GuacamoleBatchSettings defaultSettings;
+
+    /**
+     * The size at which a batch is considered full.
+     */
+    private final int maxSize;
+
+    /**
+     * The maximum time that a batch may be held open waiting for further
+     * instructions, in milliseconds.
+     */
+    private final int maxLatency;
+
+    /**
+     * The histogram which records the size of each batch.
+     */
+    private final BatchSizeHistogram histogram;
+
+    /**
+     * Creates a new GuacamoleBatchSettings having the given limits and
+     * recording batch sizes within the given histogram.
+     *
+     * @param maxSize
+     *     The size at which a batch should be considered full, in bytes or
+     *     characters. Batches may exceed this size by up to one instruction.
+     *
+     * @param maxLatency
+     *     The maximum time that a batch may be held open waiting for further
+     *     instructions once no further data is immediately available, in
+     *     milliseconds, measured from the first instruction of the batch. If
+     *     zero, a batch is complete as soon as no further data is
+     *     immediately available.
+     *
+     * @param histogram
+     *     The histogram which should record the size of each batch.
+     */
+    public GuacamoleBatchSettings(int maxSize, int maxLatency,
+            BatchSizeHistogram histogram) {
+        this.maxSize = maxSize;
+        this.maxLatency = maxLatency;
+        this.histogram = histogram;
+    }
+
+    /**
+     * Returns the size at which a batch is considered full, in bytes or
+     * characters.
+     *
+     * @return
+     *     The size at which a batch is considered full.
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the maximum time that a batch may be held open waiting for
+     * further instructions, in milliseconds.
+     *
+     * @return
+     *     The maximum time that a batch may be held open, in milliseconds.
+     */
+    public int getMaxLatency() {
+        return maxLatency;
+    }
+
+    /**
+     * Returns the histogram which records the size of each batch.
+     *
+     * @return
+     *     The histogram which records the size of each batch.
+     */
+    public BatchSizeHistogram getHistogram() {
+        return histogram;
+    }
+
+    /**
+     * Returns the settings shared by all tunnel transports which do not
+     * provide their own. If no settings have been set via setDefault(),
+     * settings using DEFAULT_MAX_SIZE and DEFAULT_MAX_LATENCY are created.
+     *
+     * @return
+     *     The shared GuacamoleBatchSettings.
+     */
+    public static synchronized GuacamoleBatchSettings getDefault() {
+
+        if (defaultSettings == null)
+            defaultSettings = new GuacamoleBatchSettings(DEFAULT_MAX_SIZE,
+                    DEFAULT_MAX_LATENCY, new BatchSizeHistogram());
+
+        return defaultSettings;
+
+    }
+
+    /**
+     * Replaces the settings shared by all tunnel transports which do not
+     * provide their own.
+     *
+     * @param settings
+     *     The GuacamoleBatchSettings to share, or null to revert to the
+     *     default settings.
+     */
+    public static synchronized void setDefault(GuacamoleBatchSettings settings) {
+        defaultSettings = settings;
+    }
+
+}
@@ -0,0 +1,292 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import org.apache.guacamole.GuacamoleException;
+
+/**
+ * Reads batches of complete Guacamole instructions from a GuacamoleReader
+ * like GuacamoleBatchReader, except that "blob" instructions are not included
+ * within batches. Each blob instead ends the current batch and is sent as a
+ * separate binary message containing the decoded blob data, such that the
+ * data need not be base64-encoded on the wire nor decoded by the client.
+ *
+ * Each binary message consists of the index of the stream receiving the blob,
+ * as a 32-bit unsigned big-endian integer, followed by the raw data of the
+ * blob. Messages are sent in the order the corresponding instructions were
+ * read, thus text batches and blobs remain correctly ordered relative to each
+ * other. Any blob which cannot be represented in this form, such as a blob
+ * whose data is not valid base64, is left within the text batch as-is.
+ */
+public class GuacamoleBinaryBatchReader {
+
+    /**
+     * The length of the header preceding the data of each binary message, in
+     * bytes.
+     */
+    public static final int BLOB_HEADER_LENGTH = 4;
+
+    /**
+     * The initial size of the buffer receiving decoded blob data, in bytes.
+     * This is the largest amount of data guacd sends within a single blob,
+     * thus the buffer will typically never need to grow.
+     */
+    private static final int INITIAL_BLOB_BUFFER_SIZE = 6048;
+
+    /**
+     * The prefix shared by all "blob" instructions, consisting of the opcode
+     * and the separator following the opcode.
+     */
+    private static final char[] BLOB_PREFIX = "4.blob,".toCharArray();
+
+    /**
+     * The maximum number of digits within a stream index which can be
+     * represented within the header of a binary message.
+     */
+    private static final int MAX_INDEX_DIGITS = 9;
+
+    /**
+     * The destination of each message produced by a
+     * GuacamoleBinaryBatchReader.
+     */
+    public interface MessageSink {
+
+        /**
+         * Sends the given batch of complete Guacamole instructions as a single
+         * text message.
+         *
+         * @param batch
+         *     The batch of instructions to send.
+         *
+         * @throws IOException
+         *     If an error occurs while sending the message.
+         */
+        void sendText(String batch) throws IOException;
+
+        /**
+         * Sends the given decoded blob as a single binary message. The
+         * contents of the given buffer are only valid until this function
+         * returns, and must not be retained.
+         *
+         * @param blob
+         *     A buffer containing the stream index header followed by the
+         *     decoded blob data.
+         *
+         * @throws IOException
+         *     If an error occurs while sending the message.
+         */
+        void sendBinary(ByteBuffer blob) throws IOException;
+
+    }
+
+    /**
+     * The reader from which all instructions should be read.
+     */
+    private final GuacamoleReader reader;
+
+    /**
+     * The limits determining when each text batch is complete.
+     */
+    private final GuacamoleBatchSettings settings;
+
+    /**
+     * Buffer of instruction data for the current text batch.
+     */
+    private final StringBuilder textBatch;
+
+    /**
+     * Buffer receiving the header and decoded data of the current blob. This
+     * buffer is grown as needed and reused for each blob.
+     */
+    private byte[] blobBuffer;
+
+    /**
+     * Creates a new GuacamoleBinaryBatchReader which reads instructions from
+     * the given GuacamoleReader, ending each text batch according to the
+     * given settings.
+     *
+     * @param reader
+     *     The GuacamoleReader from which all instructions should be read.
+     *
+     * @param settings
+     *     The limits determining when each text batch is complete.
+     */
+    public GuacamoleBinaryBatchReader(GuacamoleReader reader,
+            GuacamoleBatchSettings settings) {
+        this.reader = reader;
+        this.settings = settings;
+        this.textBatch = new StringBuilder(settings.getMaxSize());
+        this.blobBuffer = new byte[BLOB_HEADER_LENGTH + INITIAL_BLOB_BUFFER_SIZE];
+    }
+
+    /**
+     * Decodes the given instruction into a binary message within blobBuffer,
+     * if the instruction is a blob which can be represented as a binary
+     * message. The given instruction must be complete and valid, as is
+     * guaranteed by GuacamoleReader.
+     *
+     * @param instruction
+     *     The instruction to decode.
+     *
+     * @return
+     *     The length of the binary message stored within blobBuffer, in
+     *     bytes, or -1 if the instruction is not a blob or cannot be
+     *     represented as a binary message.
+     */
+    private int decodeBlob(char[] instruction) {
+
+        // Ignore anything other than blobs
+        if (instruction.length < BLOB_PREFIX.length)
+            return -1;
+
+        for (int i = 0; i < BLOB_PREFIX.length; i++) {
+            if (instruction[i] != BLOB_PREFIX[i])
+                return -1;
+        }
+
+        int pos = BLOB_PREFIX.length;
+        char c;
+
+        // Locate stream index
+        int indexLength = 0;
+        while ((c = instruction[pos++]) != '.')
+            indexLength = indexLength * 10 + c - '0';
+
+        int indexStart = pos;
+        pos += indexLength;
+
+        // Blobs must have a second argument
+        if (instruction[pos++] != ',')
+            return -1;
+
+        // Locate blob data
+        int dataLength = 0;
+        while ((c = instruction[pos++]) != '.')
+            dataLength = dataLength * 10 + c - '0';
+
+        int dataStart = pos;
+        pos += dataLength;
+
+        // Blobs must have no further arguments
+        if (instruction[pos] != ';')
+            return -1;
+
+        // Parse stream index, which must fit within the header
+        if (indexLength == 0 || indexLength > MAX_INDEX_DIGITS)
+            return -1;
+
+        int index = 0;
+        for (int i = indexStart; i < indexStart + indexLength; i++) {
+            c = instruction[i];
+            if (c < '0' || c > '9')
+                return -1;
+            index = index * 10 + c - '0';
+        }
+
+        // Grow buffer if decoded data will not fit
+        int required = BLOB_HEADER_LENGTH + Base64Codec.getDecodedLength(dataLength);
+        if (required > blobBuffer.length)
+            blobBuffer = new byte[Math.max(required, blobBuffer.length * 2)];
+
+        // Decode data following header
+        int decodedLength;
+        try {
+            decodedLength = Base64Codec.decode(instruction, dataStart,
+                    dataLength, blobBuffer, BLOB_HEADER_LENGTH);
+        }
+        catch (IllegalArgumentException e) {
+            return -1;
+        }
+
+        blobBuffer[0] = (byte) (index >>> 24);
+        blobBuffer[1] = (byte) (index >>> 16);
+        blobBuffer[2] = (byte) (index >>> 8);
+        blobBuffer[3] = (byte) index;
+
+        return BLOB_HEADER_LENGTH + decodedLength;
+
+    }
+
+    /**
+     * Reads one or more complete instructions, sending all instructions read
+     * to the given MessageSink. The instructions are sent as a single text
+     * message, followed by a single binary message if the batch was ended by
+     * a blob. This function blocks until at least one instruction is
+     * available, and then returns as soon as the batch is complete.
+     *
+     * @param sink
+     *     The MessageSink which should receive the messages produced.
+     *
+     * @return
+     *     true if at least one message was sent, false if no more
+     *     instructions are available for reading.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while reading.
+     *
+     * @throws IOException
+     *     If an error occurs while sending a message.
+     */
+    public boolean sendBatch(MessageSink sink)
+            throws GuacamoleException, IOException {
+
+        textBatch.setLength(0);
+        long batchStart = 0;
+        int blobLength = -1;
+
+        char[] instruction;
+        while ((instruction = reader.read()) != null) {
+
+            // End batch at first blob
+            blobLength = decodeBlob(instruction);
+            if (blobLength != -1)
+                break;
+
+            if (textBatch.length() == 0)
+                batchStart = System.nanoTime();
+
+            // Append instruction
+            textBatch.append(instruction);
+
+            // Stop once batch is complete
+            if (!GuacamoleBatchReader.continueBatch(reader, settings,
+                    batchStart, textBatch.length()))
+                break;
+
+        }
+
+        // Send any instructions preceding the blob
+        int textLength = textBatch.length();
+        if (textLength != 0) {
+            settings.getHistogram().record(textLength);
+            sink.sendText(textBatch.toString());
+        }
+
+        // Send blob as binary
+        if (blobLength != -1)
+            sink.sendBinary(ByteBuffer.wrap(blobBuffer, 0, blobLength));
+
+        return textLength != 0 || blobLength != -1;
+
+    }
+
+}
@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+/**
+ * The settings which determine whether outbound instruction data is
+ * compressed, and when compression should be abandoned for tunnels whose data
+ * does not compress well, along with the counters which record the total
+ * traffic of all tunnels using these settings. The same settings are shared by
+ * all tunnel transports which do not provide their own.
+ */
+public class GuacamoleCompressionSettings {
+
+    /**
+     * The default amount of outbound data to compress before measuring
+     * whether compression is worthwhile, in bytes.
+     */
+    public static final int DEFAULT_SAMPLE_SIZE = 65536;
+
+    /**
+     * The default minimum percentage of outbound data which must be saved by
+     * compression for compression to continue.
+     */
+    public static final int DEFAULT_MIN_SAVINGS = 20;
+
+    /**
+     * The settings shared by default, or null if no settings have yet been
+     * set or created.
+     */
+    private static GuacamoleCompressionSettings defaultSettings;
+
+    /**
+     * Whether compression is enabled.
+     */
+    private final boolean enabled;
+
+    /**
+     * The amount of outbound data compressed between each measurement of the
+     * compression ratio, in bytes.
+     */
+    private final int sampleSize;
+
+    /**
+     * The minimum percentage of outbound data which must be saved by
+     * compression for compression to continue.
+     */
+    private final int minSavings;
+
+    /**
+     * The counters recording the total traffic of all tunnels using these
+     * settings.
+     */
+    private final TunnelTrafficCounters totals = new TunnelTrafficCounters();
+
+    /**
+     * Creates a new GuacamoleCompressionSettings having the given values.
+     *
+     * @param enabled
+     *     Whether outbound instruction data should be compressed, where
+     *     supported by the client.
+     *
+     * @param sampleSize
+     *     The amount of outbound data to compress between each measurement of
+     *     the compression ratio of a tunnel, in bytes.
+     *
+     * @param minSavings
+     *     The minimum percentage of outbound data which must be saved by
+     *     compression within each sample. If compression of a tunnel saves
+     *     less than this, compression is disabled for that tunnel until
+     *     AdaptiveCompressor.PROBE_INTERVAL samples worth of data have been
+     *     sent uncompressed.
+     */
+    public GuacamoleCompressionSettings(boolean enabled, int sampleSize,
+            int minSavings) {
+        this.enabled = enabled;
+        this.sampleSize = sampleSize;
+        this.minSavings = minSavings;
+    }
+
+    /**
+     * Returns whether outbound instruction data should be compressed, where
+     * supported by the client.
+     *
+     * @return
+     *     true if compression is enabled, false otherwise.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the amount of outbound data to compress between each
+     * measurement of the compression ratio of a tunnel, in bytes.
+     *
+     * @return
+     *     The amount of outbound data within each sample, in bytes.
+     */
+    public int getSampleSize() {
+        return sampleSize;
+    }
+
+    /**
+     * Returns the minimum percentage of outbound data which must be saved by
+     * compression within each sample for compression to continue.
+     *
+     * @return
+     *     The minimum percentage of outbound data which must be saved.
+     */
+    public int getMinSavings() {
+        return minSavings;
+    }
+
+    /**
+     * Returns the counters recording the total traffic of all tunnels using
+     * these settings.
+     *
+     * @return
+     *     The counters recording the total traffic of all tunnels.
+     */
+    public TunnelTrafficCounters getTotals() {
+        return totals;
+    }
+
+    /**
+     * Returns the settings shared by all tunnel transports which do not
+     * provide their own. If no settings have been set via setDefault(),
+     * settings with compression disabled are created.
+     *
+     * @return
+     *     The shared GuacamoleCompressionSettings.
+     */
+    public static synchronized GuacamoleCompressionSettings getDefault() {
+
+        if (defaultSettings == null)
+            defaultSettings = new GuacamoleCompressionSettings(false,
+                    DEFAULT_SAMPLE_SIZE, DEFAULT_MIN_SAVINGS);
+
+        return defaultSettings;
+
+    }
+
+    /**
+     * Replaces the settings shared by all tunnel transports which do not
+     * provide their own.
+     *
+     * @param settings
+     *     The GuacamoleCompressionSettings to share, or null to revert to the
+     *     default settings.
+     */
+    public static synchronized void setDefault(GuacamoleCompressionSettings settings) {
+        defaultSettings = settings;
+    }
+
+}
@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+import java.nio.charset.Charset;
+
+/**
+ * A read-only view of a single, complete Guacamole instruction, in UTF-8
+ * form, within the internal buffer of a ByteGuacamoleReader. As with
+ * GuacamoleInstructionSlice, no data is copied when a slice is produced, and
+ * the contents of a slice are only valid until the next read from the reader
+ * that produced it.
+ */
+public class GuacamoleInstructionByteSlice {
+
+    /**
+     * The character set of all Guacamole protocol data.
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * The buffer containing the instruction data.
+     */
+    private byte[] buffer;
+
+    /**
+     * The offset within the buffer at which the instruction begins.
+     */
+    private int offset;
+
+    /**
+     * The length of the instruction, in bytes, including its terminating
+     * semicolon.
+     */
+    private int length;
+
+    /**
+     * Creates a new GuacamoleInstructionByteSlice which does not yet
+     * reference any data. Slices created in this way are reused by the
+     * reader which created them, and are pointed at each instruction read
+     * via set().
+     */
+    GuacamoleInstructionByteSlice() {
+    }
+
+    /**
+     * Creates a new GuacamoleInstructionByteSlice which references the given
+     * range of the given buffer.
+     *
+     * @param buffer
+     *     The buffer containing the instruction data.
+     *
+     * @param offset
+     *     The offset within the buffer at which the instruction begins.
+     *
+     * @param length
+     *     The length of the instruction, in bytes, including its terminating
+     *     semicolon.
+     */
+    public GuacamoleInstructionByteSlice(byte[] buffer, int offset, int length) {
+        set(buffer, offset, length);
+    }
+
+    /**
+     * Points this slice at the given range of the given buffer. Slices are
+     * reused by the reader which produced them, hence this function is not
+     * exposed outside the io package.
+     *
+     * @param buffer
+     *     The buffer containing the instruction data.
+     *
+     * @param offset
+     *     The offset within the buffer at which the instruction begins.
+     *
+     * @param length
+     *     The length of the instruction, in bytes, including its terminating
+     *     semicolon.
+     */
+    void set(byte[] buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Returns the buffer containing the instruction data. The buffer is owned
+     * by the reader which produced this slice and MUST NOT be modified.
+     *
+     * @return
+     *     The buffer containing the instruction data.
+     */
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Returns the offset within the buffer returned by getBuffer() at which
+     * the instruction begins.
+     *
+     * @return
+     *     The offset at which the instruction begins.
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Returns the length of the instruction, in bytes, including its
+     * terminating semicolon.
+     *
+     * @return
+     *     The length of the instruction, in bytes.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Copies the instruction data referenced by this slice into a newly
+     * allocated array which may be retained indefinitely.
+     *
+     * @return
+     *     A new array containing a copy of the UTF-8 instruction data.
+     */
+    public byte[] toByteArray() {
+        byte[] copy = new byte[length];
+        System.arraycopy(buffer, offset, copy, 0, length);
+        return copy;
+    }
+
+    /**
+     * Decodes the instruction data referenced by this slice, returning the
+     * instruction in the form it would be sent over the Guacamole protocol.
+     *
+     * @return
+     *     The decoded instruction data referenced by this slice.
+     */
+    @Override
+    public String toString() {
+        return new String(buffer, offset, length, UTF_8);
+    }
+
+}
@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+import org.apache.guacamole.GuacamoleException;
+
+/**
+ * A read-only view of a single, complete Guacamole instruction within the
+ * internal buffer of a GuacamoleReader. No data is copied when a slice is
+ * produced; the slice merely records where the instruction begins and how
+ * long it is. As the underlying buffer is reused, the contents of a slice are
+ * only valid until the next read from the reader that produced it. Callers
+ * which need to retain the instruction data beyond that point must copy it
+ * using toCharArray() or toString().
+ */
+public class GuacamoleInstructionSlice {
+
+    /**
+     * The buffer containing the instruction data.
+     */
+    private char[] buffer;
+
+    /**
+     * The offset within the buffer at which the instruction begins.
+     */
+    private int offset;
+
+    /**
+     * The length of the instruction, in characters, including its
+     * terminating semicolon.
+     */
+    private int length;
+
+    /**
+     * Points this slice at the given range of the given buffer. Slices are
+     * reused by the reader which produced them, hence this function is not
+     * exposed outside the io package.
+     *
+     * @param buffer
+     *     The buffer containing the instruction data.
+     *
+     * @param offset
+     *     The offset within the buffer at which the instruction begins.
+     *
+     * @param length
+     *     The length of the instruction, in characters, including its
+     *     terminating semicolon.
+     */
+    void set(char[] buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Returns the buffer containing the instruction data. The buffer is owned
+     * by the reader which produced this slice and MUST NOT be modified.
+     *
+     * @return
+     *     The buffer containing the instruction data.
+     */
+    public char[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Returns the offset within the buffer returned by getBuffer() at which
+     * the instruction begins.
+     *
+     * @return
+     *     The offset at which the instruction begins.
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Returns the length of the instruction, in characters, including its
+     * terminating semicolon.
+     *
+     * @return
+     *     The length of the instruction, in characters.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Copies the instruction data referenced by this slice into a newly
+     * allocated array which may be retained indefinitely.
+     *
+     * @return
+     *     A new array containing a copy of the instruction data.
+     */
+    public char[] toCharArray() {
+        char[] copy = new char[length];
+        System.arraycopy(buffer, offset, copy, 0, length);
+        return copy;
+    }
+
+    /**
+     * Writes the instruction data referenced by this slice to the given
+     * GuacamoleWriter without copying.
+     *
+     * @param writer
+     *     The GuacamoleWriter to write the instruction data to.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while writing the instruction data.
+     */
+    public void writeTo(GuacamoleWriter writer)
+            throws GuacamoleException {
+        writer.write(buffer, offset, length);
+    }
+
+    /**
+     * Returns a copy of the instruction data referenced by this slice, in the
+     * form it would be sent over the Guacamole protocol.
+     *
+     * @return
+     *     A copy of the instruction data referenced by this slice.
+     */
+    @Override
+    public String toString() {
+        return new String(buffer, offset, length);
+    }
+
+}
@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+/**
+ * The settings which limit the rate at which data is sent to the clients of
+ * tunnels, both for each tunnel individually and for all tunnels of this node
+ * together, along with the counters which record how often tunnels have been
+ * held back by those limits. The same settings are shared by all tunnels
+ * which do not provide their own.
+ */
+public class GuacamoleShapingSettings {
+
+    /**
+     * The settings shared by default, or null if no settings have yet been
+     * set or created.
+     */
+    private static GuacamoleShapingSettings defaultSettings;
+
+    /**
+     * The maximum rate at which data may be sent to the client of each
+     * tunnel which does not specify its own limit, in bytes per second, or
+     * zero if no limit applies.
+     */
+    private final long maxBandwidth;
+
+    /**
+     * The maximum number of frames per second which may be sent to the client
+     * of each tunnel which does not specify its own limit, or zero if no
+     * limit applies.
+     */
+    private final int maxFrameRate;
+
+    /**
+     * The bucket limiting the rate at which data may be sent to the clients
+     * of all tunnels together, or null if no such limit applies.
+     */
+    private final TokenBucket nodeBucket;
+
+    /**
+     * The counters recording how often all tunnels using these settings have
+     * been held back.
+     */
+    private final TunnelThrottleCounters totals = new TunnelThrottleCounters();
+
+    /**
+     * Creates a new GuacamoleShapingSettings having the given limits.
+     *
+     * @param maxBandwidth
+     *     The maximum rate at which data may be sent to the client of each
+     *     tunnel which does not specify its own limit, in bytes per second,
+     *     or zero if no limit applies.
+     *
+     * @param maxFrameRate
+     *     The maximum number of frames per second which may be sent to the
+     *     client of each tunnel which does not specify its own limit, or zero
+     *     if no limit applies.
+     *
+     * @param nodeMaxBandwidth
+     *     The maximum rate at which data may be sent to the clients of all
+     *     tunnels together, in bytes per second, or zero if no limit applies.
+     */
+    public GuacamoleShapingSettings(long maxBandwidth, int maxFrameRate,
+            long nodeMaxBandwidth) {
+        this.maxBandwidth = maxBandwidth;
+        this.maxFrameRate = maxFrameRate;
+        this.nodeBucket = nodeMaxBandwidth > 0 ? new TokenBucket(nodeMaxBandwidth) : null;
+    }
+
+    /**
+     * Returns the maximum rate at which data may be sent to the client of
+     * each tunnel which does not specify its own limit.
+     *
+     * @return
+     *     The maximum rate at which data may be sent to the client of each
+     *     tunnel, in bytes per second, or zero if no limit applies.
+     */
+    public long getMaxBandwidth() {
+        return maxBandwidth;
+    }
+
+    /**
+     * Returns the maximum number of frames per second which may be sent to
+     * the client of each tunnel which does not specify its own limit.
+     *
+     * @return
+     *     The maximum number of frames per second which may be sent to the
+     *     client of each tunnel, or zero if no limit applies.
+     */
+    public int getMaxFrameRate() {
+        return maxFrameRate;
+    }
+
+    /**
+     * Returns the bucket limiting the rate at which data may be sent to the
+     * clients of all tunnels together.
+     *
+     * @return
+     *     The bucket shared by all tunnels using these settings, or null if
+     *     no node-wide limit applies.
+     */
+    public TokenBucket getNodeBucket() {
+        return nodeBucket;
+    }
+
+    /**
+     * Returns the counters recording how often all tunnels using these
+     * settings have been held back.
+     *
+     * @return
+     *     The counters recording how often all tunnels have been held back.
+     */
+    public TunnelThrottleCounters getTotals() {
+        return totals;
+    }
+
+    /**
+     * Returns the settings shared by all tunnels which do not provide their
+     * own. If no settings have been set via setDefault(), settings with no
+     * limits are created.
+     *
+     * @return
+     *     The shared GuacamoleShapingSettings.
+     */
+    public static synchronized GuacamoleShapingSettings getDefault() {
+
+        if (defaultSettings == null)
+            defaultSettings = new GuacamoleShapingSettings(0, 0, 0);
+
+        return defaultSettings;
+
+    }
+
+    /**
+     * Replaces the settings shared by all tunnels which do not provide their
+     * own.
+     *
+     * @param settings
+     *     The GuacamoleShapingSettings to share, or null to revert to the
+     *     default settings.
+     */
+    public static synchronized void setDefault(GuacamoleShapingSettings settings) {
+        defaultSettings = settings;
+    }
+
+}
@@ -24,13 +24,12 @@ import java.io.IOException;
 import java.io.Reader;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
-import java.util.Deque;
-import java.util.LinkedList;
 import org.apache.guacamole.GuacamoleConnectionClosedException;
 import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.GuacamoleServerException;
 import org.apache.guacamole.GuacamoleUpstreamTimeoutException;
 import org.apache.guacamole.protocol.GuacamoleInstruction;
+import org.apache.guacamole.protocol.LazyGuacamoleInstruction;
 
 /**
  * A GuacamoleReader which wraps a standard Java Reader, using that Reader as
@@ -61,6 +60,14 @@ public class ReaderGuacamoleReader implements GuacamoleReader {
      */
     private int parseStart;
 
+    /**
+     * The location within the received data buffer of the first character
+     * which has not yet been returned as part of a complete instruction. All
+     * characters before this location have been consumed and may be
+     * overwritten.
+     */
+    private int instructionStart;
+
     /**
      * The buffer holding all received, unparsed data.
      */
@@ -73,109 +80,176 @@ public class ReaderGuacamoleReader implements GuacamoleReader {
      */
     private int usedLength = 0;
 
+    /**
+     * The slice returned by readSlice(). The same slice is reused for every
+     * instruction read, such that no allocation is needed per instruction.
+     */
+    private final GuacamoleInstructionSlice slice = new GuacamoleInstructionSlice();
+
     @Override
     public boolean available() throws GuacamoleException {
         try {
-            return input.ready() || usedLength != 0;
+            return input.ready() || usedLength != instructionStart;
         }
         catch (IOException e) {
             throw new GuacamoleServerException(e);
         }
     }
 
-    @Override
-    public char[] read() throws GuacamoleException {
+    /**
+     * Parses as much of the data within the buffer as possible, returning the
+     * location just after the end of the first complete instruction, if any.
+     * Parsing resumes where the previous call left off, such that no data is
+     * parsed twice.
+     *
+     * @return
+     *     The location within the buffer immediately after the terminating
+     *     semicolon of the next complete instruction, or -1 if no complete
+     *     instruction is yet available.
+     *
+     * @throws GuacamoleException
+     *     If the data within the buffer is not valid Guacamole protocol data.
+     */
+    private int parseInstruction() throws GuacamoleException {
 
-        try {
+        // Length of element
+        int elementLength = 0;
 
-            // While we're blocking, or input is available
-            for (;;) {
+        // Resume where we left off
+        int i = parseStart;
 
-                // Length of element
-                int elementLength = 0;
+        // Parse instruction in buffer
+        while (i < usedLength) {
 
-                // Resume where we left off
-                int i = parseStart;
+            // Read character
+            char readChar = buffer[i++];
 
-                // Parse instruction in buffer
-                while (i < usedLength) {
+            // If digit, update length
+            if (readChar >= '0' && readChar <= '9')
+                elementLength = elementLength * 10 + readChar - '0';
 
-                    // Read character
-                    char readChar = buffer[i++];
+            // If not digit, check for end-of-length character
+            else if (readChar == '.') {
 
-                    // If digit, update length
-                    if (readChar >= '0' && readChar <= '9')
-                        elementLength = elementLength * 10 + readChar - '0';
+                // Check if element present in buffer
+                if (i + elementLength < usedLength) {
 
-                    // If not digit, check for end-of-length character
-                    else if (readChar == '.') {
+                    // Get terminator
+                    char terminator = buffer[i + elementLength];
 
-                        // Check if element present in buffer
-                        if (i + elementLength < usedLength) {
+                    // Move to character after terminator
+                    i += elementLength + 1;
 
-                            // Get terminator
-                            char terminator = buffer[i + elementLength];
+                    // Reset length
+                    elementLength = 0;
 
-                            // Move to character after terminator
-                            i += elementLength + 1;
+                    // Continue here if necessary
+                    parseStart = i;
 
-                            // Reset length
-                            elementLength = 0;
+                    // If terminator is semicolon, we have a full
+                    // instruction.
+                    if (terminator == ';')
+                        return i;
 
-                            // Continue here if necessary
-                            parseStart = i;
+                    // Handle invalid terminator characters
+                    else if (terminator != ',')
+                        throw new GuacamoleServerException("Element terminator of instruction was not ';' nor ','");
 
-                            // If terminator is semicolon, we have a full
-                            // instruction.
-                            if (terminator == ';') {
+                }
 
-                                // Copy instruction data
-                                char[] instruction = new char[i];
-                                System.arraycopy(buffer, 0, instruction, 0, i);
+                // Otherwise, read more data
+                else
+                    break;
 
-                                // Update buffer
-                                usedLength -= i;
-                                parseStart = 0;
-                                System.arraycopy(buffer, i, buffer, 0, usedLength);
+            }
 
-                                return instruction;
+            // Otherwise, parse error
+            else
+                throw new GuacamoleServerException("Non-numeric character in element length.");
 
-                            }
+        }
 
-                            // Handle invalid terminator characters
-                            else if (terminator != ',')
-                                throw new GuacamoleServerException("Element terminator of instruction was not ';' nor ','");
+        // No complete instruction yet
+        return -1;
 
-                        }
+    }
 
-                        // Otherwise, read more data
-                        else
-                            break;
+    /**
+     * Reads more data into the buffer, first reclaiming the space occupied by
+     * previously-consumed instructions and, if necessary, growing the buffer.
+     * Unconsumed data is moved to the start of the buffer only when the free
+     * space remaining at the end of the buffer runs low, and thus at most once
+     * per buffer's worth of data, rather than once per instruction.
+     *
+     * @return
+     *     The number of characters read, or -1 if the end of the stream has
+     *     been reached.
+     *
+     * @throws IOException
+     *     If an error occurs while reading from the underlying Reader.
+     */
+    private int fill() throws IOException {
+
+        // Reclaim space used by consumed instructions once free space at
+        // the end of the buffer runs low
+        if (instructionStart > 0 && usedLength > buffer.length/2) {
+            usedLength -= instructionStart;
+            parseStart -= instructionStart;
+            System.arraycopy(buffer, instructionStart, buffer, 0, usedLength);
+            instructionStart = 0;
+        }
 
-                    }
+        // If past threshold, resize buffer before reading
+        if (usedLength > buffer.length/2) {
+            char[] biggerBuffer = new char[buffer.length*2];
+            System.arraycopy(buffer, 0, biggerBuffer, 0, usedLength);
+            buffer = biggerBuffer;
+        }
 
-                    // Otherwise, parse error
-                    else
-                        throw new GuacamoleServerException("Non-numeric character in element length.");
+        // Attempt to fill buffer
+        int numRead = input.read(buffer, usedLength, buffer.length - usedLength);
+        if (numRead == -1)
+            return -1;
 
-                }
+        // Update used length
+        usedLength += numRead;
+        return numRead;
 
-                // If past threshold, resize buffer before reading
-                if (usedLength > buffer.length/2) {
-                    char[] biggerBuffer = new char[buffer.length*2];
-                    System.arraycopy(buffer, 0, biggerBuffer, 0, usedLength);
-                    buffer = biggerBuffer;
-                }
+    }
 
-                // Attempt to fill buffer
-                int numRead = input.read(buffer, usedLength, buffer.length - usedLength);
-                if (numRead == -1)
+    /**
+     * Reads exactly one complete Guacamole instruction, returning a slice
+     * which references that instruction within the internal buffer of this
+     * ReaderGuacamoleReader. No instruction data is copied, and the same
+     * slice object is returned by each call. The contents of the returned
+     * slice are valid only until the next call to read(), readSlice(), or
+     * readInstruction(); callers which must retain the instruction data
+     * beyond that point must copy it.
+     *
+     * @return
+     *     A slice referencing the next complete instruction, or null if no
+     *     more instructions are available for reading.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while reading from the stream.
+     */
+    public GuacamoleInstructionSlice readSlice() throws GuacamoleException {
+
+        try {
+
+            // While we're blocking, or input is available
+            int instructionEnd;
+            while ((instructionEnd = parseInstruction()) == -1) {
+                if (fill() == -1)
                     return null;
+            }
 
-                // Update used length
-                usedLength += numRead;
+            // Point slice at parsed instruction
+            slice.set(buffer, instructionStart, instructionEnd - instructionStart);
 
-            } // End read loop
+            // Data up to end of instruction has now been consumed
+            instructionStart = instructionEnd;
+            return slice;
 
         }
         catch (SocketTimeoutException e) {
@@ -191,74 +265,36 @@ public class ReaderGuacamoleReader implements GuacamoleReader {
     }
 
     @Override
-    public GuacamoleInstruction readInstruction() throws GuacamoleException {
+    public char[] read() throws GuacamoleException {
 
         // Get instruction
-        char[] instructionBuffer = read();
+        GuacamoleInstructionSlice instructionSlice = readSlice();
 
         // If EOF, return EOF
-        if (instructionBuffer == null)
+        if (instructionSlice == null)
             return null;
 
-        // Start of element
-        int elementStart = 0;
-
-        // Build list of elements
-        Deque<String> elements = new LinkedList<String>();
-        while (elementStart < instructionBuffer.length) {
-
-            // Find end of length
-            int lengthEnd = -1;
-            for (int i=elementStart; i<instructionBuffer.length; i++) {
-                if (instructionBuffer[i] == '.') {
-                    lengthEnd = i;
-                    break;
-                }
-            }
-
-            // read() is required to return a complete instruction. If it does
-            // not, this is a severe internal error.
-            if (lengthEnd == -1)
-                throw new GuacamoleServerException("Read returned incomplete instruction.");
-
-            // Parse length
-            int length = Integer.parseInt(new String(
-                    instructionBuffer,
-                    elementStart,
-                    lengthEnd - elementStart
-            ));
-
-            // Parse element from just after period
-            elementStart = lengthEnd + 1;
-            String element = new String(
-                    instructionBuffer,
-                    elementStart,
-                    length
-            );
-
-            // Append element to list of elements
-            elements.addLast(element);
-
-            // Read terminator after element
-            elementStart += length;
-            char terminator = instructionBuffer[elementStart];
+        // Copy instruction data, as buffer will be reused
+        return instructionSlice.toCharArray();
 
-            // Continue reading instructions after terminator
-            elementStart++;
+    }
 
-            // If we've reached the end of the instruction
-            if (terminator == ';')
-                break;
+    @Override
+    public GuacamoleInstruction readInstruction() throws GuacamoleException {
 
-        }
+        // Get instruction
+        GuacamoleInstructionSlice instructionSlice = readSlice();
 
-        // Pull opcode off elements list
-        String opcode = elements.removeFirst();
+        // If EOF, return EOF
+        if (instructionSlice == null)
+            return null;
 
-        // Create instruction
-        GuacamoleInstruction instruction = new GuacamoleInstruction(
-                opcode,
-                elements.toArray(new String[elements.size()])
+        // Retain original instruction data, decoding arguments only as
+        // they are requested
+        GuacamoleInstruction instruction = new LazyGuacamoleInstruction(
+                instructionSlice.getBuffer(),
+                instructionSlice.getOffset(),
+                instructionSlice.getLength()
         );
 
         // Return parsed instruction
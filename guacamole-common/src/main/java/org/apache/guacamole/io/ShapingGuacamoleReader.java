@@ -0,0 +1,251 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.protocol.GuacamoleInstruction;
+
+/**
+ * GuacamoleReader which holds back the data of a tunnel as dictated by a
+ * TunnelShaper. Each instruction read is recorded by the shaper, and reads
+ * wait at frame boundaries while the shaper requires. While the next frame is
+ * held back, no data is reported as available, such that batches end with
+ * the frame already read rather than waiting for more.
+ */
+public class ShapingGuacamoleReader implements AwaitableGuacamoleReader {
+
+    /**
+     * The encoded form of the start of every "sync" instruction.
+     */
+    private static final String SYNC_PREFIX = "4.sync,";
+
+    /**
+     * The reader from which all instructions are read.
+     */
+    private final GuacamoleReader reader;
+
+    /**
+     * The shaper which decides when instructions may be read.
+     */
+    protected final TunnelShaper shaper;
+
+    /**
+     * A ShapingGuacamoleReader which also passes through UTF-8 data without
+     * decoding, for readers which support doing so.
+     */
+    private static class ByteShapingGuacamoleReader extends ShapingGuacamoleReader
+            implements ByteGuacamoleReader {
+
+        /**
+         * The reader from which all UTF-8 data is read.
+         */
+        private final ByteGuacamoleReader byteReader;
+
+        /**
+         * Creates a new ByteShapingGuacamoleReader which reads from the given
+         * reader as allowed by the given shaper.
+         *
+         * @param reader
+         *     The reader from which all instructions should be read.
+         *
+         * @param shaper
+         *     The shaper which decides when instructions may be read.
+         */
+        public ByteShapingGuacamoleReader(ByteGuacamoleReader reader,
+                TunnelShaper shaper) {
+            super(reader, shaper);
+            this.byteReader = reader;
+        }
+
+        @Override
+        public GuacamoleInstructionByteSlice readBytes()
+                throws GuacamoleException {
+
+            shaper.awaitRelease();
+
+            GuacamoleInstructionByteSlice slice = byteReader.readBytes();
+            if (slice != null)
+                shaper.record(slice.getLength(), isSync(slice.getBuffer(),
+                        slice.getOffset(), slice.getLength()));
+
+            return slice;
+
+        }
+
+    }
+
+    /**
+     * Creates a new ShapingGuacamoleReader which reads from the given reader
+     * as allowed by the given shaper.
+     *
+     * @param reader
+     *     The reader from which all instructions should be read.
+     *
+     * @param shaper
+     *     The shaper which decides when instructions may be read.
+     */
+    private ShapingGuacamoleReader(GuacamoleReader reader, TunnelShaper shaper) {
+        this.reader = reader;
+        this.shaper = shaper;
+    }
+
+    /**
+     * Returns a reader which reads from the given reader as allowed by the
+     * given shaper. If the given reader provides UTF-8 data, the returned
+     * reader will as well. If the shaper applies no limits, the given reader
+     * is returned unchanged.
+     *
+     * @param reader
+     *     The reader from which all instructions should be read.
+     *
+     * @param shaper
+     *     The shaper which decides when instructions may be read.
+     *
+     * @return
+     *     A reader which reads from the given reader as allowed by the given
+     *     shaper.
+     */
+    public static GuacamoleReader wrap(GuacamoleReader reader,
+            TunnelShaper shaper) {
+
+        if (!shaper.isActive())
+            return reader;
+
+        if (reader instanceof ByteGuacamoleReader)
+            return new ByteShapingGuacamoleReader((ByteGuacamoleReader) reader, shaper);
+
+        return new ShapingGuacamoleReader(reader, shaper);
+
+    }
+
+    /**
+     * Returns whether the given instruction data is a "sync" instruction,
+     * and thus ends a frame.
+     *
+     * @param buffer
+     *     The buffer containing the instruction.
+     *
+     * @param offset
+     *     The offset within the buffer at which the instruction begins.
+     *
+     * @param length
+     *     The length of the instruction.
+     *
+     * @return
+     *     true if the given instruction is a "sync" instruction, false
+     *     otherwise.
+     */
+    private static boolean isSync(char[] buffer, int offset, int length) {
+
+        if (length < SYNC_PREFIX.length())
+            return false;
+
+        for (int i = 0; i < SYNC_PREFIX.length(); i++) {
+            if (buffer[offset + i] != SYNC_PREFIX.charAt(i))
+                return false;
+        }
+
+        return true;
+
+    }
+
+    /**
+     * Returns whether the given UTF-8 instruction data is a "sync"
+     * instruction, and thus ends a frame.
+     *
+     * @param buffer
+     *     The buffer containing the instruction.
+     *
+     * @param offset
+     *     The offset within the buffer at which the instruction begins.
+     *
+     * @param length
+     *     The length of the instruction, in bytes.
+     *
+     * @return
+     *     true if the given instruction is a "sync" instruction, false
+     *     otherwise.
+     */
+    private static boolean isSync(byte[] buffer, int offset, int length) {
+
+        if (length < SYNC_PREFIX.length())
+            return false;
+
+        for (int i = 0; i < SYNC_PREFIX.length(); i++) {
+            if (buffer[offset + i] != SYNC_PREFIX.charAt(i))
+                return false;
+        }
+
+        return true;
+
+    }
+
+    @Override
+    public boolean available() throws GuacamoleException {
+        return !shaper.isThrottled() && reader.available();
+    }
+
+    @Override
+    public boolean awaitAvailable(long timeout, TimeUnit unit)
+            throws GuacamoleException {
+
+        // Nothing is available while the next frame is held back
+        if (shaper.isThrottled())
+            return false;
+
+        // Waiting is possible only if supported by the wrapped reader
+        if (reader instanceof AwaitableGuacamoleReader)
+            return ((AwaitableGuacamoleReader) reader).awaitAvailable(timeout, unit)
+                    && !shaper.isThrottled();
+
+        return reader.available();
+
+    }
+
+    @Override
+    public char[] read() throws GuacamoleException {
+
+        shaper.awaitRelease();
+
+        char[] instruction = reader.read();
+        if (instruction != null)
+            shaper.record(instruction.length,
+                    isSync(instruction, 0, instruction.length));
+
+        return instruction;
+
+    }
+
+    @Override
+    public GuacamoleInstruction readInstruction() throws GuacamoleException {
+
+        shaper.awaitRelease();
+
+        GuacamoleInstruction instruction = reader.readInstruction();
+        if (instruction != null)
+            shaper.record(instruction.toCharArray().length,
+                    "sync".equals(instruction.getOpcode()));
+
+        return instruction;
+
+    }
+
+}
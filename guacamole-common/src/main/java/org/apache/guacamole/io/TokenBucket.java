@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+/**
+ * A token bucket which limits the average rate at which data may be sent
+ * while allowing short bursts. Tokens, each representing one byte, accumulate
+ * at a fixed rate up to the capacity of the bucket and are consumed as data is
+ * sent. Data is never refused; consumption may leave the bucket in debt, and
+ * the caller is expected to wait out that debt before sending more. All
+ * functions are thread-safe, thus a single bucket may be shared by any number
+ * of tunnels.
+ */
+public class TokenBucket {
+
+    /**
+     * The number of nanoseconds in one second.
+     */
+    private static final double NANOS_PER_SECOND = 1000000000.0;
+
+    /**
+     * The rate at which tokens accumulate, in bytes per second.
+     */
+    private final long rate;
+
+    /**
+     * The maximum number of tokens which may accumulate, in bytes.
+     */
+    private final long capacity;
+
+    /**
+     * The number of tokens currently available. This value is negative if
+     * more data has been sent than the bucket allows.
+     */
+    private double tokens;
+
+    /**
+     * The value of System.nanoTime() when tokens were last added.
+     */
+    private long lastRefill = System.nanoTime();
+
+    /**
+     * Creates a new, full TokenBucket which accumulates tokens at the given
+     * rate, up to the given capacity.
+     *
+     * @param rate
+     *     The rate at which tokens accumulate, in bytes per second. This
+     *     value must be greater than zero.
+     *
+     * @param capacity
+     *     The maximum number of tokens which may accumulate, in bytes, and
+     *     thus the largest burst of data which may be sent without waiting.
+     */
+    public TokenBucket(long rate, long capacity) {
+        this.rate = rate;
+        this.capacity = capacity;
+        this.tokens = capacity;
+    }
+
+    /**
+     * Creates a new, full TokenBucket which accumulates tokens at the given
+     * rate, allowing bursts of up to one second of data.
+     *
+     * @param rate
+     *     The rate at which tokens accumulate, in bytes per second. This
+     *     value must be greater than zero.
+     */
+    public TokenBucket(long rate) {
+        this(rate, rate);
+    }
+
+    /**
+     * Adds any tokens which have accumulated since tokens were last added.
+     *
+     * @param now
+     *     The current value of System.nanoTime().
+     */
+    private void refill(long now) {
+
+        long elapsed = now - lastRefill;
+        if (elapsed <= 0)
+            return;
+
+        tokens = Math.min(capacity, tokens + elapsed * rate / NANOS_PER_SECOND);
+        lastRefill = now;
+
+    }
+
+    /**
+     * Returns the number of nanoseconds which must elapse before the current
+     * debt of this bucket, if any, is repaid.
+     *
+     * @return
+     *     The number of nanoseconds until this bucket is no longer in debt,
+     *     or zero if this bucket is not in debt.
+     */
+    private long getDebtNanos() {
+
+        if (tokens >= 0)
+            return 0;
+
+        return (long) (-tokens * NANOS_PER_SECOND / rate);
+
+    }
+
+    /**
+     * Consumes the given number of tokens, returning how long the caller
+     * should wait before sending further data.
+     *
+     * @param length
+     *     The number of bytes sent.
+     *
+     * @return
+     *     The number of nanoseconds which must elapse before this bucket is
+     *     no longer in debt, or zero if further data may be sent
+     *     immediately.
+     */
+    public synchronized long consume(long length) {
+        refill(System.nanoTime());
+        tokens -= length;
+        return getDebtNanos();
+    }
+
+    /**
+     * Returns how long the caller should wait before sending further data,
+     * without consuming any tokens.
+     *
+     * @return
+     *     The number of nanoseconds which must elapse before this bucket is
+     *     no longer in debt, or zero if further data may be sent
+     *     immediately.
+     */
+    public synchronized long getDelay() {
+        refill(System.nanoTime());
+        return getDebtNanos();
+    }
+
+    /**
+     * Returns the rate at which tokens accumulate.
+     *
+     * @return
+     *     The rate at which tokens accumulate, in bytes per second.
+     */
+    public long getRate() {
+        return rate;
+    }
+
+}
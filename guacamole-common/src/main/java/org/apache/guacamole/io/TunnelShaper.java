@@ -0,0 +1,251 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+/**
+ * Limits the rate at which data is sent to the client of a single tunnel.
+ * Each instruction read from guacd is charged against the token bucket of
+ * the tunnel and against the bucket shared by all tunnels of this node. Data
+ * is only ever held back at frame boundaries (following a "sync"
+ * instruction), such that the client always receives whole frames. While the
+ * next frame is held back, guacd sees that the client has not yet
+ * acknowledged the frames sent, and itself combines further updates into
+ * fewer, larger frames, just as it does for clients on slow networks.
+ * Instruction data is never dropped or rewritten, as each frame depends on
+ * the frames before it.
+ *
+ * The state of a TunnelShaper persists across each reader acquired from a
+ * tunnel, and is thread-safe, however only one thread is expected to read
+ * from a tunnel at any one time.
+ */
+public class TunnelShaper {
+
+    /**
+     * The longest time that any one frame may be held back, in milliseconds.
+     * Any further delay required by the bandwidth limits is carried over to
+     * the following frames, such that the client continues to receive data
+     * often enough that the connection is not considered lost.
+     */
+    public static final long MAX_THROTTLE_TIME = 1000;
+
+    /**
+     * The number of nanoseconds in one millisecond.
+     */
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    /**
+     * The number of nanoseconds in one second.
+     */
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    /**
+     * The bucket limiting the rate at which data may be sent to the client of
+     * this tunnel, or null if no such limit applies.
+     */
+    private final TokenBucket bucket;
+
+    /**
+     * The bucket limiting the rate at which data may be sent to the clients
+     * of all tunnels of this node, or null if no such limit applies.
+     */
+    private final TokenBucket nodeBucket;
+
+    /**
+     * The minimum amount of time between the start of consecutive frames, in
+     * nanoseconds, or zero if the frame rate is not limited.
+     */
+    private final long frameInterval;
+
+    /**
+     * The counters recording how often this tunnel has been held back.
+     */
+    private final TunnelThrottleCounters counters;
+
+    /**
+     * The value of System.nanoTime() at which the most recent frame was
+     * allowed to begin.
+     */
+    private long lastRelease = System.nanoTime();
+
+    /**
+     * The value of System.nanoTime() before which the next frame must not be
+     * read. This value is only meaningful if throttled is true.
+     */
+    private long releaseTime;
+
+    /**
+     * Whether the next frame is currently being held back.
+     */
+    private boolean throttled = false;
+
+    /**
+     * Creates a new TunnelShaper which applies the given limits to a single
+     * tunnel, in addition to the node-wide limit of the given settings.
+     *
+     * @param settings
+     *     The settings providing the node-wide limit and the counters which
+     *     should receive the totals of all tunnels.
+     *
+     * @param maxBandwidth
+     *     The maximum rate at which data may be sent to the client of the
+     *     tunnel, in bytes per second, or zero if no limit applies.
+     *
+     * @param maxFrameRate
+     *     The maximum number of frames per second which may be sent to the
+     *     client of the tunnel, or zero if no limit applies.
+     */
+    public TunnelShaper(GuacamoleShapingSettings settings, long maxBandwidth,
+            int maxFrameRate) {
+        this.bucket = maxBandwidth > 0 ? new TokenBucket(maxBandwidth) : null;
+        this.nodeBucket = settings.getNodeBucket();
+        this.frameInterval = maxFrameRate > 0 ? NANOS_PER_SECOND / maxFrameRate : 0;
+        this.counters = new TunnelThrottleCounters(settings.getTotals());
+    }
+
+    /**
+     * Creates a new TunnelShaper which applies the default per-tunnel limits
+     * of the given settings to a single tunnel, in addition to the node-wide
+     * limit of those settings.
+     *
+     * @param settings
+     *     The settings providing all limits and the counters which should
+     *     receive the totals of all tunnels.
+     */
+    public TunnelShaper(GuacamoleShapingSettings settings) {
+        this(settings, settings.getMaxBandwidth(), settings.getMaxFrameRate());
+    }
+
+    /**
+     * Returns whether any limit applies to the tunnel. If no limit applies,
+     * there is no need to shape the data of the tunnel at all.
+     *
+     * @return
+     *     true if any limit applies to the tunnel, false otherwise.
+     */
+    public boolean isActive() {
+        return bucket != null || nodeBucket != null || frameInterval != 0;
+    }
+
+    /**
+     * Returns the counters recording how often this tunnel has been held
+     * back.
+     *
+     * @return
+     *     The counters recording how often this tunnel has been held back.
+     */
+    public TunnelThrottleCounters getCounters() {
+        return counters;
+    }
+
+    /**
+     * Records that an instruction of the given length has been read. If the
+     * instruction ends a frame, the time at which the next frame may be read
+     * is determined from the current state of all limits.
+     *
+     * @param length
+     *     The length of the instruction read.
+     *
+     * @param endOfFrame
+     *     Whether the instruction read ends a frame.
+     */
+    public synchronized void record(int length, boolean endOfFrame) {
+
+        // Charge all buckets, noting the longest wait required
+        long delay = 0;
+        if (bucket != null)
+            delay = bucket.consume(length);
+        if (nodeBucket != null)
+            delay = Math.max(delay, nodeBucket.consume(length));
+
+        // Data is only held back between frames
+        if (!endOfFrame)
+            return;
+
+        counters.addFrame();
+        long now = System.nanoTime();
+
+        // Space frames evenly if frame rate is limited
+        if (frameInterval != 0)
+            delay = Math.max(delay, lastRelease + frameInterval - now);
+
+        // Hold back next frame for no longer than allowed
+        delay = Math.min(delay, MAX_THROTTLE_TIME * NANOS_PER_MILLI);
+        if (delay > 0) {
+            throttled = true;
+            releaseTime = now + delay;
+            lastRelease = releaseTime;
+        }
+        else
+            lastRelease = now;
+
+    }
+
+    /**
+     * Returns whether the next frame is currently being held back. Readers
+     * should report that no data is available while this is the case, such
+     * that the frames already read are sent without waiting.
+     *
+     * @return
+     *     true if the next frame is currently being held back, false
+     *     otherwise.
+     */
+    public synchronized boolean isThrottled() {
+
+        if (throttled && System.nanoTime() - releaseTime >= 0)
+            throttled = false;
+
+        return throttled;
+
+    }
+
+    /**
+     * Waits until the next frame may be read, if it is currently being held
+     * back. If the current thread is interrupted, this function returns
+     * immediately, leaving the interrupted status of the thread set.
+     */
+    public void awaitRelease() {
+
+        long remaining;
+        synchronized (this) {
+
+            if (!throttled)
+                return;
+
+            remaining = releaseTime - System.nanoTime();
+            throttled = false;
+
+        }
+
+        if (remaining <= 0)
+            return;
+
+        counters.addThrottle(remaining);
+
+        try {
+            Thread.sleep(remaining / NANOS_PER_MILLI,
+                    (int) (remaining % NANOS_PER_MILLI));
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+    }
+
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters tracking how often, and for how long, the data sent to the client
+ * of a tunnel was held back by a TunnelShaper. Counters may have a parent,
+ * such as the totals of a GuacamoleShapingSettings, in which case every update
+ * is also applied to the parent. All counters are thread-safe.
+ */
+public class TunnelThrottleCounters {
+
+    /**
+     * The number of nanoseconds in one millisecond.
+     */
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    /**
+     * The counters which should also receive every update to these counters,
+     * or null if there are no such counters.
+     */
+    private final TunnelThrottleCounters parent;
+
+    /**
+     * The number of frames sent to the client.
+     */
+    private final AtomicLong frames = new AtomicLong();
+
+    /**
+     * The number of frames which were held back before being read.
+     */
+    private final AtomicLong throttledFrames = new AtomicLong();
+
+    /**
+     * The total amount of time frames were held back, in nanoseconds.
+     */
+    private final AtomicLong throttledNanos = new AtomicLong();
+
+    /**
+     * Creates a new set of counters, all initially zero, which also apply
+     * every update to the given parent counters.
+     *
+     * @param parent
+     *     The counters which should also receive every update to these
+     *     counters, or null if there are no such counters.
+     */
+    public TunnelThrottleCounters(TunnelThrottleCounters parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * Creates a new set of counters, all initially zero.
+     */
+    public TunnelThrottleCounters() {
+        this(null);
+    }
+
+    /**
+     * Records that a frame was sent to the client.
+     */
+    public void addFrame() {
+
+        frames.incrementAndGet();
+
+        if (parent != null)
+            parent.addFrame();
+
+    }
+
+    /**
+     * Records that a frame was held back for the given amount of time before
+     * being read.
+     *
+     * @param nanos
+     *     The amount of time the frame was held back, in nanoseconds.
+     */
+    public void addThrottle(long nanos) {
+
+        throttledFrames.incrementAndGet();
+        throttledNanos.addAndGet(nanos);
+
+        if (parent != null)
+            parent.addThrottle(nanos);
+
+    }
+
+    /**
+     * Returns the number of frames sent to the client.
+     *
+     * @return
+     *     The number of frames sent to the client.
+     */
+    public long getFrames() {
+        return frames.get();
+    }
+
+    /**
+     * Returns the number of frames which were held back before being read.
+     *
+     * @return
+     *     The number of frames which were held back.
+     */
+    public long getThrottledFrames() {
+        return throttledFrames.get();
+    }
+
+    /**
+     * Returns the total amount of time frames were held back.
+     *
+     * @return
+     *     The total amount of time frames were held back, in milliseconds.
+     */
+    public long getThrottledTime() {
+        return throttledNanos.get() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public String toString() {
+        return getFrames() + " frames, " + getThrottledFrames()
+                + " throttled (" + getThrottledTime() + " ms total)";
+    }
+
+}
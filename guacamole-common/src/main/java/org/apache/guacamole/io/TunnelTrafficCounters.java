@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters tracking the amount of data which has passed through a tunnel in
+ * each direction. Outbound data is counted both as the amount of instruction
+ * data sent to the client and as the amount of data actually written after
+ * any compression, such that the savings due to compression can be observed.
+ * Counters may have a parent, such as the totals of a
+ * GuacamoleCompressionSettings, in which case every update is also applied to
+ * the parent. All counters are thread-safe.
+ */
+public class TunnelTrafficCounters {
+
+    /**
+     * The counters which should also receive every update to these counters,
+     * or null if there are no such counters.
+     */
+    private final TunnelTrafficCounters parent;
+
+    /**
+     * The number of bytes received from the client.
+     */
+    private final AtomicLong bytesIn = new AtomicLong();
+
+    /**
+     * The number of bytes of instruction data sent to the client, prior to
+     * compression.
+     */
+    private final AtomicLong bytesOut = new AtomicLong();
+
+    /**
+     * The number of bytes actually written to the client, after any
+     * compression.
+     */
+    private final AtomicLong bytesSent = new AtomicLong();
+
+    /**
+     * Creates a new set of counters, all initially zero, which also apply
+     * every update to the given parent counters.
+     *
+     * @param parent
+     *     The counters which should also receive every update to these
+     *     counters, or null if there are no such counters.
+     */
+    public TunnelTrafficCounters(TunnelTrafficCounters parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * Creates a new set of counters, all initially zero.
+     */
+    public TunnelTrafficCounters() {
+        this(null);
+    }
+
+    /**
+     * Records that the given number of bytes were received from the client.
+     *
+     * @param length
+     *     The number of bytes received.
+     */
+    public void addBytesIn(long length) {
+
+        bytesIn.addAndGet(length);
+
+        if (parent != null)
+            parent.addBytesIn(length);
+
+    }
+
+    /**
+     * Records that the given number of bytes of instruction data were sent to
+     * the client, requiring the given number of bytes to actually be written
+     * after compression. If the data was not compressed, both values will be
+     * equal.
+     *
+     * @param length
+     *     The number of bytes of instruction data sent.
+     *
+     * @param sentLength
+     *     The number of bytes actually written.
+     */
+    public void addBytesOut(long length, long sentLength) {
+
+        bytesOut.addAndGet(length);
+        bytesSent.addAndGet(sentLength);
+
+        if (parent != null)
+            parent.addBytesOut(length, sentLength);
+
+    }
+
+    /**
+     * Returns the number of bytes received from the client.
+     *
+     * @return
+     *     The number of bytes received from the client.
+     */
+    public long getBytesIn() {
+        return bytesIn.get();
+    }
+
+    /**
+     * Returns the number of bytes of instruction data sent to the client,
+     * prior to compression.
+     *
+     * @return
+     *     The number of bytes of instruction data sent to the client.
+     */
+    public long getBytesOut() {
+        return bytesOut.get();
+    }
+
+    /**
+     * Returns the number of bytes actually written to the client, after any
+     * compression.
+     *
+     * @return
+     *     The number of bytes actually written to the client.
+     */
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    /**
+     * Returns the percentage of outbound data which was saved through
+     * compression, relative to the amount of instruction data sent.
+     *
+     * @return
+     *     The percentage of outbound data saved through compression, or zero
+     *     if no data has been sent.
+     */
+    public int getSavings() {
+
+        long out = bytesOut.get();
+        if (out == 0)
+            return 0;
+
+        return (int) (100 - bytesSent.get() * 100 / out);
+
+    }
+
+    @Override
+    public String toString() {
+        return getBytesIn() + " bytes in, " + getBytesOut() + " bytes out ("
+                + getBytesSent() + " bytes sent, " + getSavings() + "% saved)";
+    }
+
+}
@@ -0,0 +1,328 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.Charset;
+import org.apache.guacamole.GuacamoleConnectionClosedException;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.GuacamoleServerException;
+import org.apache.guacamole.GuacamoleUpstreamTimeoutException;
+import org.apache.guacamole.protocol.GuacamoleInstruction;
+import org.apache.guacamole.protocol.LazyUTF8GuacamoleInstruction;
+
+/**
+ * A GuacamoleReader which wraps a standard Java InputStream, using that
+ * InputStream as a UTF-8 Guacamole instruction stream. Instructions are
+ * framed directly on the received bytes, skipping one UTF-8 sequence for each
+ * character counted by an element's length prefix, such that complete
+ * instructions can be returned as bytes without ever being decoded.
+ */
+public class UTF8GuacamoleReader implements ByteGuacamoleReader {
+
+    /**
+     * The character set of all Guacamole protocol data.
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Wrapped InputStream to be used for all input.
+     */
+    private final InputStream input;
+
+    /**
+     * The buffer holding all received, unparsed data.
+     */
+    private byte[] buffer = new byte[20480];
+
+    /**
+     * The number of bytes currently used within the data buffer. All other
+     * bytes within the buffer are free space available for future reads.
+     */
+    private int usedLength = 0;
+
+    /**
+     * The location within the received data buffer of the first byte which
+     * has not yet been returned as part of a complete instruction. All bytes
+     * before this location have been consumed and may be overwritten.
+     */
+    private int instructionStart = 0;
+
+    /**
+     * The location within the received data buffer that parsing should
+     * resume when more data is read.
+     */
+    private int parseStart = 0;
+
+    /**
+     * The value of the length prefix currently being parsed.
+     */
+    private int elementLength = 0;
+
+    /**
+     * The number of characters of the current element which have not yet
+     * been skipped, or -1 if a length prefix is currently being parsed.
+     */
+    private int elementRemaining = -1;
+
+    /**
+     * The slice returned by readBytes(). The same slice is reused for every
+     * instruction read, such that no allocation is needed per instruction.
+     */
+    private final GuacamoleInstructionByteSlice slice =
+            new GuacamoleInstructionByteSlice();
+
+    /**
+     * Creates a new UTF8GuacamoleReader which will use the given InputStream
+     * as the Guacamole instruction stream.
+     *
+     * @param input
+     *     The InputStream to use as the Guacamole instruction stream.
+     */
+    public UTF8GuacamoleReader(InputStream input) {
+        this.input = input;
+    }
+
+    @Override
+    public boolean available() throws GuacamoleException {
+        try {
+            return input.available() > 0 || usedLength != instructionStart;
+        }
+        catch (IOException e) {
+            throw new GuacamoleServerException(e);
+        }
+    }
+
+    /**
+     * Returns the length of the UTF-8 sequence beginning with the given lead
+     * byte.
+     *
+     * @param lead
+     *     The first byte of a UTF-8 sequence.
+     *
+     * @return
+     *     The number of bytes in the sequence, including the lead byte.
+     *
+     * @throws GuacamoleServerException
+     *     If the given byte cannot begin a UTF-8 sequence.
+     */
+    private static int getSequenceLength(byte lead)
+            throws GuacamoleServerException {
+
+        if ((lead & 0x80) == 0x00) return 1;
+        if ((lead & 0xE0) == 0xC0) return 2;
+        if ((lead & 0xF0) == 0xE0) return 3;
+        if ((lead & 0xF8) == 0xF0) return 4;
+
+        throw new GuacamoleServerException("Invalid UTF-8 in instruction element.");
+
+    }
+
+    /**
+     * Parses as much of the data within the buffer as possible, returning the
+     * location just after the end of the first complete instruction, if any.
+     * Parsing resumes exactly where the previous call left off, even within
+     * an element, such that no data is parsed twice.
+     *
+     * @return
+     *     The location within the buffer immediately after the terminating
+     *     semicolon of the next complete instruction, or -1 if no complete
+     *     instruction is yet available.
+     *
+     * @throws GuacamoleException
+     *     If the data within the buffer is not valid Guacamole protocol data.
+     */
+    private int parseInstruction() throws GuacamoleException {
+
+        int i = parseStart;
+        while (i < usedLength) {
+
+            // Parse length prefix
+            if (elementRemaining == -1) {
+
+                byte readByte = buffer[i++];
+
+                // If digit, update length
+                if (readByte >= '0' && readByte <= '9')
+                    elementLength = elementLength * 10 + readByte - '0';
+
+                // Element value begins after period
+                else if (readByte == '.') {
+                    elementRemaining = elementLength;
+                    elementLength = 0;
+                }
+
+                // Otherwise, parse error
+                else
+                    throw new GuacamoleServerException("Non-numeric character in element length.");
+
+            }
+
+            // Skip one character of element value, if entirely present
+            else if (elementRemaining > 0) {
+
+                int sequenceLength = getSequenceLength(buffer[i]);
+                if (i + sequenceLength > usedLength)
+                    break;
+
+                i += sequenceLength;
+                elementRemaining--;
+
+            }
+
+            // Handle terminator following element value
+            else {
+
+                byte terminator = buffer[i++];
+                elementRemaining = -1;
+
+                // If terminator is semicolon, we have a full instruction
+                if (terminator == ';') {
+                    parseStart = i;
+                    return i;
+                }
+
+                // Handle invalid terminator characters
+                else if (terminator != ',')
+                    throw new GuacamoleServerException("Element terminator of instruction was not ';' nor ','");
+
+            }
+
+        }
+
+        // No complete instruction yet
+        parseStart = i;
+        return -1;
+
+    }
+
+    /**
+     * Reads more data into the buffer, first reclaiming the space occupied by
+     * previously-consumed instructions and, if necessary, growing the buffer.
+     *
+     * @return
+     *     The number of bytes read, or -1 if the end of the stream has been
+     *     reached.
+     *
+     * @throws IOException
+     *     If an error occurs while reading from the underlying InputStream.
+     */
+    private int fill() throws IOException {
+
+        // Reclaim space used by consumed instructions once free space at
+        // the end of the buffer runs low
+        if (instructionStart > 0 && usedLength > buffer.length/2) {
+            usedLength -= instructionStart;
+            parseStart -= instructionStart;
+            System.arraycopy(buffer, instructionStart, buffer, 0, usedLength);
+            instructionStart = 0;
+        }
+
+        // If past threshold, resize buffer before reading
+        if (usedLength > buffer.length/2) {
+            byte[] biggerBuffer = new byte[buffer.length*2];
+            System.arraycopy(buffer, 0, biggerBuffer, 0, usedLength);
+            buffer = biggerBuffer;
+        }
+
+        // Attempt to fill buffer
+        int numRead = input.read(buffer, usedLength, buffer.length - usedLength);
+        if (numRead == -1)
+            return -1;
+
+        // Update used length
+        usedLength += numRead;
+        return numRead;
+
+    }
+
+    @Override
+    public GuacamoleInstructionByteSlice readBytes() throws GuacamoleException {
+
+        try {
+
+            // While we're blocking, or input is available
+            int instructionEnd;
+            while ((instructionEnd = parseInstruction()) == -1) {
+                if (fill() == -1)
+                    return null;
+            }
+
+            // Point slice at parsed instruction
+            slice.set(buffer, instructionStart, instructionEnd - instructionStart);
+
+            // Data up to end of instruction has now been consumed
+            instructionStart = instructionEnd;
+            return slice;
+
+        }
+        catch (SocketTimeoutException e) {
+            throw new GuacamoleUpstreamTimeoutException("Connection to guacd timed out.", e);
+        }
+        catch (SocketException e) {
+            throw new GuacamoleConnectionClosedException("Connection to guacd is closed.", e);
+        }
+        catch (IOException e) {
+            throw new GuacamoleServerException(e);
+        }
+
+    }
+
+    @Override
+    public char[] read() throws GuacamoleException {
+
+        // Get instruction
+        GuacamoleInstructionByteSlice instructionSlice = readBytes();
+
+        // If EOF, return EOF
+        if (instructionSlice == null)
+            return null;
+
+        // Decode instruction data
+        return new String(instructionSlice.getBuffer(),
+                instructionSlice.getOffset(), instructionSlice.getLength(),
+                UTF_8).toCharArray();
+
+    }
+
+    @Override
+    public GuacamoleInstruction readInstruction() throws GuacamoleException {
+
+        // Get instruction
+        GuacamoleInstructionByteSlice instructionSlice = readBytes();
+
+        // If EOF, return EOF
+        if (instructionSlice == null)
+            return null;
+
+        // Retain original instruction bytes, decoding arguments only as they
+        // are requested
+        return new LazyUTF8GuacamoleInstruction(
+                instructionSlice.getBuffer(),
+                instructionSlice.getOffset(),
+                instructionSlice.getLength()
+        );
+
+    }
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import org.apache.guacamole.GuacamoleConnectionClosedException;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.GuacamoleServerException;
+import org.apache.guacamole.GuacamoleUpstreamTimeoutException;
+import org.apache.guacamole.protocol.GuacamoleInstruction;
+import org.apache.guacamole.protocol.LazyUTF8GuacamoleInstruction;
+
+/**
+ * A GuacamoleWriter which wraps a standard Java OutputStream, using that
+ * OutputStream as a UTF-8 Guacamole instruction stream. Data which is
+ * already in UTF-8 form, including instructions read by a
+ * UTF8GuacamoleReader, is written without modification.
+ */
+public class UTF8GuacamoleWriter implements ByteGuacamoleWriter {
+
+    /**
+     * The size of the buffer used to hold encoded data, in bytes.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Wrapped OutputStream to be used for all output.
+     */
+    private final OutputStream output;
+
+    /**
+     * Encoder for character data written to this writer.
+     */
+    private final CharsetEncoder encoder = Charset.forName("UTF-8").newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    /**
+     * Buffer of encoded data awaiting transmission.
+     */
+    private final ByteBuffer encoded = ByteBuffer.allocate(BUFFER_SIZE);
+
+    /**
+     * Creates a new UTF8GuacamoleWriter which will use the given OutputStream
+     * as the Guacamole instruction stream.
+     *
+     * @param output
+     *     The OutputStream to use as the Guacamole instruction stream.
+     */
+    public UTF8GuacamoleWriter(OutputStream output) {
+        this.output = output;
+    }
+
+    @Override
+    public void writeBytes(byte[] chunk, int off, int len)
+            throws GuacamoleException {
+        try {
+            output.write(chunk, off, len);
+            output.flush();
+        }
+        catch (SocketTimeoutException e) {
+            throw new GuacamoleUpstreamTimeoutException("Connection to guacd timed out.", e);
+        }
+        catch (SocketException e) {
+            throw new GuacamoleConnectionClosedException("Connection to guacd is closed.", e);
+        }
+        catch (IOException e) {
+            throw new GuacamoleServerException(e);
+        }
+    }
+
+    @Override
+    public void write(char[] chunk, int off, int len) throws GuacamoleException {
+
+        CharBuffer chars = CharBuffer.wrap(chunk, off, len);
+        encoder.reset();
+
+        try {
+
+            // Encode and send data one buffer at a time
+            CoderResult result;
+            do {
+
+                result = encoder.encode(chars, encoded, true);
+                if (result.isError())
+                    result.throwException();
+
+                output.write(encoded.array(), 0, encoded.position());
+                encoded.clear();
+
+            } while (result.isOverflow());
+
+            output.flush();
+
+        }
+        catch (CharacterCodingException e) {
+            throw new GuacamoleServerException("Unable to encode instruction data.", e);
+        }
+        catch (SocketTimeoutException e) {
+            throw new GuacamoleUpstreamTimeoutException("Connection to guacd timed out.", e);
+        }
+        catch (SocketException e) {
+            throw new GuacamoleConnectionClosedException("Connection to guacd is closed.", e);
+        }
+        catch (IOException e) {
+            throw new GuacamoleServerException(e);
+        }
+
+        // Always leave buffer ready for next write
+        finally {
+            encoded.clear();
+        }
+
+    }
+
+    @Override
+    public void write(char[] chunk) throws GuacamoleException {
+        write(chunk, 0, chunk.length);
+    }
+
+    @Override
+    public void writeInstruction(GuacamoleInstruction instruction) throws GuacamoleException {
+
+        // Write instructions which retain their UTF-8 form directly
+        if (instruction instanceof LazyUTF8GuacamoleInstruction) {
+            byte[] raw = ((LazyUTF8GuacamoleInstruction) instruction).toByteArray();
+            writeBytes(raw, 0, raw.length);
+        }
+
+        else
+            write(instruction.toCharArray());
+
+    }
+
+}
@@ -77,7 +77,7 @@ public class WriterGuacamoleWriter implements GuacamoleWriter {
 
     @Override
     public void writeInstruction(GuacamoleInstruction instruction) throws GuacamoleException {
-        write(instruction.toString().toCharArray());
+        write(instruction.toCharArray());
     }
 
 }
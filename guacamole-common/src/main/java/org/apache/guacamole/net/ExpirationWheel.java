@@ -0,0 +1,403 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.net;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A hashed timer wheel which expires registered objects, such as HTTP tunnels
+ * or user sessions, once they have not been used for some period of time.
+ * Rather than periodically scanning every registered object, each object is
+ * placed within the bucket of the wheel corresponding to the tick at which it
+ * is next due to expire, and is examined only when the wheel reaches that
+ * bucket. If the object was used in the meantime, it is simply moved to the
+ * bucket corresponding to its new expiration time.
+ *
+ * The wheel also provides a coarse-grained clock, updated once per tick,
+ * which should be used to record the time of each use of a registered object.
+ * Reading this clock is far cheaper than System.currentTimeMillis(), and its
+ * resolution matches the resolution with which objects are expired.
+ */
+public class ExpirationWheel {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(ExpirationWheel.class);
+
+    /**
+     * The default duration of each tick of the wheel, in milliseconds.
+     */
+    public static final long DEFAULT_TICK_DURATION = 1000;
+
+    /**
+     * The default number of buckets within the wheel.
+     */
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    /**
+     * The wheel shared by default, or null if that wheel has not yet been
+     * created. This is volatile, rather than guarded by synchronization, as
+     * the default wheel is read each time a registered object is used.
+     */
+    private static volatile ExpirationWheel defaultWheel;
+
+    /**
+     * An object which can be expired by an ExpirationWheel.
+     */
+    public interface Expirable {
+
+        /**
+         * Returns the time at which this object should expire, relative to
+         * the clock of the ExpirationWheel with which it is registered. This
+         * function is invoked on the thread of the wheel whenever the
+         * previously-returned expiration time is reached, and MUST NOT
+         * block.
+         *
+         * @return
+         *     The time at which this object should expire, in milliseconds
+         *     since midnight January 1, 1970 UTC.
+         */
+        long getExpirationTime();
+
+        /**
+         * Called on the thread of the ExpirationWheel once this object has
+         * expired. The object will not be examined by the wheel again.
+         */
+        void expire();
+
+    }
+
+    /**
+     * The registration of a single Expirable object with an ExpirationWheel.
+     */
+    public final class Registration {
+
+        /**
+         * The registered object.
+         */
+        private final Expirable expirable;
+
+        /**
+         * The tick at which the registered object should next be examined.
+         * This is guarded by synchronization on this Registration.
+         */
+        private long targetTick;
+
+        /**
+         * Whether this registration has been cancelled. This is guarded by
+         * synchronization on this Registration.
+         */
+        private boolean cancelled = false;
+
+        /**
+         * Creates a new Registration of the given object.
+         *
+         * @param expirable
+         *     The object being registered.
+         */
+        private Registration(Expirable expirable) {
+            this.expirable = expirable;
+        }
+
+        /**
+         * Cancels this registration, such that the registered object will
+         * never be expired by the wheel.
+         */
+        public synchronized void cancel() {
+            cancelled = true;
+            getBucket(targetTick).remove(this);
+        }
+
+    }
+
+    /**
+     * The buckets of the wheel, each containing all registrations which
+     * should next be examined at any tick mapping to that bucket.
+     */
+    private final Set<Registration>[] buckets;
+
+    /**
+     * The duration of each tick, in milliseconds.
+     */
+    private final long tickDuration;
+
+    /**
+     * The time at which the wheel started, in milliseconds since midnight
+     * January 1, 1970 UTC. Tick zero corresponds to this time.
+     */
+    private final long startTime;
+
+    /**
+     * The most recent tick processed. This is only modified by the thread of
+     * the wheel.
+     */
+    private volatile long currentTick = 0;
+
+    /**
+     * The current time, as of the most recent tick, in milliseconds since
+     * midnight January 1, 1970 UTC.
+     */
+    private volatile long currentTime;
+
+    /**
+     * Executor which advances the wheel once per tick.
+     */
+    private final ScheduledExecutorService executor;
+
+    /**
+     * Creates a new ExpirationWheel having the given number of buckets, each
+     * corresponding to a tick of the given duration. The wheel immediately
+     * begins running on a new daemon thread having the given name.
+     *
+     * @param name
+     *     The name to assign to the thread of the wheel.
+     *
+     * @param tickDuration
+     *     The duration of each tick, in milliseconds. Objects are expired
+     *     within one tick of their expiration time.
+     *
+     * @param wheelSize
+     *     The number of buckets within the wheel. An object whose expiration
+     *     time is further in the future than one full revolution of the
+     *     wheel will be examined once per revolution until it is due.
+     */
+    @SuppressWarnings("unchecked")
+    public ExpirationWheel(final String name, long tickDuration, int wheelSize) {
+
+        this.tickDuration = tickDuration;
+        this.startTime = System.currentTimeMillis();
+        this.currentTime = startTime;
+
+        buckets = new Set[wheelSize];
+        for (int i = 0; i < wheelSize; i++)
+            buckets[i] = Collections.newSetFromMap(new ConcurrentHashMap<Registration, Boolean>());
+
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+
+        });
+
+        executor.scheduleAtFixedRate(new Runnable() {
+
+            @Override
+            public void run() {
+                advance();
+            }
+
+        }, tickDuration, tickDuration, TimeUnit.MILLISECONDS);
+
+    }
+
+    /**
+     * Returns the wheel shared by default, creating it if necessary. The
+     * default wheel uses DEFAULT_TICK_DURATION and DEFAULT_WHEEL_SIZE.
+     *
+     * @return
+     *     The default ExpirationWheel.
+     */
+    public static ExpirationWheel getDefault() {
+
+        ExpirationWheel wheel = defaultWheel;
+        if (wheel != null)
+            return wheel;
+
+        synchronized (ExpirationWheel.class) {
+            if (defaultWheel == null)
+                defaultWheel = new ExpirationWheel("guacamole-expiration",
+                        DEFAULT_TICK_DURATION, DEFAULT_WHEEL_SIZE);
+            return defaultWheel;
+        }
+
+    }
+
+    /**
+     * Replaces the wheel shared by default. The previous default wheel, if
+     * any, is not shut down.
+     *
+     * @param wheel
+     *     The ExpirationWheel to share, or null to create a new wheel having
+     *     the default settings when next requested.
+     */
+    public static synchronized void setDefault(ExpirationWheel wheel) {
+        defaultWheel = wheel;
+    }
+
+    /**
+     * Returns the current time as of the most recent tick of this wheel. The
+     * value returned may lag behind the true current time by up to one tick.
+     *
+     * @return
+     *     The current time as of the most recent tick, in milliseconds since
+     *     midnight January 1, 1970 UTC.
+     */
+    public long currentTimeMillis() {
+        return currentTime;
+    }
+
+    /**
+     * Returns the bucket containing registrations to be examined at the
+     * given tick.
+     *
+     * @param tick
+     *     The tick whose bucket should be returned.
+     *
+     * @return
+     *     The bucket corresponding to the given tick.
+     */
+    private Set<Registration> getBucket(long tick) {
+        return buckets[(int) (tick % buckets.length)];
+    }
+
+    /**
+     * Places the given registration within the bucket corresponding to the
+     * tick at which the given time is reached, or the next tick if that time
+     * has already been reached. The registration must not currently be
+     * within any bucket.
+     *
+     * @param registration
+     *     The registration to schedule.
+     *
+     * @param time
+     *     The time at which the registered object should next be examined.
+     */
+    private void schedule(Registration registration, long time) {
+
+        synchronized (registration) {
+
+            if (registration.cancelled)
+                return;
+
+            // Round up to the next whole tick, never scheduling for the
+            // current or any past tick
+            long tick = (time - startTime + tickDuration - 1) / tickDuration;
+            registration.targetTick = Math.max(tick, currentTick + 1);
+
+            getBucket(registration.targetTick).add(registration);
+
+        }
+
+    }
+
+    /**
+     * Registers the given object, such that the object is expired once its
+     * expiration time is reached.
+     *
+     * @param expirable
+     *     The object to register.
+     *
+     * @return
+     *     The registration of the given object, which must be cancelled if
+     *     the object is removed by other means.
+     */
+    public Registration register(Expirable expirable) {
+        Registration registration = new Registration(expirable);
+        schedule(registration, expirable.getExpirationTime());
+        return registration;
+    }
+
+    /**
+     * Examines every registration within the bucket of the given tick which
+     * is due at that tick, expiring or rescheduling each as appropriate.
+     *
+     * @param tick
+     *     The tick being processed.
+     */
+    private void processTick(long tick) {
+
+        for (Registration registration : getBucket(tick)) {
+
+            // Skip registrations due in a later revolution of the wheel. A
+            // registration scheduled concurrently with the processing of its
+            // target tick may be seen only on the following revolution, and
+            // is processed then.
+            synchronized (registration) {
+                if (registration.targetTick > tick)
+                    continue;
+                getBucket(tick).remove(registration);
+            }
+
+            try {
+
+                // Move to later bucket if used since last scheduled
+                long expirationTime = registration.expirable.getExpirationTime();
+                if (expirationTime > currentTime) {
+                    schedule(registration, expirationTime);
+                    continue;
+                }
+
+                // Otherwise, expire, unless cancelled in the meantime
+                synchronized (registration) {
+                    if (registration.cancelled)
+                        continue;
+                    registration.cancelled = true;
+                }
+
+                registration.expirable.expire();
+
+            }
+            catch (RuntimeException e) {
+                logger.error("Unexpected error while expiring object.", e);
+            }
+
+        }
+
+    }
+
+    /**
+     * Advances the wheel up to the current time, processing each tick
+     * reached. If the thread of the wheel was delayed, several ticks may be
+     * processed at once.
+     */
+    private void advance() {
+
+        long now = System.currentTimeMillis();
+        currentTime = now;
+
+        long targetTick = (now - startTime) / tickDuration;
+        while (currentTick < targetTick) {
+            currentTick++;
+            processTick(currentTick);
+        }
+
+    }
+
+    /**
+     * Stops this wheel. Registered objects will no longer be expired.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+}
@@ -0,0 +1,321 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.net;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.protocol.GuacamoleArgsCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A single Guacamole proxy server (guacd) to which a GuacamoleProxyRouter may
+ * route new connections. Each backend has a weight relative to the other
+ * backends of the same router, and tracks the number of sockets currently
+ * open to it, the number of times connecting to it has failed, and whether
+ * it is currently believed to be healthy.
+ */
+public class GuacamoleProxyBackend {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(GuacamoleProxyBackend.class);
+
+    /**
+     * The hostname of this guacd.
+     */
+    private final String hostname;
+
+    /**
+     * The port this guacd is listening on.
+     */
+    private final int port;
+
+    /**
+     * The weight of this guacd relative to other backends.
+     */
+    private final int weight;
+
+    /**
+     * The factory which creates new sockets to this guacd.
+     */
+    private final GuacamoleSocketFactory factory;
+
+    /**
+     * The pool of idle sockets to this guacd, or null if sockets are not
+     * pooled.
+     */
+    private final GuacamoleSocketPool pool;
+
+    /**
+     * The number of sockets currently open to this guacd, including sockets
+     * which are still completing the Guacamole protocol handshake.
+     */
+    private final AtomicInteger activeCount = new AtomicInteger();
+
+    /**
+     * The number of times connecting to this guacd has failed.
+     */
+    private final AtomicLong failureCount = new AtomicLong();
+
+    /**
+     * Whether this guacd is currently believed to be reachable.
+     */
+    private volatile boolean healthy = true;
+
+    /**
+     * GuacamoleSocket which is counted as active until closed.
+     */
+    private class TrackedGuacamoleSocket extends DelegatingGuacamoleSocket {
+
+        /**
+         * Whether this socket has been closed.
+         */
+        private final AtomicBoolean closed = new AtomicBoolean(false);
+
+        /**
+         * Wraps the given socket, which has already been counted as active.
+         *
+         * @param socket
+         *     The socket to wrap.
+         */
+        public TrackedGuacamoleSocket(GuacamoleSocket socket) {
+            super(socket);
+        }
+
+        @Override
+        public void close() throws GuacamoleException {
+            try {
+                super.close();
+            }
+            finally {
+                if (closed.compareAndSet(false, true))
+                    activeCount.decrementAndGet();
+            }
+        }
+
+    }
+
+    /**
+     * Creates a new GuacamoleProxyBackend representing the guacd at the
+     * given hostname and port.
+     *
+     * @param hostname
+     *     The hostname of the guacd.
+     *
+     * @param port
+     *     The port the guacd is listening on.
+     *
+     * @param weight
+     *     The weight of the guacd relative to other backends. A guacd having
+     *     twice the weight of another will be routed twice as many
+     *     connections.
+     *
+     * @param factory
+     *     The factory which creates new sockets to the guacd.
+     *
+     * @param pool
+     *     The pool of idle sockets to the guacd, which must use the given
+     *     factory, or null if sockets should not be pooled.
+     */
+    public GuacamoleProxyBackend(String hostname, int port, int weight,
+            GuacamoleSocketFactory factory, GuacamoleSocketPool pool) {
+        this.hostname = hostname;
+        this.port = port;
+        this.weight = weight;
+        this.factory = factory;
+        this.pool = pool;
+    }
+
+    /**
+     * Returns the hostname of this guacd.
+     *
+     * @return
+     *     The hostname of this guacd.
+     */
+    public String getHostname() {
+        return hostname;
+    }
+
+    /**
+     * Returns the port this guacd is listening on.
+     *
+     * @return
+     *     The port this guacd is listening on.
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Returns the weight of this guacd relative to other backends.
+     *
+     * @return
+     *     The weight of this guacd.
+     */
+    public int getWeight() {
+        return weight;
+    }
+
+    /**
+     * Returns the number of sockets currently open to this guacd, including
+     * sockets which are still completing the Guacamole protocol handshake.
+     *
+     * @return
+     *     The number of sockets currently open to this guacd.
+     */
+    public int getActiveCount() {
+        return activeCount.get();
+    }
+
+    /**
+     * Returns the total number of times connecting to this guacd has failed.
+     *
+     * @return
+     *     The number of failed attempts to connect to this guacd.
+     */
+    public long getFailureCount() {
+        return failureCount.get();
+    }
+
+    /**
+     * Returns whether this guacd is currently believed to be reachable. A
+     * guacd is considered unhealthy once connecting to it fails, and healthy
+     * again once connecting succeeds.
+     *
+     * @return
+     *     true if this guacd is believed to be reachable, false otherwise.
+     */
+    public boolean isHealthy() {
+        return healthy;
+    }
+
+    /**
+     * Returns the cache of protocol arguments for this guacd, if the
+     * Guacamole protocol handshake of sockets to this guacd may be
+     * pipelined.
+     *
+     * @return
+     *     The GuacamoleArgsCache of this guacd, or null if the handshake
+     *     should always wait for the "args" instruction.
+     */
+    public GuacamoleArgsCache getArgsCache() {
+        if (pool != null)
+            return pool.getArgsCache();
+        return null;
+    }
+
+    /**
+     * Updates the health of this guacd, logging any change.
+     *
+     * @param reachable
+     *     Whether this guacd was just found to be reachable.
+     */
+    private void setHealthy(boolean reachable) {
+
+        if (healthy == reachable)
+            return;
+
+        healthy = reachable;
+        if (reachable)
+            logger.info("guacd at {} is reachable again.", this);
+        else
+            logger.warn("guacd at {} is unreachable. Further connections "
+                    + "will be routed elsewhere if possible.", this);
+
+    }
+
+    /**
+     * Returns a new GuacamoleSocket which is connected to this guacd, but on
+     * which the Guacamole protocol handshake has not yet begun. The socket
+     * is counted as active until closed. If the connection fails, this
+     * guacd is marked as unhealthy.
+     *
+     * @return
+     *     A connected GuacamoleSocket.
+     *
+     * @throws GuacamoleException
+     *     If the connection to this guacd fails.
+     */
+    public GuacamoleSocket getSocket() throws GuacamoleException {
+
+        activeCount.incrementAndGet();
+
+        try {
+
+            GuacamoleSocket socket;
+            if (pool != null)
+                socket = pool.getSocket();
+            else
+                socket = factory.createSocket();
+
+            setHealthy(true);
+            return new TrackedGuacamoleSocket(socket);
+
+        }
+        catch (GuacamoleException e) {
+            activeCount.decrementAndGet();
+            failureCount.incrementAndGet();
+            setHealthy(false);
+            throw e;
+        }
+
+    }
+
+    /**
+     * Attempts to connect to this guacd, immediately closing the connection
+     * if successful, updating the health of this guacd accordingly.
+     *
+     * @return
+     *     true if this guacd is reachable, false otherwise.
+     */
+    public boolean probe() {
+
+        try {
+            factory.createSocket().close();
+            setHealthy(true);
+        }
+        catch (GuacamoleException e) {
+            logger.debug("Health probe of guacd at {} failed.", this, e);
+            setHealthy(false);
+        }
+
+        return healthy;
+
+    }
+
+    /**
+     * Stops any background activity related to this guacd, closing any idle
+     * sockets.
+     */
+    public void shutdown() {
+        if (pool != null)
+            pool.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return hostname + ":" + port;
+    }
+
+}
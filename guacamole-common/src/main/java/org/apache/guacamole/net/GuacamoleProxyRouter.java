@@ -0,0 +1,319 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.net;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.GuacamoleServerException;
+import org.apache.guacamole.protocol.ConfiguredGuacamoleSocket;
+import org.apache.guacamole.protocol.GuacamoleClientInformation;
+import org.apache.guacamole.protocol.GuacamoleConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Routes each new Guacamole connection to one of several Guacamole proxy
+ * servers (guacd), such that connections can be spread across multiple
+ * guacd instances. Each connection is routed to the healthy backend having
+ * the fewest open sockets relative to its weight. If connecting to that
+ * backend fails, the next least-loaded backend is tried, and so on. Backends
+ * which are unhealthy are probed periodically in the background, and are
+ * used again once reachable.
+ */
+public class GuacamoleProxyRouter {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(GuacamoleProxyRouter.class);
+
+    /**
+     * The default number of milliseconds between health probes of unhealthy
+     * backends.
+     */
+    public static final int DEFAULT_PROBE_INTERVAL = 5000;
+
+    /**
+     * All backends connections may be routed to.
+     */
+    private final List<GuacamoleProxyBackend> backends;
+
+    /**
+     * The index of the backend which should be considered first when
+     * choosing between equally-loaded backends, modulo the number of
+     * backends.
+     */
+    private final AtomicInteger nextBackend = new AtomicInteger();
+
+    /**
+     * Executor which runs periodic health probes.
+     */
+    private final ScheduledExecutorService probeExecutor;
+
+    /**
+     * Task which probes the health of all unhealthy backends.
+     */
+    private class ProbeTask implements Runnable {
+
+        @Override
+        public void run() {
+            for (GuacamoleProxyBackend backend : backends) {
+                if (!backend.isHealthy())
+                    backend.probe();
+            }
+        }
+
+    }
+
+    /**
+     * Creates a new GuacamoleProxyRouter which routes connections among the
+     * given backends, probing unhealthy backends at the given interval.
+     *
+     * @param backends
+     *     The backends that connections may be routed to. At least one
+     *     backend must be given.
+     *
+     * @param probeInterval
+     *     The number of milliseconds between health probes of unhealthy
+     *     backends.
+     */
+    public GuacamoleProxyRouter(List<GuacamoleProxyBackend> backends,
+            int probeInterval) {
+
+        this.backends = Collections.unmodifiableList(
+                new ArrayList<GuacamoleProxyBackend>(backends));
+
+        probeExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, "guacd-probe");
+                thread.setDaemon(true);
+                return thread;
+            }
+
+        });
+
+        probeExecutor.scheduleWithFixedDelay(new ProbeTask(), probeInterval,
+                probeInterval, TimeUnit.MILLISECONDS);
+
+    }
+
+    /**
+     * Returns all backends that connections may be routed to, along with
+     * their current load and health.
+     *
+     * @return
+     *     An unmodifiable list of all backends of this router.
+     */
+    public List<GuacamoleProxyBackend> getBackends() {
+        return backends;
+    }
+
+    /**
+     * Returns whether the first backend given is less loaded than the
+     * second, relative to their weights.
+     *
+     * @param a
+     *     The first backend to compare.
+     *
+     * @param b
+     *     The second backend to compare.
+     *
+     * @return
+     *     true if the first backend is strictly less loaded than the second,
+     *     false otherwise.
+     */
+    private static boolean isLessLoaded(GuacamoleProxyBackend a,
+            GuacamoleProxyBackend b) {
+
+        // Equivalent to comparing active / weight without division
+        return (long) a.getActiveCount() * b.getWeight()
+             < (long) b.getActiveCount() * a.getWeight();
+
+    }
+
+    /**
+     * Chooses the least-loaded backend which has not yet been tried,
+     * preferring healthy backends. Unhealthy backends are chosen only if all
+     * healthy backends have been tried.
+     *
+     * @param tried
+     *     The backends which have already been tried and should not be
+     *     chosen.
+     *
+     * @return
+     *     The chosen backend, or null if all backends have been tried.
+     */
+    private GuacamoleProxyBackend chooseBackend(Set<GuacamoleProxyBackend> tried) {
+
+        GuacamoleProxyBackend healthyChoice = null;
+        GuacamoleProxyBackend unhealthyChoice = null;
+
+        // Rotate starting point such that ties are distributed evenly
+        int count = backends.size();
+        int start = (nextBackend.getAndIncrement() & Integer.MAX_VALUE) % count;
+
+        for (int i = 0; i < count; i++) {
+
+            GuacamoleProxyBackend backend = backends.get((start + i) % count);
+            if (tried.contains(backend))
+                continue;
+
+            if (backend.isHealthy()) {
+                if (healthyChoice == null || isLessLoaded(backend, healthyChoice))
+                    healthyChoice = backend;
+            }
+            else if (unhealthyChoice == null || isLessLoaded(backend, unhealthyChoice))
+                unhealthyChoice = backend;
+
+        }
+
+        if (healthyChoice != null)
+            return healthyChoice;
+
+        return unhealthyChoice;
+
+    }
+
+    /**
+     * Completes the Guacamole protocol handshake over the given socket,
+     * which was obtained from the given backend, pipelining the handshake
+     * using the protocol arguments cached for that backend, if any. The
+     * given socket is closed if the handshake fails.
+     *
+     * @param backend
+     *     The backend the given socket is connected to.
+     *
+     * @param socket
+     *     The unconfigured socket to complete the handshake over.
+     *
+     * @param config
+     *     The configuration to use to complete the handshake.
+     *
+     * @param info
+     *     Information describing the Guacamole client connecting.
+     *
+     * @return
+     *     A configured GuacamoleSocket.
+     *
+     * @throws GuacamoleException
+     *     If the handshake fails.
+     */
+    private GuacamoleSocket configureSocket(GuacamoleProxyBackend backend,
+            GuacamoleSocket socket, GuacamoleConfiguration config,
+            GuacamoleClientInformation info) throws GuacamoleException {
+
+        try {
+            return new ConfiguredGuacamoleSocket(socket, config, info,
+                    backend.getArgsCache());
+        }
+        catch (GuacamoleException e) {
+
+            // Do not leave failed connection open
+            try {
+                socket.close();
+            }
+            catch (GuacamoleException closeError) {
+                logger.debug("Unable to close failed connection to guacd.", closeError);
+            }
+
+            throw e;
+
+        }
+
+    }
+
+    /**
+     * Connects to the least-loaded healthy guacd and completes the Guacamole
+     * protocol handshake using the given configuration and client
+     * information. If connecting to a guacd fails, each remaining guacd is
+     * tried in order of load. Failures during the handshake itself are not
+     * retried, as they are typically not specific to the guacd chosen.
+     *
+     * @param config
+     *     The configuration to use to complete the handshake.
+     *
+     * @param info
+     *     Information describing the Guacamole client connecting.
+     *
+     * @return
+     *     A configured GuacamoleSocket, connected to one of the backends of
+     *     this router.
+     *
+     * @throws GuacamoleException
+     *     If no guacd can be connected to, or if the handshake fails.
+     */
+    public GuacamoleSocket getSocket(GuacamoleConfiguration config,
+            GuacamoleClientInformation info) throws GuacamoleException {
+
+        Set<GuacamoleProxyBackend> tried = new HashSet<GuacamoleProxyBackend>();
+        GuacamoleException failure = null;
+
+        GuacamoleProxyBackend backend;
+        while ((backend = chooseBackend(tried)) != null) {
+
+            tried.add(backend);
+
+            // Try next backend if connection fails
+            GuacamoleSocket socket;
+            try {
+                socket = backend.getSocket();
+            }
+            catch (GuacamoleException e) {
+                logger.debug("Connection to guacd at {} failed.", backend, e);
+                failure = e;
+                continue;
+            }
+
+            return configureSocket(backend, socket, config, info);
+
+        }
+
+        // All backends failed
+        if (failure == null)
+            throw new GuacamoleServerException("No guacd backends are configured.");
+
+        throw failure;
+
+    }
+
+    /**
+     * Stops all health probes and closes all idle sockets of all backends.
+     */
+    public void shutdown() {
+
+        probeExecutor.shutdownNow();
+
+        for (GuacamoleProxyBackend backend : backends)
+            backend.shutdown();
+
+    }
+
+}
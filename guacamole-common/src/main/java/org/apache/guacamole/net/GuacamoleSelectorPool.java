@@ -0,0 +1,387 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.net;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.GuacamoleServerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A fixed-size pool of threads, each driving its own NIO Selector, which
+ * perform all I/O readiness checks for any number of registered channels.
+ * Channels are distributed across the threads of the pool in round-robin
+ * fashion, such that the number of threads required scales with the number of
+ * available processors rather than with the number of connections.
+ */
+public class GuacamoleSelectorPool {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(GuacamoleSelectorPool.class);
+
+    /**
+     * The pool shared by all channels which do not explicitly request a
+     * different pool, or null if that pool has not yet been created.
+     */
+    private static GuacamoleSelectorPool defaultPool;
+
+    /**
+     * Handler which is invoked whenever a registered channel is ready for the
+     * operations of interest. Handlers are invoked on the thread of the
+     * selector with which the channel is registered, and thus MUST NOT block.
+     */
+    public interface ChannelHandler {
+
+        /**
+         * Called when the channel associated with the given key is ready for
+         * one or more of the operations of interest.
+         *
+         * @param key
+         *     The SelectionKey of the ready channel.
+         */
+        void channelReady(SelectionKey key);
+
+    }
+
+    /**
+     * The registration of a single channel with a GuacamoleSelectorPool.
+     * Changes to the registration are applied asynchronously by the thread of
+     * the associated selector.
+     */
+    public static class Registration {
+
+        /**
+         * The selector thread with which the channel is registered.
+         */
+        private final SelectorThread thread;
+
+        /**
+         * The key resulting from the registration, or null if the channel has
+         * not yet been registered by the selector thread.
+         */
+        private SelectionKey key;
+
+        /**
+         * Whether this registration has been cancelled.
+         */
+        private volatile boolean cancelled = false;
+
+        /**
+         * Creates a new Registration associated with the given selector
+         * thread.
+         *
+         * @param thread
+         *     The selector thread with which the channel is registered.
+         */
+        private Registration(SelectorThread thread) {
+            this.thread = thread;
+        }
+
+        /**
+         * Sets the operations of interest for the registered channel,
+         * replacing any previously-set operations.
+         *
+         * @param ops
+         *     The operations of interest, as a bitwise OR of the
+         *     SelectionKey.OP_* constants.
+         */
+        public void setInterestOps(final int ops) {
+            thread.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        if (key != null && key.isValid())
+                            key.interestOps(ops);
+                    }
+                    catch (CancelledKeyException e) {
+                        // Ignore - channel is closing
+                    }
+                }
+
+            });
+        }
+
+        /**
+         * Cancels this registration, such that the associated handler will
+         * not be invoked again.
+         */
+        public void cancel() {
+            cancelled = true;
+            thread.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    if (key != null)
+                        key.cancel();
+                }
+
+            });
+        }
+
+    }
+
+    /**
+     * A thread which drives a single Selector, invoking the handlers of
+     * registered channels as they become ready.
+     */
+    private static class SelectorThread extends Thread {
+
+        /**
+         * The Selector driven by this thread.
+         */
+        private final Selector selector;
+
+        /**
+         * Tasks which must be run on this thread prior to the next select,
+         * such as registrations and interest changes.
+         */
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+        /**
+         * Whether this thread should stop.
+         */
+        private volatile boolean shutdown = false;
+
+        /**
+         * Creates a new SelectorThread having the given name.
+         *
+         * @param name
+         *     The name to assign to the thread.
+         *
+         * @throws IOException
+         *     If the Selector cannot be opened.
+         */
+        public SelectorThread(String name) throws IOException {
+            super(name);
+            setDaemon(true);
+            selector = Selector.open();
+        }
+
+        /**
+         * Runs the given task on this thread prior to the next select,
+         * waking the selector if necessary.
+         *
+         * @param task
+         *     The task to run.
+         */
+        public void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        /**
+         * Stops this thread, closing the associated Selector.
+         */
+        public void shutdown() {
+            shutdown = true;
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+
+            while (!shutdown) {
+
+                // Apply pending registrations and interest changes
+                Runnable task;
+                while ((task = tasks.poll()) != null)
+                    task.run();
+
+                try {
+                    selector.select();
+                }
+                catch (IOException e) {
+                    logger.error("Selector failed: {}", e.getMessage());
+                    logger.debug("I/O error while waiting for channel readiness.", e);
+                    break;
+                }
+
+                // Invoke handlers of all ready channels
+                Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+                while (selected.hasNext()) {
+
+                    SelectionKey key = selected.next();
+                    selected.remove();
+
+                    try {
+                        if (key.isValid())
+                            ((ChannelHandler) key.attachment()).channelReady(key);
+                    }
+                    catch (CancelledKeyException e) {
+                        // Ignore - channel is closing
+                    }
+                    catch (RuntimeException e) {
+                        logger.error("Unexpected error handling channel readiness.", e);
+                        key.cancel();
+                    }
+
+                }
+
+            }
+
+            try {
+                selector.close();
+            }
+            catch (IOException e) {
+                logger.debug("Unable to close selector.", e);
+            }
+
+        }
+
+    }
+
+    /**
+     * All threads within this pool.
+     */
+    private final SelectorThread[] threads;
+
+    /**
+     * The index of the thread which should receive the next registration,
+     * modulo the number of threads.
+     */
+    private final AtomicInteger nextThread = new AtomicInteger();
+
+    /**
+     * Creates a new GuacamoleSelectorPool containing the given number of
+     * selector threads.
+     *
+     * @param size
+     *     The number of selector threads to create.
+     *
+     * @throws GuacamoleException
+     *     If the selectors of the pool cannot be opened.
+     */
+    public GuacamoleSelectorPool(int size) throws GuacamoleException {
+
+        threads = new SelectorThread[size];
+
+        try {
+            for (int i = 0; i < size; i++) {
+                threads[i] = new SelectorThread("guacd-selector-" + i);
+                threads[i].start();
+            }
+        }
+        catch (IOException e) {
+            shutdown();
+            throw new GuacamoleServerException("Unable to open selector.", e);
+        }
+
+    }
+
+    /**
+     * Returns the pool shared by default across all channels, creating it if
+     * necessary. The default pool contains one selector thread per available
+     * processor.
+     *
+     * @return
+     *     The default GuacamoleSelectorPool.
+     *
+     * @throws GuacamoleException
+     *     If the default pool must be created but cannot be.
+     */
+    public static synchronized GuacamoleSelectorPool getDefault()
+            throws GuacamoleException {
+
+        if (defaultPool == null)
+            defaultPool = new GuacamoleSelectorPool(Runtime.getRuntime().availableProcessors());
+
+        return defaultPool;
+
+    }
+
+    /**
+     * Registers the given non-blocking channel with one of the selectors of
+     * this pool. The given handler will be invoked on the selector thread
+     * whenever the channel is ready for any of the given operations.
+     *
+     * @param channel
+     *     The channel to register. The channel MUST already be in
+     *     non-blocking mode.
+     *
+     * @param ops
+     *     The initial operations of interest, as a bitwise OR of the
+     *     SelectionKey.OP_* constants.
+     *
+     * @param handler
+     *     The handler to invoke when the channel is ready.
+     *
+     * @return
+     *     The registration of the given channel, which may be used to change
+     *     the operations of interest or to cancel the registration.
+     */
+    public Registration register(final SelectableChannel channel,
+            final int ops, final ChannelHandler handler) {
+
+        // Distribute channels across threads round-robin
+        int index = (nextThread.getAndIncrement() & Integer.MAX_VALUE) % threads.length;
+        final SelectorThread thread = threads[index];
+        final Registration registration = new Registration(thread);
+
+        // Register on selector thread, as registration blocks while the
+        // selector is selecting
+        thread.execute(new Runnable() {
+
+            @Override
+            public void run() {
+
+                // Do not register if cancelled before registration
+                if (registration.cancelled)
+                    return;
+
+                try {
+                    registration.key = channel.register(thread.selector, ops, handler);
+                }
+                catch (ClosedChannelException e) {
+                    logger.debug("Channel closed prior to registration.", e);
+                }
+
+            }
+
+        });
+
+        return registration;
+
+    }
+
+    /**
+     * Stops all threads within this pool. Registered channels are not closed,
+     * but will no longer receive readiness notifications.
+     */
+    public void shutdown() {
+        for (SelectorThread thread : threads) {
+            if (thread != null)
+                thread.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.net;
+
+import org.apache.guacamole.GuacamoleException;
+
+/**
+ * Factory which creates new, unconfigured GuacamoleSockets, each already
+ * connected to the same Guacamole proxy server.
+ */
+public interface GuacamoleSocketFactory {
+
+    /**
+     * Creates a new GuacamoleSocket which is connected to the Guacamole proxy
+     * server, but on which the Guacamole protocol handshake has not yet
+     * begun.
+     *
+     * @return
+     *     A new, connected GuacamoleSocket.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while connecting to the Guacamole proxy server.
+     */
+    GuacamoleSocket createSocket() throws GuacamoleException;
+
+}
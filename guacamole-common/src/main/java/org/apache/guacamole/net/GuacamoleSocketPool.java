@@ -0,0 +1,414 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.net;
+
+import java.util.Iterator;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.protocol.GuacamoleArgsCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of idle GuacamoleSockets which are already connected (and, for
+ * SSL/TLS, already past the SSL/TLS handshake) to a single Guacamole proxy
+ * server, such that the cost of establishing the connection is not paid at
+ * connect time. As the Guacamole protocol handshake binds a connection to
+ * guacd to a specific protocol, sockets are never returned to the pool once
+ * obtained; the pool instead creates a replacement in the background.
+ *
+ * Each time a socket is obtained, a replacement is created if fewer than the
+ * maximum number of idle sockets are pooled, thus the pool grows with demand.
+ * Idle sockets are discarded once they reach the maximum idle time, which
+ * should be shorter than the time guacd will wait for the "select"
+ * instruction, and are checked for health before use. At least the minimum
+ * number of idle sockets is maintained at all times.
+ *
+ * The pool also maintains a GuacamoleArgsCache for the Guacamole proxy server
+ * it connects to, allowing the handshake of sockets from this pool to be
+ * pipelined.
+ */
+public class GuacamoleSocketPool {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(GuacamoleSocketPool.class);
+
+    /**
+     * The default maximum amount of time that a socket may remain idle in
+     * the pool, in milliseconds. This is comfortably shorter than the 15
+     * seconds that guacd waits for the "select" instruction.
+     */
+    public static final int DEFAULT_MAX_IDLE_TIME = 10000;
+
+    /**
+     * The number of milliseconds between each check of the health and number
+     * of idle sockets.
+     */
+    private static final long MAINTENANCE_INTERVAL = 1000;
+
+    /**
+     * The number of threads which may establish new connections to guacd
+     * concurrently on behalf of the pool.
+     */
+    private static final int CONNECT_THREADS = 4;
+
+    /**
+     * The number of pools created thus far, used to name pool threads.
+     */
+    private static final AtomicInteger poolCount = new AtomicInteger();
+
+    /**
+     * An idle socket, along with the time it was established.
+     */
+    private static class IdleSocket {
+
+        /**
+         * The idle socket.
+         */
+        private final GuacamoleSocket socket;
+
+        /**
+         * The value of System.nanoTime() when the socket was established.
+         */
+        private final long created = System.nanoTime();
+
+        /**
+         * Creates a new IdleSocket wrapping the given newly-established
+         * socket.
+         *
+         * @param socket
+         *     The newly-established socket.
+         */
+        public IdleSocket(GuacamoleSocket socket) {
+            this.socket = socket;
+        }
+
+    }
+
+    /**
+     * The factory which creates each socket.
+     */
+    private final GuacamoleSocketFactory factory;
+
+    /**
+     * The minimum number of idle sockets to maintain.
+     */
+    private final int minIdle;
+
+    /**
+     * The maximum number of idle sockets to maintain.
+     */
+    private final int maxIdle;
+
+    /**
+     * The maximum amount of time that a socket may remain idle, in
+     * nanoseconds.
+     */
+    private final long maxIdleTime;
+
+    /**
+     * All idle sockets, oldest first.
+     */
+    private final BlockingDeque<IdleSocket> idle = new LinkedBlockingDeque<IdleSocket>();
+
+    /**
+     * The number of sockets currently being created.
+     */
+    private final AtomicInteger pending = new AtomicInteger();
+
+    /**
+     * The protocol arguments cached for the Guacamole proxy server that
+     * sockets from this pool connect to.
+     */
+    private final GuacamoleArgsCache argsCache = new GuacamoleArgsCache();
+
+    /**
+     * Executor which creates new sockets and performs periodic maintenance.
+     */
+    private final ScheduledExecutorService executor;
+
+    /**
+     * Whether this pool has been shut down.
+     */
+    private volatile boolean shutdown = false;
+
+    /**
+     * Task which creates a single new idle socket.
+     */
+    private class CreateSocketTask implements Runnable {
+
+        @Override
+        public void run() {
+
+            try {
+
+                if (shutdown)
+                    return;
+
+                IdleSocket socket = new IdleSocket(factory.createSocket());
+
+                // Add to pool only if still needed
+                if (!shutdown && idle.size() < maxIdle)
+                    idle.offerLast(socket);
+                else
+                    discard(socket);
+
+            }
+            catch (GuacamoleException e) {
+                logger.debug("Unable to pre-connect to guacd.", e);
+            }
+            finally {
+                pending.decrementAndGet();
+            }
+
+        }
+
+    }
+
+    /**
+     * Task which discards idle sockets which are no longer healthy and
+     * creates new sockets until the minimum number of idle sockets is
+     * reached.
+     */
+    private class MaintenanceTask implements Runnable {
+
+        @Override
+        public void run() {
+
+            // Discard any sockets which are too old or have been closed
+            Iterator<IdleSocket> sockets = idle.iterator();
+            while (sockets.hasNext()) {
+                IdleSocket socket = sockets.next();
+                if (!isHealthy(socket) && idle.remove(socket))
+                    discard(socket);
+            }
+
+            // Replace discarded sockets
+            createSockets(minIdle - idle.size() - pending.get());
+
+        }
+
+    }
+
+    /**
+     * Creates a new GuacamoleSocketPool which uses the given factory to
+     * create idle sockets, maintaining between the given minimum and maximum
+     * number of idle sockets.
+     *
+     * @param factory
+     *     The factory to use to create each socket.
+     *
+     * @param minIdle
+     *     The minimum number of idle sockets to maintain.
+     *
+     * @param maxIdle
+     *     The maximum number of idle sockets to maintain. If this is less
+     *     than the minimum, the minimum is used.
+     *
+     * @param maxIdleTime
+     *     The maximum amount of time that a socket may remain idle before
+     *     being discarded, in milliseconds.
+     */
+    public GuacamoleSocketPool(GuacamoleSocketFactory factory, int minIdle,
+            int maxIdle, int maxIdleTime) {
+
+        this.factory = factory;
+        this.minIdle = minIdle;
+        this.maxIdle = Math.max(minIdle, maxIdle);
+        this.maxIdleTime = TimeUnit.MILLISECONDS.toNanos(maxIdleTime);
+
+        // Name threads after this pool
+        final String threadName = "guacd-socket-pool-" + poolCount.incrementAndGet() + "-";
+        executor = new ScheduledThreadPoolExecutor(CONNECT_THREADS, new ThreadFactory() {
+
+            /**
+             * The number of threads created thus far, used to name each
+             * thread.
+             */
+            private final AtomicInteger threadCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, threadName + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+
+        });
+
+        executor.scheduleWithFixedDelay(new MaintenanceTask(), 0,
+                MAINTENANCE_INTERVAL, TimeUnit.MILLISECONDS);
+
+    }
+
+    /**
+     * Returns whether the given idle socket is still usable. A socket is
+     * usable if it has not exceeded the maximum idle time, is still open,
+     * and has not received any data. As guacd sends nothing prior to
+     * receiving "select", any received data indicates an error.
+     *
+     * @param socket
+     *     The idle socket to check.
+     *
+     * @return
+     *     true if the socket is usable, false otherwise.
+     */
+    private boolean isHealthy(IdleSocket socket) {
+
+        if (System.nanoTime() - socket.created > maxIdleTime)
+            return false;
+
+        if (!socket.socket.isOpen())
+            return false;
+
+        try {
+            return !socket.socket.getReader().available();
+        }
+        catch (GuacamoleException e) {
+            logger.debug("Idle connection to guacd failed.", e);
+            return false;
+        }
+
+    }
+
+    /**
+     * Closes the given idle socket, which must already have been removed
+     * from the pool.
+     *
+     * @param socket
+     *     The idle socket to close.
+     */
+    private void discard(IdleSocket socket) {
+        try {
+            socket.socket.close();
+        }
+        catch (GuacamoleException e) {
+            logger.debug("Unable to close idle connection to guacd.", e);
+        }
+    }
+
+    /**
+     * Creates the given number of new idle sockets in the background.
+     *
+     * @param count
+     *     The number of sockets to create. If zero or negative, no sockets
+     *     are created.
+     */
+    private void createSockets(int count) {
+
+        for (int i = 0; i < count && !shutdown; i++) {
+
+            pending.incrementAndGet();
+
+            try {
+                executor.execute(new CreateSocketTask());
+            }
+
+            // Pool was shut down concurrently
+            catch (RejectedExecutionException e) {
+                pending.decrementAndGet();
+                break;
+            }
+
+        }
+
+    }
+
+    /**
+     * Returns a new GuacamoleSocket which is connected to the Guacamole
+     * proxy server, but on which the Guacamole protocol handshake has not
+     * yet begun. A healthy idle socket is used if available, and a new
+     * socket is created otherwise. The socket returned is owned by the
+     * caller, and must be closed by the caller when no longer needed.
+     *
+     * @return
+     *     A connected GuacamoleSocket.
+     *
+     * @throws GuacamoleException
+     *     If no idle socket is available and a new socket cannot be created.
+     */
+    public GuacamoleSocket getSocket() throws GuacamoleException {
+
+        // Replace the socket about to be used, if within limits
+        if (idle.size() + pending.get() < maxIdle)
+            createSockets(1);
+
+        // Use most recently established healthy socket, if any
+        IdleSocket socket;
+        while ((socket = idle.pollLast()) != null) {
+
+            if (isHealthy(socket))
+                return socket.socket;
+
+            discard(socket);
+
+        }
+
+        // Otherwise, connect now
+        return factory.createSocket();
+
+    }
+
+    /**
+     * Returns the cache of protocol arguments for the Guacamole proxy server
+     * that sockets from this pool connect to.
+     *
+     * @return
+     *     The GuacamoleArgsCache of the Guacamole proxy server.
+     */
+    public GuacamoleArgsCache getArgsCache() {
+        return argsCache;
+    }
+
+    /**
+     * Returns the number of idle sockets currently within this pool.
+     *
+     * @return
+     *     The number of idle sockets.
+     */
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * Stops creating new sockets and closes all idle sockets. Sockets
+     * previously obtained from this pool are unaffected.
+     */
+    public void shutdown() {
+
+        shutdown = true;
+        executor.shutdownNow();
+
+        IdleSocket socket;
+        while ((socket = idle.pollFirst()) != null)
+            discard(socket);
+
+    }
+
+}
@@ -21,16 +21,14 @@ package org.apache.guacamole.net;
 
 
 import org.apache.guacamole.io.GuacamoleReader;
-import org.apache.guacamole.io.ReaderGuacamoleReader;
-import org.apache.guacamole.io.WriterGuacamoleWriter;
+import org.apache.guacamole.io.UTF8GuacamoleReader;
+import org.apache.guacamole.io.UTF8GuacamoleWriter;
 import org.apache.guacamole.io.GuacamoleWriter;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.Socket;
 
-import java.io.InputStreamReader;
 
-import java.io.OutputStreamWriter;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.net.SocketTimeoutException;
@@ -104,9 +102,12 @@ public class InetGuacamoleSocket implements GuacamoleSocket {
             // Set read timeout
             sock.setSoTimeout(SOCKET_TIMEOUT);
 
+            // Send each write immediately, as writes are already batched
+            sock.setTcpNoDelay(true);
+
             // On successful connect, retrieve I/O streams
-            reader = new ReaderGuacamoleReader(new InputStreamReader(sock.getInputStream(),   "UTF-8"));
-            writer = new WriterGuacamoleWriter(new OutputStreamWriter(sock.getOutputStream(), "UTF-8"));
+            reader = new UTF8GuacamoleReader(sock.getInputStream());
+            writer = new UTF8GuacamoleWriter(sock.getOutputStream());
 
         }
         catch (SocketTimeoutException e) {
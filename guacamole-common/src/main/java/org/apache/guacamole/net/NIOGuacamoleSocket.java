@@ -0,0 +1,699 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.net;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.GuacamoleServerException;
+import org.apache.guacamole.GuacamoleUpstreamTimeoutException;
+import org.apache.guacamole.io.AwaitableGuacamoleReader;
+import org.apache.guacamole.io.GuacamoleReader;
+import org.apache.guacamole.io.GuacamoleWriter;
+import org.apache.guacamole.io.UTF8GuacamoleReader;
+import org.apache.guacamole.io.UTF8GuacamoleWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Provides abstract socket-like access to a Guacamole connection over a given
+ * hostname and port using a non-blocking SocketChannel. Rather than dedicating
+ * a thread to each blocking socket read, all reads from guacd are performed by
+ * the threads of a shared GuacamoleSelectorPool, which copy received data
+ * into a bounded buffer. The GuacamoleReader of this socket consumes only that
+ * buffer, and reading from guacd is paused while the buffer is full, such
+ * that a slow consumer applies backpressure to guacd rather than causing
+ * unbounded buffering. Consumers which use notifyWhenReadable() are notified
+ * by the selector thread once data arrives, and thus need not hold a thread
+ * while guacd is idle.
+ */
+public class NIOGuacamoleSocket implements NotifyingGuacamoleSocket {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(NIOGuacamoleSocket.class);
+
+    /**
+     * The number of milliseconds to wait for data from guacd before timing
+     * out.
+     */
+    private static final int SOCKET_TIMEOUT = 15000;
+
+    /**
+     * The maximum number of bytes received from guacd which may be buffered
+     * before reading from guacd is paused.
+     */
+    private static final int INBOUND_BUFFER_SIZE = 65536;
+
+    /**
+     * The amount of free space which must be available within the inbound
+     * buffer before paused reading from guacd is resumed, in bytes.
+     */
+    private static final int RESUME_THRESHOLD = 8192;
+
+    /**
+     * The channel connected to guacd.
+     */
+    private final SocketChannel channel;
+
+    /**
+     * The registration of the channel with the selector pool.
+     */
+    private final GuacamoleSelectorPool.Registration registration;
+
+    /**
+     * Lock guarding all inbound state, notified whenever data is received,
+     * the end of stream is reached, or the socket is closed.
+     */
+    private final Object inboundLock = new Object();
+
+    /**
+     * Bytes received from guacd awaiting consumption by the reader, in write
+     * mode.
+     */
+    private final ByteBuffer inboundData = ByteBuffer.allocate(INBOUND_BUFFER_SIZE);
+
+    /**
+     * Whether the end of the stream from guacd has been reached.
+     */
+    private volatile boolean endOfStream = false;
+
+    /**
+     * The error which occurred while reading from guacd, if any.
+     */
+    private volatile IOException readError = null;
+
+    /**
+     * Whether reading from guacd is paused because the inbound character
+     * buffer is full.
+     */
+    private volatile boolean readPaused = false;
+
+    /**
+     * The listener to invoke once the reader of this socket becomes
+     * readable, or null if no consumer is waiting to be notified. Guarded by
+     * inboundLock.
+     */
+    private Runnable readableListener = null;
+
+    /**
+     * The wheel which enforces SOCKET_TIMEOUT while no consumer is blocked
+     * within read(), and whose clock records the time of the last activity.
+     */
+    private final ExpirationWheel wheel;
+
+    /**
+     * The registration of the read timeout of this socket with the wheel.
+     */
+    private volatile ExpirationWheel.Registration timeoutRegistration;
+
+    /**
+     * The time that data was most recently received from guacd or consumed
+     * by the reader, according to the clock of the wheel.
+     */
+    private volatile long lastActivity;
+
+    /**
+     * Lock guarding all outbound state, notified whenever the channel becomes
+     * writable or the socket is closed.
+     */
+    private final Object outboundLock = new Object();
+
+    /**
+     * Whether a writer is waiting for the channel to become writable.
+     */
+    private volatile boolean writeWaiting = false;
+
+    /**
+     * Lock guarding the calculation and submission of the operations of
+     * interest, ensuring that changes reach the selector in the order they
+     * were calculated. No other lock may be acquired while this lock is held.
+     */
+    private final Object interestLock = new Object();
+
+    /**
+     * Whether this socket has been closed.
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * The GuacamoleReader this socket should read from.
+     */
+    private final GuacamoleReader reader;
+
+    /**
+     * The GuacamoleWriter this socket should write to.
+     */
+    private final GuacamoleWriter writer;
+
+    /**
+     * InputStream which consumes the data received by the selector thread,
+     * blocking only while no data is buffered.
+     */
+    private class InboundStream extends InputStream {
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+
+            synchronized (inboundLock) {
+
+                // Wait for data, end of stream, or timeout
+                long deadline = System.currentTimeMillis() + SOCKET_TIMEOUT;
+                while (inboundData.position() == 0 && !endOfStream
+                        && readError == null && !closed) {
+
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0)
+                        throw new SocketTimeoutException("Read from guacd timed out.");
+
+                    try {
+                        inboundLock.wait(remaining);
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new SocketException("Read from guacd interrupted.");
+                    }
+
+                }
+
+                // Consume buffered data before reporting closure or errors
+                if (inboundData.position() == 0) {
+
+                    if (closed)
+                        throw new SocketException("Socket closed.");
+
+                    if (readError != null)
+                        throw readError;
+
+                    return -1;
+
+                }
+
+                // Copy as much buffered data as possible
+                inboundData.flip();
+                int count = Math.min(length, inboundData.remaining());
+                inboundData.get(buffer, offset, count);
+                inboundData.compact();
+                lastActivity = wheel.currentTimeMillis();
+
+                // Resume reading from guacd once space is available
+                if (readPaused && inboundData.remaining() >= RESUME_THRESHOLD) {
+                    readPaused = false;
+                    updateInterestOps();
+                }
+
+                return count;
+
+            }
+
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            if (read(single, 0, 1) == -1)
+                return -1;
+            return single[0] & 0xFF;
+        }
+
+        @Override
+        public int available() throws IOException {
+            synchronized (inboundLock) {
+                return inboundData.position();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            // Closure is handled by the socket
+        }
+
+    }
+
+    /**
+     * UTF8GuacamoleReader which reads from the inbound buffer, and which can
+     * wait for data to arrive within that buffer without polling.
+     */
+    private class InboundReader extends UTF8GuacamoleReader
+            implements AwaitableGuacamoleReader {
+
+        /**
+         * Creates a new InboundReader which reads from the inbound buffer.
+         */
+        public InboundReader() {
+            super(new InboundStream());
+        }
+
+        @Override
+        public boolean awaitAvailable(long timeout, TimeUnit unit)
+                throws GuacamoleException {
+
+            // Data may already be buffered within the reader itself
+            if (available())
+                return true;
+
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            synchronized (inboundLock) {
+
+                // Wait for data, end of stream, or timeout
+                while (inboundData.position() == 0 && !endOfStream
+                        && readError == null && !closed) {
+
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0)
+                        return false;
+
+                    try {
+                        TimeUnit.NANOSECONDS.timedWait(inboundLock, remaining);
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return false;
+                    }
+
+                }
+
+                return true;
+
+            }
+
+        }
+
+    }
+
+    /**
+     * OutputStream which writes data directly to the channel, waiting for the
+     * selector thread to report writability if the channel cannot immediately
+     * accept all data.
+     */
+    private class OutboundStream extends OutputStream {
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+
+            ByteBuffer data = ByteBuffer.wrap(buffer, offset, length);
+            while (data.hasRemaining()) {
+
+                if (channel.write(data) != 0)
+                    continue;
+
+                // Wait for channel to become writable
+                synchronized (outboundLock) {
+
+                    writeWaiting = true;
+                    updateInterestOps();
+
+                    long deadline = System.currentTimeMillis() + SOCKET_TIMEOUT;
+                    while (writeWaiting && !closed) {
+
+                        long remaining = deadline - System.currentTimeMillis();
+                        if (remaining <= 0)
+                            throw new SocketTimeoutException("Write to guacd timed out.");
+
+                        try {
+                            outboundLock.wait(remaining);
+                        }
+                        catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new SocketException("Write to guacd interrupted.");
+                        }
+
+                    }
+
+                    if (closed)
+                        throw new SocketException("Socket closed.");
+
+                }
+
+            }
+
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void close() throws IOException {
+            // Closure is handled by the socket
+        }
+
+    }
+
+    /**
+     * Times out reads from guacd on behalf of consumers which wait for data
+     * using notifyWhenReadable() rather than blocking within read(). Once
+     * nothing has been received from guacd nor consumed for SOCKET_TIMEOUT
+     * milliseconds, and no data is waiting to be consumed, all further reads
+     * fail as they would for a blocking read which timed out.
+     */
+    private class ReadTimeout implements ExpirationWheel.Expirable {
+
+        @Override
+        public long getExpirationTime() {
+            return lastActivity + SOCKET_TIMEOUT;
+        }
+
+        @Override
+        public void expire() {
+
+            Runnable listener;
+            synchronized (inboundLock) {
+
+                if (closed || endOfStream || readError != null)
+                    return;
+
+                // Data is waiting for a slow consumer; guacd is not at fault
+                if (inboundData.position() != 0) {
+                    lastActivity = wheel.currentTimeMillis();
+                    timeoutRegistration = wheel.register(this);
+                    return;
+                }
+
+                readError = new SocketTimeoutException("Read from guacd timed out.");
+                updateInterestOps();
+                inboundLock.notifyAll();
+
+                listener = readableListener;
+                readableListener = null;
+
+            }
+
+            if (listener != null)
+                notifyReadable(listener);
+
+        }
+
+    }
+
+    /**
+     * Handler invoked by the selector thread when the channel is readable or
+     * writable.
+     */
+    private class Handler implements GuacamoleSelectorPool.ChannelHandler {
+
+        @Override
+        public void channelReady(SelectionKey key) {
+
+            if (key.isReadable())
+                handleReadable();
+
+            if (key.isValid() && key.isWritable()) {
+                synchronized (outboundLock) {
+                    writeWaiting = false;
+                    outboundLock.notifyAll();
+                }
+                updateInterestOps();
+            }
+
+        }
+
+    }
+
+    /**
+     * Reads all currently-available data from the channel into the inbound
+     * buffer. This function is invoked only by the selector thread and does
+     * not block.
+     */
+    private void handleReadable() {
+
+        Runnable listener = null;
+        synchronized (inboundLock) {
+
+            try {
+
+                // Read until no more data or no more space
+                int length;
+                while (!readPaused && (length = channel.read(inboundData)) != 0) {
+
+                    // Stop reading at end of stream
+                    if (length == -1) {
+                        endOfStream = true;
+                        break;
+                    }
+
+                    lastActivity = wheel.currentTimeMillis();
+
+                    // Pause reading once no space remains
+                    if (!inboundData.hasRemaining()) {
+                        readPaused = true;
+                        updateInterestOps();
+                    }
+
+                }
+
+            }
+            catch (IOException e) {
+                readError = e;
+            }
+
+            // Stop reading entirely once the stream has ended
+            if (endOfStream || readError != null)
+                updateInterestOps();
+
+            inboundLock.notifyAll();
+
+            // Hand readiness to any waiting consumer
+            if (inboundData.position() != 0 || endOfStream || readError != null) {
+                listener = readableListener;
+                readableListener = null;
+            }
+
+        }
+
+        if (listener != null)
+            notifyReadable(listener);
+
+    }
+
+    /**
+     * Invokes the given listener, which was waiting for the reader of this
+     * socket to become readable. Any error thrown by the listener is logged
+     * rather than propagated, as the listener is invoked on behalf of the
+     * selector thread.
+     *
+     * @param listener
+     *     The listener to invoke.
+     */
+    private void notifyReadable(Runnable listener) {
+        try {
+            listener.run();
+        }
+        catch (RuntimeException e) {
+            logger.error("Unexpected error notifying reader of received data.", e);
+        }
+    }
+
+    @Override
+    public boolean notifyWhenReadable(Runnable listener) {
+
+        synchronized (inboundLock) {
+
+            // Readable if data is buffered, either within the inbound buffer
+            // or within the reader, or if reading can no longer block
+            try {
+                if (endOfStream || readError != null || closed || reader.available())
+                    return true;
+            }
+            catch (GuacamoleException e) {
+                logger.debug("Unable to check for buffered data.", e);
+                return true;
+            }
+
+            readableListener = listener;
+            return false;
+
+        }
+
+    }
+
+    /**
+     * Updates the operations of interest for the channel based on whether
+     * reading is paused and whether a writer is waiting for writability.
+     */
+    private void updateInterestOps() {
+
+        synchronized (interestLock) {
+
+            int ops = 0;
+
+            if (!readPaused && !endOfStream && readError == null)
+                ops |= SelectionKey.OP_READ;
+
+            if (writeWaiting)
+                ops |= SelectionKey.OP_WRITE;
+
+            registration.setInterestOps(ops);
+
+        }
+
+    }
+
+    /**
+     * Creates a new NIOGuacamoleSocket which reads and writes instructions
+     * to the Guacamole instruction stream of the Guacamole proxy server
+     * running at the given hostname and port, using the default
+     * GuacamoleSelectorPool.
+     *
+     * @param hostname
+     *     The hostname of the Guacamole proxy server to connect to.
+     *
+     * @param port
+     *     The port of the Guacamole proxy server to connect to.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while connecting to the Guacamole proxy server.
+     */
+    public NIOGuacamoleSocket(String hostname, int port) throws GuacamoleException {
+        this(hostname, port, GuacamoleSelectorPool.getDefault());
+    }
+
+    /**
+     * Creates a new NIOGuacamoleSocket which reads and writes instructions
+     * to the Guacamole instruction stream of the Guacamole proxy server
+     * running at the given hostname and port, using the given
+     * GuacamoleSelectorPool.
+     *
+     * @param hostname
+     *     The hostname of the Guacamole proxy server to connect to.
+     *
+     * @param port
+     *     The port of the Guacamole proxy server to connect to.
+     *
+     * @param pool
+     *     The GuacamoleSelectorPool which should perform all reads from
+     *     guacd.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while connecting to the Guacamole proxy server.
+     */
+    public NIOGuacamoleSocket(String hostname, int port,
+            GuacamoleSelectorPool pool) throws GuacamoleException {
+
+        try {
+
+            logger.debug("Connecting to guacd at {}:{}.", hostname, port);
+
+            // Get address
+            SocketAddress address = new InetSocketAddress(
+                    InetAddress.getByName(hostname),
+                    port
+            );
+
+            // Connect with timeout
+            channel = SocketChannel.open();
+            try {
+                channel.socket().connect(address, SOCKET_TIMEOUT);
+                channel.configureBlocking(false);
+
+                // Send each write immediately, as writes are already batched
+                channel.socket().setTcpNoDelay(true);
+            }
+            catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+
+        }
+        catch (SocketTimeoutException e) {
+            throw new GuacamoleUpstreamTimeoutException("Connection timed out.", e);
+        }
+        catch (IOException e) {
+            throw new GuacamoleServerException(e);
+        }
+
+        // Time out reads from guacd even while no thread is blocked reading
+        wheel = ExpirationWheel.getDefault();
+        lastActivity = wheel.currentTimeMillis();
+        timeoutRegistration = wheel.register(new ReadTimeout());
+
+        // Read from guacd using the selector pool
+        registration = pool.register(channel, SelectionKey.OP_READ, new Handler());
+
+        reader = new InboundReader();
+        writer = new UTF8GuacamoleWriter(new OutboundStream());
+
+    }
+
+    @Override
+    public void close() throws GuacamoleException {
+
+        logger.debug("Closing socket to guacd.");
+        closed = true;
+
+        // Stop reading and writing
+        registration.cancel();
+        timeoutRegistration.cancel();
+        try {
+            channel.close();
+        }
+        catch (IOException e) {
+            throw new GuacamoleServerException(e);
+        }
+
+        // Wake any blocked or waiting readers, and any blocked writers
+        finally {
+
+            Runnable listener;
+            synchronized (inboundLock) {
+                inboundLock.notifyAll();
+                listener = readableListener;
+                readableListener = null;
+            }
+
+            synchronized (outboundLock) {
+                outboundLock.notifyAll();
+            }
+
+            if (listener != null)
+                notifyReadable(listener);
+
+        }
+
+    }
+
+    @Override
+    public GuacamoleReader getReader() {
+        return reader;
+    }
+
+    @Override
+    public GuacamoleWriter getWriter() {
+        return writer;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed && channel.isOpen();
+    }
+
+}
@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.net;
+
+/**
+ * A GuacamoleSocket which can notify the consumer of its reader once data is
+ * available, such that the consumer need not hold a thread blocked within
+ * read() while guacd has nothing to send. Sockets which merely wrap another
+ * socket may implement this interface by delegation, considering themselves
+ * always readable if the wrapped socket does not implement it, in which case
+ * reads block as they would for any other GuacamoleSocket.
+ */
+public interface NotifyingGuacamoleSocket extends GuacamoleSocket {
+
+    /**
+     * Returns whether the reader of this socket can be read without waiting
+     * for guacd, because data has already been received, the end of the
+     * stream has been reached, an error has occurred, or the socket has been
+     * closed. If not, the given listener is retained and invoked exactly once
+     * as soon as this becomes the case, replacing any listener previously
+     * retained. Listeners are invoked on an arbitrary thread, such as the
+     * thread of a selector, and MUST NOT block.
+     *
+     * Data that has been received may not yet form a complete instruction,
+     * thus a read may still briefly wait for the remainder of an instruction
+     * which guacd is in the process of sending.
+     *
+     * @param listener
+     *     The listener to invoke once the reader of this socket is readable,
+     *     if it is not readable already.
+     *
+     * @return
+     *     true if the reader of this socket is readable now, in which case
+     *     the listener is not retained and will not be invoked, false
+     *     otherwise.
+     */
+    boolean notifyWhenReadable(Runnable listener);
+
+}
@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.net;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.GuacamoleServerBusyException;
+
+/**
+ * TunnelPumpExecutor implementation which runs pumps using a pool of platform
+ * threads, optionally bounded. Idle threads are retained for a short time for
+ * reuse by subsequent pumps, avoiding the cost of thread creation at connect
+ * time. Pumps are never queued, as a queued pump would leave a connected
+ * tunnel silently stalled; if the pool is bounded, pumps received while all
+ * threads are busy are rejected.
+ */
+public class PooledTunnelPumpExecutor implements TunnelPumpExecutor {
+
+    /**
+     * The number of seconds that an idle pump thread is retained before
+     * being allowed to terminate.
+     */
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    /**
+     * The stack size to request for pump threads, in bytes. Pumps maintain
+     * very little state on the stack, thus the default stack size of the JVM
+     * is unnecessarily large.
+     */
+    private static final long PUMP_STACK_SIZE = 256 * 1024;
+
+    /**
+     * The pool of threads running all pumps.
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * ThreadFactory which creates named daemon threads with a reduced stack
+     * size.
+     */
+    private static class PumpThreadFactory implements ThreadFactory {
+
+        /**
+         * The number of threads created thus far, used to name each thread.
+         */
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(null, task,
+                    "guacamole-tunnel-pump-" + threadCount.incrementAndGet(),
+                    PUMP_STACK_SIZE);
+            thread.setDaemon(true);
+            return thread;
+        }
+
+    }
+
+    /**
+     * Creates a new PooledTunnelPumpExecutor which runs at most the given
+     * number of pumps concurrently.
+     *
+     * @param maxThreads
+     *     The maximum number of pumps which may run concurrently, or zero if
+     *     the number of concurrent pumps should not be limited.
+     */
+    public PooledTunnelPumpExecutor(int maxThreads) {
+
+        // Hand pumps directly to threads, creating threads as needed up to
+        // the limit (if any)
+        executor = new ThreadPoolExecutor(0,
+                maxThreads > 0 ? maxThreads : Integer.MAX_VALUE,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(),
+                new PumpThreadFactory());
+
+    }
+
+    @Override
+    public void execute(Runnable pump) throws GuacamoleException {
+
+        try {
+            executor.execute(pump);
+        }
+        catch (RejectedExecutionException e) {
+            throw new GuacamoleServerBusyException("Too many tunnels are active.", e);
+        }
+
+    }
+
+    @Override
+    public int getActivePumps() {
+        return executor.getActiveCount();
+    }
+
+    @Override
+    public int getQueuedPumps() {
+        // Pumps are never queued
+        return 0;
+    }
+
+    @Override
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+}
@@ -21,20 +21,19 @@ package org.apache.guacamole.net;
 
 
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketAddress;
 import javax.net.SocketFactory;
+import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
 import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.GuacamoleServerException;
 import org.apache.guacamole.io.GuacamoleReader;
 import org.apache.guacamole.io.GuacamoleWriter;
-import org.apache.guacamole.io.ReaderGuacamoleReader;
-import org.apache.guacamole.io.WriterGuacamoleWriter;
+import org.apache.guacamole.io.UTF8GuacamoleReader;
+import org.apache.guacamole.io.UTF8GuacamoleWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -106,9 +105,16 @@ public class SSLGuacamoleSocket implements GuacamoleSocket {
             // Set read timeout
             sock.setSoTimeout(SOCKET_TIMEOUT);
 
+            // Send each write immediately, as writes are already batched
+            sock.setTcpNoDelay(true);
+
+            // Complete SSL/TLS handshake now rather than upon first write,
+            // such that the socket is fully established once constructed
+            ((SSLSocket) sock).startHandshake();
+
             // On successful connect, retrieve I/O streams
-            reader = new ReaderGuacamoleReader(new InputStreamReader(sock.getInputStream(),   "UTF-8"));
-            writer = new WriterGuacamoleWriter(new OutputStreamWriter(sock.getOutputStream(), "UTF-8"));
+            reader = new UTF8GuacamoleReader(sock.getInputStream());
+            writer = new UTF8GuacamoleWriter(sock.getOutputStream());
 
         }
         catch (IOException e) {
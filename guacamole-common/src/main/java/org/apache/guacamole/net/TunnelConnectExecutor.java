@@ -0,0 +1,354 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.net;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.GuacamoleServerBusyException;
+import org.apache.guacamole.GuacamoleServerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executor which creates tunnels asynchronously using a bounded pool of
+ * threads, such that the threads of the servlet container are not blocked
+ * while authentication, connection routing and the guacd handshake take
+ * place. Connection attempts received while all threads are busy are queued
+ * up to a given limit, and further attempts are rejected with a
+ * GuacamoleServerBusyException, shedding load rather than allowing a backlog
+ * of connection attempts to grow without bound.
+ */
+public class TunnelConnectExecutor {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(TunnelConnectExecutor.class);
+
+    /**
+     * The maximum number of tunnels which may be created concurrently by the
+     * default executor.
+     */
+    public static final int DEFAULT_MAX_THREADS = 32;
+
+    /**
+     * The maximum number of connection attempts which may wait for a thread
+     * within the default executor.
+     */
+    public static final int DEFAULT_MAX_QUEUED = 256;
+
+    /**
+     * The number of seconds that an idle connect thread is retained before
+     * being allowed to terminate.
+     */
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    /**
+     * The shared executor, or null if no executor has yet been set or
+     * created.
+     */
+    private static TunnelConnectExecutor defaultExecutor;
+
+    /**
+     * The number of executors created thus far, used to name the threads of
+     * each executor.
+     */
+    private static final AtomicInteger executorCount = new AtomicInteger();
+
+    /**
+     * The pool of threads creating all tunnels.
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * A task which creates a single tunnel, such as by authenticating the
+     * user and connecting to guacd. Tasks are run on the threads of a
+     * TunnelConnectExecutor and may block.
+     */
+    public interface ConnectTask {
+
+        /**
+         * Creates and returns a new tunnel.
+         *
+         * @return
+         *     A connected tunnel, or null if no such tunnel exists.
+         *
+         * @throws GuacamoleException
+         *     If an error occurs while creating the tunnel, or if access to
+         *     the tunnel is denied.
+         */
+        GuacamoleTunnel connect() throws GuacamoleException;
+
+    }
+
+    /**
+     * Callback which is invoked once a tunnel requested via
+     * TunnelConnectExecutor.connect() has been created, or once its creation
+     * has failed. Callbacks are invoked on the thread which created the
+     * tunnel, and should not block.
+     */
+    public interface ConnectCallback {
+
+        /**
+         * Called when the requested tunnel has been created.
+         *
+         * @param tunnel
+         *     The connected tunnel, or null if no such tunnel exists.
+         */
+        void tunnelConnected(GuacamoleTunnel tunnel);
+
+        /**
+         * Called when the requested tunnel could not be created.
+         *
+         * @param e
+         *     The error which prevented the tunnel from being created.
+         */
+        void tunnelFailed(GuacamoleException e);
+
+    }
+
+    /**
+     * Creates a new TunnelConnectExecutor which creates at most the given
+     * number of tunnels concurrently.
+     *
+     * @param maxThreads
+     *     The maximum number of tunnels which may be created concurrently.
+     *
+     * @param maxQueued
+     *     The maximum number of connection attempts which may wait for a
+     *     thread to become available. If zero, attempts received while all
+     *     threads are busy are rejected immediately.
+     */
+    public TunnelConnectExecutor(int maxThreads, int maxQueued) {
+
+        // Hand attempts directly to threads if no queueing is allowed
+        BlockingQueue<Runnable> queue;
+        if (maxQueued == 0)
+            queue = new SynchronousQueue<Runnable>();
+        else
+            queue = new LinkedBlockingQueue<Runnable>(maxQueued);
+
+        final int executorIndex = executorCount.incrementAndGet();
+        executor = new ThreadPoolExecutor(maxThreads, maxThreads,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, queue,
+                new ThreadFactory() {
+
+                    /**
+                     * The number of threads created thus far, used to name
+                     * each thread.
+                     */
+                    private final AtomicInteger threadCount = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable task) {
+                        Thread thread = new Thread(task, "guacamole-tunnel-connect-"
+                                + executorIndex + "-" + threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+
+                });
+
+        executor.allowCoreThreadTimeOut(true);
+
+    }
+
+    /**
+     * Returns the TunnelConnectExecutor shared by tunnel implementations
+     * which do not provide their own. If no executor has been set via
+     * setDefault(), an executor is created using DEFAULT_MAX_THREADS and
+     * DEFAULT_MAX_QUEUED.
+     *
+     * @return
+     *     The shared TunnelConnectExecutor.
+     */
+    public static synchronized TunnelConnectExecutor getDefault() {
+
+        if (defaultExecutor == null)
+            defaultExecutor = new TunnelConnectExecutor(DEFAULT_MAX_THREADS,
+                    DEFAULT_MAX_QUEUED);
+
+        return defaultExecutor;
+
+    }
+
+    /**
+     * Replaces the shared TunnelConnectExecutor. Any previous executor is not
+     * shut down, and will continue to complete the connection attempts
+     * already given to it.
+     *
+     * @param executor
+     *     The TunnelConnectExecutor to share, or null to revert to an
+     *     automatically-created executor.
+     */
+    public static synchronized void setDefault(TunnelConnectExecutor executor) {
+        defaultExecutor = executor;
+    }
+
+    /**
+     * Creates a tunnel asynchronously using the given task, invoking the
+     * given callback once the tunnel has been created or creation has failed.
+     * This function does not block.
+     *
+     * @param task
+     *     The task which creates the tunnel.
+     *
+     * @param callback
+     *     The callback to invoke with the result of the task.
+     *
+     * @throws GuacamoleException
+     *     If the connection attempt cannot be run nor queued, such as when
+     *     the queue of pending attempts is full, or the executor has been
+     *     shut down. The callback will not be invoked in this case.
+     */
+    public void connect(final ConnectTask task, final ConnectCallback callback)
+            throws GuacamoleException {
+
+        try {
+            executor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+
+                    GuacamoleTunnel tunnel;
+                    try {
+                        tunnel = task.connect();
+                    }
+                    catch (GuacamoleException e) {
+                        callback.tunnelFailed(e);
+                        return;
+                    }
+                    catch (RuntimeException e) {
+                        logger.debug("Unexpected error while creating tunnel.", e);
+                        callback.tunnelFailed(new GuacamoleServerException(
+                                "Unexpected error while creating tunnel.", e));
+                        return;
+                    }
+
+                    callback.tunnelConnected(tunnel);
+
+                }
+
+            });
+        }
+        catch (RejectedExecutionException e) {
+            throw new GuacamoleServerBusyException("Too many tunnels are being created.", e);
+        }
+
+    }
+
+    /**
+     * Creates a tunnel using the given task, waiting for the task to
+     * complete. The task is run within this executor, and is thus subject to
+     * the same limits as asynchronous connection attempts. This function is
+     * intended for transports which cannot complete their response
+     * asynchronously.
+     *
+     * @param task
+     *     The task which creates the tunnel.
+     *
+     * @return
+     *     The tunnel returned by the task, which may be null if no such
+     *     tunnel exists.
+     *
+     * @throws GuacamoleException
+     *     If the task fails, if the connection attempt cannot be run nor
+     *     queued, or if the current thread is interrupted while waiting.
+     */
+    public GuacamoleTunnel connect(final ConnectTask task)
+            throws GuacamoleException {
+
+        Future<GuacamoleTunnel> result;
+        try {
+            result = executor.submit(new Callable<GuacamoleTunnel>() {
+
+                @Override
+                public GuacamoleTunnel call() throws GuacamoleException {
+                    return task.connect();
+                }
+
+            });
+        }
+        catch (RejectedExecutionException e) {
+            throw new GuacamoleServerBusyException("Too many tunnels are being created.", e);
+        }
+
+        try {
+            return result.get();
+        }
+        catch (InterruptedException e) {
+            result.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new GuacamoleServerException("Interrupted while creating tunnel.", e);
+        }
+        catch (ExecutionException e) {
+
+            Throwable cause = e.getCause();
+            if (cause instanceof GuacamoleException)
+                throw (GuacamoleException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+
+            throw new GuacamoleServerException("Unexpected error while creating tunnel.", cause);
+
+        }
+
+    }
+
+    /**
+     * Returns the number of tunnels which are currently being created.
+     *
+     * @return
+     *     The number of tunnels which are currently being created.
+     */
+    public int getActiveConnects() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * Returns the number of connection attempts which have been accepted but
+     * are waiting for a thread to become available.
+     *
+     * @return
+     *     The number of connection attempts which are waiting to run.
+     */
+    public int getQueuedConnects() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Stops accepting new connection attempts. Attempts which have already
+     * been accepted are allowed to complete.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+}
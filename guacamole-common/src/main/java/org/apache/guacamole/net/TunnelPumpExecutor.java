@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.net;
+
+import org.apache.guacamole.GuacamoleException;
+
+/**
+ * Executor which runs tunnel pumps: the long-running tasks which continuously
+ * read from a GuacamoleTunnel and forward the data read to the client, such
+ * as the read loop of a WebSocket tunnel. A pump may run for the entire life
+ * of its tunnel, or may resubmit itself whenever further data is available.
+ * Implementations may bound the number of pumps which run concurrently,
+ * rejecting pumps beyond that bound. As each pump belongs to a tunnel which
+ * is already connected, pumps should not be queued.
+ */
+public interface TunnelPumpExecutor {
+
+    /**
+     * Runs the given pump asynchronously.
+     *
+     * @param pump
+     *     The pump to run.
+     *
+     * @throws GuacamoleException
+     *     If the pump cannot be run, such as when the number of
+     *     concurrent pumps has reached its limit, or the executor has been
+     *     shut down.
+     */
+    void execute(Runnable pump) throws GuacamoleException;
+
+    /**
+     * Returns the number of pumps which are currently running.
+     *
+     * @return
+     *     The number of pumps which are currently running.
+     */
+    int getActivePumps();
+
+    /**
+     * Returns the number of pumps which have been accepted but are waiting
+     * for resources to become available before they can run.
+     *
+     * @return
+     *     The number of pumps which are waiting to run.
+     */
+    int getQueuedPumps();
+
+    /**
+     * Stops accepting new pumps and releases any resources held by this
+     * executor once all running pumps have completed. Running pumps are not
+     * interrupted, as they will complete naturally when their tunnels are
+     * closed.
+     */
+    void shutdown();
+
+}
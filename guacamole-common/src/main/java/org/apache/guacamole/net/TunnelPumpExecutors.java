@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.net;
+
+import org.apache.guacamole.GuacamoleException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Static access to the TunnelPumpExecutor shared by tunnel implementations
+ * which do not provide their own.
+ */
+public class TunnelPumpExecutors {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(TunnelPumpExecutors.class);
+
+    /**
+     * The maximum number of pumps which may run concurrently within the
+     * default executor, if virtual threads are not supported. By default, the
+     * number of pumps is not limited, as each pump belongs to a tunnel which
+     * has already been connected, and the number of tunnels is better limited
+     * where tunnels are created.
+     */
+    public static final int DEFAULT_MAX_THREADS = 0;
+
+    /**
+     * The shared executor, or null if no executor has yet been set or
+     * created.
+     */
+    private static TunnelPumpExecutor defaultExecutor;
+
+    /**
+     * This class is a utility class and should not be instantiated.
+     */
+    private TunnelPumpExecutors() {}
+
+    /**
+     * Creates a new TunnelPumpExecutor which uses virtual threads if
+     * requested and supported, falling back to a pool of platform threads
+     * otherwise.
+     *
+     * @param virtualThreads
+     *     Whether virtual threads should be used if supported by the running
+     *     JVM.
+     *
+     * @param maxThreads
+     *     The maximum number of pumps which may run concurrently if a pool of
+     *     platform threads is used, or zero if the number of concurrent pumps
+     *     should not be limited.
+     *
+     * @return
+     *     A new TunnelPumpExecutor.
+     */
+    public static TunnelPumpExecutor create(boolean virtualThreads,
+            int maxThreads) {
+
+        // Use virtual threads where possible
+        if (virtualThreads && VirtualThreadTunnelPumpExecutor.isSupported()) {
+            try {
+                logger.debug("Tunnel pumps will use virtual threads.");
+                return new VirtualThreadTunnelPumpExecutor();
+            }
+            catch (GuacamoleException e) {
+                logger.debug("Virtual threads unavailable for tunnel pumps.", e);
+            }
+        }
+
+        if (maxThreads > 0)
+            logger.debug("Tunnel pumps will use a pool of at most {} threads.", maxThreads);
+        else
+            logger.debug("Tunnel pumps will use an unbounded pool of threads.");
+
+        return new PooledTunnelPumpExecutor(maxThreads);
+
+    }
+
+    /**
+     * Returns the shared TunnelPumpExecutor. If no executor has been set via
+     * setDefault(), an executor is created which uses virtual threads if
+     * supported, and an unbounded pool of platform threads otherwise.
+     *
+     * @return
+     *     The shared TunnelPumpExecutor.
+     */
+    public static synchronized TunnelPumpExecutor getDefault() {
+
+        if (defaultExecutor == null)
+            defaultExecutor = create(true, DEFAULT_MAX_THREADS);
+
+        return defaultExecutor;
+
+    }
+
+    /**
+     * Replaces the shared TunnelPumpExecutor. Any previous executor is not
+     * shut down, and will continue to run the pumps already given to it.
+     *
+     * @param executor
+     *     The TunnelPumpExecutor to share, or null to revert to an
+     *     automatically-created executor.
+     */
+    public static synchronized void setDefault(TunnelPumpExecutor executor) {
+        defaultExecutor = executor;
+    }
+
+}
@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.net;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.GuacamoleServerBusyException;
+import org.apache.guacamole.GuacamoleUnsupportedException;
+
+/**
+ * TunnelPumpExecutor implementation which runs each pump within its own
+ * virtual thread. Virtual threads are cheap to create and consume memory only
+ * for the stack actually in use, thus no pooling or queueing is necessary and
+ * pumps are never queued. Virtual threads are only available on Java 21 and
+ * later, and are located via reflection such that this class may be compiled
+ * for and loaded by older versions of Java. The isSupported() function should
+ * be used to determine whether this executor can be used.
+ */
+public class VirtualThreadTunnelPumpExecutor implements TunnelPumpExecutor {
+
+    /**
+     * The ThreadFactory which creates virtual threads.
+     */
+    private final ThreadFactory factory;
+
+    /**
+     * The number of pumps currently running.
+     */
+    private final AtomicInteger activePumps = new AtomicInteger();
+
+    /**
+     * Whether this executor has been shut down.
+     */
+    private volatile boolean shutdown = false;
+
+    /**
+     * Returns a ThreadFactory which creates virtual threads, if supported by
+     * the running JVM.
+     *
+     * @return
+     *     A ThreadFactory which creates virtual threads named with the
+     *     "guacamole-tunnel-pump-" prefix, or null if virtual threads are not
+     *     supported.
+     */
+    private static ThreadFactory getVirtualThreadFactory() {
+
+        try {
+
+            // Equivalent to:
+            // Thread.ofVirtual().name("guacamole-tunnel-pump-", 1).factory()
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class)
+                    .invoke(builder, "guacamole-tunnel-pump-", 1L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+
+        }
+
+        // Virtual threads are not supported by this JVM
+        catch (ClassNotFoundException e) {}
+        catch (NoSuchMethodException e) {}
+        catch (IllegalAccessException e) {}
+        catch (InvocationTargetException e) {}
+
+        return null;
+
+    }
+
+    /**
+     * Returns whether the running JVM supports virtual threads, and thus
+     * whether a VirtualThreadTunnelPumpExecutor can be created.
+     *
+     * @return
+     *     true if virtual threads are supported, false otherwise.
+     */
+    public static boolean isSupported() {
+        return getVirtualThreadFactory() != null;
+    }
+
+    /**
+     * Creates a new VirtualThreadTunnelPumpExecutor which runs each pump
+     * within its own virtual thread.
+     *
+     * @throws GuacamoleException
+     *     If the running JVM does not support virtual threads.
+     */
+    public VirtualThreadTunnelPumpExecutor() throws GuacamoleException {
+        factory = getVirtualThreadFactory();
+        if (factory == null)
+            throw new GuacamoleUnsupportedException("Virtual threads are not "
+                    + "supported by this version of Java.");
+    }
+
+    @Override
+    public void execute(final Runnable pump) throws GuacamoleException {
+
+        if (shutdown)
+            throw new GuacamoleServerBusyException("Tunnel pumps are shutting down.");
+
+        // Track number of running pumps
+        Thread thread = factory.newThread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    pump.run();
+                }
+                finally {
+                    activePumps.decrementAndGet();
+                }
+            }
+
+        });
+
+        activePumps.incrementAndGet();
+        thread.start();
+
+    }
+
+    @Override
+    public int getActivePumps() {
+        return activePumps.get();
+    }
+
+    @Override
+    public int getQueuedPumps() {
+        return 0;
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+    }
+
+}
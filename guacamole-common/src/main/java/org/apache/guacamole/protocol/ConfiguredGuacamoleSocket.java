@@ -26,6 +26,7 @@ import org.apache.guacamole.GuacamoleServerException;
 import org.apache.guacamole.io.GuacamoleReader;
 import org.apache.guacamole.io.GuacamoleWriter;
 import org.apache.guacamole.net.GuacamoleSocket;
+import org.apache.guacamole.net.NotifyingGuacamoleSocket;
 
 /**
  * A GuacamoleSocket which pre-configures the connection based on a given
@@ -39,7 +40,7 @@ import org.apache.guacamole.net.GuacamoleSocket;
  *
  * @author Michael Jumper
  */
-public class ConfiguredGuacamoleSocket implements GuacamoleSocket {
+public class ConfiguredGuacamoleSocket implements NotifyingGuacamoleSocket {
 
     /**
      * The wrapped socket.
@@ -85,6 +86,72 @@ public class ConfiguredGuacamoleSocket implements GuacamoleSocket {
 
     }
  
+    /**
+     * Adds the client information which follows the "args" instruction of
+     * the Guacamole protocol handshake to the given batch. This information
+     * does not depend on the arguments of the selected protocol.
+     *
+     * @param batch The batch to add the client information to.
+     * @param info The GuacamoleClientInformation to send.
+     */
+    private void addClientInformation(GuacamoleInstructionBatch batch,
+            GuacamoleClientInformation info) {
+
+        // Send size
+        batch.add(
+            "size",
+            Integer.toString(info.getOptimalScreenWidth()),
+            Integer.toString(info.getOptimalScreenHeight()),
+            Integer.toString(info.getOptimalResolution())
+        );
+
+        // Send supported audio formats
+        batch.add("audio", info.getAudioMimetypes().toArray(new String[0]));
+
+        // Send supported video formats
+        batch.add("video", info.getVideoMimetypes().toArray(new String[0]));
+
+        // Send supported image formats
+        batch.add("image", info.getImageMimetypes().toArray(new String[0]));
+
+    }
+
+    /**
+     * Adds the "connect" instruction which completes the Guacamole protocol
+     * handshake to the given batch, with parameter values ordered according
+     * to the given argument names.
+     *
+     * @param batch The batch to add the "connect" instruction to.
+     * @param arg_names The names of the arguments accepted by the selected
+     *                  protocol, in the order they were sent by the Guacamole
+     *                  proxy within the "args" instruction.
+     */
+    private void addConnect(GuacamoleInstructionBatch batch,
+            List<String> arg_names) {
+
+        // Build args list off provided names and config
+        String[] arg_values = new String[arg_names.size()];
+        for (int i=0; i<arg_names.size(); i++) {
+
+            // Retrieve argument name
+            String arg_name = arg_names.get(i);
+
+            // Get defined value for name
+            String value = config.getParameter(arg_name);
+
+            // If value defined, set that value
+            if (value != null) arg_values[i] = value;
+
+            // Otherwise, leave value blank
+            else arg_values[i] = "";
+
+        }
+
+        // Send args
+        batch.add("connect", arg_values);
+
+    }
+
     /**
      * Creates a new ConfiguredGuacamoleSocket which uses the given
      * GuacamoleConfiguration to complete the initial protocol handshake over
@@ -118,6 +185,36 @@ public class ConfiguredGuacamoleSocket implements GuacamoleSocket {
     public ConfiguredGuacamoleSocket(GuacamoleSocket socket,
             GuacamoleConfiguration config,
             GuacamoleClientInformation info) throws GuacamoleException {
+        this(socket, config, info, null);
+    }
+
+    /**
+     * Creates a new ConfiguredGuacamoleSocket which uses the given
+     * GuacamoleConfiguration and GuacamoleClientInformation to complete the
+     * initial protocol handshake over the given GuacamoleSocket. If the
+     * arguments of the selected protocol are present within the given cache,
+     * and thus the Guacamole proxy is known to support that protocol, the
+     * client information is sent together with the "select" instruction
+     * rather than after the "args" instruction is received. The "connect"
+     * instruction is always sent only after "args" is received, using the
+     * arguments actually received, and the cache is updated if those
+     * arguments differ from the arguments cached.
+     *
+     * @param socket The GuacamoleSocket to wrap.
+     * @param config The GuacamoleConfiguration to use to complete the initial
+     *               protocol handshake.
+     * @param info The GuacamoleClientInformation to use to complete the initial
+     *             protocol handshake.
+     * @param argsCache The cache of protocol arguments to consult and update,
+     *                  or null if the handshake should always wait for the
+     *                  "args" instruction.
+     * @throws GuacamoleException If an error occurs while completing the
+     *                            initial protocol handshake.
+     */
+    public ConfiguredGuacamoleSocket(GuacamoleSocket socket,
+            GuacamoleConfiguration config,
+            GuacamoleClientInformation info,
+            GuacamoleArgsCache argsCache) throws GuacamoleException {
 
         this.socket = socket;
         this.config = config;
@@ -132,63 +229,36 @@ public class ConfiguredGuacamoleSocket implements GuacamoleSocket {
             select_arg = config.getProtocol();
 
         // Send requested protocol or connection ID
-        writer.writeInstruction(new GuacamoleInstruction("select", select_arg));
-
-        // Wait for server args
-        GuacamoleInstruction args = expect(reader, "args");
-
-        // Build args list off provided names and config
-        List<String> arg_names = args.getArgs();
-        String[] arg_values = new String[arg_names.size()];
-        for (int i=0; i<arg_names.size(); i++) {
-
-            // Retrieve argument name
-            String arg_name = arg_names.get(i);
-
-            // Get defined value for name
-            String value = config.getParameter(arg_name);
-
-            // If value defined, set that value
-            if (value != null) arg_values[i] = value;
+        GuacamoleInstructionBatch batch = new GuacamoleInstructionBatch();
+        batch.add("select", select_arg);
 
-            // Otherwise, leave value blank
-            else arg_values[i] = "";
+        // Arguments can only be known in advance for new connections
+        List<String> cachedArgs = null;
+        if (argsCache != null && config.getConnectionID() == null)
+            cachedArgs = argsCache.get(select_arg);
 
-        }
+        // If the protocol is known to be supported, send client information
+        // without waiting for "args"
+        if (cachedArgs != null)
+            addClientInformation(batch, info);
 
-        // Send size
-        writer.writeInstruction(
-            new GuacamoleInstruction(
-                "size",
-                Integer.toString(info.getOptimalScreenWidth()),
-                Integer.toString(info.getOptimalScreenHeight()),
-                Integer.toString(info.getOptimalResolution())
-            )
-        );
+        batch.writeTo(writer);
 
-        // Send supported audio formats
-        writer.writeInstruction(
-                new GuacamoleInstruction(
-                    "audio",
-                    info.getAudioMimetypes().toArray(new String[0])
-                ));
+        // Wait for server args
+        GuacamoleInstruction args = expect(reader, "args");
+        List<String> arg_names = args.getArgs();
 
-        // Send supported video formats
-        writer.writeInstruction(
-                new GuacamoleInstruction(
-                    "video",
-                    info.getVideoMimetypes().toArray(new String[0])
-                ));
+        // Complete handshake now that arguments are known
+        if (cachedArgs == null)
+            addClientInformation(batch, info);
 
-        // Send supported image formats
-        writer.writeInstruction(
-                new GuacamoleInstruction(
-                    "image",
-                    info.getImageMimetypes().toArray(new String[0])
-                ));
+        addConnect(batch, arg_names);
+        batch.writeTo(writer);
 
-        // Send args
-        writer.writeInstruction(new GuacamoleInstruction("connect", arg_values));
+        // Remember arguments for future connections
+        if (argsCache != null && config.getConnectionID() == null
+                && !arg_names.equals(cachedArgs))
+            argsCache.put(select_arg, arg_names);
 
         // Wait for ready, store ID
         GuacamoleInstruction ready = expect(reader, "ready");
@@ -243,4 +313,16 @@ public class ConfiguredGuacamoleSocket implements GuacamoleSocket {
         return socket.isOpen();
     }
 
+    @Override
+    public boolean notifyWhenReadable(Runnable listener) {
+
+        // Always readable (though reads may block) if notification is
+        // unsupported by the wrapped socket
+        if (!(socket instanceof NotifyingGuacamoleSocket))
+            return true;
+
+        return ((NotifyingGuacamoleSocket) socket).notifyWhenReadable(listener);
+
+    }
+
 }
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.protocol;
+
+import java.nio.charset.Charset;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.io.ByteGuacamoleReader;
+import org.apache.guacamole.io.GuacamoleInstructionByteSlice;
+
+/**
+ * FilteredGuacamoleReader which wraps a ByteGuacamoleReader, preserving the
+ * ability to read instructions in their original UTF-8 form. Instructions
+ * which pass through the filter unchanged are returned by readBytes() exactly
+ * as received, while instructions altered by the filter are encoded anew.
+ */
+public class FilteredByteGuacamoleReader extends FilteredGuacamoleReader
+        implements ByteGuacamoleReader {
+
+    /**
+     * The character set of all Guacamole protocol data.
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * The wrapped ByteGuacamoleReader.
+     */
+    private final ByteGuacamoleReader reader;
+
+    /**
+     * The filter to apply when reading instructions.
+     */
+    private final GuacamoleFilter filter;
+
+    /**
+     * Wraps the given ByteGuacamoleReader, applying the given filter to all
+     * read instructions. Future reads will return only instructions which
+     * pass the filter.
+     *
+     * @param reader
+     *     The ByteGuacamoleReader to wrap.
+     *
+     * @param filter
+     *     The filter which dictates which instructions are read, and how.
+     */
+    public FilteredByteGuacamoleReader(ByteGuacamoleReader reader,
+            GuacamoleFilter filter) {
+        super(reader, filter);
+        this.reader = reader;
+        this.filter = filter;
+    }
+
+    @Override
+    public GuacamoleInstructionByteSlice readBytes() throws GuacamoleException {
+
+        GuacamoleInstructionByteSlice unfilteredSlice;
+        GuacamoleInstruction unfilteredInstruction;
+        GuacamoleInstruction filteredInstruction;
+
+        // Read and filter instructions until no instructions are dropped
+        do {
+
+            // Read next instruction
+            unfilteredSlice = reader.readBytes();
+            if (unfilteredSlice == null)
+                return null;
+
+            // Apply filter, decoding only what the filter inspects
+            unfilteredInstruction = new LazyUTF8GuacamoleInstruction(
+                unfilteredSlice.getBuffer(),
+                unfilteredSlice.getOffset(),
+                unfilteredSlice.getLength()
+            );
+            filteredInstruction = filter.filter(unfilteredInstruction);
+
+        } while (filteredInstruction == null);
+
+        // Forward unchanged instructions as originally received
+        if (filteredInstruction == unfilteredInstruction)
+            return unfilteredSlice;
+
+        // Encode instructions altered by the filter
+        byte[] encoded = filteredInstruction.toString().getBytes(UTF_8);
+        return new GuacamoleInstructionByteSlice(encoded, 0, encoded.length);
+
+    }
+
+}
@@ -19,7 +19,9 @@
 
 package org.apache.guacamole.protocol;
 
+import java.util.concurrent.TimeUnit;
 import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.io.AwaitableGuacamoleReader;
 import org.apache.guacamole.io.GuacamoleReader;
 
 /**
@@ -29,7 +31,7 @@ import org.apache.guacamole.io.GuacamoleReader;
  *
  * @author Michael Jumper
  */
-public class FilteredGuacamoleReader implements GuacamoleReader {
+public class FilteredGuacamoleReader implements AwaitableGuacamoleReader {
 
     /**
      * The wrapped GuacamoleReader.
@@ -60,6 +62,18 @@ public class FilteredGuacamoleReader implements GuacamoleReader {
         return reader.available();
     }
 
+    @Override
+    public boolean awaitAvailable(long timeout, TimeUnit unit)
+            throws GuacamoleException {
+
+        // Waiting is possible only if supported by the wrapped reader
+        if (reader instanceof AwaitableGuacamoleReader)
+            return ((AwaitableGuacamoleReader) reader).awaitAvailable(timeout, unit);
+
+        return reader.available();
+
+    }
+
     @Override
     public char[] read() throws GuacamoleException {
 
@@ -67,7 +81,7 @@ public class FilteredGuacamoleReader implements GuacamoleReader {
         if (filteredInstruction == null)
             return null;
 
-        return filteredInstruction.toString().toCharArray();
+        return filteredInstruction.toCharArray();
         
     }
 
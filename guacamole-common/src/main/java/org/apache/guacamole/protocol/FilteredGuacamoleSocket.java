@@ -20,9 +20,11 @@
 package org.apache.guacamole.protocol;
 
 import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.io.ByteGuacamoleReader;
 import org.apache.guacamole.io.GuacamoleReader;
 import org.apache.guacamole.io.GuacamoleWriter;
 import org.apache.guacamole.net.GuacamoleSocket;
+import org.apache.guacamole.net.NotifyingGuacamoleSocket;
 
 /**
  * Implementation of GuacamoleSocket which allows individual instructions to be
@@ -30,7 +32,7 @@ import org.apache.guacamole.net.GuacamoleSocket;
  *
  * @author Michael Jumper
  */
-public class FilteredGuacamoleSocket implements GuacamoleSocket {
+public class FilteredGuacamoleSocket implements NotifyingGuacamoleSocket {
 
     /**
      * Wrapped GuacamoleSocket.
@@ -63,8 +65,17 @@ public class FilteredGuacamoleSocket implements GuacamoleSocket {
         this.socket = socket;
 
         // Apply filter to reader
-        if (readFilter != null)
-            reader = new FilteredGuacamoleReader(socket.getReader(), readFilter);
+        if (readFilter != null) {
+
+            // Preserve access to original UTF-8 data, if available
+            GuacamoleReader socketReader = socket.getReader();
+            if (socketReader instanceof ByteGuacamoleReader)
+                reader = new FilteredByteGuacamoleReader((ByteGuacamoleReader) socketReader, readFilter);
+            else
+                reader = new FilteredGuacamoleReader(socketReader, readFilter);
+
+        }
+
         else
             reader = socket.getReader();
 
@@ -95,5 +106,17 @@ public class FilteredGuacamoleSocket implements GuacamoleSocket {
     public boolean isOpen() {
         return socket.isOpen();
     }
-    
+
+    @Override
+    public boolean notifyWhenReadable(Runnable listener) {
+
+        // Always readable (though reads may block) if notification is
+        // unsupported by the wrapped socket
+        if (!(socket instanceof NotifyingGuacamoleSocket))
+            return true;
+
+        return ((NotifyingGuacamoleSocket) socket).notifyWhenReadable(listener);
+
+    }
+
 }
@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.protocol;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Cache of the arguments accepted by each protocol supported by a particular
+ * Guacamole proxy server, as sent by that server within the "args"
+ * instruction of the protocol handshake. Once the arguments of a protocol are
+ * known, and thus the server is known to support that protocol,
+ * ConfiguredGuacamoleSocket sends the client information of the handshake
+ * together with the "select" instruction, without first waiting for "args"
+ * to be received.
+ *
+ * As the arguments accepted by a protocol may change if the Guacamole proxy
+ * server is upgraded, the cached arguments are never used to build the
+ * "connect" instruction. That instruction is sent only once "args" has been
+ * received, and the cached arguments are replaced if different.
+ */
+public class GuacamoleArgsCache {
+
+    /**
+     * The arguments of each protocol whose arguments are known, keyed by
+     * protocol name.
+     */
+    private final ConcurrentMap<String, List<String>> args =
+            new ConcurrentHashMap<String, List<String>>();
+
+    /**
+     * Returns the cached arguments of the given protocol, in the order they
+     * were sent by the Guacamole proxy server.
+     *
+     * @param protocol
+     *     The name of the protocol whose arguments should be returned.
+     *
+     * @return
+     *     An unmodifiable list of the arguments of the given protocol, or
+     *     null if the arguments of that protocol are not yet known.
+     */
+    public List<String> get(String protocol) {
+        return args.get(protocol);
+    }
+
+    /**
+     * Stores the arguments of the given protocol, as received from the
+     * Guacamole proxy server, replacing any previously-cached arguments.
+     *
+     * @param protocol
+     *     The name of the protocol whose arguments were received.
+     *
+     * @param protocolArgs
+     *     The arguments of the given protocol, in the order they were sent by
+     *     the Guacamole proxy server.
+     */
+    public void put(String protocol, List<String> protocolArgs) {
+        args.put(protocol, Collections.unmodifiableList(
+                new ArrayList<String>(protocolArgs)));
+    }
+
+    /**
+     * Removes any cached arguments of the given protocol, such that the next
+     * handshake for that protocol waits for "args" to be received before
+     * sending any client information.
+     *
+     * @param protocol
+     *     The name of the protocol whose cached arguments should be removed.
+     */
+    public void invalidate(String protocol) {
+        args.remove(protocol);
+    }
+
+}
@@ -91,15 +91,33 @@ public class GuacamoleInstruction {
 
     /**
      * Returns this GuacamoleInstruction in the form it would be sent over the
-     * Guacamole protocol.
+     * Guacamole protocol, as an array of characters. Depending on the
+     * implementation, the array returned may be shared and MUST NOT be
+     * modified.
      *
      * @return This GuacamoleInstruction in the form it would be sent over the
      *         Guacamole protocol.
      */
-    @Override
-    public String toString() {
+    public char[] toCharArray() {
 
         StringBuilder buff = new StringBuilder();
+        appendTo(buff);
+
+        // Copy directly into array, avoiding intermediate String
+        char[] chars = new char[buff.length()];
+        buff.getChars(0, chars.length, chars, 0);
+        return chars;
+
+    }
+
+    /**
+     * Appends this GuacamoleInstruction, in the form it would be sent over the
+     * Guacamole protocol, to the given StringBuilder. This allows several
+     * instructions to be serialized into the same buffer and sent together.
+     *
+     * @param buff The StringBuilder to append this GuacamoleInstruction to.
+     */
+    public void appendTo(StringBuilder buff) {
 
         // Write opcode
         buff.append(opcode.length());
@@ -117,8 +135,20 @@ public class GuacamoleInstruction {
         // Write terminator
         buff.append(';');
 
-        return buff.toString();
+    }
 
+    /**
+     * Returns this GuacamoleInstruction in the form it would be sent over the
+     * Guacamole protocol.
+     *
+     * @return This GuacamoleInstruction in the form it would be sent over the
+     *         Guacamole protocol.
+     */
+    @Override
+    public String toString() {
+        StringBuilder buff = new StringBuilder();
+        appendTo(buff);
+        return buff.toString();
     }
 
 }
@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.protocol;
+
+import java.nio.charset.Charset;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.io.ByteGuacamoleWriter;
+import org.apache.guacamole.io.GuacamoleWriter;
+
+/**
+ * A sequence of Guacamole instructions which are serialized into a single
+ * buffer as they are added, and then sent together with a single write (and
+ * thus a single flush) to a GuacamoleWriter. GuacamoleWriter implementations
+ * flush after each write, hence writing several instructions individually
+ * results in a separate network write for each instruction. Batching
+ * instructions which will be sent back-to-back, such as those of the
+ * Guacamole protocol handshake, avoids this.
+ */
+public class GuacamoleInstructionBatch {
+
+    /**
+     * The character set of all Guacamole protocol data.
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * The serialized form of all instructions added since the batch was last
+     * written.
+     */
+    private final StringBuilder buffer = new StringBuilder(256);
+
+    /**
+     * Adds the given instruction to the end of this batch.
+     *
+     * @param instruction
+     *     The instruction to add.
+     *
+     * @return
+     *     This GuacamoleInstructionBatch.
+     */
+    public GuacamoleInstructionBatch add(GuacamoleInstruction instruction) {
+        instruction.appendTo(buffer);
+        return this;
+    }
+
+    /**
+     * Adds a new instruction having the given opcode and arguments to the end
+     * of this batch.
+     *
+     * @param opcode
+     *     The opcode of the instruction to add.
+     *
+     * @param args
+     *     The arguments of the instruction to add.
+     *
+     * @return
+     *     This GuacamoleInstructionBatch.
+     */
+    public GuacamoleInstructionBatch add(String opcode, String... args) {
+        return add(new GuacamoleInstruction(opcode, args));
+    }
+
+    /**
+     * Returns whether this batch contains no instructions.
+     *
+     * @return
+     *     true if no instructions have been added since this batch was last
+     *     written, false otherwise.
+     */
+    public boolean isEmpty() {
+        return buffer.length() == 0;
+    }
+
+    /**
+     * Sends all instructions within this batch to the given GuacamoleWriter
+     * using a single write, and empties this batch. Nothing is written if
+     * the batch is empty.
+     *
+     * @param writer
+     *     The GuacamoleWriter to send all instructions to.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while writing the instructions.
+     */
+    public void writeTo(GuacamoleWriter writer) throws GuacamoleException {
+
+        if (isEmpty())
+            return;
+
+        try {
+
+            // Encode entire batch at once if writer accepts UTF-8 directly
+            if (writer instanceof ByteGuacamoleWriter) {
+                byte[] data = buffer.toString().getBytes(UTF_8);
+                ((ByteGuacamoleWriter) writer).writeBytes(data, 0, data.length);
+            }
+
+            else {
+                char[] data = new char[buffer.length()];
+                buffer.getChars(0, data.length, data, 0);
+                writer.write(data);
+            }
+
+        }
+        finally {
+            buffer.setLength(0);
+        }
+
+    }
+
+}
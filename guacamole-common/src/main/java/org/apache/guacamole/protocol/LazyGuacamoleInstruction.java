@@ -0,0 +1,375 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.protocol;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * A GuacamoleInstruction which retains the exact form in which it was
+ * received, decoding only its opcode up front. Arguments are decoded
+ * individually and only when requested, thus filters which inspect only the
+ * opcode of an instruction, or only its first few arguments, never pay the
+ * cost of decoding the remainder. As the original form is retained,
+ * instructions which pass through filters unchanged can be written back out
+ * without being serialized again.
+ *
+ * The data given to a LazyGuacamoleInstruction MUST contain exactly one
+ * complete and valid Guacamole instruction, as is guaranteed by
+ * GuacamoleReader implementations which frame instructions before returning
+ * them.
+ */
+public class LazyGuacamoleInstruction extends GuacamoleInstruction {
+
+    /**
+     * The exact form of this instruction as received over the Guacamole
+     * protocol, including the terminating semicolon.
+     */
+    private final char[] raw;
+
+    /**
+     * The arguments of this instruction, decoded on demand from the raw form
+     * of this instruction.
+     */
+    private final ArgumentList arguments;
+
+    /**
+     * List of the arguments of an instruction, decoded on demand from the
+     * raw form of that instruction. The location of each argument is
+     * determined only upon first access to the list, and the value of each
+     * argument is only decoded upon first access to that argument.
+     */
+    private static class ArgumentList extends AbstractList<String>
+            implements RandomAccess {
+
+        /**
+         * The raw form of the instruction whose arguments are listed.
+         */
+        private final char[] raw;
+
+        /**
+         * The location within the raw instruction of the length prefix of
+         * the first argument.
+         */
+        private final int firstArgument;
+
+        /**
+         * The offset within the raw instruction of the value of each
+         * argument, or null if the arguments have not yet been located.
+         */
+        private int[] offsets;
+
+        /**
+         * The length of the value of each argument, or null if the arguments
+         * have not yet been located.
+         */
+        private int[] lengths;
+
+        /**
+         * Cache of each argument value which has been decoded thus far.
+         */
+        private String[] values;
+
+        /**
+         * Creates a new ArgumentList which lists the arguments present within
+         * the given raw instruction, beginning at the given location.
+         *
+         * @param raw
+         *     The raw form of the instruction whose arguments are listed.
+         *
+         * @param firstArgument
+         *     The location within the raw instruction of the length prefix of
+         *     the first argument. If the instruction has no arguments, this
+         *     will be equal to the length of the instruction.
+         */
+        public ArgumentList(char[] raw, int firstArgument) {
+            this.raw = raw;
+            this.firstArgument = firstArgument;
+        }
+
+        /**
+         * Locates each argument within the raw instruction, if not already
+         * done.
+         */
+        private void locateArguments() {
+
+            // Skip if already located
+            if (offsets != null)
+                return;
+
+            // Count arguments (one per element separator)
+            int count = 0;
+            int i = firstArgument;
+            while (i < raw.length) {
+                int length = 0;
+                char c;
+                while ((c = raw[i++]) != '.')
+                    length = length * 10 + c - '0';
+                i += length + 1;
+                count++;
+            }
+
+            // Record location of each argument
+            int[] locatedOffsets = new int[count];
+            int[] locatedLengths = new int[count];
+            i = firstArgument;
+            for (int index = 0; index < count; index++) {
+                int length = 0;
+                char c;
+                while ((c = raw[i++]) != '.')
+                    length = length * 10 + c - '0';
+                locatedOffsets[index] = i;
+                locatedLengths[index] = length;
+                i += length + 1;
+            }
+
+            values  = new String[count];
+            lengths = locatedLengths;
+            offsets = locatedOffsets;
+
+        }
+
+        @Override
+        public String get(int index) {
+
+            locateArguments();
+
+            // Decode requested argument only
+            String value = values[index];
+            if (value == null) {
+                value = new String(raw, offsets[index], lengths[index]);
+                values[index] = value;
+            }
+
+            return value;
+
+        }
+
+        @Override
+        public int size() {
+            locateArguments();
+            return offsets.length;
+        }
+
+        /**
+         * Returns the offset within the raw instruction of the value of the
+         * argument having the given index.
+         *
+         * @param index
+         *     The index of the argument.
+         *
+         * @return
+         *     The offset of the value of the given argument.
+         */
+        public int getOffset(int index) {
+            locateArguments();
+            return offsets[index];
+        }
+
+        /**
+         * Returns the length of the value of the argument having the given
+         * index, in characters.
+         *
+         * @param index
+         *     The index of the argument.
+         *
+         * @return
+         *     The length of the value of the given argument.
+         */
+        public int getLength(int index) {
+            locateArguments();
+            return lengths[index];
+        }
+
+    }
+
+    /**
+     * Returns the location within the given raw instruction of the first
+     * character after the opcode's terminator.
+     *
+     * @param raw
+     *     The raw form of the instruction.
+     *
+     * @return
+     *     The location of the length prefix of the first argument, or the
+     *     length of the instruction if there are no arguments.
+     */
+    private static int getArgumentsStart(char[] raw) {
+
+        int i = 0;
+        int length = 0;
+        char c;
+        while ((c = raw[i++]) != '.')
+            length = length * 10 + c - '0';
+
+        return i + length + 1;
+
+    }
+
+    /**
+     * Decodes the opcode of the given raw instruction.
+     *
+     * @param raw
+     *     The raw form of the instruction.
+     *
+     * @param argumentsStart
+     *     The location of the length prefix of the first argument, as
+     *     returned by getArgumentsStart().
+     *
+     * @return
+     *     The opcode of the given instruction.
+     */
+    private static String getOpcode(char[] raw, int argumentsStart) {
+
+        int i = 0;
+        while (raw[i] != '.')
+            i++;
+
+        // Opcode is everything between the period and the terminator
+        return new String(raw, i + 1, argumentsStart - i - 2);
+
+    }
+
+    /**
+     * Creates a new LazyGuacamoleInstruction from the given raw instruction
+     * data, having the given argument list.
+     *
+     * @param raw
+     *     The raw form of the instruction.
+     *
+     * @param argumentsStart
+     *     The location of the length prefix of the first argument, as
+     *     returned by getArgumentsStart().
+     */
+    private LazyGuacamoleInstruction(char[] raw, int argumentsStart) {
+        this(raw, getOpcode(raw, argumentsStart), new ArgumentList(raw, argumentsStart));
+    }
+
+    /**
+     * Creates a new LazyGuacamoleInstruction from the given raw instruction
+     * data, having the given opcode and argument list.
+     *
+     * @param raw
+     *     The raw form of the instruction.
+     *
+     * @param opcode
+     *     The opcode of the instruction.
+     *
+     * @param arguments
+     *     The list of the arguments of the instruction.
+     */
+    private LazyGuacamoleInstruction(char[] raw, String opcode, ArgumentList arguments) {
+        super(opcode, arguments);
+        this.raw = raw;
+        this.arguments = arguments;
+    }
+
+    /**
+     * Creates a new LazyGuacamoleInstruction from the given raw instruction
+     * data, which is used directly without copying. The given array must
+     * not be modified after this LazyGuacamoleInstruction is created.
+     *
+     * @param raw
+     *     An array containing exactly one complete Guacamole instruction,
+     *     including the terminating semicolon.
+     */
+    public LazyGuacamoleInstruction(char[] raw) {
+        this(raw, getArgumentsStart(raw));
+    }
+
+    /**
+     * Creates a new LazyGuacamoleInstruction from a copy of the given range
+     * of the given buffer. The buffer may be reused once this constructor
+     * returns.
+     *
+     * @param buffer
+     *     The buffer containing the raw instruction data.
+     *
+     * @param offset
+     *     The offset within the buffer at which the instruction begins.
+     *
+     * @param length
+     *     The length of the instruction, in characters, including the
+     *     terminating semicolon.
+     */
+    public LazyGuacamoleInstruction(char[] buffer, int offset, int length) {
+        this(Arrays.copyOfRange(buffer, offset, offset + length));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The array returned is the original data of this instruction, and is
+     * returned without copying. It MUST NOT be modified.
+     */
+    @Override
+    public char[] toCharArray() {
+        return raw;
+    }
+
+    @Override
+    public void appendTo(StringBuilder buff) {
+        buff.append(raw);
+    }
+
+    /**
+     * Returns the offset of the value of the argument having the given index
+     * within the array returned by toCharArray(), such that the value can be
+     * processed without first being decoded into a String.
+     *
+     * @param index
+     *     The index of the argument.
+     *
+     * @return
+     *     The offset of the value of the given argument within the raw form
+     *     of this instruction.
+     *
+     * @throws IndexOutOfBoundsException
+     *     If this instruction has no argument having the given index.
+     */
+    public int getArgumentOffset(int index) {
+        return arguments.getOffset(index);
+    }
+
+    /**
+     * Returns the length, in characters, of the value of the argument having the
+     * given index within the array returned by toCharArray().
+     *
+     * @param index
+     *     The index of the argument.
+     *
+     * @return
+     *     The length of the value of the given argument within the raw form
+     *     of this instruction.
+     *
+     * @throws IndexOutOfBoundsException
+     *     If this instruction has no argument having the given index.
+     */
+    public int getArgumentLength(int index) {
+        return arguments.getLength(index);
+    }
+
+    @Override
+    public String toString() {
+        return new String(raw);
+    }
+
+}
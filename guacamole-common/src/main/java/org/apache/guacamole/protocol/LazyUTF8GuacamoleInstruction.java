@@ -0,0 +1,421 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.protocol;
+
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * A GuacamoleInstruction which retains the exact UTF-8 form in which it was
+ * received, decoding only its opcode up front. This is the byte-oriented
+ * counterpart of LazyGuacamoleInstruction: arguments are located and decoded
+ * only when requested, and instructions which pass through filters unchanged
+ * can be written back out in their original UTF-8 form without being decoded
+ * or encoded at all.
+ *
+ * The data given to a LazyUTF8GuacamoleInstruction MUST contain exactly one
+ * complete and valid UTF-8 Guacamole instruction, as is guaranteed by
+ * ByteGuacamoleReader implementations.
+ */
+public class LazyUTF8GuacamoleInstruction extends GuacamoleInstruction {
+
+    /**
+     * The character set of all Guacamole protocol data.
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * The exact UTF-8 form of this instruction as received over the
+     * Guacamole protocol, including the terminating semicolon.
+     */
+    private final byte[] raw;
+
+    /**
+     * The arguments of this instruction, decoded on demand from the raw form
+     * of this instruction.
+     */
+    private final ArgumentList arguments;
+
+    /**
+     * Returns the location of the first byte following the given number of
+     * characters within the given UTF-8 data.
+     *
+     * @param raw
+     *     The UTF-8 data to skip characters within.
+     *
+     * @param start
+     *     The location of the first character to skip.
+     *
+     * @param length
+     *     The number of characters to skip.
+     *
+     * @return
+     *     The location of the first byte after the skipped characters.
+     */
+    private static int skipCharacters(byte[] raw, int start, int length) {
+
+        int i = start;
+        for (int skipped = 0; skipped < length; skipped++) {
+
+            byte lead = raw[i];
+            if      ((lead & 0x80) == 0x00) i += 1;
+            else if ((lead & 0xE0) == 0xC0) i += 2;
+            else if ((lead & 0xF0) == 0xE0) i += 3;
+            else                            i += 4;
+
+        }
+
+        return i;
+
+    }
+
+    /**
+     * List of the arguments of a UTF-8 instruction, decoded on demand from
+     * the raw form of that instruction. The location of each argument is
+     * determined only upon first access to the list, and the value of each
+     * argument is only decoded upon first access to that argument.
+     */
+    private static class ArgumentList extends AbstractList<String>
+            implements RandomAccess {
+
+        /**
+         * The raw form of the instruction whose arguments are listed.
+         */
+        private final byte[] raw;
+
+        /**
+         * The location within the raw instruction of the length prefix of
+         * the first argument.
+         */
+        private final int firstArgument;
+
+        /**
+         * The offset within the raw instruction of the value of each
+         * argument, or null if the arguments have not yet been located.
+         */
+        private int[] offsets;
+
+        /**
+         * The length of the value of each argument in bytes, or null if the
+         * arguments have not yet been located.
+         */
+        private int[] lengths;
+
+        /**
+         * Cache of each argument value which has been decoded thus far.
+         */
+        private String[] values;
+
+        /**
+         * Creates a new ArgumentList which lists the arguments present within
+         * the given raw instruction, beginning at the given location.
+         *
+         * @param raw
+         *     The raw form of the instruction whose arguments are listed.
+         *
+         * @param firstArgument
+         *     The location within the raw instruction of the length prefix of
+         *     the first argument. If the instruction has no arguments, this
+         *     will be equal to the length of the instruction.
+         */
+        public ArgumentList(byte[] raw, int firstArgument) {
+            this.raw = raw;
+            this.firstArgument = firstArgument;
+        }
+
+        /**
+         * Locates each argument within the raw instruction, if not already
+         * done.
+         */
+        private void locateArguments() {
+
+            // Skip if already located
+            if (offsets != null)
+                return;
+
+            // Record location of each argument, growing arrays as needed
+            int[] locatedOffsets = new int[4];
+            int[] locatedLengths = new int[4];
+            int count = 0;
+
+            int i = firstArgument;
+            while (i < raw.length) {
+
+                int length = 0;
+                byte b;
+                while ((b = raw[i++]) != '.')
+                    length = length * 10 + b - '0';
+
+                int end = skipCharacters(raw, i, length);
+
+                if (count == locatedOffsets.length) {
+                    locatedOffsets = Arrays.copyOf(locatedOffsets, count * 2);
+                    locatedLengths = Arrays.copyOf(locatedLengths, count * 2);
+                }
+
+                locatedOffsets[count] = i;
+                locatedLengths[count] = end - i;
+                count++;
+
+                i = end + 1;
+
+            }
+
+            values  = new String[count];
+            lengths = Arrays.copyOf(locatedLengths, count);
+            offsets = Arrays.copyOf(locatedOffsets, count);
+
+        }
+
+        @Override
+        public String get(int index) {
+
+            locateArguments();
+
+            // Decode requested argument only
+            String value = values[index];
+            if (value == null) {
+                value = new String(raw, offsets[index], lengths[index], UTF_8);
+                values[index] = value;
+            }
+
+            return value;
+
+        }
+
+        @Override
+        public int size() {
+            locateArguments();
+            return offsets.length;
+        }
+
+        /**
+         * Returns the offset within the raw instruction of the value of the
+         * argument having the given index.
+         *
+         * @param index
+         *     The index of the argument.
+         *
+         * @return
+         *     The offset of the value of the given argument.
+         */
+        public int getOffset(int index) {
+            locateArguments();
+            return offsets[index];
+        }
+
+        /**
+         * Returns the length of the value of the argument having the given
+         * index, in bytes.
+         *
+         * @param index
+         *     The index of the argument.
+         *
+         * @return
+         *     The length of the value of the given argument.
+         */
+        public int getLength(int index) {
+            locateArguments();
+            return lengths[index];
+        }
+
+    }
+
+    /**
+     * Returns the location within the given raw instruction of the length
+     * prefix of the first argument.
+     *
+     * @param raw
+     *     The raw form of the instruction.
+     *
+     * @return
+     *     The location of the length prefix of the first argument, or the
+     *     length of the instruction if there are no arguments.
+     */
+    private static int getArgumentsStart(byte[] raw) {
+
+        int i = 0;
+        int length = 0;
+        byte b;
+        while ((b = raw[i++]) != '.')
+            length = length * 10 + b - '0';
+
+        return skipCharacters(raw, i, length) + 1;
+
+    }
+
+    /**
+     * Decodes the opcode of the given raw instruction.
+     *
+     * @param raw
+     *     The raw form of the instruction.
+     *
+     * @param argumentsStart
+     *     The location of the length prefix of the first argument, as
+     *     returned by getArgumentsStart().
+     *
+     * @return
+     *     The opcode of the given instruction.
+     */
+    private static String getOpcode(byte[] raw, int argumentsStart) {
+
+        int i = 0;
+        while (raw[i] != '.')
+            i++;
+
+        // Opcode is everything between the period and the terminator
+        return new String(raw, i + 1, argumentsStart - i - 2, UTF_8);
+
+    }
+
+    /**
+     * Creates a new LazyUTF8GuacamoleInstruction from the given raw
+     * instruction data, having the given argument list.
+     *
+     * @param raw
+     *     The raw form of the instruction.
+     *
+     * @param argumentsStart
+     *     The location of the length prefix of the first argument, as
+     *     returned by getArgumentsStart().
+     */
+    private LazyUTF8GuacamoleInstruction(byte[] raw, int argumentsStart) {
+        this(raw, getOpcode(raw, argumentsStart), new ArgumentList(raw, argumentsStart));
+    }
+
+    /**
+     * Creates a new LazyUTF8GuacamoleInstruction from the given raw instruction
+     * data, having the given opcode and argument list.
+     *
+     * @param raw
+     *     The raw form of the instruction.
+     *
+     * @param opcode
+     *     The opcode of the instruction.
+     *
+     * @param arguments
+     *     The list of the arguments of the instruction.
+     */
+    private LazyUTF8GuacamoleInstruction(byte[] raw, String opcode, ArgumentList arguments) {
+        super(opcode, arguments);
+        this.raw = raw;
+        this.arguments = arguments;
+    }
+
+    /**
+     * Creates a new LazyUTF8GuacamoleInstruction from the given raw UTF-8
+     * instruction data, which is used directly without copying. The given
+     * array must not be modified after this LazyUTF8GuacamoleInstruction is
+     * created.
+     *
+     * @param raw
+     *     An array containing exactly one complete UTF-8 Guacamole
+     *     instruction, including the terminating semicolon.
+     */
+    public LazyUTF8GuacamoleInstruction(byte[] raw) {
+        this(raw, getArgumentsStart(raw));
+    }
+
+    /**
+     * Creates a new LazyUTF8GuacamoleInstruction from a copy of the given
+     * range of the given buffer. The buffer may be reused once this
+     * constructor returns.
+     *
+     * @param buffer
+     *     The buffer containing the raw UTF-8 instruction data.
+     *
+     * @param offset
+     *     The offset within the buffer at which the instruction begins.
+     *
+     * @param length
+     *     The length of the instruction, in bytes, including the terminating
+     *     semicolon.
+     */
+    public LazyUTF8GuacamoleInstruction(byte[] buffer, int offset, int length) {
+        this(Arrays.copyOfRange(buffer, offset, offset + length));
+    }
+
+    /**
+     * Returns the original UTF-8 form of this instruction. The array returned
+     * is returned without copying and MUST NOT be modified.
+     *
+     * @return
+     *     The original UTF-8 form of this instruction, including the
+     *     terminating semicolon.
+     */
+    public byte[] toByteArray() {
+        return raw;
+    }
+
+    @Override
+    public char[] toCharArray() {
+        return toString().toCharArray();
+    }
+
+    @Override
+    public void appendTo(StringBuilder buff) {
+        buff.append(toString());
+    }
+
+    /**
+     * Returns the offset of the value of the argument having the given index
+     * within the array returned by toByteArray(), such that the value can be
+     * processed without first being decoded into a String.
+     *
+     * @param index
+     *     The index of the argument.
+     *
+     * @return
+     *     The offset of the value of the given argument within the raw form
+     *     of this instruction.
+     *
+     * @throws IndexOutOfBoundsException
+     *     If this instruction has no argument having the given index.
+     */
+    public int getArgumentOffset(int index) {
+        return arguments.getOffset(index);
+    }
+
+    /**
+     * Returns the length, in bytes, of the value of the argument having the
+     * given index within the array returned by toByteArray().
+     *
+     * @param index
+     *     The index of the argument.
+     *
+     * @return
+     *     The length of the value of the given argument within the raw form
+     *     of this instruction.
+     *
+     * @throws IndexOutOfBoundsException
+     *     If this instruction has no argument having the given index.
+     */
+    public int getArgumentLength(int index) {
+        return arguments.getLength(index);
+    }
+
+    @Override
+    public String toString() {
+        return new String(raw, UTF_8);
+    }
+
+}
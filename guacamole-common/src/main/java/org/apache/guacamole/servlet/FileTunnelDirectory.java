@@ -0,0 +1,230 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.servlet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.regex.Pattern;
+import org.apache.guacamole.GuacamoleClientException;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.GuacamoleServerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A GuacamoleTunnelDirectory which records each tunnel as a file within a
+ * directory shared by all nodes, such as an NFS mount. Each file is named
+ * after the UUID of its tunnel and contains the address of the node holding
+ * that tunnel.
+ */
+public class FileTunnelDirectory implements GuacamoleTunnelDirectory {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(FileTunnelDirectory.class);
+
+    /**
+     * Pattern which matches only valid tunnel UUIDs, such that no UUID can
+     * refer to a file outside the directory.
+     */
+    private static final Pattern UUID_PATTERN = Pattern.compile("[0-9a-fA-F-]{36}");
+
+    /**
+     * The suffix of files which are still being written, and are not yet
+     * valid records.
+     */
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    /**
+     * The maximum length of any node address, in bytes.
+     */
+    private static final int MAX_ADDRESS_LENGTH = 2048;
+
+    /**
+     * The character set of all node addresses.
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * The directory containing all records.
+     */
+    private final File directory;
+
+    /**
+     * Creates a new FileTunnelDirectory which records tunnels within the
+     * given directory, creating that directory if necessary.
+     *
+     * @param directory
+     *     The directory shared by all nodes.
+     *
+     * @throws GuacamoleException
+     *     If the given directory does not exist and cannot be created.
+     */
+    public FileTunnelDirectory(File directory) throws GuacamoleException {
+
+        this.directory = directory;
+
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new GuacamoleServerException("Tunnel directory \""
+                    + directory + "\" cannot be created.");
+
+    }
+
+    /**
+     * Returns the file recording the tunnel having the given UUID.
+     *
+     * @param tunnelUUID
+     *     The UUID of the tunnel.
+     *
+     * @return
+     *     The file recording the given tunnel, which may not exist.
+     *
+     * @throws GuacamoleException
+     *     If the given UUID is not valid.
+     */
+    private File getFile(String tunnelUUID) throws GuacamoleException {
+
+        if (!UUID_PATTERN.matcher(tunnelUUID).matches())
+            throw new GuacamoleClientException("Invalid tunnel UUID.");
+
+        return new File(directory, tunnelUUID);
+
+    }
+
+    /**
+     * Reads the node address recorded within the given file.
+     *
+     * @param file
+     *     The file to read.
+     *
+     * @return
+     *     The node address within the given file, or null if the file does
+     *     not exist.
+     *
+     * @throws IOException
+     *     If the file exists but cannot be read.
+     */
+    private static String readAddress(File file) throws IOException {
+
+        InputStream input;
+        try {
+            input = new FileInputStream(file);
+        }
+        catch (FileNotFoundException e) {
+            return null;
+        }
+
+        try {
+
+            byte[] buffer = new byte[MAX_ADDRESS_LENGTH];
+            int length = 0;
+            int read;
+            while (length < buffer.length
+                    && (read = input.read(buffer, length, buffer.length - length)) != -1)
+                length += read;
+
+            return new String(buffer, 0, length, UTF_8);
+
+        }
+        finally {
+            input.close();
+        }
+
+    }
+
+    @Override
+    public void register(String tunnelUUID, String nodeAddress)
+            throws GuacamoleException {
+
+        File file = getFile(tunnelUUID);
+        File temporary = new File(directory, tunnelUUID + TEMPORARY_SUFFIX);
+
+        try {
+            OutputStream output = new FileOutputStream(temporary);
+            try {
+                output.write(nodeAddress.getBytes(UTF_8));
+            }
+            finally {
+                output.close();
+            }
+        }
+        catch (IOException e) {
+            temporary.delete();
+            throw new GuacamoleServerException("Unable to record tunnel.", e);
+        }
+
+        // Make record visible only once fully written
+        if (!temporary.renameTo(file) && !(file.delete() && temporary.renameTo(file))) {
+            temporary.delete();
+            throw new GuacamoleServerException("Tunnel record \"" + file + "\" cannot be replaced.");
+        }
+
+    }
+
+    @Override
+    public String lookup(String tunnelUUID) throws GuacamoleException {
+
+        try {
+            return readAddress(getFile(tunnelUUID));
+        }
+        catch (IOException e) {
+            throw new GuacamoleServerException("Unable to read tunnel record.", e);
+        }
+
+    }
+
+    @Override
+    public void deregister(String tunnelUUID) throws GuacamoleException {
+
+        File file = getFile(tunnelUUID);
+        if (!file.delete() && file.exists())
+            throw new GuacamoleServerException("Tunnel record \"" + file + "\" cannot be deleted.");
+
+    }
+
+    @Override
+    public void deregisterNode(String nodeAddress) throws GuacamoleException {
+
+        File[] files = directory.listFiles();
+        if (files == null)
+            throw new GuacamoleServerException("Tunnel directory \"" + directory + "\" cannot be read.");
+
+        for (File file : files) {
+
+            try {
+                if (nodeAddress.equals(readAddress(file)) && !file.delete())
+                    logger.debug("Unable to delete tunnel record \"{}\".", file);
+            }
+            catch (IOException e) {
+                logger.debug("Unable to read tunnel record.", e);
+            }
+
+        }
+
+    }
+
+}
@@ -19,7 +19,9 @@
 
 package org.apache.guacamole.servlet;
 
+import org.apache.guacamole.io.AdaptiveCompressor;
 import org.apache.guacamole.net.DelegatingGuacamoleTunnel;
+import org.apache.guacamole.net.ExpirationWheel;
 import org.apache.guacamole.net.GuacamoleTunnel;
 
 /**
@@ -37,9 +39,28 @@ import org.apache.guacamole.net.GuacamoleTunnel;
 class GuacamoleHTTPTunnel extends DelegatingGuacamoleTunnel {
 
     /**
-     * The last time this tunnel was accessed.
+     * The wheel which expires this tunnel, and whose clock is used to record
+     * each access.
      */
-    private long lastAccessedTime;
+    private final ExpirationWheel wheel;
+
+    /**
+     * The registration of this tunnel with the wheel, or null if this tunnel
+     * has not yet been registered.
+     */
+    private volatile ExpirationWheel.Registration registration;
+
+    /**
+     * The last time this tunnel was accessed, according to the clock of the
+     * wheel.
+     */
+    private volatile long lastAccessedTime;
+
+    /**
+     * The compressor which compresses data sent to the client over this
+     * tunnel, and which records all traffic of this tunnel.
+     */
+    private final AdaptiveCompressor compressor;
 
     /**
      * Creates a new GuacamoleHTTPTunnel which wraps the given tunnel.
@@ -48,16 +69,51 @@ class GuacamoleHTTPTunnel extends DelegatingGuacamoleTunnel {
      *
      * @param wrappedTunnel
      *     The GuacamoleTunnel to wrap within this GuacamoleHTTPTunnel.
+     *
+     * @param compressor
+     *     The compressor which should compress data sent to the client over
+     *     this tunnel, and which should record all traffic of this tunnel.
+     *
+     * @param wheel
+     *     The wheel which will expire this tunnel, and whose clock should be
+     *     used to record each access.
      */
-    public GuacamoleHTTPTunnel(GuacamoleTunnel wrappedTunnel) {
+    public GuacamoleHTTPTunnel(GuacamoleTunnel wrappedTunnel,
+            AdaptiveCompressor compressor, ExpirationWheel wheel) {
         super(wrappedTunnel);
+        this.compressor = compressor;
+        this.wheel = wheel;
+        this.lastAccessedTime = wheel.currentTimeMillis();
     }
 
     /**
-     * Updates this tunnel, marking it as recently accessed.
+     * Updates this tunnel, marking it as recently accessed. The time of
+     * access is read from the coarse-grained clock of the wheel, and thus
+     * may lag behind the true time of access by up to one tick.
      */
     public void access() {
-        lastAccessedTime = System.currentTimeMillis();
+        lastAccessedTime = wheel.currentTimeMillis();
+    }
+
+    /**
+     * Associates this tunnel with its registration with the wheel, such that
+     * the registration can be cancelled if the tunnel is removed.
+     *
+     * @param registration
+     *     The registration of this tunnel with the wheel.
+     */
+    public void setRegistration(ExpirationWheel.Registration registration) {
+        this.registration = registration;
+    }
+
+    /**
+     * Cancels the registration of this tunnel with the wheel, if any, such
+     * that this tunnel will not be expired.
+     */
+    public void cancelExpiration() {
+        ExpirationWheel.Registration current = registration;
+        if (current != null)
+            current.cancel();
     }
 
     /**
@@ -72,4 +128,16 @@ class GuacamoleHTTPTunnel extends DelegatingGuacamoleTunnel {
         return lastAccessedTime;
     }
 
+    /**
+     * Returns the compressor which compresses data sent to the client over
+     * this tunnel. The state of this compressor persists across all HTTP
+     * requests which read from this tunnel.
+     *
+     * @return
+     *     The compressor associated with this tunnel.
+     */
+    public AdaptiveCompressor getCompressor() {
+        return compressor;
+    }
+
 }
@@ -19,14 +19,11 @@
 
 package org.apache.guacamole.servlet;
 
-import java.util.Iterator;
-import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.io.AdaptiveCompressor;
+import org.apache.guacamole.net.ExpirationWheel;
 import org.apache.guacamole.net.GuacamoleTunnel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,17 +44,16 @@ class GuacamoleHTTPTunnelMap {
     private static final Logger logger = LoggerFactory.getLogger(GuacamoleHTTPTunnelMap.class);
 
     /**
-     * The number of seconds to wait between tunnel accesses before timing out
-     * Note that this will be enforced only within a factor of 2. If a tunnel
-     * is unused, it will take between TUNNEL_TIMEOUT and TUNNEL_TIMEOUT*2
-     * seconds before that tunnel is closed and removed.
+     * The number of seconds to wait between tunnel accesses before timing out.
+     * Note that this will be enforced only within the duration of one tick
+     * of the ExpirationWheel in use.
      */
     private static final int TUNNEL_TIMEOUT = 15;
 
     /**
-     * Executor service which runs the periodic tunnel timeout task.
+     * The wheel which expires tunnels that are no longer in use.
      */
-    private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(1);
+    private final ExpirationWheel wheel = ExpirationWheel.getDefault();
 
     /**
      * Map of all tunnels that are using HTTP, indexed by tunnel UUID.
@@ -66,79 +62,74 @@ class GuacamoleHTTPTunnelMap {
             new ConcurrentHashMap<String, GuacamoleHTTPTunnel>();
 
     /**
-     * Creates a new GuacamoleHTTPTunnelMap which automatically closes and
-     * removes HTTP tunnels which are no longer in use.
+     * Expires a single tunnel once it has not been accessed for
+     * TUNNEL_TIMEOUT seconds, removing and closing that tunnel.
      */
-    public GuacamoleHTTPTunnelMap() {
+    private class TunnelExpiration implements ExpirationWheel.Expirable {
 
-        // Check for unused tunnels every few seconds
-        executor.scheduleAtFixedRate(
-            new TunnelTimeoutTask(TUNNEL_TIMEOUT * 1000l),
-            TUNNEL_TIMEOUT, TUNNEL_TIMEOUT, TimeUnit.SECONDS);
-
-    }
+        /**
+         * The UUID of the tunnel.
+         */
+        private final String uuid;
 
-    /**
-     * Task which iterates through all registered tunnels, removing and those
-     * tunnels which have not been accessed for a given number of milliseconds.
-     */
-    private class TunnelTimeoutTask implements Runnable {
+        /**
+         * The tunnel to expire.
+         */
+        private final GuacamoleHTTPTunnel tunnel;
 
         /**
-         * The maximum amount of time to allow between accesses to any one
-         * HTTP tunnel, in milliseconds.
+         * The relay with which the tunnel is registered, or null if the
+         * tunnel is not relayed.
          */
-        private final long tunnelTimeout;
+        private final GuacamoleTunnelRelay relay;
 
         /**
-         * Creates a new task which automatically closes and removes tunnels
-         * which have not been accessed for at least the given number of
-         * milliseconds.
+         * Creates a new TunnelExpiration which expires the given tunnel.
+         *
+         * @param uuid
+         *     The UUID of the tunnel.
          *
-         * @param tunnelTimeout
-         *     The maximum amount of time to allow between separate tunnel
-         *     read/write requests, in milliseconds.
+         * @param tunnel
+         *     The tunnel to expire.
+         *
+         * @param relay
+         *     The relay with which the tunnel is registered, or null if the
+         *     tunnel is not relayed.
          */
-        public TunnelTimeoutTask(long tunnelTimeout) {
-            this.tunnelTimeout = tunnelTimeout;
+        public TunnelExpiration(String uuid, GuacamoleHTTPTunnel tunnel,
+                GuacamoleTunnelRelay relay) {
+            this.uuid = uuid;
+            this.tunnel = tunnel;
+            this.relay = relay;
         }
 
         @Override
-        public void run() {
-
-            // Get current time
-            long now = System.currentTimeMillis();
-
-            // For each tunnel, close and remove any tunnels which have expired
-            Iterator<Map.Entry<String, GuacamoleHTTPTunnel>> entries = tunnelMap.entrySet().iterator();
-            while (entries.hasNext()) {
-
-                Map.Entry<String, GuacamoleHTTPTunnel> entry = entries.next();
-                GuacamoleHTTPTunnel tunnel = entry.getValue();
-
-                // Get elapsed time since last access
-                long age = now - tunnel.getLastAccessedTime();
+        public long getExpirationTime() {
+            return tunnel.getLastAccessedTime() + TUNNEL_TIMEOUT * 1000l;
+        }
 
-                // If tunnel is too old, close and remove it
-                if (age >= tunnelTimeout) {
+        @Override
+        public void expire() {
 
-                    // Remove old entry
-                    logger.debug("HTTP tunnel \"{}\" has timed out.", entry.getKey());
-                    entries.remove();
+            // Do not close tunnels which were already removed
+            if (!tunnelMap.remove(uuid, tunnel))
+                return;
 
-                    // Attempt to close tunnel
-                    try {
-                        tunnel.close();
-                    }
-                    catch (GuacamoleException e) {
-                        logger.debug("Unable to close expired HTTP tunnel.", e);
-                    }
+            logger.debug("HTTP tunnel \"{}\" has timed out.", uuid);
 
-                }
+            // Other nodes must no longer relay requests for this tunnel
+            if (relay != null)
+                relay.deregister(uuid);
 
-            } // end for each tunnel
+            // Attempt to close tunnel
+            try {
+                tunnel.close();
+            }
+            catch (GuacamoleException e) {
+                logger.debug("Unable to close expired HTTP tunnel.", e);
+            }
 
-        } // end timeout task run()
+        }
 
     }
 
@@ -177,9 +168,26 @@ class GuacamoleHTTPTunnelMap {
      * @param tunnel
      *     The GuacamoleTunnel being registered, its associated connection
      *     having just been established via HTTP.
+     *
+     * @param compressor
+     *     The compressor which should compress data sent to the client over
+     *     the given tunnel.
+     *
+     * @param relay
+     *     The relay with which the tunnel has been registered, which must be
+     *     informed if the tunnel expires, or null if the tunnel is not
+     *     relayed.
      */
-    public void put(String uuid, GuacamoleTunnel tunnel) {
-        tunnelMap.put(uuid, new GuacamoleHTTPTunnel(tunnel));
+    public void put(String uuid, GuacamoleTunnel tunnel,
+            AdaptiveCompressor compressor, GuacamoleTunnelRelay relay) {
+
+        GuacamoleHTTPTunnel httpTunnel = new GuacamoleHTTPTunnel(tunnel,
+                compressor, wheel);
+
+        // Expire tunnel once no longer in use
+        tunnelMap.put(uuid, httpTunnel);
+        httpTunnel.setRegistration(wheel.register(new TunnelExpiration(uuid, httpTunnel, relay)));
+
     }
 
     /**
@@ -196,15 +204,23 @@ class GuacamoleHTTPTunnelMap {
      *     exists and no removal was performed.
      */
     public GuacamoleHTTPTunnel remove(String uuid) {
-        return tunnelMap.remove(uuid);
+
+        // Stop tracking expiration of removed tunnel
+        GuacamoleHTTPTunnel tunnel = tunnelMap.remove(uuid);
+        if (tunnel != null)
+            tunnel.cancelExpiration();
+
+        return tunnel;
+
     }
 
     /**
-     * Shuts down this tunnel map, disallowing future tunnels from being
-     * registered and reclaiming any resources.
+     * Shuts down this tunnel map, reclaiming any resources. The tunnels of
+     * this map will no longer be expired.
      */
     public void shutdown() {
-        executor.shutdownNow();
+        for (GuacamoleHTTPTunnel tunnel : tunnelMap.values())
+            tunnel.cancelExpiration();
     }
 
 }
@@ -19,12 +19,12 @@
 
 package org.apache.guacamole.servlet;
 
-import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
+import java.io.OutputStream;
 import java.io.Reader;
-import java.io.Writer;
+import java.nio.charset.Charset;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -34,9 +34,16 @@ import org.apache.guacamole.GuacamoleConnectionClosedException;
 import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.GuacamoleResourceNotFoundException;
 import org.apache.guacamole.GuacamoleServerException;
+import org.apache.guacamole.io.AdaptiveCompressor;
+import org.apache.guacamole.io.ByteGuacamoleWriter;
+import org.apache.guacamole.io.GuacamoleBatchReader;
+import org.apache.guacamole.io.GuacamoleBatchSettings;
+import org.apache.guacamole.io.GuacamoleCompressionSettings;
 import org.apache.guacamole.io.GuacamoleReader;
 import org.apache.guacamole.io.GuacamoleWriter;
+import org.apache.guacamole.io.TunnelTrafficCounters;
 import org.apache.guacamole.net.GuacamoleTunnel;
+import org.apache.guacamole.net.TunnelConnectExecutor;
 import org.apache.guacamole.protocol.GuacamoleStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -84,6 +91,17 @@ public abstract class GuacamoleHTTPTunnelServlet extends HttpServlet {
      */
     private static final int UUID_LENGTH = 36;
 
+    /**
+     * The character set of all Guacamole protocol data.
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * The UTF-8 form of the empty instruction which marks the end of each
+     * HTTP response containing instruction data.
+     */
+    private static final byte[] END_OF_INSTRUCTIONS = "0.;".getBytes(UTF_8);
+
     /**
      * Registers the given tunnel such that future read/write requests to that
      * tunnel will be properly directed.
@@ -92,8 +110,18 @@ public abstract class GuacamoleHTTPTunnelServlet extends HttpServlet {
      *     The tunnel to register.
      */
     protected void registerTunnel(GuacamoleTunnel tunnel) {
-        tunnels.put(tunnel.getUUID().toString(), tunnel);
+
+        String tunnelUUID = tunnel.getUUID().toString();
+
+        // Allow other nodes to relay requests for this tunnel
+        GuacamoleTunnelRelay relay = getTunnelRelay();
+        if (relay != null)
+            relay.register(tunnelUUID);
+
+        tunnels.put(tunnelUUID, tunnel,
+                new AdaptiveCompressor(getCompressionSettings()), relay);
         logger.debug("Registered tunnel \"{}\".", tunnel.getUUID());
+
     }
 
     /**
@@ -104,8 +132,81 @@ public abstract class GuacamoleHTTPTunnelServlet extends HttpServlet {
      *     The tunnel to deregister.
      */
     protected void deregisterTunnel(GuacamoleTunnel tunnel) {
-        tunnels.remove(tunnel.getUUID().toString());
+
+        String tunnelUUID = tunnel.getUUID().toString();
+
+        GuacamoleHTTPTunnel removed = tunnels.remove(tunnelUUID);
         logger.debug("Deregistered tunnel \"{}\".", tunnel.getUUID());
+
+        // Other nodes must no longer relay requests for this tunnel
+        GuacamoleTunnelRelay relay = getTunnelRelay();
+        if (relay != null)
+            relay.deregister(tunnelUUID);
+
+        // Report traffic of tunnel, if it was still registered
+        if (removed != null)
+            logger.debug("Traffic of tunnel \"{}\": {}", tunnel.getUUID(),
+                    removed.getCompressor().getCounters());
+
+    }
+
+    /**
+     * Returns the compressor associated with the given tunnel, if the tunnel
+     * was registered with registerTunnel(). If the tunnel was obtained by
+     * other means, a new compressor is returned, thus compression of that
+     * tunnel is not adapted across requests.
+     *
+     * @param tunnel
+     *     The tunnel whose compressor should be returned.
+     *
+     * @return
+     *     The compressor associated with the given tunnel.
+     */
+    private AdaptiveCompressor getCompressor(GuacamoleTunnel tunnel) {
+
+        if (tunnel instanceof GuacamoleHTTPTunnel)
+            return ((GuacamoleHTTPTunnel) tunnel).getCompressor();
+
+        return new AdaptiveCompressor(getCompressionSettings());
+
+    }
+
+    /**
+     * Returns whether the client which made the given request accepts
+     * responses compressed using gzip, as declared by the "Accept-Encoding"
+     * header of the request.
+     *
+     * @param request
+     *     The HTTP request to test.
+     *
+     * @return
+     *     true if the client accepts gzip-compressed responses, false
+     *     otherwise.
+     */
+    private static boolean acceptsGzip(HttpServletRequest request) {
+
+        String header = request.getHeader("Accept-Encoding");
+        if (header == null)
+            return false;
+
+        for (String encoding : header.split(",")) {
+
+            String[] parameters = encoding.split(";");
+            if (!parameters[0].trim().equalsIgnoreCase("gzip"))
+                continue;
+
+            // Honor explicit refusal of gzip via a quality of zero
+            for (int i = 1; i < parameters.length; i++) {
+                if (parameters[i].trim().matches("q=0(\\.0*)?"))
+                    return false;
+            }
+
+            return true;
+
+        }
+
+        return false;
+
     }
 
     /**
@@ -134,6 +235,42 @@ public abstract class GuacamoleHTTPTunnelServlet extends HttpServlet {
 
     }
 
+    /**
+     * Relays the given read or write request to the node holding the
+     * requested tunnel, if that tunnel is not held by this node and a
+     * GuacamoleTunnelRelay is in use.
+     *
+     * @param request
+     *     The HttpServletRequest associated with the read or write request
+     *     received.
+     *
+     * @param response
+     *     The HttpServletResponse associated with the read or write request
+     *     received.
+     *
+     * @param tunnelUUID
+     *     The UUID of the requested tunnel.
+     *
+     * @return
+     *     true if the request was relayed to another node, false if the
+     *     request must be handled by this node.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while relaying the request.
+     */
+    private boolean relayTunnelRequest(HttpServletRequest request,
+            HttpServletResponse response, String tunnelUUID)
+            throws GuacamoleException {
+
+        // Tunnels held by this node are never relayed
+        GuacamoleTunnelRelay relay = getTunnelRelay();
+        if (relay == null || tunnels.get(tunnelUUID) != null)
+            return false;
+
+        return relay.relay(request, response, tunnelUUID);
+
+    }
+
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException {
         handleTunnelRequest(request, response);
@@ -199,7 +336,7 @@ public abstract class GuacamoleHTTPTunnelServlet extends HttpServlet {
      * @throws ServletException
      *     If an error occurs while servicing the request.
      */
-    protected void handleTunnelRequest(HttpServletRequest request,
+    protected void handleTunnelRequest(final HttpServletRequest request,
             HttpServletResponse response) throws ServletException {
 
         try {
@@ -209,10 +346,19 @@ public abstract class GuacamoleHTTPTunnelServlet extends HttpServlet {
                 throw new GuacamoleClientException("No query string provided.");
 
             // If connect operation, call doConnect() and return tunnel UUID
-            // in response.
+            // in response. As the response cannot be completed
+            // asynchronously, the connect executor serves only to bound the
+            // number of tunnels being created concurrently.
             if (query.equals("connect")) {
 
-                GuacamoleTunnel tunnel = doConnect(request);
+                GuacamoleTunnel tunnel = getConnectExecutor().connect(new TunnelConnectExecutor.ConnectTask() {
+
+                    @Override
+                    public GuacamoleTunnel connect() throws GuacamoleException {
+                        return doConnect(request);
+                    }
+
+                });
                 if (tunnel != null) {
 
                     // Register newly-created tunnel
@@ -238,18 +384,26 @@ public abstract class GuacamoleHTTPTunnelServlet extends HttpServlet {
             }
 
             // If read operation, call doRead() with tunnel UUID, ignoring any
-            // characters following the tunnel UUID.
-            else if(query.startsWith(READ_PREFIX))
-                doRead(request, response, query.substring(
+            // characters following the tunnel UUID, unless the tunnel is held
+            // by another node
+            else if(query.startsWith(READ_PREFIX)) {
+                String tunnelUUID = query.substring(
                         READ_PREFIX_LENGTH,
-                        READ_PREFIX_LENGTH + UUID_LENGTH));
+                        READ_PREFIX_LENGTH + UUID_LENGTH);
+                if (!relayTunnelRequest(request, response, tunnelUUID))
+                    doRead(request, response, tunnelUUID);
+            }
 
             // If write operation, call doWrite() with tunnel UUID, ignoring any
-            // characters following the tunnel UUID.
-            else if(query.startsWith(WRITE_PREFIX))
-                doWrite(request, response, query.substring(
+            // characters following the tunnel UUID, unless the tunnel is held
+            // by another node
+            else if(query.startsWith(WRITE_PREFIX)) {
+                String tunnelUUID = query.substring(
                         WRITE_PREFIX_LENGTH,
-                        WRITE_PREFIX_LENGTH + UUID_LENGTH));
+                        WRITE_PREFIX_LENGTH + UUID_LENGTH);
+                if (!relayTunnelRequest(request, response, tunnelUUID))
+                    doWrite(request, response, tunnelUUID);
+            }
 
             // Otherwise, invalid operation
             else
@@ -270,6 +424,61 @@ public abstract class GuacamoleHTTPTunnelServlet extends HttpServlet {
 
     }
 
+    /**
+     * Returns the TunnelConnectExecutor which should create each tunnel. As
+     * the response to a connect request cannot be completed asynchronously,
+     * the request thread waits for the tunnel to be created, but the number
+     * of tunnels being created concurrently remains bounded by the executor.
+     * By default, the executor returned by TunnelConnectExecutor.getDefault()
+     * is used.
+     *
+     * @return
+     *     The TunnelConnectExecutor which should create all tunnels.
+     */
+    protected TunnelConnectExecutor getConnectExecutor() {
+        return TunnelConnectExecutor.getDefault();
+    }
+
+    /**
+     * Returns the GuacamoleBatchSettings determining how instructions read
+     * from each tunnel are combined into writes to the HTTP response. By
+     * default, the settings returned by GuacamoleBatchSettings.getDefault()
+     * are used.
+     *
+     * @return
+     *     The GuacamoleBatchSettings to use for all tunnels.
+     */
+    protected GuacamoleBatchSettings getBatchSettings() {
+        return GuacamoleBatchSettings.getDefault();
+    }
+
+    /**
+     * Returns the GuacamoleCompressionSettings determining whether data sent
+     * over each tunnel is compressed, and recording the total traffic of all
+     * tunnels. By default, the settings returned by
+     * GuacamoleCompressionSettings.getDefault() are used.
+     *
+     * @return
+     *     The GuacamoleCompressionSettings to use for all tunnels.
+     */
+    protected GuacamoleCompressionSettings getCompressionSettings() {
+        return GuacamoleCompressionSettings.getDefault();
+    }
+
+    /**
+     * Returns the GuacamoleTunnelRelay which should relay requests for
+     * tunnels held by other nodes, and which should record the tunnels held
+     * by this node. By default, the relay returned by
+     * GuacamoleTunnelRelay.getDefault() is used.
+     *
+     * @return
+     *     The GuacamoleTunnelRelay to use for all tunnels, or null if
+     *     requests for tunnels should never be relayed.
+     */
+    protected GuacamoleTunnelRelay getTunnelRelay() {
+        return GuacamoleTunnelRelay.getDefault();
+    }
+
     /**
      * Called whenever the JavaScript Guacamole client makes a connection
      * request via HTTP. It it up to the implementor of this function to define
@@ -335,45 +544,56 @@ public abstract class GuacamoleHTTPTunnelServlet extends HttpServlet {
             response.setContentType("application/octet-stream");
             response.setHeader("Cache-Control", "no-cache");
 
-            // Get writer for response
-            Writer out = new BufferedWriter(new OutputStreamWriter(
-                    response.getOutputStream(), "UTF-8"));
+            // Compress response unless compression is disabled or has not
+            // proven worthwhile for this tunnel
+            AdaptiveCompressor compressor = getCompressor(tunnel);
+            boolean compress = compressor.isActive() && acceptsGzip(request);
+            if (compress)
+                response.setHeader("Content-Encoding", "gzip");
+
+            // Get output stream for response. Each batch is written with a
+            // single call, thus no further buffering is needed.
+            OutputStream out = compressor.getOutputStream(
+                    response.getOutputStream(), compress);
+            GuacamoleBatchReader batchReader = new GuacamoleBatchReader(reader, getBatchSettings());
 
             // Stream data to response, ensuring output stream is closed
             try {
 
                 // Deregister tunnel and throw error if we reach EOF without
                 // having ever sent any data
-                char[] message = reader.read();
-                if (message == null)
+                if (!batchReader.writeBatch(out))
                     throw new GuacamoleConnectionClosedException("Tunnel reached end of stream.");
 
-                // For all messages, until another stream is ready (we send at least one message)
-                do {
-
-                    // Get message output bytes
-                    out.write(message, 0, message.length);
+                // For all batches, until another stream is ready (we send at
+                // least one batch)
+                boolean endOfStream = false;
+                for (;;) {
 
-                    // Flush if we expect to wait
-                    if (!reader.available()) {
-                        out.flush();
-                        response.flushBuffer();
-                    }
+                    // Flush each batch as it is completed
+                    out.flush();
+                    response.flushBuffer();
 
                     // No more messages another stream can take over
-                    if (tunnel.hasQueuedReaderThreads())
+                    if (tunnel.hasQueuedReaderThreads() || !tunnel.isOpen())
                         break;
 
-                } while (tunnel.isOpen() && (message = reader.read()) != null);
+                    // Stop once no further instructions remain
+                    if (!batchReader.writeBatch(out)) {
+                        endOfStream = true;
+                        break;
+                    }
+
+                }
 
                 // Close tunnel immediately upon EOF
-                if (message == null) {
+                if (endOfStream) {
                     deregisterTunnel(tunnel);
                     tunnel.close();
                 }
 
                 // End-of-instructions marker
-                out.write("0.;");
+                out.write(END_OF_INSTRUCTIONS);
                 out.flush();
                 response.flushBuffer();
             }
@@ -386,7 +606,7 @@ public abstract class GuacamoleHTTPTunnelServlet extends HttpServlet {
                 tunnel.close();
 
                 // End-of-instructions marker
-                out.write("0.;");
+                out.write(END_OF_INSTRUCTIONS);
                 out.flush();
                 response.flushBuffer();
 
@@ -458,34 +678,73 @@ public abstract class GuacamoleHTTPTunnelServlet extends HttpServlet {
         response.setHeader("Cache-Control", "no-cache");
         response.setContentLength(0);
 
+        // Record all data received within the counters of the tunnel
+        TunnelTrafficCounters counters = getCompressor(tunnel).getCounters();
+
         // Send data
         try {
 
             // Get writer from tunnel
             GuacamoleWriter writer = tunnel.acquireWriter();
 
-            // Get input reader for HTTP stream
-            Reader input = new InputStreamReader(
-                    request.getInputStream(), "UTF-8");
+            // Forward UTF-8 data without decoding, if supported
+            if (writer instanceof ByteGuacamoleWriter) {
 
-            // Transfer data from input stream to tunnel output, ensuring
-            // input is always closed
-            try {
+                ByteGuacamoleWriter byteWriter = (ByteGuacamoleWriter) writer;
+                InputStream input = request.getInputStream();
+
+                // Transfer data from input stream to tunnel output, ensuring
+                // input is always closed
+                try {
+
+                    // Buffer
+                    int length;
+                    byte[] buffer = new byte[8192];
 
-                // Buffer
-                int length;
-                char[] buffer = new char[8192];
+                    // Transfer data using buffer
+                    while (tunnel.isOpen() &&
+                            (length = input.read(buffer, 0, buffer.length)) != -1) {
+                        byteWriter.writeBytes(buffer, 0, length);
+                        counters.addBytesIn(length);
+                    }
+
+                }
 
-                // Transfer data using buffer
-                while (tunnel.isOpen() &&
-                        (length = input.read(buffer, 0, buffer.length)) != -1)
-                    writer.write(buffer, 0, length);
+                // Close input stream in all cases
+                finally {
+                    input.close();
+                }
 
             }
 
-            // Close input stream in all cases
-            finally {
-                input.close();
+            else {
+
+                // Get input reader for HTTP stream
+                Reader input = new InputStreamReader(
+                        request.getInputStream(), "UTF-8");
+
+                // Transfer data from input stream to tunnel output, ensuring
+                // input is always closed
+                try {
+
+                    // Buffer
+                    int length;
+                    char[] buffer = new char[8192];
+
+                    // Transfer data using buffer
+                    while (tunnel.isOpen() &&
+                            (length = input.read(buffer, 0, buffer.length)) != -1) {
+                        writer.write(buffer, 0, length);
+                        counters.addBytesIn(length);
+                    }
+
+                }
+
+                // Close input stream in all cases
+                finally {
+                    input.close();
+                }
+
             }
 
         }
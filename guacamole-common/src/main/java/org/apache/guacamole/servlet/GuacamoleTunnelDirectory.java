@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.servlet;
+
+import org.apache.guacamole.GuacamoleException;
+
+/**
+ * Directory shared by all nodes of a cluster which records the node holding
+ * each HTTP tunnel, such that requests for a tunnel which arrive at any other
+ * node can be relayed to the node holding that tunnel. Each node is
+ * identified by the address at which other nodes can reach its tunnel
+ * servlet.
+ */
+public interface GuacamoleTunnelDirectory {
+
+    /**
+     * Records that the tunnel having the given UUID is held by the node
+     * having the given address.
+     *
+     * @param tunnelUUID
+     *     The UUID of the tunnel.
+     *
+     * @param nodeAddress
+     *     The address of the tunnel servlet of the node holding the tunnel.
+     *
+     * @throws GuacamoleException
+     *     If the tunnel cannot be recorded.
+     */
+    void register(String tunnelUUID, String nodeAddress)
+            throws GuacamoleException;
+
+    /**
+     * Returns the address of the node holding the tunnel having the given
+     * UUID.
+     *
+     * @param tunnelUUID
+     *     The UUID of the tunnel.
+     *
+     * @return
+     *     The address of the tunnel servlet of the node holding the tunnel,
+     *     or null if no node is known to hold the tunnel.
+     *
+     * @throws GuacamoleException
+     *     If the directory cannot be read.
+     */
+    String lookup(String tunnelUUID) throws GuacamoleException;
+
+    /**
+     * Removes the record of the tunnel having the given UUID, if any.
+     *
+     * @param tunnelUUID
+     *     The UUID of the tunnel.
+     *
+     * @throws GuacamoleException
+     *     If the record cannot be removed.
+     */
+    void deregister(String tunnelUUID) throws GuacamoleException;
+
+    /**
+     * Removes the records of all tunnels held by the node having the given
+     * address, as is necessary when that node stops, including records left
+     * behind by any previous run of that node which stopped abnormally.
+     *
+     * @param nodeAddress
+     *     The address of the tunnel servlet of the node.
+     *
+     * @throws GuacamoleException
+     *     If the records cannot be removed.
+     */
+    void deregisterNode(String nodeAddress) throws GuacamoleException;
+
+}
@@ -0,0 +1,374 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.servlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.GuacamoleResourceNotFoundException;
+import org.apache.guacamole.GuacamoleServerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Relays HTTP tunnel requests between the nodes of a cluster, such that any
+ * node can serve the read and write requests of any tunnel. Each node records
+ * the tunnels it holds within a GuacamoleTunnelDirectory shared by all nodes.
+ * When a request arrives for a tunnel which is not held locally, the request
+ * is forwarded as-is to the tunnel servlet of the node holding the tunnel,
+ * and the response of that node is streamed back to the client.
+ *
+ * Relayed requests are marked with a header, and are never relayed again,
+ * thus an out-of-date directory cannot cause requests to loop between nodes.
+ */
+public class GuacamoleTunnelRelay {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(GuacamoleTunnelRelay.class);
+
+    /**
+     * The name of the header which marks requests which have already been
+     * relayed by another node.
+     */
+    public static final String RELAYED_HEADER = "Guacamole-Tunnel-Relayed";
+
+    /**
+     * The maximum amount of time to wait for a connection to another node,
+     * in milliseconds.
+     */
+    public static final int CONNECT_TIMEOUT = 5000;
+
+    /**
+     * The maximum amount of time to wait for data from another node while
+     * relaying a response, in milliseconds. As guacd regularly sends data
+     * for every active connection, this need only be long enough to cover a
+     * busy guacd.
+     */
+    public static final int READ_TIMEOUT = 30000;
+
+    /**
+     * The size of the buffer used to relay request and response bodies, in
+     * bytes.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * The headers of each request which are relayed to the node holding the
+     * tunnel.
+     */
+    private static final String[] REQUEST_HEADERS = {
+        "Content-Type",
+        "Accept-Encoding"
+    };
+
+    /**
+     * The headers of each response which are relayed back to the client.
+     */
+    private static final String[] RESPONSE_HEADERS = {
+        "Content-Type",
+        "Content-Encoding",
+        "Cache-Control",
+        "Guacamole-Status-Code",
+        "Guacamole-Error-Message"
+    };
+
+    /**
+     * The relay shared by all HTTP tunnel servlets which do not provide their
+     * own, or null if tunnels should not be relayed.
+     */
+    private static volatile GuacamoleTunnelRelay defaultRelay;
+
+    /**
+     * The directory recording the node holding each tunnel.
+     */
+    private final GuacamoleTunnelDirectory directory;
+
+    /**
+     * The address at which other nodes can reach the tunnel servlet of this
+     * node.
+     */
+    private final String localAddress;
+
+    /**
+     * Creates a new GuacamoleTunnelRelay which records the tunnels of this
+     * node within the given directory. Any records left within the directory
+     * by a previous run of this node are removed.
+     *
+     * @param directory
+     *     The directory recording the node holding each tunnel.
+     *
+     * @param localAddress
+     *     The absolute URL at which other nodes can reach the tunnel servlet
+     *     of this node.
+     */
+    public GuacamoleTunnelRelay(GuacamoleTunnelDirectory directory,
+            String localAddress) {
+
+        this.directory = directory;
+        this.localAddress = localAddress;
+
+        // Tunnels recorded by any previous run no longer exist
+        try {
+            directory.deregisterNode(localAddress);
+        }
+        catch (GuacamoleException e) {
+            logger.warn("Unable to remove stale tunnel records: {}", e.getMessage());
+            logger.debug("Error while removing records of previous run.", e);
+        }
+
+    }
+
+    /**
+     * Returns the relay shared by all HTTP tunnel servlets which do not
+     * provide their own.
+     *
+     * @return
+     *     The shared GuacamoleTunnelRelay, or null if tunnels should not be
+     *     relayed.
+     */
+    public static GuacamoleTunnelRelay getDefault() {
+        return defaultRelay;
+    }
+
+    /**
+     * Replaces the relay shared by all HTTP tunnel servlets which do not
+     * provide their own. Any previous relay is not shut down.
+     *
+     * @param relay
+     *     The GuacamoleTunnelRelay to share, or null if tunnels should not be
+     *     relayed.
+     */
+    public static void setDefault(GuacamoleTunnelRelay relay) {
+        defaultRelay = relay;
+    }
+
+    /**
+     * Records that the tunnel having the given UUID is held by this node.
+     * Failure to record the tunnel is logged, and affects only requests for
+     * that tunnel which arrive at other nodes.
+     *
+     * @param tunnelUUID
+     *     The UUID of the tunnel.
+     */
+    public void register(String tunnelUUID) {
+        try {
+            directory.register(tunnelUUID, localAddress);
+        }
+        catch (GuacamoleException e) {
+            logger.warn("Unable to record tunnel \"{}\" for other nodes: {}", tunnelUUID, e.getMessage());
+            logger.debug("Error while registering tunnel.", e);
+        }
+    }
+
+    /**
+     * Removes the record of the tunnel having the given UUID, such that
+     * other nodes no longer relay requests for that tunnel to this node.
+     *
+     * @param tunnelUUID
+     *     The UUID of the tunnel.
+     */
+    public void deregister(String tunnelUUID) {
+        try {
+            directory.deregister(tunnelUUID);
+        }
+        catch (GuacamoleException e) {
+            logger.warn("Unable to remove record of tunnel \"{}\": {}", tunnelUUID, e.getMessage());
+            logger.debug("Error while deregistering tunnel.", e);
+        }
+    }
+
+    /**
+     * Copies all data from the given input stream to the given output stream
+     * until end of stream, optionally flushing after each read such that
+     * data is forwarded as soon as it is received.
+     *
+     * @param input
+     *     The stream to read from.
+     *
+     * @param output
+     *     The stream to write to.
+     *
+     * @param flush
+     *     Whether the output stream should be flushed after each read.
+     *
+     * @throws IOException
+     *     If an error occurs while reading or writing.
+     */
+    private static void copy(InputStream input, OutputStream output,
+            boolean flush) throws IOException {
+
+        byte[] buffer = new byte[BUFFER_SIZE];
+
+        int length;
+        while ((length = input.read(buffer)) != -1) {
+            output.write(buffer, 0, length);
+            if (flush)
+                output.flush();
+        }
+
+    }
+
+    /**
+     * Relays the given tunnel request to the node holding the requested
+     * tunnel, if that tunnel is held by another node. If the request has
+     * already been relayed, or the tunnel is not known to be held by any
+     * other node, no action is taken.
+     *
+     * @param request
+     *     The HTTP tunnel request to relay.
+     *
+     * @param response
+     *     The HTTP response to which the response of the node holding the
+     *     tunnel should be copied.
+     *
+     * @param tunnelUUID
+     *     The UUID of the requested tunnel.
+     *
+     * @return
+     *     true if the request was relayed, false if the request must be
+     *     handled locally.
+     *
+     * @throws GuacamoleException
+     *     If the node holding the tunnel cannot be reached, or an error
+     *     occurs while relaying the request.
+     */
+    public boolean relay(HttpServletRequest request,
+            HttpServletResponse response, String tunnelUUID)
+            throws GuacamoleException {
+
+        // Never relay the same request twice
+        if (request.getHeader(RELAYED_HEADER) != null)
+            return false;
+
+        // Relay only tunnels held by other nodes
+        String nodeAddress = directory.lookup(tunnelUUID);
+        if (nodeAddress == null || nodeAddress.equals(localAddress))
+            return false;
+
+        logger.debug("Relaying request for tunnel \"{}\" to \"{}\".", tunnelUUID, nodeAddress);
+
+        HttpURLConnection connection;
+        try {
+
+            connection = (HttpURLConnection) new URL(nodeAddress + "?"
+                    + request.getQueryString()).openConnection();
+            connection.setConnectTimeout(CONNECT_TIMEOUT);
+            connection.setReadTimeout(READ_TIMEOUT);
+            connection.setUseCaches(false);
+            connection.setRequestMethod(request.getMethod());
+            connection.setRequestProperty(RELAYED_HEADER, "1");
+
+            for (String name : REQUEST_HEADERS) {
+                String value = request.getHeader(name);
+                if (value != null)
+                    connection.setRequestProperty(name, value);
+            }
+
+            // Forward request body, if any (write requests)
+            if ("POST".equals(request.getMethod())) {
+
+                connection.setDoOutput(true);
+                connection.setChunkedStreamingMode(BUFFER_SIZE);
+
+                InputStream input = request.getInputStream();
+                OutputStream output = connection.getOutputStream();
+                try {
+                    copy(input, output, false);
+                }
+                finally {
+                    output.close();
+                    input.close();
+                }
+
+            }
+
+            connection.connect();
+
+        }
+
+        // The node holding the tunnel, and thus the tunnel, is gone
+        catch (IOException e) {
+            logger.debug("Node \"{}\" is unreachable.", nodeAddress, e);
+            directory.deregister(tunnelUUID);
+            throw new GuacamoleResourceNotFoundException("Tunnel is no longer available.", e);
+        }
+
+        try {
+
+            int status = connection.getResponseCode();
+
+            for (String name : RESPONSE_HEADERS) {
+                String value = connection.getHeaderField(name);
+                if (value != null)
+                    response.setHeader(name, value);
+            }
+
+            // Relay errors without body
+            if (status >= 400) {
+                InputStream error = connection.getErrorStream();
+                if (error != null)
+                    error.close();
+                response.sendError(status);
+                return true;
+            }
+
+            // Stream response to client as it is received
+            response.setStatus(status);
+            InputStream input = connection.getInputStream();
+            try {
+                OutputStream output = response.getOutputStream();
+                copy(input, output, true);
+                output.flush();
+            }
+            finally {
+                input.close();
+            }
+
+        }
+        catch (IOException e) {
+            throw new GuacamoleServerException("Unable to relay tunnel request: " + e.getMessage(), e);
+        }
+
+        return true;
+
+    }
+
+    /**
+     * Removes the records of all tunnels held by this node, such that no
+     * further requests are relayed to this node.
+     */
+    public void shutdown() {
+        try {
+            directory.deregisterNode(localAddress);
+        }
+        catch (GuacamoleException e) {
+            logger.warn("Unable to remove tunnel records: {}", e.getMessage());
+            logger.debug("Error while removing records of this node.", e);
+        }
+    }
+
+}
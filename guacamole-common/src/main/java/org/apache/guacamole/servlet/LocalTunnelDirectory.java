@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.servlet;
+
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A GuacamoleTunnelDirectory which records tunnels within the memory of the
+ * local JVM. This directory is visible only to relays sharing the same
+ * instance, and is thus only useful as a stand-in for a shared directory when
+ * testing.
+ */
+public class LocalTunnelDirectory implements GuacamoleTunnelDirectory {
+
+    /**
+     * The address of the node holding each tunnel, indexed by tunnel UUID.
+     */
+    private final ConcurrentMap<String, String> nodes =
+            new ConcurrentHashMap<String, String>();
+
+    @Override
+    public void register(String tunnelUUID, String nodeAddress) {
+        nodes.put(tunnelUUID, nodeAddress);
+    }
+
+    @Override
+    public String lookup(String tunnelUUID) {
+        return nodes.get(tunnelUUID);
+    }
+
+    @Override
+    public void deregister(String tunnelUUID) {
+        nodes.remove(tunnelUUID);
+    }
+
+    @Override
+    public void deregisterNode(String nodeAddress) {
+        nodes.values().removeAll(Collections.singleton(nodeAddress));
+    }
+
+}
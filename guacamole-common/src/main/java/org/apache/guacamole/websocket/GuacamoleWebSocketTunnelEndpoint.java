@@ -20,6 +20,7 @@
 package org.apache.guacamole.websocket;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import javax.websocket.CloseReason;
 import javax.websocket.CloseReason.CloseCode;
 import javax.websocket.Endpoint;
@@ -31,12 +32,12 @@ import javax.websocket.OnOpen;
 import javax.websocket.RemoteEndpoint;
 import javax.websocket.Session;
 import org.apache.guacamole.GuacamoleException;
-import org.apache.guacamole.io.GuacamoleReader;
-import org.apache.guacamole.io.GuacamoleWriter;
+import org.apache.guacamole.io.GuacamoleBatchSettings;
+import org.apache.guacamole.io.GuacamoleCompressionSettings;
 import org.apache.guacamole.net.GuacamoleTunnel;
-import org.apache.guacamole.GuacamoleClientException;
-import org.apache.guacamole.GuacamoleConnectionClosedException;
-import org.apache.guacamole.protocol.GuacamoleInstruction;
+import org.apache.guacamole.net.TunnelConnectExecutor;
+import org.apache.guacamole.net.TunnelPumpExecutor;
+import org.apache.guacamole.net.TunnelPumpExecutors;
 import org.apache.guacamole.protocol.GuacamoleStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,16 +46,26 @@ import org.slf4j.LoggerFactory;
  * A WebSocket implementation of GuacamoleTunnel functionality, compatible with
  * the Guacamole.WebSocketTunnel object included with the JavaScript API.
  * Messages sent/received are simply chunks of the Guacamole protocol
- * instruction stream.
+ * instruction stream. If the "guacamole-binary" subprotocol is negotiated,
+ * the data of each blob instruction sent to the client is instead sent as a
+ * separate binary message, as produced by GuacamoleBinaryBatchReader.
  *
  * @author Michael Jumper
  */
 public abstract class GuacamoleWebSocketTunnelEndpoint extends Endpoint {
 
     /**
-     * The default, minimum buffer size for instructions.
+     * The WebSocket subprotocol over which all data is sent as text messages
+     * containing Guacamole instructions.
      */
-    private static final int BUFFER_SIZE = 8192;
+    public static final String SUBPROTOCOL = "guacamole";
+
+    /**
+     * The WebSocket subprotocol over which the data of each blob instruction
+     * sent to the client is sent as a binary message, while all other
+     * instructions are sent as text messages.
+     */
+    public static final String BINARY_SUBPROTOCOL = "guacamole-binary";
 
     /**
      * Logger for this class.
@@ -62,11 +73,11 @@ public abstract class GuacamoleWebSocketTunnelEndpoint extends Endpoint {
     private final Logger logger = LoggerFactory.getLogger(GuacamoleWebSocketTunnelEndpoint.class);
 
     /**
-     * The underlying GuacamoleTunnel. WebSocket reads/writes will be handled
-     * as reads/writes to this tunnel.
+     * The state of the tunnel associated with this WebSocket connection, or
+     * null if the connection has not yet been opened.
      */
-    private GuacamoleTunnel tunnel;
-    
+    private volatile WebSocketTunnelConnection connection;
+
     /**
      * Sends the given status on the given WebSocket connection and closes the
      * connection.
@@ -87,6 +98,67 @@ public abstract class GuacamoleWebSocketTunnelEndpoint extends Endpoint {
 
     }
 
+    /**
+     * Returns the TunnelPumpExecutor which should run the pump forwarding
+     * data from each tunnel to its WebSocket connection. By default, the
+     * executor returned by TunnelPumpExecutors.getDefault() is used.
+     *
+     * @return The TunnelPumpExecutor which should run all tunnel pumps.
+     */
+    protected TunnelPumpExecutor getPumpExecutor() {
+        return TunnelPumpExecutors.getDefault();
+    }
+
+    /**
+     * Returns the TunnelConnectExecutor which should create each tunnel,
+     * such that the thread handling the WebSocket handshake is not blocked
+     * while the tunnel is created. By default, the executor returned by
+     * TunnelConnectExecutor.getDefault() is used.
+     *
+     * @return The TunnelConnectExecutor which should create all tunnels.
+     */
+    protected TunnelConnectExecutor getConnectExecutor() {
+        return TunnelConnectExecutor.getDefault();
+    }
+
+    /**
+     * Returns the GuacamoleBatchSettings determining how instructions read
+     * from each tunnel are combined into WebSocket messages. By default, the
+     * settings returned by GuacamoleBatchSettings.getDefault() are used.
+     *
+     * @return The GuacamoleBatchSettings to use for all tunnels.
+     */
+    protected GuacamoleBatchSettings getBatchSettings() {
+        return GuacamoleBatchSettings.getDefault();
+    }
+
+    /**
+     * Returns the GuacamoleCompressionSettings which record the total traffic
+     * of all tunnels. Compression of WebSocket messages, if any, is performed
+     * by the WebSocket implementation and is invisible to the tunnel, thus
+     * all data sent is recorded as uncompressed. By default, the settings
+     * returned by GuacamoleCompressionSettings.getDefault() are used.
+     *
+     * @return The GuacamoleCompressionSettings to use for all tunnels.
+     */
+    protected GuacamoleCompressionSettings getCompressionSettings() {
+        return GuacamoleCompressionSettings.getDefault();
+    }
+
+    /**
+     * Returns whether the WebSocket extension having the given name
+     * compresses messages, such as the "permessage-deflate" extension. Such
+     * extensions should only be negotiated if compression is enabled within
+     * the GuacamoleCompressionSettings in use.
+     *
+     * @param name The name of the extension.
+     * @return true if the extension compresses messages, false otherwise.
+     */
+    public static boolean isCompressionExtension(String name) {
+        String lowerName = name.toLowerCase();
+        return lowerName.contains("deflate") || lowerName.contains("compress");
+    }
+
     /**
      * Returns a new tunnel for the given session. How this tunnel is created
      * or retrieved is implementation-dependent.
@@ -104,131 +176,82 @@ public abstract class GuacamoleWebSocketTunnelEndpoint extends Endpoint {
 
     @Override
     @OnOpen
-    public void onOpen(final Session session, EndpointConfig config) {
+    public void onOpen(final Session session, final EndpointConfig config) {
 
-        try {
+        final RemoteEndpoint.Basic remote = session.getBasicRemote();
+        final boolean binary = BINARY_SUBPROTOCOL.equals(session.getNegotiatedSubprotocol());
+
+        connection = new WebSocketTunnelConnection() {
 
-            // Get tunnel
-            tunnel = createTunnel(session, config);
-            if (tunnel == null) {
-                closeConnection(session, GuacamoleStatus.RESOURCE_NOT_FOUND);
-                return;
+            @Override
+            protected GuacamoleTunnel createTunnel() throws GuacamoleException {
+                return GuacamoleWebSocketTunnelEndpoint.this.createTunnel(session, config);
             }
 
-        }
-        catch (GuacamoleException e) {
-            logger.error("Creation of WebSocket tunnel to guacd failed: {}", e.getMessage());
-            logger.debug("Error connecting WebSocket tunnel.", e);
-            closeConnection(session, e.getStatus());
-            return;
-        }
+            @Override
+            protected void sendText(String message) throws IOException {
+                remote.sendText(message);
+            }
 
-        // Manually register message handler
-        session.addMessageHandler(new MessageHandler.Whole<String>() {
+            @Override
+            protected void sendBinary(ByteBuffer message) throws IOException {
+                remote.sendBinary(message);
+            }
 
             @Override
-            public void onMessage(String message) {
-                GuacamoleWebSocketTunnelEndpoint.this.onMessage(message);
+            protected boolean isBinary() {
+                return binary;
             }
 
-        });
+            @Override
+            protected void closeConnection(GuacamoleStatus status) {
+                GuacamoleWebSocketTunnelEndpoint.this.closeConnection(session, status);
+            }
 
-        // Prepare read transfer thread
-        Thread readThread = new Thread() {
+            @Override
+            protected TunnelPumpExecutor getPumpExecutor() {
+                return GuacamoleWebSocketTunnelEndpoint.this.getPumpExecutor();
+            }
 
-            /**
-             * Remote (client) side of this connection
-             */
-            private final RemoteEndpoint.Basic remote = session.getBasicRemote();
-                
             @Override
-            public void run() {
-
-                StringBuilder buffer = new StringBuilder(BUFFER_SIZE);
-                GuacamoleReader reader = tunnel.acquireReader();
-                char[] readMessage;
-
-                try {
-
-                    // Send tunnel UUID
-                    remote.sendText(new GuacamoleInstruction(
-                        GuacamoleTunnel.INTERNAL_DATA_OPCODE,
-                        tunnel.getUUID().toString()
-                    ).toString());
-
-                    try {
-
-                        // Attempt to read
-                        while ((readMessage = reader.read()) != null) {
-
-                            // Buffer message
-                            buffer.append(readMessage);
-
-                            // Flush if we expect to wait or buffer is getting full
-                            if (!reader.available() || buffer.length() >= BUFFER_SIZE) {
-                                remote.sendText(buffer.toString());
-                                buffer.setLength(0);
-                            }
-
-                        }
-
-                        // No more data
-                        closeConnection(session, GuacamoleStatus.SUCCESS);
-
-                    }
-
-                    // Catch any thrown guacamole exception and attempt
-                    // to pass within the WebSocket connection, logging
-                    // each error appropriately.
-                    catch (GuacamoleClientException e) {
-                        logger.info("WebSocket connection terminated: {}", e.getMessage());
-                        logger.debug("WebSocket connection terminated due to client error.", e);
-                        closeConnection(session, e.getStatus());
-                    }
-                    catch (GuacamoleConnectionClosedException e) {
-                        logger.debug("Connection to guacd closed.", e);
-                        closeConnection(session, GuacamoleStatus.SUCCESS);
-                    }
-                    catch (GuacamoleException e) {
-                        logger.error("Connection to guacd terminated abnormally: {}", e.getMessage());
-                        logger.debug("Internal error during connection to guacd.", e);
-                        closeConnection(session, e.getStatus());
-                    }
-
-                }
-                catch (IOException e) {
-                    logger.debug("I/O error prevents further reads.", e);
-                }
+            protected TunnelConnectExecutor getConnectExecutor() {
+                return GuacamoleWebSocketTunnelEndpoint.this.getConnectExecutor();
+            }
 
+            @Override
+            protected GuacamoleBatchSettings getBatchSettings() {
+                return GuacamoleWebSocketTunnelEndpoint.this.getBatchSettings();
+            }
+
+            @Override
+            protected GuacamoleCompressionSettings getCompressionSettings() {
+                return GuacamoleWebSocketTunnelEndpoint.this.getCompressionSettings();
             }
 
         };
 
-        readThread.start();
+        // Manually register message handler
+        session.addMessageHandler(new MessageHandler.Whole<String>() {
 
-    }
+            @Override
+            public void onMessage(String message) {
+                GuacamoleWebSocketTunnelEndpoint.this.onMessage(message);
+            }
 
-    @OnMessage
-    public void onMessage(String message) {
+        });
 
-        // Ignore inbound messages if there is no associated tunnel
-        if (tunnel == null)
-            return;
+        // Create tunnel asynchronously, starting the pump once ready
+        connection.open();
 
-        GuacamoleWriter writer = tunnel.acquireWriter();
+    }
 
-        try {
-            // Write received message
-            writer.write(message.toCharArray());
-        }
-        catch (GuacamoleConnectionClosedException e) {
-            logger.debug("Connection to guacd closed.", e);
-        }
-        catch (GuacamoleException e) {
-            logger.debug("WebSocket tunnel write failed.", e);
-        }
+    @OnMessage
+    public void onMessage(String message) {
 
-        tunnel.releaseWriter();
+        // Messages received before the tunnel is ready are buffered
+        WebSocketTunnelConnection current = connection;
+        if (current != null)
+            current.receive(message);
 
     }
     
@@ -236,15 +259,10 @@ public abstract class GuacamoleWebSocketTunnelEndpoint extends Endpoint {
     @OnClose
     public void onClose(Session session, CloseReason closeReason) {
 
-        try {
-            if (tunnel != null)
-                tunnel.close();
-        }
-        catch (GuacamoleException e) {
-            logger.debug("Unable to close WebSocket tunnel.", e);
-        }
-        
+        WebSocketTunnelConnection current = connection;
+        if (current != null)
+            current.close();
+
     }
 
 }
-
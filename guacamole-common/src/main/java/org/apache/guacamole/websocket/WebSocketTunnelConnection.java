@@ -0,0 +1,629 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.websocket;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.guacamole.GuacamoleClientException;
+import org.apache.guacamole.GuacamoleConnectionClosedException;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.io.GuacamoleBatchReader;
+import org.apache.guacamole.io.GuacamoleBatchSettings;
+import org.apache.guacamole.io.GuacamoleBinaryBatchReader;
+import org.apache.guacamole.io.GuacamoleCompressionSettings;
+import org.apache.guacamole.io.GuacamoleReader;
+import org.apache.guacamole.io.GuacamoleWriter;
+import org.apache.guacamole.io.TunnelTrafficCounters;
+import org.apache.guacamole.net.GuacamoleSocket;
+import org.apache.guacamole.net.GuacamoleTunnel;
+import org.apache.guacamole.net.NotifyingGuacamoleSocket;
+import org.apache.guacamole.net.TunnelConnectExecutor;
+import org.apache.guacamole.net.TunnelPumpExecutor;
+import org.apache.guacamole.net.TunnelPumpExecutors;
+import org.apache.guacamole.protocol.GuacamoleInstruction;
+import org.apache.guacamole.protocol.GuacamoleStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The tunnel-related state of a single WebSocket connection, shared by all
+ * WebSocket transports. The tunnel is created asynchronously using a
+ * TunnelConnectExecutor, and data is then forwarded from the tunnel to the
+ * client by a pump running within a TunnelPumpExecutor. Where the socket of
+ * the tunnel supports it, the pump holds a thread only while data is
+ * available. Messages received from the client while the tunnel is still
+ * being created are buffered, up to MAX_PENDING_LENGTH characters, and
+ * written to the tunnel once it is ready. Transports provide only the means of sending messages and closing
+ * the WebSocket connection.
+ */
+public abstract class WebSocketTunnelConnection {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(WebSocketTunnelConnection.class);
+
+    /**
+     * The maximum number of characters of client messages which may be
+     * buffered while the tunnel is being created. If the client sends more
+     * than this before the tunnel is ready, the WebSocket connection is
+     * closed with CLIENT_OVERRUN.
+     */
+    public static final int MAX_PENDING_LENGTH = 65536;
+
+    /**
+     * The underlying GuacamoleTunnel. As tunnels are created asynchronously,
+     * this will be null until the tunnel is ready and all buffered client
+     * messages have been written to it.
+     */
+    private volatile GuacamoleTunnel tunnel;
+
+    /**
+     * Whether the WebSocket connection has been closed. A tunnel which
+     * becomes ready after the connection is closed is closed immediately.
+     */
+    private boolean closed = false;
+
+    /**
+     * Messages received from the client while the tunnel is being created,
+     * in the order received.
+     */
+    private final List<String> pending = new ArrayList<String>();
+
+    /**
+     * The total length of all messages within the pending list, in
+     * characters.
+     */
+    private int pendingLength = 0;
+
+    /**
+     * The counters recording all traffic of the tunnel, or null if the
+     * WebSocket connection has not yet been opened.
+     */
+    private volatile TunnelTrafficCounters counters;
+
+    /**
+     * Returns a new tunnel for this WebSocket connection. This function is
+     * invoked on a thread of the TunnelConnectExecutor and may block.
+     *
+     * @return
+     *     A connected tunnel, or null if no such tunnel exists.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while creating the tunnel, or if access to the
+     *     tunnel is denied.
+     */
+    protected abstract GuacamoleTunnel createTunnel() throws GuacamoleException;
+
+    /**
+     * Sends the given text message to the client.
+     *
+     * @param message
+     *     The message to send.
+     *
+     * @throws IOException
+     *     If an I/O error prevents the message from being sent.
+     */
+    protected abstract void sendText(String message) throws IOException;
+
+    /**
+     * Sends the given binary message to the client. Binary messages are only
+     * sent if isBinary() returns true. By default, binary messages are not
+     * supported.
+     *
+     * @param message
+     *     The message to send.
+     *
+     * @throws IOException
+     *     If an I/O error prevents the message from being sent, or binary
+     *     messages are not supported by the transport.
+     */
+    protected void sendBinary(ByteBuffer message) throws IOException {
+        throw new IOException("Binary messages are not supported.");
+    }
+
+    /**
+     * Returns whether the data of blob instructions should be sent as binary
+     * messages, as produced by GuacamoleBinaryBatchReader. This should be
+     * the case only if the "guacamole-binary" subprotocol was negotiated. By
+     * default, all data is sent as text.
+     *
+     * @return
+     *     true if blob data should be sent as binary messages, false
+     *     otherwise.
+     */
+    protected boolean isBinary() {
+        return false;
+    }
+
+    /**
+     * Sends the given status to the client and closes the WebSocket
+     * connection.
+     *
+     * @param status
+     *     The status to send.
+     */
+    protected abstract void closeConnection(GuacamoleStatus status);
+
+    /**
+     * Returns the TunnelPumpExecutor which should run the pump forwarding
+     * data from the tunnel to the client. By default, the executor returned
+     * by TunnelPumpExecutors.getDefault() is used.
+     *
+     * @return
+     *     The TunnelPumpExecutor which should run the tunnel pump.
+     */
+    protected TunnelPumpExecutor getPumpExecutor() {
+        return TunnelPumpExecutors.getDefault();
+    }
+
+    /**
+     * Returns the TunnelConnectExecutor which should create the tunnel. By
+     * default, the executor returned by TunnelConnectExecutor.getDefault() is
+     * used.
+     *
+     * @return
+     *     The TunnelConnectExecutor which should create the tunnel.
+     */
+    protected TunnelConnectExecutor getConnectExecutor() {
+        return TunnelConnectExecutor.getDefault();
+    }
+
+    /**
+     * Returns the GuacamoleBatchSettings determining how instructions read
+     * from the tunnel are combined into WebSocket messages. By default, the
+     * settings returned by GuacamoleBatchSettings.getDefault() are used.
+     *
+     * @return
+     *     The GuacamoleBatchSettings to use for the tunnel.
+     */
+    protected GuacamoleBatchSettings getBatchSettings() {
+        return GuacamoleBatchSettings.getDefault();
+    }
+
+    /**
+     * Returns the GuacamoleCompressionSettings which record the total traffic
+     * of all tunnels. By default, the settings returned by
+     * GuacamoleCompressionSettings.getDefault() are used.
+     *
+     * @return
+     *     The GuacamoleCompressionSettings to use for the tunnel.
+     */
+    protected GuacamoleCompressionSettings getCompressionSettings() {
+        return GuacamoleCompressionSettings.getDefault();
+    }
+
+    /**
+     * Begins creating the tunnel for this WebSocket connection, starting the
+     * pump once the tunnel is ready. This function does not block. If the
+     * tunnel cannot be created, the WebSocket connection is closed with an
+     * appropriate status.
+     */
+    public void open() {
+
+        counters = new TunnelTrafficCounters(getCompressionSettings().getTotals());
+
+        // Create tunnel asynchronously, starting the pump once ready
+        try {
+            getConnectExecutor().connect(new TunnelConnectExecutor.ConnectTask() {
+
+                @Override
+                public GuacamoleTunnel connect() throws GuacamoleException {
+                    return createTunnel();
+                }
+
+            }, new TunnelConnectExecutor.ConnectCallback() {
+
+                @Override
+                public void tunnelConnected(GuacamoleTunnel connected) {
+
+                    // Do not start connection if tunnel does not exist
+                    if (connected == null) {
+                        closeConnection(GuacamoleStatus.RESOURCE_NOT_FOUND);
+                        return;
+                    }
+
+                    startTunnel(connected);
+
+                }
+
+                @Override
+                public void tunnelFailed(GuacamoleException e) {
+                    logger.error("Creation of WebSocket tunnel to guacd failed: {}", e.getMessage());
+                    logger.debug("Error connecting WebSocket tunnel.", e);
+                    closeConnection(e.getStatus());
+                }
+
+            });
+        }
+        catch (GuacamoleException e) {
+            logger.error("Creation of WebSocket tunnel to guacd failed: {}", e.getMessage());
+            logger.debug("Connection attempt could not be started.", e);
+            closeConnection(e.getStatus());
+        }
+
+    }
+
+    /**
+     * Writes the given client message to the given tunnel.
+     *
+     * @param target
+     *     The tunnel to write to.
+     *
+     * @param message
+     *     The message to write.
+     */
+    private void write(GuacamoleTunnel target, String message) {
+
+        GuacamoleWriter writer = target.acquireWriter();
+
+        try {
+            writer.write(message.toCharArray());
+            counters.addBytesIn(message.length());
+        }
+        catch (GuacamoleConnectionClosedException e) {
+            logger.debug("Connection to guacd closed.", e);
+        }
+        catch (GuacamoleException e) {
+            logger.debug("WebSocket tunnel write failed.", e);
+        }
+
+        target.releaseWriter();
+
+    }
+
+    /**
+     * Writes all messages buffered while the tunnel was being created to the
+     * given newly-created tunnel, associates that tunnel with this WebSocket
+     * connection, and starts the pump which forwards data from the tunnel to
+     * the client. If the WebSocket connection has already been closed, the
+     * tunnel is closed instead.
+     *
+     * @param connected
+     *     The tunnel which has been created for this WebSocket connection.
+     */
+    private void startTunnel(GuacamoleTunnel connected) {
+
+        boolean connectionClosed;
+        synchronized (this) {
+
+            connectionClosed = closed;
+
+            // Flush buffered messages before any new message may be written
+            // directly, preserving the order the client sent them
+            if (!connectionClosed) {
+                for (String message : pending)
+                    write(connected, message);
+                tunnel = connected;
+            }
+
+            pending.clear();
+            pendingLength = 0;
+
+        }
+
+        // Close tunnel immediately if the connection closed while the
+        // tunnel was being created
+        if (connectionClosed) {
+            try {
+                connected.close();
+            }
+            catch (GuacamoleException e) {
+                logger.debug("Unable to close connection to guacd.", e);
+            }
+            return;
+        }
+
+        // Run pump using shared executor, closing the connection (and thus
+        // the tunnel) if the pump cannot be run
+        try {
+            getPumpExecutor().execute(new Pump(connected));
+        }
+        catch (GuacamoleException e) {
+            logger.error("Unable to start WebSocket tunnel: {}", e.getMessage());
+            logger.debug("Tunnel pump could not be started.", e);
+            closeConnection(e.getStatus());
+        }
+
+    }
+
+    /**
+     * Handles the given message received from the client, writing it to the
+     * tunnel. If the tunnel is still being created, the message is buffered
+     * until the tunnel is ready. If too much data has already been buffered,
+     * the WebSocket connection is closed.
+     *
+     * @param message
+     *     The message received from the client.
+     */
+    public void receive(String message) {
+
+        // Write directly once the tunnel is ready
+        GuacamoleTunnel current = tunnel;
+        if (current == null) {
+
+            synchronized (this) {
+
+                // Ignore messages received after closure
+                if (closed)
+                    return;
+
+                // Buffer messages received while the tunnel is being created
+                current = tunnel;
+                if (current == null) {
+
+                    pendingLength += message.length();
+                    if (pendingLength <= MAX_PENDING_LENGTH) {
+                        pending.add(message);
+                        return;
+                    }
+
+                    logger.info("WebSocket connection closed: Client sent too "
+                            + "much data while the tunnel was being created.");
+                    pending.clear();
+                    closed = true;
+
+                }
+
+            }
+
+            // Close only once buffering has been abandoned
+            if (current == null) {
+                closeConnection(GuacamoleStatus.CLIENT_OVERRUN);
+                return;
+            }
+
+        }
+
+        write(current, message);
+
+    }
+
+    /**
+     * Handles closure of the WebSocket connection, closing the tunnel if it
+     * has already been created. A tunnel which is created later is closed as
+     * soon as it is ready.
+     */
+    public void close() {
+
+        GuacamoleTunnel current;
+        synchronized (this) {
+            closed = true;
+            pending.clear();
+            current = tunnel;
+        }
+
+        if (current == null)
+            return;
+
+        try {
+            current.close();
+        }
+        catch (GuacamoleException e) {
+            logger.debug("Unable to close connection to guacd.", e);
+        }
+
+        // Report traffic of tunnel
+        logger.debug("Traffic of tunnel \"{}\": {}", current.getUUID(), counters);
+
+    }
+
+    /**
+     * The pump which forwards all data read from a tunnel to the client. If
+     * the socket of the tunnel is a NotifyingGuacamoleSocket, the pump runs
+     * only while data is available, returning its thread to the executor
+     * whenever guacd has nothing to send and resubmitting itself once data
+     * arrives. Otherwise, the pump blocks within its thread for the life of
+     * the tunnel.
+     */
+    private class Pump implements Runnable {
+
+        /**
+         * The tunnel being read.
+         */
+        private final GuacamoleTunnel connected;
+
+        /**
+         * The socket of the tunnel, if that socket can report when data is
+         * available, or null if reads must block.
+         */
+        private final NotifyingGuacamoleSocket socket;
+
+        /**
+         * Listener which resubmits this pump once data is available.
+         */
+        private final Runnable resume = new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    getPumpExecutor().execute(Pump.this);
+                }
+                catch (GuacamoleException e) {
+                    logger.error("Unable to resume WebSocket tunnel: {}", e.getMessage());
+                    logger.debug("Tunnel pump could not be resubmitted.", e);
+                    closeConnection(e.getStatus());
+                }
+            }
+
+        };
+
+        /**
+         * Reads batches of instructions from the tunnel, or null if the pump
+         * has not yet run or blob data is sent as binary messages.
+         */
+        private GuacamoleBatchReader batchReader;
+
+        /**
+         * Reads batches of instructions from the tunnel, sending blob data as
+         * binary messages, or null if the pump has not yet run or all data
+         * is sent as text.
+         */
+        private GuacamoleBinaryBatchReader binaryReader;
+
+        /**
+         * The destination of all messages produced by binaryReader.
+         */
+        private final GuacamoleBinaryBatchReader.MessageSink sink =
+                new GuacamoleBinaryBatchReader.MessageSink() {
+
+            @Override
+            public void sendText(String text) throws IOException {
+                WebSocketTunnelConnection.this.sendText(text);
+                counters.addBytesOut(text.length(), text.length());
+            }
+
+            @Override
+            public void sendBinary(ByteBuffer blob) throws IOException {
+                int length = blob.remaining();
+                WebSocketTunnelConnection.this.sendBinary(blob);
+                counters.addBytesOut(length, length);
+            }
+
+        };
+
+        /**
+         * Creates a new Pump which forwards data from the given tunnel to the
+         * client.
+         *
+         * @param connected
+         *     The tunnel to read.
+         */
+        public Pump(GuacamoleTunnel connected) {
+
+            this.connected = connected;
+
+            GuacamoleSocket tunnelSocket = connected.getSocket();
+            if (tunnelSocket instanceof NotifyingGuacamoleSocket)
+                this.socket = (NotifyingGuacamoleSocket) tunnelSocket;
+            else
+                this.socket = null;
+
+        }
+
+        /**
+         * Acquires the reader of the tunnel and sends the tunnel UUID to the
+         * client. This function is invoked only on the first run of the
+         * pump.
+         *
+         * @throws IOException
+         *     If an I/O error prevents the UUID from being sent.
+         */
+        private void start() throws IOException {
+
+            GuacamoleReader reader = connected.acquireReader();
+
+            // Send blob data as binary messages, if supported
+            if (isBinary())
+                binaryReader = new GuacamoleBinaryBatchReader(reader, getBatchSettings());
+
+            // Otherwise, send each batch of instructions as a single message
+            else
+                batchReader = new GuacamoleBatchReader(reader, getBatchSettings());
+
+            // Send tunnel UUID
+            sendText(new GuacamoleInstruction(
+                GuacamoleTunnel.INTERNAL_DATA_OPCODE,
+                connected.getUUID().toString()
+            ).toString());
+
+        }
+
+        /**
+         * Reads and sends a single batch of instructions, blocking until at
+         * least one instruction is available.
+         *
+         * @return
+         *     true if a batch was sent, false if the end of the stream has
+         *     been reached.
+         *
+         * @throws GuacamoleException
+         *     If an error occurs while reading from the tunnel.
+         *
+         * @throws IOException
+         *     If an I/O error prevents the batch from being sent.
+         */
+        private boolean sendBatch() throws GuacamoleException, IOException {
+
+            if (binaryReader != null)
+                return binaryReader.sendBatch(sink);
+
+            String batch = batchReader.readBatch();
+            if (batch == null)
+                return false;
+
+            sendText(batch);
+            counters.addBytesOut(batch.length(), batch.length());
+            return true;
+
+        }
+
+        @Override
+        public void run() {
+
+            try {
+
+                if (batchReader == null && binaryReader == null)
+                    start();
+
+                try {
+
+                    // Send batches while data is available, releasing the
+                    // thread until further data arrives
+                    do {
+                        if (socket != null && !socket.notifyWhenReadable(resume))
+                            return;
+                    } while (sendBatch());
+
+                    // No more data
+                    closeConnection(GuacamoleStatus.SUCCESS);
+
+                }
+
+                // Catch any thrown guacamole exception and attempt to pass
+                // within the WebSocket connection, logging each error
+                // appropriately.
+                catch (GuacamoleClientException e) {
+                    logger.info("WebSocket connection terminated: {}", e.getMessage());
+                    logger.debug("WebSocket connection terminated due to client error.", e);
+                    closeConnection(e.getStatus());
+                }
+                catch (GuacamoleConnectionClosedException e) {
+                    logger.debug("Connection to guacd closed.", e);
+                    closeConnection(GuacamoleStatus.SUCCESS);
+                }
+                catch (GuacamoleException e) {
+                    logger.error("Connection to guacd terminated abnormally: {}", e.getMessage());
+                    logger.debug("Internal error during connection to guacd.", e);
+                    closeConnection(e.getStatus());
+                }
+
+            }
+            catch (IOException e) {
+                logger.debug("I/O error prevents further reads.", e);
+            }
+
+        }
+
+    }
+
+}
@@ -0,0 +1,218 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests AdaptiveCompressor, validating that compressible data remains
+ * compressed, that each flush sends all data written, that compression is
+ * abandoned for incompressible data and later tried again, and that all
+ * traffic is counted.
+ */
+public class AdaptiveCompressorTest {
+
+    /**
+     * Writes the given data to the given compressor in chunks of the given
+     * size, flushing after each chunk, and returns the data actually sent.
+     *
+     * @param compressor
+     *     The compressor to write through.
+     *
+     * @param data
+     *     The data to write.
+     *
+     * @param chunkSize
+     *     The number of bytes to write between each flush.
+     *
+     * @return
+     *     The data actually sent.
+     *
+     * @throws IOException
+     *     If an error occurs while writing.
+     */
+    private static byte[] write(AdaptiveCompressor compressor, byte[] data,
+            int chunkSize) throws IOException {
+
+        ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        OutputStream out = compressor.getOutputStream(sent, compressor.isActive());
+
+        for (int offset = 0; offset < data.length; offset += chunkSize) {
+            out.write(data, offset, Math.min(chunkSize, data.length - offset));
+            out.flush();
+        }
+
+        out.close();
+        return sent.toByteArray();
+
+    }
+
+    /**
+     * Test that highly-compressible data is compressed into valid gzip data
+     * and that compression remains active.
+     *
+     * @throws IOException
+     *     If an error occurs while compressing or decompressing the data.
+     */
+    @Test
+    public void testCompressible() throws IOException {
+
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 2000; i++)
+            text.append("4.sync,8.").append(10000000 + i).append(';');
+
+        byte[] data = text.toString().getBytes("UTF-8");
+
+        GuacamoleCompressionSettings settings = new GuacamoleCompressionSettings(true, 4096, 20);
+        AdaptiveCompressor compressor = new AdaptiveCompressor(settings);
+        byte[] sent = write(compressor, data, 1024);
+
+        assertTrue(compressor.isActive());
+        assertTrue(sent.length < data.length / 2);
+
+        // Verify data decompresses correctly
+        InputStream input = new GZIPInputStream(new ByteArrayInputStream(sent));
+        ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int length;
+        while ((length = input.read(buffer)) != -1)
+            decompressed.write(buffer, 0, length);
+
+        assertArrayEquals(data, decompressed.toByteArray());
+
+        // Verify traffic was counted both per tunnel and in total
+        assertEquals(data.length, compressor.getCounters().getBytesOut());
+        assertEquals(sent.length, compressor.getCounters().getBytesSent());
+        assertEquals(sent.length, settings.getTotals().getBytesSent());
+
+    }
+
+    /**
+     * Test that compression is abandoned once a full sample of data fails to
+     * compress, and that data is then sent as-is.
+     *
+     * @throws IOException
+     *     If an error occurs while compressing the data.
+     */
+    @Test
+    public void testIncompressible() throws IOException {
+
+        byte[] data = new byte[16384];
+        new Random(0).nextBytes(data);
+
+        AdaptiveCompressor compressor = new AdaptiveCompressor(
+                new GuacamoleCompressionSettings(true, 4096, 20));
+
+        write(compressor, data, 1024);
+        assertFalse(compressor.isActive());
+
+        // Subsequent data is not compressed
+        byte[] sent = write(compressor, data, 1024);
+        assertArrayEquals(data, sent);
+        assertEquals(data.length * 2, compressor.getCounters().getBytesOut());
+
+    }
+
+    /**
+     * Test that each flush of a compressed stream sends all data written
+     * thus far in a form which can be decompressed immediately, without
+     * waiting for the stream to be closed.
+     *
+     * @throws IOException
+     *     If an error occurs while compressing the data.
+     *
+     * @throws DataFormatException
+     *     If the data sent is not valid compressed data.
+     */
+    @Test
+    public void testFlush() throws IOException, DataFormatException {
+
+        AdaptiveCompressor compressor = new AdaptiveCompressor(
+                new GuacamoleCompressionSettings(true, 65536, 20));
+
+        ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        OutputStream out = compressor.getOutputStream(sent, true);
+
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        for (int i = 0; i < 10; i++) {
+
+            byte[] chunk = ("4.sync,8." + (10000000 + i) + ";").getBytes("UTF-8");
+            out.write(chunk);
+            out.flush();
+            written.write(chunk);
+
+            // Decompress everything sent so far, skipping the 10-byte header
+            byte[] data = sent.toByteArray();
+            Inflater inflater = new Inflater(true);
+            inflater.setInput(data, 10, data.length - 10);
+
+            byte[] buffer = new byte[4096];
+            int length = inflater.inflate(buffer);
+            inflater.end();
+
+            assertArrayEquals(written.toByteArray(), Arrays.copyOf(buffer, length));
+
+        }
+
+        out.close();
+
+    }
+
+    /**
+     * Test that compression is tried again once PROBE_INTERVAL samples worth
+     * of data have been sent uncompressed after compression was abandoned.
+     *
+     * @throws IOException
+     *     If an error occurs while compressing the data.
+     */
+    @Test
+    public void testProbe() throws IOException {
+
+        byte[] data = new byte[4096];
+        new Random(0).nextBytes(data);
+
+        AdaptiveCompressor compressor = new AdaptiveCompressor(
+                new GuacamoleCompressionSettings(true, 4096, 20));
+
+        write(compressor, data, 1024);
+        assertFalse(compressor.isActive());
+
+        // Compression remains abandoned until enough data has been sent
+        for (int i = 0; i < AdaptiveCompressor.PROBE_INTERVAL - 1; i++)
+            write(compressor, data, 1024);
+        assertFalse(compressor.isActive());
+
+        write(compressor, data, 1024);
+        assertTrue(compressor.isActive());
+
+    }
+
+}
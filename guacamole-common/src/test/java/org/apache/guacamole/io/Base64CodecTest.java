@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Random;
+import javax.xml.bind.DatatypeConverter;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Test which validates Base64Codec against the base64 implementation of
+ * DatatypeConverter.
+ */
+public class Base64CodecTest {
+
+    /**
+     * Verifies that data of every length up to a few groups is encoded
+     * identically to DatatypeConverter, and decodes back to the original
+     * data from both character and UTF-8 form.
+     */
+    @Test
+    public void testRoundTrip() {
+
+        Random random = new Random(0);
+
+        for (int length = 0; length < 64; length++) {
+
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+
+            // Encode at an offset to verify ranges are respected
+            char[] encoded = new char[Base64Codec.getEncodedLength(length) + 3];
+            int encodedLength = Base64Codec.encode(data, 0, length, encoded, 3);
+            String expected = DatatypeConverter.printBase64Binary(data);
+            assertEquals(expected, new String(encoded, 3, encodedLength));
+
+            // Decode from characters
+            byte[] decoded = new byte[Base64Codec.getDecodedLength(encodedLength)];
+            int decodedLength = Base64Codec.decode(encoded, 3, encodedLength, decoded, 0);
+            assertArrayEquals(data, Arrays.copyOf(decoded, decodedLength));
+
+            // Decode from UTF-8
+            byte[] utf8 = expected.getBytes(Charset.forName("UTF-8"));
+            decodedLength = Base64Codec.decode(utf8, 0, utf8.length, decoded, 0);
+            assertArrayEquals(data, Arrays.copyOf(decoded, decodedLength));
+
+        }
+
+    }
+
+    /**
+     * Verifies that invalid base64 data is rejected.
+     */
+    @Test
+    public void testInvalid() {
+
+        String[] invalid = { "QUJ\u00e9", "QU=D", "QUJ", "QU*D", "=QUJ" };
+        byte[] decoded = new byte[16];
+
+        for (String data : invalid) {
+            try {
+                Base64Codec.decode(data.toCharArray(), 0, data.length(), decoded, 0);
+                fail("Expected IllegalArgumentException for \"" + data + "\".");
+            }
+            catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.protocol.GuacamoleInstruction;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests GuacamoleBatchReader, validating that instructions are combined into
+ * batches no larger than necessary, and that the size of each batch is
+ * recorded.
+ */
+public class GuacamoleBatchReaderTest {
+
+    /**
+     * Test data consisting of four instructions, each exactly eleven
+     * characters (and bytes) long.
+     */
+    private static final String TEST = "4.sync,1.1;4.sync,1.2;4.sync,1.3;4.sync,1.4;";
+
+    /**
+     * GuacamoleReader which never reports data as immediately available,
+     * such that every batch must wait for further instructions. If
+     * awaitable, each wait succeeds immediately and is counted.
+     */
+    private static class WaitingGuacamoleReader implements AwaitableGuacamoleReader {
+
+        /**
+         * The reader from which all instructions are read.
+         */
+        private final GuacamoleReader reader =
+                new ReaderGuacamoleReader(new StringReader(TEST));
+
+        /**
+         * The number of times awaitAvailable() has been invoked.
+         */
+        private int waits = 0;
+
+        @Override
+        public boolean available() throws GuacamoleException {
+            return false;
+        }
+
+        @Override
+        public boolean awaitAvailable(long timeout, TimeUnit unit) {
+            assertTrue(timeout > 0);
+            waits++;
+            return true;
+        }
+
+        @Override
+        public char[] read() throws GuacamoleException {
+            return reader.read();
+        }
+
+        @Override
+        public GuacamoleInstruction readInstruction() throws GuacamoleException {
+            return reader.readInstruction();
+        }
+
+    }
+
+    /**
+     * Test of batching instructions read as characters, where batches are
+     * limited only by the maximum batch size.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while reading the known-good test data.
+     */
+    @Test
+    public void testCharBatches() throws GuacamoleException {
+
+        BatchSizeHistogram histogram = new BatchSizeHistogram();
+        GuacamoleBatchReader reader = new GuacamoleBatchReader(
+                new ReaderGuacamoleReader(new StringReader(TEST)),
+                new GuacamoleBatchSettings(15, 0, histogram));
+
+        assertEquals("4.sync,1.1;4.sync,1.2;", reader.readBatch());
+        assertEquals("4.sync,1.3;4.sync,1.4;", reader.readBatch());
+        assertNull(reader.readBatch());
+
+        assertEquals(2, histogram.getBatchCount());
+        assertEquals(44, histogram.getTotalSize());
+
+    }
+
+    /**
+     * Test of batching instructions read as UTF-8 bytes and written directly
+     * to an OutputStream.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while reading the known-good test data.
+     *
+     * @throws IOException
+     *     If an error occurs while writing the batch.
+     */
+    @Test
+    public void testByteBatches() throws GuacamoleException, IOException {
+
+        BatchSizeHistogram histogram = new BatchSizeHistogram();
+        GuacamoleBatchReader reader = new GuacamoleBatchReader(
+                new UTF8GuacamoleReader(new ByteArrayInputStream(TEST.getBytes("UTF-8"))),
+                new GuacamoleBatchSettings(8192, 0, histogram));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        assertTrue(reader.writeBatch(output));
+        assertFalse(reader.writeBatch(output));
+        assertEquals(TEST, output.toString("UTF-8"));
+
+        assertEquals(1, histogram.getBatchCount());
+        assertEquals(44, histogram.getTotalSize());
+
+    }
+
+    /**
+     * Test that batches wait for further instructions using
+     * awaitAvailable() if data is not immediately available and the reader
+     * supports waiting.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while reading the known-good test data.
+     */
+    @Test
+    public void testAwaitLatency() throws GuacamoleException {
+
+        WaitingGuacamoleReader waitingReader = new WaitingGuacamoleReader();
+        GuacamoleBatchReader reader = new GuacamoleBatchReader(waitingReader,
+                new GuacamoleBatchSettings(8192, 60000, new BatchSizeHistogram()));
+
+        assertEquals(TEST, reader.readBatch());
+        assertEquals(4, waitingReader.waits);
+
+    }
+
+    /**
+     * Test that batches end as soon as no data is immediately available if
+     * the reader does not support waiting, regardless of the maximum batch
+     * latency.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while reading the known-good test data.
+     */
+    @Test
+    public void testNoAwaitLatency() throws GuacamoleException {
+
+        final WaitingGuacamoleReader waitingReader = new WaitingGuacamoleReader();
+        GuacamoleBatchReader reader = new GuacamoleBatchReader(new GuacamoleReader() {
+
+            @Override
+            public boolean available() throws GuacamoleException {
+                return waitingReader.available();
+            }
+
+            @Override
+            public char[] read() throws GuacamoleException {
+                return waitingReader.read();
+            }
+
+            @Override
+            public GuacamoleInstruction readInstruction() throws GuacamoleException {
+                return waitingReader.readInstruction();
+            }
+
+        }, new GuacamoleBatchSettings(8192, 60000, new BatchSizeHistogram()));
+
+        assertEquals("4.sync,1.1;", reader.readBatch());
+        assertEquals("4.sync,1.2;", reader.readBatch());
+
+    }
+
+}
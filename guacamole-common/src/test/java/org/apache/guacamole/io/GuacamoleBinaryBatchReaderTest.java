@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.guacamole.GuacamoleException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests GuacamoleBinaryBatchReader, validating that blobs end each batch and
+ * are sent as binary messages in the correct order, while anything which
+ * cannot be sent as a binary message remains within the text batches.
+ */
+public class GuacamoleBinaryBatchReaderTest {
+
+    /**
+     * Test data consisting of a blob surrounded by other instructions, along
+     * with a blob whose data is not valid base64.
+     */
+    private static final String TEST = "4.sync,1.1;4.blob,2.12,4.AQID;"
+            + "4.blob,1.3,2.!!;4.sync,1.2;";
+
+    /**
+     * MessageSink which records a description of each message sent.
+     */
+    private static class RecordingSink
+            implements GuacamoleBinaryBatchReader.MessageSink {
+
+        /**
+         * A description of each message sent, in order.
+         */
+        private final List<String> messages = new ArrayList<String>();
+
+        @Override
+        public void sendText(String batch) {
+            messages.add("text:" + batch);
+        }
+
+        @Override
+        public void sendBinary(ByteBuffer blob) {
+            byte[] data = new byte[blob.remaining()];
+            blob.get(data);
+            messages.add("binary:" + Arrays.toString(data));
+        }
+
+    }
+
+    /**
+     * Test of splitting a batch of instructions around a blob.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while reading the known-good test data.
+     *
+     * @throws IOException
+     *     If an error occurs while sending a message.
+     */
+    @Test
+    public void testBinaryBlobs() throws GuacamoleException, IOException {
+
+        BatchSizeHistogram histogram = new BatchSizeHistogram();
+        GuacamoleBinaryBatchReader reader = new GuacamoleBinaryBatchReader(
+                new ReaderGuacamoleReader(new StringReader(TEST)),
+                new GuacamoleBatchSettings(8192, 0, histogram));
+
+        RecordingSink sink = new RecordingSink();
+        assertTrue(reader.sendBatch(sink));
+        assertTrue(reader.sendBatch(sink));
+        assertFalse(reader.sendBatch(sink));
+
+        assertEquals(Arrays.asList(
+            "text:4.sync,1.1;",
+            "binary:[0, 0, 0, 12, 1, 2, 3]",
+            "text:4.blob,1.3,2.!!;4.sync,1.2;"
+        ), sink.messages);
+
+        assertEquals(2, histogram.getBatchCount());
+
+    }
+
+}
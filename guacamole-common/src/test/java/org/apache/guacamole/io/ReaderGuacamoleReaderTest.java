@@ -19,6 +19,8 @@
 
 package org.apache.guacamole.io;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.io.StringReader;
 import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.protocol.GuacamoleInstruction;
@@ -84,5 +86,65 @@ public class ReaderGuacamoleReaderTest {
     }
 
 
-   
+    /**
+     * Test of ReaderGuacamoleReader slice-based reads, validating that the
+     * returned slices reference exactly one complete instruction each, even
+     * when data arrives in small chunks and the internal buffer must be
+     * compacted and grown.
+     *
+     * @throws GuacamoleException If a parse error occurs while parsing the
+     *                            known-good test data.
+     */
+    @Test
+    public void testReadSlice() throws GuacamoleException {
+
+        // Build test data large enough to require buffer reuse and growth
+        StringBuilder test = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+
+            // Build an element whose length varies with each instruction
+            StringBuilder data = new StringBuilder();
+            for (int j = 0; j < i * 7; j++)
+                data.append((char) ('a' + j % 26));
+
+            test.append("4.blob,").append(Integer.toString(i).length())
+                .append('.').append(i).append(',')
+                .append(data.length()).append('.').append(data).append(';');
+
+        }
+
+        // Read test data at most 37 characters at a time
+        final StringReader input = new StringReader(test.toString());
+        ReaderGuacamoleReader reader = new ReaderGuacamoleReader(new Reader() {
+
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                return input.read(buffer, offset, Math.min(length, 37));
+            }
+
+            @Override
+            public void close() throws IOException {
+                input.close();
+            }
+
+        });
+
+        // Each slice should match the corresponding original instruction
+        int position = 0;
+        GuacamoleInstructionSlice slice;
+        while ((slice = reader.readSlice()) != null) {
+
+            String expected = test.substring(position, position + slice.getLength());
+            assertEquals(expected, slice.toString());
+            assertEquals(';', slice.getBuffer()[slice.getOffset() + slice.getLength() - 1]);
+
+            position += slice.getLength();
+
+        }
+
+        // All data should have been read
+        assertEquals(test.length(), position);
+
+    }
+
 }
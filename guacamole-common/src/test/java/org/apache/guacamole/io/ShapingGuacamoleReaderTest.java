@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+import java.io.StringReader;
+import org.apache.guacamole.GuacamoleException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests ShapingGuacamoleReader, validating that frames are held back as
+ * required by the limits of a TunnelShaper, and only at frame boundaries.
+ */
+public class ShapingGuacamoleReaderTest {
+
+    /**
+     * A single frame consisting of a short drawing instruction followed by
+     * the "sync" instruction which ends the frame.
+     */
+    private static final String FRAME = "4.rect,1.0,1.0,1.0,2.10,2.10;4.sync,4.1234;";
+
+    /**
+     * Verifies that readers are not wrapped at all if no limits apply.
+     */
+    @Test
+    public void testUnlimited() {
+
+        GuacamoleReader reader = new ReaderGuacamoleReader(new StringReader(FRAME));
+        TunnelShaper shaper = new TunnelShaper(new GuacamoleShapingSettings(0, 0, 0));
+
+        assertFalse(shaper.isActive());
+        assertSame(reader, ShapingGuacamoleReader.wrap(reader, shaper));
+
+    }
+
+    /**
+     * Verifies that frames are spaced according to the frame rate limit, and
+     * that no data is reported as available while a frame is held back.
+     *
+     * @throws GuacamoleException
+     *     If the test data cannot be read.
+     */
+    @Test
+    public void testFrameRate() throws GuacamoleException {
+
+        GuacamoleShapingSettings settings = new GuacamoleShapingSettings(0, 10, 0);
+        TunnelShaper shaper = new TunnelShaper(settings);
+        GuacamoleReader reader = ShapingGuacamoleReader.wrap(
+                new ReaderGuacamoleReader(new StringReader(FRAME + FRAME + FRAME)),
+                shaper);
+
+        long start = System.nanoTime();
+
+        // Instructions within a frame are never held back
+        for (int frame = 0; frame < 3; frame++) {
+            assertNotNull(reader.read());
+            assertFalse(shaper.isThrottled());
+            assertNotNull(reader.read());
+        }
+
+        // Following frame is held back after each sync
+        assertFalse(reader.available());
+        assertNull(reader.read());
+
+        // At 10 frames per second, the third frame cannot begin before 200ms
+        long elapsed = (System.nanoTime() - start) / 1000000L;
+        assertTrue("Frames were not spaced: " + elapsed + "ms", elapsed >= 190);
+
+        TunnelThrottleCounters counters = shaper.getCounters();
+        assertEquals(3, counters.getFrames());
+        assertEquals(3, counters.getThrottledFrames());
+        assertEquals(3, settings.getTotals().getFrames());
+
+    }
+
+    /**
+     * Verifies that data beyond the bandwidth limit holds back the following
+     * frame until the excess has been repaid.
+     *
+     * @throws GuacamoleException
+     *     If the test data cannot be read.
+     */
+    @Test
+    public void testBandwidth() throws GuacamoleException {
+
+        // Two frames, the first of which exceeds the burst allowed by the
+        // bucket by roughly 200 bytes
+        StringBuilder data = new StringBuilder();
+        for (int i = 0; i < 41; i++)
+            data.append(FRAME.substring(0, FRAME.indexOf(';') + 1));
+        int excess = data.length() + FRAME.length() - FRAME.indexOf(';') - 1 - 1000;
+        data.append(FRAME.substring(FRAME.indexOf(';') + 1));
+        data.append(FRAME);
+
+        TunnelShaper shaper = new TunnelShaper(new GuacamoleShapingSettings(1000, 0, 0));
+        GuacamoleReader reader = ShapingGuacamoleReader.wrap(
+                new ReaderGuacamoleReader(new StringReader(data.toString())),
+                shaper);
+
+        // Read entire first frame without waiting
+        for (int i = 0; i < 42; i++)
+            assertNotNull(reader.read());
+
+        assertTrue(excess > 0);
+        assertTrue(shaper.isThrottled());
+        assertFalse(reader.available());
+
+        // Second frame must wait for excess to be repaid
+        long start = System.nanoTime();
+        assertNotNull(reader.read());
+        long elapsed = (System.nanoTime() - start) / 1000000L;
+        assertTrue("Frame was not held back: " + elapsed + "ms",
+                elapsed >= excess - 20);
+
+        assertEquals(1, shaper.getCounters().getThrottledFrames());
+
+    }
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.protocol.GuacamoleInstruction;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the UTF8GuacamoleReader implementation of GuacamoleReader, validating
+ * that instructions are framed correctly on UTF-8 data containing multibyte
+ * characters.
+ */
+public class UTF8GuacamoleReaderTest {
+
+    /**
+     * Test data containing one-, two-, three- and four-byte UTF-8 sequences.
+     * Length prefixes count characters, not bytes.
+     */
+    private static final String TEST = "1.a,2.b\u00E9,3.d\u20ACf,2.\uD83D\uDE00!;"
+                                     + "4.test,5.t\u00EBst2;0.;3.foo;";
+
+    /**
+     * Test of UTF8GuacamoleReader parsing of multibyte data.
+     *
+     * @throws GuacamoleException
+     *     If a parse error occurs while parsing the known-good test data.
+     *
+     * @throws UnsupportedEncodingException
+     *     If UTF-8 is not supported.
+     */
+    @Test
+    public void testReader() throws GuacamoleException,
+            UnsupportedEncodingException {
+
+        GuacamoleReader reader = new UTF8GuacamoleReader(
+                new ByteArrayInputStream(TEST.getBytes("UTF-8")));
+
+        GuacamoleInstruction instruction;
+
+        // Validate first test instruction
+        instruction = reader.readInstruction();
+        assertNotNull(instruction);
+        assertEquals(3, instruction.getArgs().size());
+        assertEquals("a", instruction.getOpcode());
+        assertEquals("b\u00E9", instruction.getArgs().get(0));
+        assertEquals("d\u20ACf", instruction.getArgs().get(1));
+        assertEquals("\uD83D\uDE00!", instruction.getArgs().get(2));
+
+        // Validate second test instruction
+        instruction = reader.readInstruction();
+        assertNotNull(instruction);
+        assertEquals(1, instruction.getArgs().size());
+        assertEquals("test", instruction.getOpcode());
+        assertEquals("t\u00EBst2", instruction.getArgs().get(0));
+
+        // Validate third and fourth test instructions as characters
+        assertEquals("0.;", new String(reader.read()));
+        assertEquals("3.foo;", new String(reader.read()));
+
+        // There should be no more instructions
+        assertNull(reader.readInstruction());
+
+    }
+
+    /**
+     * Test of UTF8GuacamoleReader byte-based reads, validating that the
+     * returned slices contain exactly the original UTF-8 form of each
+     * instruction, even when data arrives one byte at a time and thus
+     * multibyte sequences are split across reads.
+     *
+     * @throws GuacamoleException
+     *     If a parse error occurs while parsing the known-good test data.
+     *
+     * @throws UnsupportedEncodingException
+     *     If UTF-8 is not supported.
+     */
+    @Test
+    public void testReadBytes() throws GuacamoleException,
+            UnsupportedEncodingException {
+
+        // Read test data one byte at a time
+        final byte[] test = TEST.getBytes("UTF-8");
+        final InputStream input = new ByteArrayInputStream(test);
+        UTF8GuacamoleReader reader = new UTF8GuacamoleReader(new InputStream() {
+
+            @Override
+            public int read() throws IOException {
+                return input.read();
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                return input.read(buffer, offset, Math.min(length, 1));
+            }
+
+        });
+
+        String[] expected = {
+            "1.a,2.b\u00E9,3.d\u20ACf,2.\uD83D\uDE00!;",
+            "4.test,5.t\u00EBst2;",
+            "0.;",
+            "3.foo;"
+        };
+
+        // Each slice should match the corresponding original instruction
+        for (String instruction : expected) {
+            GuacamoleInstructionByteSlice slice = reader.readBytes();
+            assertNotNull(slice);
+            assertArrayEquals(instruction.getBytes("UTF-8"), slice.toByteArray());
+        }
+
+        // There should be no more instructions
+        assertNull(reader.readBytes());
+
+    }
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.net;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Test which validates that ExpirationWheel expires registered objects once
+ * they are due, and only once they are due.
+ */
+public class ExpirationWheelTest {
+
+    /**
+     * Expirable which expires a fixed amount of time after it was last
+     * accessed, according to the clock of a given wheel.
+     */
+    private static class TestExpirable implements ExpirationWheel.Expirable {
+
+        /**
+         * The wheel whose clock records each access.
+         */
+        private final ExpirationWheel wheel;
+
+        /**
+         * The amount of time after the last access at which this object
+         * expires, in milliseconds.
+         */
+        private final long timeout;
+
+        /**
+         * The time of the last access.
+         */
+        private volatile long lastAccessedTime;
+
+        /**
+         * Latch which is released once this object has expired.
+         */
+        private final CountDownLatch expired = new CountDownLatch(1);
+
+        /**
+         * Creates a new TestExpirable which expires the given amount of time
+         * after its last access.
+         *
+         * @param wheel
+         *     The wheel whose clock records each access.
+         *
+         * @param timeout
+         *     The amount of time after the last access at which this object
+         *     expires, in milliseconds.
+         */
+        public TestExpirable(ExpirationWheel wheel, long timeout) {
+            this.wheel = wheel;
+            this.timeout = timeout;
+            access();
+        }
+
+        /**
+         * Marks this object as accessed.
+         */
+        public void access() {
+            lastAccessedTime = wheel.currentTimeMillis();
+        }
+
+        @Override
+        public long getExpirationTime() {
+            return lastAccessedTime + timeout;
+        }
+
+        @Override
+        public void expire() {
+            expired.countDown();
+        }
+
+    }
+
+    /**
+     * Verifies that unused objects expire, objects in use do not, and
+     * cancelled objects never expire.
+     *
+     * @throws InterruptedException
+     *     If the test is interrupted while waiting for expiration.
+     */
+    @Test
+    public void testExpiration() throws InterruptedException {
+
+        // Small wheel, such that objects span several revolutions
+        ExpirationWheel wheel = new ExpirationWheel("test-expiration", 10, 4);
+
+        try {
+
+            TestExpirable unused = new TestExpirable(wheel, 100);
+            TestExpirable used = new TestExpirable(wheel, 100);
+            TestExpirable cancelled = new TestExpirable(wheel, 100);
+
+            wheel.register(unused);
+            wheel.register(used);
+            wheel.register(cancelled).cancel();
+
+            // Keep one object in use while the other expires
+            long start = System.currentTimeMillis();
+            while (System.currentTimeMillis() - start < 300) {
+                used.access();
+                Thread.sleep(10);
+            }
+
+            assertEquals(0, unused.expired.getCount());
+            assertEquals(1, used.expired.getCount());
+
+            // Object expires once no longer used
+            assertTrue(used.expired.await(1, TimeUnit.SECONDS));
+            assertEquals(1, cancelled.expired.getCount());
+
+        }
+        finally {
+            wheel.shutdown();
+        }
+
+    }
+
+}
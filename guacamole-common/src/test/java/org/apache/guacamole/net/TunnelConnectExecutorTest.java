@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.net;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.GuacamoleResourceNotFoundException;
+import org.apache.guacamole.GuacamoleServerBusyException;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Test which validates that TunnelConnectExecutor reports the results of
+ * connection attempts and rejects attempts beyond its queue limit.
+ */
+public class TunnelConnectExecutorTest {
+
+    /**
+     * ConnectTask which blocks until released, then returns null.
+     */
+    private static class BlockingTask implements TunnelConnectExecutor.ConnectTask {
+
+        /**
+         * Latch which is released once the task has started.
+         */
+        private final CountDownLatch started = new CountDownLatch(1);
+
+        /**
+         * Latch which the task waits on before completing.
+         */
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public GuacamoleTunnel connect() throws GuacamoleException {
+
+            started.countDown();
+
+            try {
+                release.await();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            return null;
+
+        }
+
+    }
+
+    /**
+     * Verifies that errors thrown while creating a tunnel are rethrown by the
+     * blocking form of connect().
+     *
+     * @throws Exception
+     *     If the test fails unexpectedly.
+     */
+    @Test
+    public void testFailure() throws Exception {
+
+        TunnelConnectExecutor executor = new TunnelConnectExecutor(1, 0);
+
+        try {
+            executor.connect(new TunnelConnectExecutor.ConnectTask() {
+
+                @Override
+                public GuacamoleTunnel connect() throws GuacamoleException {
+                    throw new GuacamoleResourceNotFoundException("No such connection.");
+                }
+
+            });
+            fail("Expected GuacamoleResourceNotFoundException.");
+        }
+        catch (GuacamoleResourceNotFoundException e) {
+            // Expected
+        }
+        finally {
+            executor.shutdown();
+        }
+
+    }
+
+    /**
+     * Verifies that connection attempts beyond the thread and queue limits
+     * are rejected, and that accepted attempts complete via their callbacks.
+     *
+     * @throws Exception
+     *     If the test fails unexpectedly.
+     */
+    @Test
+    public void testQueueLimit() throws Exception {
+
+        TunnelConnectExecutor executor = new TunnelConnectExecutor(1, 1);
+        final CountDownLatch completed = new CountDownLatch(2);
+
+        TunnelConnectExecutor.ConnectCallback callback = new TunnelConnectExecutor.ConnectCallback() {
+
+            @Override
+            public void tunnelConnected(GuacamoleTunnel tunnel) {
+                completed.countDown();
+            }
+
+            @Override
+            public void tunnelFailed(GuacamoleException e) {
+                fail("Unexpected failure: " + e.getMessage());
+            }
+
+        };
+
+        try {
+
+            // Occupy the only thread, then fill the queue
+            BlockingTask running = new BlockingTask();
+            BlockingTask queued = new BlockingTask();
+            executor.connect(running, callback);
+            assertTrue(running.started.await(5, TimeUnit.SECONDS));
+            executor.connect(queued, callback);
+            assertEquals(1, executor.getQueuedConnects());
+
+            // Further attempts must be rejected
+            try {
+                executor.connect(new BlockingTask(), callback);
+                fail("Expected GuacamoleServerBusyException.");
+            }
+            catch (GuacamoleServerBusyException e) {
+                // Expected
+            }
+
+            // Both accepted attempts should complete once released
+            running.release.countDown();
+            queued.release.countDown();
+            assertTrue(completed.await(5, TimeUnit.SECONDS));
+
+        }
+        finally {
+            executor.shutdown();
+        }
+
+    }
+
+}
@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.protocol;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.io.GuacamoleReader;
+import org.apache.guacamole.io.GuacamoleWriter;
+import org.apache.guacamole.io.ReaderGuacamoleReader;
+import org.apache.guacamole.io.WriterGuacamoleWriter;
+import org.apache.guacamole.net.GuacamoleSocket;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Test which validates the Guacamole protocol handshake performed by
+ * ConfiguredGuacamoleSocket, including the number of writes required.
+ */
+public class ConfiguredGuacamoleSocketTest {
+
+    /**
+     * The instructions sent by the simulated Guacamole proxy in response to
+     * the handshake.
+     */
+    private static final String PROXY_RESPONSE = "4.args,8.hostname,4.port;5.ready,4.$123;";
+
+    /**
+     * GuacamoleSocket which replays PROXY_RESPONSE, records all data
+     * written, and counts the number of writes.
+     */
+    private static class TestSocket implements GuacamoleSocket {
+
+        /**
+         * All data written to this socket.
+         */
+        private final StringWriter written = new StringWriter();
+
+        /**
+         * The number of writes performed.
+         */
+        private int writes = 0;
+
+        /**
+         * Reader which replays the simulated proxy response.
+         */
+        private final GuacamoleReader reader =
+                new ReaderGuacamoleReader(new StringReader(PROXY_RESPONSE));
+
+        /**
+         * Writer which records and counts all writes.
+         */
+        private final GuacamoleWriter writer = new WriterGuacamoleWriter(written) {
+
+            @Override
+            public void write(char[] chunk, int off, int len) throws GuacamoleException {
+                writes++;
+                super.write(chunk, off, len);
+            }
+
+        };
+
+        @Override
+        public GuacamoleReader getReader() {
+            return reader;
+        }
+
+        @Override
+        public GuacamoleWriter getWriter() {
+            return writer;
+        }
+
+        @Override
+        public void close() throws GuacamoleException {
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+    }
+
+    /**
+     * Returns a configuration for a VNC connection to localhost.
+     *
+     * @return
+     *     A configuration for a VNC connection to localhost.
+     */
+    private static GuacamoleConfiguration getConfiguration() {
+
+        GuacamoleConfiguration config = new GuacamoleConfiguration();
+        config.setProtocol("vnc");
+        config.setParameter("hostname", "localhost");
+        config.setParameter("port", "5900");
+        return config;
+
+    }
+
+    /**
+     * Verifies that the client information is sent together with "select"
+     * once the protocol arguments are cached, that "connect" is always sent
+     * separately after "args" is received, and that the data sent is
+     * otherwise identical.
+     *
+     * @throws GuacamoleException
+     *     If the handshake fails.
+     */
+    @Test
+    public void testPipelinedHandshake() throws GuacamoleException {
+
+        GuacamoleConfiguration config = getConfiguration();
+        GuacamoleClientInformation info = new GuacamoleClientInformation();
+        GuacamoleArgsCache argsCache = new GuacamoleArgsCache();
+
+        // First handshake must wait for "args"
+        TestSocket first = new TestSocket();
+        ConfiguredGuacamoleSocket socket = new ConfiguredGuacamoleSocket(first, config, info, argsCache);
+        assertEquals("$123", socket.getConnectionID());
+        assertEquals(2, first.writes);
+        assertEquals(Arrays.asList("hostname", "port"), argsCache.get("vnc"));
+
+        // Second handshake sends client information with "select", but
+        // still sends "connect" only after "args"
+        TestSocket second = new TestSocket();
+        socket = new ConfiguredGuacamoleSocket(second, config, info, argsCache);
+        assertEquals("$123", socket.getConnectionID());
+        assertEquals(2, second.writes);
+
+        // Data sent must be identical either way
+        assertEquals(first.written.toString(), second.written.toString());
+        assertTrue(second.written.toString().startsWith("6.select,3.vnc;4.size,"));
+        assertTrue(second.written.toString().endsWith("7.connect,9.localhost,4.5900;"));
+
+    }
+
+    /**
+     * Verifies that stale cached arguments do not cause the handshake to
+     * fail, that "connect" is built from the arguments actually received,
+     * and that the cache is updated.
+     *
+     * @throws GuacamoleException
+     *     If the handshake fails.
+     */
+    @Test
+    public void testStaleArgs() throws GuacamoleException {
+
+        GuacamoleConfiguration config = getConfiguration();
+        GuacamoleClientInformation info = new GuacamoleClientInformation();
+
+        GuacamoleArgsCache argsCache = new GuacamoleArgsCache();
+        argsCache.put("vnc", Arrays.asList("port", "hostname", "password"));
+
+        TestSocket socket = new TestSocket();
+        ConfiguredGuacamoleSocket configured = new ConfiguredGuacamoleSocket(socket, config, info, argsCache);
+        assertEquals("$123", configured.getConnectionID());
+
+        assertTrue(socket.written.toString().endsWith("7.connect,9.localhost,4.5900;"));
+        assertEquals(Arrays.asList("hostname", "port"), argsCache.get("vnc"));
+
+    }
+
+}
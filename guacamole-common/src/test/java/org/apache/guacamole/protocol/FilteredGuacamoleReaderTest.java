@@ -19,10 +19,12 @@
 
 package org.apache.guacamole.protocol;
 
+import java.io.ByteArrayInputStream;
 import java.io.StringReader;
 import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.io.GuacamoleReader;
 import org.apache.guacamole.io.ReaderGuacamoleReader;
+import org.apache.guacamole.io.UTF8GuacamoleReader;
 import static org.junit.Assert.*;
 import org.junit.Test;
 
@@ -88,5 +90,63 @@ public class FilteredGuacamoleReaderTest {
         assertNull(instruction);
 
     }
-    
+
+    /**
+     * Test which validates that instructions allowed through a filter
+     * unchanged are returned by read() exactly as they were received, and that
+     * their arguments remain available.
+     *
+     * @throws Exception
+     *     If an error occurs while reading the known-good test string.
+     */
+    @Test
+    public void testPassThrough() throws Exception {
+
+        // Test string
+        final String test = "3.yes,1.A,0.,5.hello;2.no,1.B;3.yes;";
+
+        GuacamoleReader reader = new FilteredGuacamoleReader(new ReaderGuacamoleReader(new StringReader(test)),
+                                                             new TestFilter());
+
+        // Unchanged instructions should be identical to those received
+        assertEquals("3.yes,1.A,0.,5.hello;", new String(reader.read()));
+        assertEquals("3.yes;", new String(reader.read()));
+        assertNull(reader.read());
+
+        // Arguments should be decoded on request
+        reader = new ReaderGuacamoleReader(new StringReader(test));
+        GuacamoleInstruction instruction = reader.readInstruction();
+        assertEquals("yes", instruction.getOpcode());
+        assertEquals("hello", instruction.getArgs().get(2));
+        assertEquals(3, instruction.getArgs().size());
+        assertEquals("", instruction.getArgs().get(1));
+        assertEquals("A", instruction.getArgs().get(0));
+
+    }
+
+    /**
+     * Test of FilteredByteGuacamoleReader, validating that instructions which
+     * pass through the filter unchanged are returned in their original UTF-8
+     * form, while dropped instructions are skipped.
+     *
+     * @throws Exception
+     *     If an error occurs while reading the known-good test data.
+     */
+    @Test
+    public void testBytePassThrough() throws Exception {
+
+        // Test string, including multibyte characters
+        final String test = "3.yes,2.\u00E9\u20AC;2.no,1.B;3.yes,2.\uD83D\uDE00!;";
+
+        FilteredByteGuacamoleReader reader = new FilteredByteGuacamoleReader(
+                new UTF8GuacamoleReader(new ByteArrayInputStream(test.getBytes("UTF-8"))),
+                new TestFilter());
+
+        // Unchanged instructions should be identical to those received
+        assertArrayEquals("3.yes,2.\u00E9\u20AC;".getBytes("UTF-8"), reader.readBytes().toByteArray());
+        assertArrayEquals("3.yes,2.\uD83D\uDE00!;".getBytes("UTF-8"), reader.readBytes().toByteArray());
+        assertNull(reader.readBytes());
+
+    }
+
 }
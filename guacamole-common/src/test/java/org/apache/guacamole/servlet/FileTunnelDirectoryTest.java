@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.servlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.UUID;
+import org.apache.guacamole.GuacamoleClientException;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Test which validates that FileTunnelDirectory records the node holding each
+ * tunnel, and refuses UUIDs which could refer to files outside its directory.
+ */
+public class FileTunnelDirectoryTest {
+
+    /**
+     * Creates a new, empty temporary directory.
+     *
+     * @return
+     *     A new, empty temporary directory.
+     *
+     * @throws IOException
+     *     If the directory cannot be created.
+     */
+    private static File createDirectory() throws IOException {
+        File directory = File.createTempFile("guac-tunnels", "");
+        assertTrue(directory.delete());
+        assertTrue(directory.mkdir());
+        return directory;
+    }
+
+    /**
+     * Deletes the given directory and all files within it.
+     *
+     * @param directory
+     *     The directory to delete.
+     */
+    private static void deleteDirectory(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files)
+                file.delete();
+        }
+        directory.delete();
+    }
+
+    /**
+     * Verifies that tunnels can be registered, looked up, and deregistered
+     * both individually and by node.
+     *
+     * @throws Exception
+     *     If the test directory cannot be created or accessed.
+     */
+    @Test
+    public void testRegistration() throws Exception {
+
+        File directory = createDirectory();
+        try {
+
+            // Records are visible to all instances sharing the directory
+            GuacamoleTunnelDirectory first = new FileTunnelDirectory(directory);
+            GuacamoleTunnelDirectory second = new FileTunnelDirectory(directory);
+
+            String tunnelA = UUID.randomUUID().toString();
+            String tunnelB = UUID.randomUUID().toString();
+            String tunnelC = UUID.randomUUID().toString();
+
+            first.register(tunnelA, "http://node1/tunnel");
+            first.register(tunnelB, "http://node1/tunnel");
+            second.register(tunnelC, "http://node2/tunnel");
+
+            assertEquals("http://node1/tunnel", second.lookup(tunnelA));
+            assertEquals("http://node2/tunnel", first.lookup(tunnelC));
+            assertNull(first.lookup(UUID.randomUUID().toString()));
+
+            // Individual removal
+            second.deregister(tunnelA);
+            assertNull(first.lookup(tunnelA));
+
+            // Removal of all tunnels of a node
+            second.deregisterNode("http://node1/tunnel");
+            assertNull(second.lookup(tunnelB));
+            assertEquals("http://node2/tunnel", second.lookup(tunnelC));
+
+        }
+        finally {
+            deleteDirectory(directory);
+        }
+
+    }
+
+    /**
+     * Verifies that UUIDs which are not valid tunnel UUIDs are refused.
+     *
+     * @throws Exception
+     *     If the test directory cannot be created.
+     */
+    @Test
+    public void testInvalidUUID() throws Exception {
+
+        File directory = createDirectory();
+        try {
+
+            GuacamoleTunnelDirectory tunnels = new FileTunnelDirectory(directory);
+
+            try {
+                tunnels.lookup("../../../../../../../../../etc/passwd");
+                fail("Lookup of invalid UUID should fail.");
+            }
+            catch (GuacamoleClientException e) {
+                // Expected
+            }
+
+        }
+        finally {
+            deleteDirectory(directory);
+        }
+
+    }
+
+}
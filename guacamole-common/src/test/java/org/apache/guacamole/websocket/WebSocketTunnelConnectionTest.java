@@ -0,0 +1,267 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.websocket;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.io.GuacamoleReader;
+import org.apache.guacamole.io.GuacamoleWriter;
+import org.apache.guacamole.io.ReaderGuacamoleReader;
+import org.apache.guacamole.io.WriterGuacamoleWriter;
+import org.apache.guacamole.net.GuacamoleSocket;
+import org.apache.guacamole.net.GuacamoleTunnel;
+import org.apache.guacamole.net.SimpleGuacamoleTunnel;
+import org.apache.guacamole.net.TunnelConnectExecutor;
+import org.apache.guacamole.net.TunnelPumpExecutor;
+import org.apache.guacamole.protocol.GuacamoleStatus;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Test which validates that WebSocketTunnelConnection buffers client messages
+ * received while the tunnel is being created, and closes the connection if
+ * too much data is buffered.
+ */
+public class WebSocketTunnelConnectionTest {
+
+    /**
+     * GuacamoleSocket which records all data written and whether it has been
+     * closed. Nothing is ever available for reading.
+     */
+    private static class TestSocket implements GuacamoleSocket {
+
+        /**
+         * All data written to this socket.
+         */
+        private final StringWriter written = new StringWriter();
+
+        /**
+         * Whether this socket has been closed.
+         */
+        private volatile boolean closed = false;
+
+        @Override
+        public GuacamoleReader getReader() {
+            return new ReaderGuacamoleReader(new StringReader(""));
+        }
+
+        @Override
+        public GuacamoleWriter getWriter() {
+            return new WriterGuacamoleWriter(written);
+        }
+
+        @Override
+        public void close() throws GuacamoleException {
+            closed = true;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return !closed;
+        }
+
+    }
+
+    /**
+     * WebSocketTunnelConnection whose tunnel is created only once released,
+     * and which records the pump it is asked to run rather than running it.
+     */
+    private static class TestConnection extends WebSocketTunnelConnection {
+
+        /**
+         * The socket of the tunnel created by this connection.
+         */
+        private final TestSocket socket = new TestSocket();
+
+        /**
+         * Latch which tunnel creation waits on before completing.
+         */
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        /**
+         * Latch which is released once the pump has been submitted, or the
+         * tunnel has been closed because the connection was closed.
+         */
+        private final CountDownLatch started = new CountDownLatch(1);
+
+        /**
+         * The status with which the connection was closed, or null if it has
+         * not been closed.
+         */
+        private volatile GuacamoleStatus status;
+
+        /**
+         * The executor creating the tunnel.
+         */
+        private final TunnelConnectExecutor connectExecutor;
+
+        /**
+         * Creates a new TestConnection which creates its tunnel using the
+         * given executor.
+         *
+         * @param connectExecutor
+         *     The executor which should create the tunnel.
+         */
+        public TestConnection(TunnelConnectExecutor connectExecutor) {
+            this.connectExecutor = connectExecutor;
+        }
+
+        @Override
+        protected GuacamoleTunnel createTunnel() throws GuacamoleException {
+
+            try {
+                release.await();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            return new SimpleGuacamoleTunnel(socket) {
+
+                @Override
+                public void close() throws GuacamoleException {
+                    super.close();
+                    started.countDown();
+                }
+
+            };
+
+        }
+
+        @Override
+        protected void sendText(String message) throws IOException {
+            // Nothing is sent, as the pump is never run
+        }
+
+        @Override
+        protected void closeConnection(GuacamoleStatus status) {
+            this.status = status;
+            close();
+        }
+
+        @Override
+        protected TunnelConnectExecutor getConnectExecutor() {
+            return connectExecutor;
+        }
+
+        @Override
+        protected TunnelPumpExecutor getPumpExecutor() {
+            return new TunnelPumpExecutor() {
+
+                @Override
+                public void execute(Runnable pump) {
+                    started.countDown();
+                }
+
+                @Override
+                public int getActivePumps() {
+                    return 0;
+                }
+
+                @Override
+                public int getQueuedPumps() {
+                    return 0;
+                }
+
+                @Override
+                public void shutdown() {
+                }
+
+            };
+        }
+
+    }
+
+    /**
+     * The executor creating all tunnels.
+     */
+    private final TunnelConnectExecutor connectExecutor = new TunnelConnectExecutor(1, 1);
+
+    /**
+     * Stops the executor creating all tunnels.
+     */
+    @After
+    public void shutdown() {
+        connectExecutor.shutdown();
+    }
+
+    /**
+     * Verifies that messages received while the tunnel is being created are
+     * written to the tunnel once it is ready, in the order received and
+     * ahead of later messages.
+     *
+     * @throws Exception
+     *     If the test fails unexpectedly.
+     */
+    @Test
+    public void testPendingMessages() throws Exception {
+
+        TestConnection connection = new TestConnection(connectExecutor);
+        connection.open();
+
+        connection.receive("4.size,4.1024,3.768;");
+        connection.receive("5.mouse,1.0,1.0;");
+
+        connection.release.countDown();
+        assertTrue(connection.started.await(5, TimeUnit.SECONDS));
+
+        connection.receive("3.key,2.65,1.1;");
+
+        assertEquals("4.size,4.1024,3.768;5.mouse,1.0,1.0;3.key,2.65,1.1;",
+                connection.socket.written.toString());
+        assertNull(connection.status);
+
+    }
+
+    /**
+     * Verifies that the connection is closed with CLIENT_OVERRUN if the client
+     * sends more than MAX_PENDING_LENGTH characters before the tunnel is
+     * ready, and that the tunnel is closed once it is created.
+     *
+     * @throws Exception
+     *     If the test fails unexpectedly.
+     */
+    @Test
+    public void testPendingOverrun() throws Exception {
+
+        TestConnection connection = new TestConnection(connectExecutor);
+        connection.open();
+
+        char[] data = new char[WebSocketTunnelConnection.MAX_PENDING_LENGTH + 1];
+        Arrays.fill(data, 'x');
+        connection.receive(new String(data));
+
+        assertEquals(GuacamoleStatus.CLIENT_OVERRUN, connection.status);
+
+        connection.release.countDown();
+        assertTrue(connection.started.await(5, TimeUnit.SECONDS));
+
+        assertTrue(connection.socket.closed);
+        assertEquals("", connection.socket.written.toString());
+
+    }
+
+}
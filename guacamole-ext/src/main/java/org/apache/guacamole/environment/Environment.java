@@ -67,6 +67,78 @@ public interface Environment {
 
     };
 
+    /**
+     * Whether unencrypted connections to guacd should use non-blocking I/O,
+     * with all reads from guacd performed by a shared pool of selector
+     * threads. This property has no effect if SSL/TLS is enabled.
+     */
+    public static final BooleanGuacamoleProperty GUACD_NIO = new BooleanGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "guacd-nio"; }
+
+    };
+
+    /**
+     * The minimum number of idle, already-connected sockets to guacd which
+     * should be maintained in advance of their use.
+     */
+    public static final IntegerGuacamoleProperty GUACD_POOL_MIN_IDLE = new IntegerGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "guacd-pool-min-idle"; }
+
+    };
+
+    /**
+     * The maximum number of idle, already-connected sockets to guacd which
+     * may be maintained in advance of their use. If zero, connections to
+     * guacd are not pooled.
+     */
+    public static final IntegerGuacamoleProperty GUACD_POOL_MAX_IDLE = new IntegerGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "guacd-pool-max-idle"; }
+
+    };
+
+    /**
+     * The maximum amount of time that an idle socket to guacd may be
+     * retained, in milliseconds. This must be less than the time that guacd
+     * waits for the Guacamole protocol handshake to begin.
+     */
+    public static final IntegerGuacamoleProperty GUACD_POOL_MAX_IDLE_TIME = new IntegerGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "guacd-pool-max-idle-time"; }
+
+    };
+
+    /**
+     * A comma-separated list of guacd instances that new connections should
+     * be distributed across, each given as "hostname", "hostname:port", or
+     * "hostname:port:weight". IPv6 addresses must be enclosed in brackets if
+     * followed by a port, as in "[::1]:4822". If specified, this property
+     * takes precedence over guacd-hostname and guacd-port.
+     */
+    public static final StringGuacamoleProperty GUACD_BACKENDS = new StringGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "guacd-backends"; }
+
+    };
+
+    /**
+     * The number of milliseconds between attempts to reconnect to any guacd
+     * which has become unreachable.
+     */
+    public static final IntegerGuacamoleProperty GUACD_PROBE_INTERVAL = new IntegerGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "guacd-probe-interval"; }
+
+    };
+
     /**
      * Returns the Guacamole home directory as determined when this Environment
      * object was created. The Guacamole home directory is found by checking, in
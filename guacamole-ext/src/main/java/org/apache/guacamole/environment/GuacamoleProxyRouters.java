@@ -0,0 +1,305 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.environment;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.GuacamoleServerException;
+import org.apache.guacamole.net.GuacamoleProxyBackend;
+import org.apache.guacamole.net.GuacamoleProxyRouter;
+import org.apache.guacamole.net.GuacamoleSocket;
+import org.apache.guacamole.net.GuacamoleSocketFactory;
+import org.apache.guacamole.net.GuacamoleSocketPool;
+import org.apache.guacamole.net.InetGuacamoleSocket;
+import org.apache.guacamole.net.NIOGuacamoleSocket;
+import org.apache.guacamole.net.SSLGuacamoleSocket;
+
+/**
+ * Provides the GuacamoleProxyRouter shared by all connections to guacd, as
+ * configured within guacamole.properties. A single router is shared such that
+ * the load on each guacd is accounted for regardless of which authentication
+ * provider created the connection.
+ */
+public class GuacamoleProxyRouters {
+
+    /**
+     * The hostname to use when connecting to guacd if no hostname is provided
+     * within guacamole.properties.
+     */
+    private static final String DEFAULT_GUACD_HOSTNAME = "localhost";
+
+    /**
+     * The port to use when connecting to guacd if no port is provided within
+     * guacamole.properties.
+     */
+    private static final int DEFAULT_GUACD_PORT = 4822;
+
+    /**
+     * The weight to assign to any guacd whose weight is not specified.
+     */
+    private static final int DEFAULT_GUACD_WEIGHT = 1;
+
+    /**
+     * The shared router, or null if the router has not yet been created.
+     */
+    private static GuacamoleProxyRouter router;
+
+    /**
+     * This class should not be instantiated.
+     */
+    private GuacamoleProxyRouters() {}
+
+    /**
+     * Creates a backend representing the guacd at the given hostname and
+     * port, connecting and pooling connections as specified within
+     * guacamole.properties.
+     *
+     * @param environment
+     *     The environment providing the guacd-related properties.
+     *
+     * @param hostname
+     *     The hostname of the guacd.
+     *
+     * @param port
+     *     The port the guacd is listening on.
+     *
+     * @param weight
+     *     The weight of the guacd relative to other backends.
+     *
+     * @return
+     *     A new GuacamoleProxyBackend representing the guacd.
+     *
+     * @throws GuacamoleException
+     *     If the guacd-related properties cannot be parsed.
+     */
+    private static GuacamoleProxyBackend createBackend(Environment environment,
+            final String hostname, final int port, int weight)
+            throws GuacamoleException {
+
+        final boolean ssl = environment.getProperty(Environment.GUACD_SSL, false);
+        final boolean nio = environment.getProperty(Environment.GUACD_NIO, false);
+
+        GuacamoleSocketFactory factory = new GuacamoleSocketFactory() {
+
+            @Override
+            public GuacamoleSocket createSocket() throws GuacamoleException {
+
+                // If guacd requires SSL, use it
+                if (ssl)
+                    return new SSLGuacamoleSocket(hostname, port);
+
+                // If non-blocking I/O is requested, read from guacd via the
+                // shared selector pool
+                if (nio)
+                    return new NIOGuacamoleSocket(hostname, port);
+
+                // Otherwise, just connect directly via TCP
+                return new InetGuacamoleSocket(hostname, port);
+
+            }
+
+        };
+
+        // Pool connections only if requested
+        GuacamoleSocketPool pool = null;
+        int maxIdle = environment.getProperty(Environment.GUACD_POOL_MAX_IDLE, 0);
+        if (maxIdle > 0)
+            pool = new GuacamoleSocketPool(factory,
+                environment.getProperty(Environment.GUACD_POOL_MIN_IDLE, 0),
+                maxIdle,
+                environment.getProperty(Environment.GUACD_POOL_MAX_IDLE_TIME,
+                        GuacamoleSocketPool.DEFAULT_MAX_IDLE_TIME)
+            );
+
+        return new GuacamoleProxyBackend(hostname, port, weight, factory, pool);
+
+    }
+
+    /**
+     * Parses a single entry of the guacd-backends property, which must be of
+     * the form "hostname", "hostname:port", or "hostname:port:weight". IPv6
+     * addresses must be enclosed in brackets, as in "[::1]:4822", if a port
+     * or weight is given, and may otherwise be given alone.
+     *
+     * @param environment
+     *     The environment providing the guacd-related properties.
+     *
+     * @param value
+     *     The entry to parse.
+     *
+     * @return
+     *     A new GuacamoleProxyBackend representing the guacd described by
+     *     the given entry.
+     *
+     * @throws GuacamoleException
+     *     If the given entry or other guacd-related properties cannot be
+     *     parsed.
+     */
+    private static GuacamoleProxyBackend parseBackend(Environment environment,
+            String value) throws GuacamoleException {
+
+        String entry = value.trim();
+
+        String hostname;
+        String portAndWeight = null;
+
+        // Bracketed hostnames (IPv6 addresses) end at the closing bracket
+        if (entry.startsWith("[")) {
+
+            int end = entry.indexOf(']');
+            if (end == -1)
+                throw new GuacamoleServerException("Invalid guacd backend: \"" + value + "\"");
+
+            hostname = entry.substring(1, end).trim();
+
+            String remainder = entry.substring(end + 1);
+            if (remainder.startsWith(":"))
+                portAndWeight = remainder.substring(1);
+            else if (!remainder.isEmpty())
+                throw new GuacamoleServerException("Invalid guacd backend: \"" + value + "\"");
+
+        }
+
+        // Entries which cannot be "hostname:port:weight", having more colons
+        // or an empty port, are bare IPv6 addresses
+        else if (entry.contains("::") || entry.split(":", -1).length > 3)
+            hostname = entry;
+
+        // Otherwise, the hostname ends at the first colon
+        else {
+            int colon = entry.indexOf(':');
+            if (colon == -1)
+                hostname = entry;
+            else {
+                hostname = entry.substring(0, colon).trim();
+                portAndWeight = entry.substring(colon + 1);
+            }
+        }
+
+        try {
+
+            int port = DEFAULT_GUACD_PORT;
+            int weight = DEFAULT_GUACD_WEIGHT;
+
+            if (portAndWeight != null) {
+
+                // Port and weight are separated by the last colon, if any
+                int colon = portAndWeight.lastIndexOf(':');
+                if (colon == -1)
+                    port = Integer.parseInt(portAndWeight.trim());
+                else {
+                    port = Integer.parseInt(portAndWeight.substring(0, colon).trim());
+                    weight = Integer.parseInt(portAndWeight.substring(colon + 1).trim());
+                }
+
+            }
+
+            if (hostname.isEmpty() || weight <= 0)
+                throw new GuacamoleServerException("Invalid guacd backend: \"" + value + "\"");
+
+            return createBackend(environment, hostname, port, weight);
+
+        }
+        catch (NumberFormatException e) {
+            throw new GuacamoleServerException("Invalid guacd backend: \"" + value + "\"", e);
+        }
+
+    }
+
+    /**
+     * Creates a new router which routes connections to the guacd instances
+     * specified within guacamole.properties.
+     *
+     * @param environment
+     *     The environment providing the guacd-related properties.
+     *
+     * @return
+     *     A new GuacamoleProxyRouter.
+     *
+     * @throws GuacamoleException
+     *     If the guacd-related properties cannot be parsed.
+     */
+    private static GuacamoleProxyRouter createRouter(Environment environment)
+            throws GuacamoleException {
+
+        List<GuacamoleProxyBackend> backends = new ArrayList<GuacamoleProxyBackend>();
+
+        // Use list of backends, if given
+        String backendList = environment.getProperty(Environment.GUACD_BACKENDS);
+        if (backendList != null) {
+            for (String value : backendList.split(",")) {
+                if (!value.trim().isEmpty())
+                    backends.add(parseBackend(environment, value));
+            }
+        }
+
+        // Otherwise, use the single guacd given by hostname and port
+        if (backends.isEmpty())
+            backends.add(createBackend(environment,
+                environment.getProperty(Environment.GUACD_HOSTNAME, DEFAULT_GUACD_HOSTNAME),
+                environment.getProperty(Environment.GUACD_PORT,     DEFAULT_GUACD_PORT),
+                DEFAULT_GUACD_WEIGHT
+            ));
+
+        return new GuacamoleProxyRouter(backends,
+                environment.getProperty(Environment.GUACD_PROBE_INTERVAL,
+                        GuacamoleProxyRouter.DEFAULT_PROBE_INTERVAL));
+
+    }
+
+    /**
+     * Returns the router shared by all connections to guacd, creating the
+     * router from the given environment if it does not yet exist.
+     *
+     * @param environment
+     *     The environment providing the guacd-related properties.
+     *
+     * @return
+     *     The shared GuacamoleProxyRouter.
+     *
+     * @throws GuacamoleException
+     *     If the router must be created but the guacd-related properties
+     *     cannot be parsed.
+     */
+    public static synchronized GuacamoleProxyRouter getRouter(Environment environment)
+            throws GuacamoleException {
+
+        if (router == null)
+            router = createRouter(environment);
+
+        return router;
+
+    }
+
+    /**
+     * Shuts down the shared router, if it exists, such that a new router is
+     * created upon the next call to getRouter().
+     */
+    public static synchronized void shutdown() {
+
+        if (router != null) {
+            router.shutdown();
+            router = null;
+        }
+
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.net.auth;
+
+import java.util.Date;
+
+/**
+ * The total usage of a particular connection by a particular user over the
+ * course of a single day, summarizing all connection records associated with
+ * that connection, that user, and that day.
+ */
+public interface ConnectionRecordSummary {
+
+    /**
+     * Returns the day summarized by this record. The time component of the
+     * returned date is the start of that day.
+     *
+     * @return
+     *     The day summarized by this record.
+     */
+    public Date getDate();
+
+    /**
+     * Returns the name of the user whose usage is summarized by this record.
+     *
+     * @return
+     *     The name of the user whose usage is summarized by this record.
+     */
+    public String getUsername();
+
+    /**
+     * Returns the identifier of the connection whose usage is summarized by
+     * this record.
+     *
+     * @return
+     *     The identifier of the connection whose usage is summarized by this
+     *     record, or null if that connection no longer exists.
+     */
+    public String getConnectionIdentifier();
+
+    /**
+     * Returns the name of the connection whose usage is summarized by this
+     * record.
+     *
+     * @return
+     *     The name of the connection whose usage is summarized by this
+     *     record.
+     */
+    public String getConnectionName();
+
+    /**
+     * Returns the number of sessions which began on the summarized day.
+     *
+     * @return
+     *     The number of sessions which began on the summarized day.
+     */
+    public int getSessionCount();
+
+    /**
+     * Returns the combined duration of all sessions which began on the
+     * summarized day, in seconds. Each session contributes its entire
+     * duration, even if that session continued past the end of the day.
+     *
+     * @return
+     *     The combined duration of all sessions which began on the summarized
+     *     day, in seconds.
+     */
+    public long getTotalDuration();
+
+}
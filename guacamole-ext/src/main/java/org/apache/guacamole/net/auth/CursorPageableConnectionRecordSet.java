@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.net.auth;
+
+import org.apache.guacamole.GuacamoleException;
+
+/**
+ * A ConnectionRecordSet which can be retrieved one page at a time, each page
+ * beginning after an opaque cursor identifying the last record of the
+ * previous page. Implementing this interface is optional; the web
+ * application checks for it on each ConnectionRecordSet, thus extensions
+ * built against versions of guacamole-ext lacking this interface continue to
+ * work unchanged.
+ */
+public interface CursorPageableConnectionRecordSet extends ConnectionRecordSet {
+
+    /**
+     * Returns an opaque value identifying the position of the given record
+     * within the overall connection history, such that the records following
+     * that record can be retrieved using after(). The record must have been
+     * retrieved from this set, or from a subset derived from this set. If the
+     * record has no such position, as may be the case for connections which
+     * are still active, null is returned.
+     *
+     * @param record
+     *     The record whose position should be returned.
+     *
+     * @return
+     *     An opaque value identifying the position of the given record within
+     *     the connection history, or null if the record has no such position.
+     */
+    String getCursor(ConnectionRecord record);
+
+    /**
+     * Returns the subset of connection history records which follow the
+     * record having the given cursor, according to the sort order of this
+     * set. Together with limit(), this allows the connection history to be
+     * retrieved one page at a time, each page beginning after the last record
+     * of the previous page. This function may also affect the contents of the
+     * current ConnectionRecordSet. The contents of the current
+     * ConnectionRecordSet should NOT be relied upon after this function is
+     * called.
+     *
+     * @param cursor
+     *     The cursor of the record after which the records within the
+     *     resulting subset should begin, as returned by getCursor().
+     *
+     * @return
+     *     The subset of connection history records which follow the record
+     *     having the given cursor.
+     *
+     * @throws GuacamoleException
+     *     If the given cursor is invalid, or if an error occurs while
+     *     restricting the current subset.
+     */
+    CursorPageableConnectionRecordSet after(String cursor)
+            throws GuacamoleException;
+
+}
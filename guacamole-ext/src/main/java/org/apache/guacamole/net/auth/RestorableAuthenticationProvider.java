@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.net.auth;
+
+import org.apache.guacamole.GuacamoleException;
+
+/**
+ * An AuthenticationProvider which can recreate users it has already
+ * authenticated without their original credentials, as is necessary when a
+ * session created by one Guacamole server is later used through another.
+ * Implementing this interface is optional; the web application checks for it
+ * on each AuthenticationProvider, thus extensions built against versions of
+ * guacamole-ext lacking this interface continue to work unchanged. Sessions
+ * of users authenticated by any other AuthenticationProvider cannot be
+ * recreated, and such users must log in again.
+ */
+public interface RestorableAuthenticationProvider extends AuthenticationProvider {
+
+    /**
+     * Recreates the AuthenticatedUser having the given identifier, which was
+     * previously authenticated by this AuthenticationProvider. The given
+     * credentials contain the username and the current HTTP request and
+     * session, but never a password, which is not retained. Any restrictions
+     * which would prevent the user from logging in, other than verification
+     * of the user's credentials, must still be applied.
+     *
+     * @param identifier
+     *     The identifier of the user to recreate.
+     *
+     * @param credentials
+     *     The credentials to associate with the recreated user, which do not
+     *     contain a password.
+     *
+     * @return
+     *     The recreated AuthenticatedUser, or null if the user no longer
+     *     exists or may no longer log in.
+     *
+     * @throws GuacamoleException
+     *     If the user is currently prevented from logging in, or if an error
+     *     occurs while recreating the user.
+     */
+    AuthenticatedUser restoreAuthenticatedUser(String identifier,
+            Credentials credentials) throws GuacamoleException;
+
+}
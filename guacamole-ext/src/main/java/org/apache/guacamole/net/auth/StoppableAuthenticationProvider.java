@@ -0,0 +1,39 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.net.auth;
+
+/**
+ * An AuthenticationProvider which holds resources or pending work that must
+ * be dealt with when the Guacamole web application shuts down. Implementing
+ * this interface is optional; the web application checks for it on each
+ * AuthenticationProvider, thus extensions built against versions of
+ * guacamole-ext lacking this interface continue to work unchanged.
+ */
+public interface StoppableAuthenticationProvider extends AuthenticationProvider {
+
+    /**
+     * Frees all resources associated with this AuthenticationProvider,
+     * completing any work which is still pending. This function will be
+     * invoked when the Guacamole web application is shutting down, after
+     * which no other function of this AuthenticationProvider will be invoked.
+     */
+    void shutdown();
+
+}
@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.net.auth;
+
+import java.util.Collection;
+import org.apache.guacamole.GuacamoleException;
+
+/**
+ * A ConnectionRecordSet which maintains daily usage totals of its records.
+ * Implementing this interface is optional; the web application checks for it
+ * on each ConnectionRecordSet, thus extensions built against versions of
+ * guacamole-ext lacking this interface continue to work unchanged.
+ */
+public interface SummarizableConnectionRecordSet extends ConnectionRecordSet {
+
+    /**
+     * Returns the daily usage totals of the connection records within this
+     * set, with one summary for each combination of day, user, and
+     * connection. Restrictions applied with contains() and limit() apply to
+     * the returned summaries, and summaries are ordered by day if sort() is
+     * given START_DATE. Implementations are expected to maintain these totals
+     * separately from the records themselves, such that summaries can be
+     * retrieved without examining each record.
+     *
+     * @return
+     *     A collection containing the daily usage totals of the connection
+     *     records within this set.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while retrieving the usage totals.
+     */
+    Collection<ConnectionRecordSummary> summarize() throws GuacamoleException;
+
+}
@@ -22,16 +22,35 @@ package org.apache.guacamole;
 import org.apache.guacamole.tunnel.TunnelModule;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
+import com.google.inject.Key;
 import com.google.inject.Stage;
+import com.google.inject.TypeLiteral;
 import com.google.inject.servlet.GuiceServletContextListener;
+import java.util.List;
 import javax.servlet.ServletContextEvent;
 import org.apache.guacamole.environment.Environment;
+import org.apache.guacamole.environment.GuacamoleProxyRouters;
 import org.apache.guacamole.environment.LocalEnvironment;
 import org.apache.guacamole.extension.ExtensionModule;
+import org.apache.guacamole.io.BatchSizeHistogram;
+import org.apache.guacamole.io.GuacamoleBatchSettings;
+import org.apache.guacamole.io.GuacamoleCompressionSettings;
+import org.apache.guacamole.io.GuacamoleShapingSettings;
 import org.apache.guacamole.log.LogModule;
+import org.apache.guacamole.net.ExpirationWheel;
+import org.apache.guacamole.net.TunnelConnectExecutor;
+import org.apache.guacamole.net.TunnelPumpExecutor;
+import org.apache.guacamole.net.TunnelPumpExecutors;
+import org.apache.guacamole.net.auth.AuthenticationProvider;
+import org.apache.guacamole.net.auth.StoppableAuthenticationProvider;
+import org.apache.guacamole.properties.BooleanGuacamoleProperty;
+import org.apache.guacamole.properties.IntegerGuacamoleProperty;
 import org.apache.guacamole.rest.RESTServiceModule;
-import org.apache.guacamole.rest.auth.HashTokenSessionMap;
 import org.apache.guacamole.rest.auth.TokenSessionMap;
+import org.apache.guacamole.rest.auth.TokenSessionMaps;
+import org.apache.guacamole.servlet.GuacamoleTunnelRelay;
+import org.apache.guacamole.tunnel.TunnelDrainService;
+import org.apache.guacamole.tunnel.http.TunnelRelays;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -53,17 +72,283 @@ public class GuacamoleServletContextListener extends GuiceServletContextListener
      */
     private Environment environment;
 
+    /**
+     * The injector providing all objects of the web application, or null if
+     * the injector has not yet been created.
+     */
+    private Injector injector;
+
     /**
      * Singleton instance of a TokenSessionMap.
      */
     private TokenSessionMap sessionMap;
 
+    /**
+     * The executor which runs the read pumps of all WebSocket tunnels.
+     */
+    private TunnelPumpExecutor pumpExecutor;
+
+    /**
+     * The executor which creates all WebSocket and HTTP tunnels.
+     */
+    private TunnelConnectExecutor connectExecutor;
+
+    /**
+     * The wheel which expires all HTTP tunnels and sessions which are no
+     * longer in use.
+     */
+    private ExpirationWheel expirationWheel;
+
+    /**
+     * The relay which forwards requests for HTTP tunnels held by other nodes,
+     * or null if requests are not relayed.
+     */
+    private GuacamoleTunnelRelay tunnelRelay;
+
+    /**
+     * The settings controlling how instructions are batched by all tunnels.
+     */
+    private GuacamoleBatchSettings batchSettings;
+
+    /**
+     * The settings controlling whether data sent over tunnels is compressed,
+     * recording the total traffic of all tunnels.
+     */
+    private GuacamoleCompressionSettings compressionSettings;
+
+    /**
+     * The settings limiting the rate at which data is sent over tunnels,
+     * recording how often tunnels have been held back.
+     */
+    private GuacamoleShapingSettings shapingSettings;
+
+    /**
+     * Whether tunnel pumps should run within virtual threads, if supported
+     * by the running JVM.
+     */
+    private final BooleanGuacamoleProperty TUNNEL_PUMP_VIRTUAL_THREADS =
+            new BooleanGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "tunnel-pump-virtual-threads"; }
+
+    };
+
+    /**
+     * The maximum number of tunnel pumps which may run concurrently if
+     * virtual threads are not in use, or zero if the number of concurrent
+     * pumps should not be limited.
+     */
+    private final IntegerGuacamoleProperty TUNNEL_PUMP_MAX_THREADS =
+            new IntegerGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "tunnel-pump-max-threads"; }
+
+    };
+
+    /**
+     * The maximum number of tunnel pumps which may wait for a thread. Pumps
+     * are never queued, thus any value other than zero is rejected.
+     */
+    private final IntegerGuacamoleProperty TUNNEL_PUMP_MAX_QUEUED =
+            new IntegerGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "tunnel-pump-max-queued"; }
+
+    };
+
+    /**
+     * The maximum number of tunnels which may be created concurrently.
+     */
+    private final IntegerGuacamoleProperty TUNNEL_CONNECT_MAX_THREADS =
+            new IntegerGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "tunnel-connect-max-threads"; }
+
+    };
+
+    /**
+     * The maximum number of connection attempts which may wait for a thread
+     * before further attempts are rejected.
+     */
+    private final IntegerGuacamoleProperty TUNNEL_CONNECT_MAX_QUEUED =
+            new IntegerGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "tunnel-connect-max-queued"; }
+
+    };
+
+    /**
+     * The maximum size of each batch of instructions sent to the client, in
+     * bytes or characters.
+     */
+    private final IntegerGuacamoleProperty TUNNEL_BATCH_MAX_SIZE =
+            new IntegerGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "tunnel-batch-max-size"; }
+
+    };
+
+    /**
+     * The maximum amount of time, in milliseconds, that an incomplete batch
+     * of instructions may wait for further instructions before being sent to
+     * the client.
+     */
+    private final IntegerGuacamoleProperty TUNNEL_BATCH_MAX_LATENCY =
+            new IntegerGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "tunnel-batch-max-latency"; }
+
+    };
+
+    /**
+     * Whether data sent to the client over tunnels should be compressed,
+     * where supported by the client and tunnel transport.
+     */
+    private final BooleanGuacamoleProperty TUNNEL_COMPRESSION =
+            new BooleanGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "tunnel-compression"; }
+
+    };
+
+    /**
+     * The amount of data, in bytes, to compress between each measurement of
+     * the compression ratio of a tunnel.
+     */
+    private final IntegerGuacamoleProperty TUNNEL_COMPRESSION_SAMPLE_SIZE =
+            new IntegerGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "tunnel-compression-sample-size"; }
+
+    };
+
+    /**
+     * The minimum percentage of data which compression must save within each
+     * sample for compression of a tunnel to continue.
+     */
+    private final IntegerGuacamoleProperty TUNNEL_COMPRESSION_MIN_SAVINGS =
+            new IntegerGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "tunnel-compression-min-savings"; }
+
+    };
+
+    /**
+     * The maximum rate at which data may be sent to the client of each
+     * tunnel, in kilobytes per second, unless overridden by the connection
+     * connected to.
+     */
+    private final IntegerGuacamoleProperty TUNNEL_MAX_BANDWIDTH =
+            new IntegerGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "tunnel-max-bandwidth"; }
+
+    };
+
+    /**
+     * The maximum number of frames per second which may be sent to the client
+     * of each tunnel, unless overridden by the connection connected to.
+     */
+    private final IntegerGuacamoleProperty TUNNEL_MAX_FRAME_RATE =
+            new IntegerGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "tunnel-max-frame-rate"; }
+
+    };
+
+    /**
+     * The maximum rate at which data may be sent to the clients of all
+     * tunnels of this node together, in kilobytes per second.
+     */
+    private final IntegerGuacamoleProperty TUNNEL_NODE_MAX_BANDWIDTH =
+            new IntegerGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "tunnel-node-max-bandwidth"; }
+
+    };
+
     @Override
     public void contextInitialized(ServletContextEvent servletContextEvent) {
 
         try {
             environment = new LocalEnvironment();
-            sessionMap = new HashTokenSessionMap(environment);
+
+            // Share a single expiration wheel with all sessions and tunnels
+            expirationWheel = new ExpirationWheel("guacamole-expiration",
+                    ExpirationWheel.DEFAULT_TICK_DURATION,
+                    ExpirationWheel.DEFAULT_WHEEL_SIZE);
+            ExpirationWheel.setDefault(expirationWheel);
+
+            sessionMap = TokenSessionMaps.create(environment);
+
+            // A queued pump would leave its connected tunnel stalled
+            if (environment.getProperty(TUNNEL_PUMP_MAX_QUEUED, 0) != 0)
+                throw new GuacamoleServerException("Tunnel pumps cannot be "
+                        + "queued. \"" + TUNNEL_PUMP_MAX_QUEUED.getName()
+                        + "\" must be 0.");
+
+            // Share configured executor with all tunnel implementations
+            pumpExecutor = TunnelPumpExecutors.create(
+                environment.getProperty(TUNNEL_PUMP_VIRTUAL_THREADS, true),
+                environment.getProperty(TUNNEL_PUMP_MAX_THREADS,
+                        TunnelPumpExecutors.DEFAULT_MAX_THREADS)
+            );
+            TunnelPumpExecutors.setDefault(pumpExecutor);
+
+            // Create all tunnels using a shared, bounded executor
+            connectExecutor = new TunnelConnectExecutor(
+                environment.getProperty(TUNNEL_CONNECT_MAX_THREADS,
+                        TunnelConnectExecutor.DEFAULT_MAX_THREADS),
+                environment.getProperty(TUNNEL_CONNECT_MAX_QUEUED,
+                        TunnelConnectExecutor.DEFAULT_MAX_QUEUED)
+            );
+            TunnelConnectExecutor.setDefault(connectExecutor);
+
+            // Share configured batching with all tunnel implementations
+            batchSettings = new GuacamoleBatchSettings(
+                environment.getProperty(TUNNEL_BATCH_MAX_SIZE,
+                        GuacamoleBatchSettings.DEFAULT_MAX_SIZE),
+                environment.getProperty(TUNNEL_BATCH_MAX_LATENCY,
+                        GuacamoleBatchSettings.DEFAULT_MAX_LATENCY),
+                new BatchSizeHistogram()
+            );
+            GuacamoleBatchSettings.setDefault(batchSettings);
+
+            // Share configured compression with all tunnel implementations
+            compressionSettings = new GuacamoleCompressionSettings(
+                environment.getProperty(TUNNEL_COMPRESSION, false),
+                environment.getProperty(TUNNEL_COMPRESSION_SAMPLE_SIZE,
+                        GuacamoleCompressionSettings.DEFAULT_SAMPLE_SIZE),
+                environment.getProperty(TUNNEL_COMPRESSION_MIN_SAVINGS,
+                        GuacamoleCompressionSettings.DEFAULT_MIN_SAVINGS)
+            );
+            GuacamoleCompressionSettings.setDefault(compressionSettings);
+
+            // Share configured bandwidth and frame rate limits with all
+            // tunnels (limits are given in kilobytes per second)
+            shapingSettings = new GuacamoleShapingSettings(
+                environment.getProperty(TUNNEL_MAX_BANDWIDTH, 0) * 1024L,
+                environment.getProperty(TUNNEL_MAX_FRAME_RATE, 0),
+                environment.getProperty(TUNNEL_NODE_MAX_BANDWIDTH, 0) * 1024L
+            );
+            GuacamoleShapingSettings.setDefault(shapingSettings);
+
+            // Relay HTTP tunnel requests between nodes, if configured
+            tunnelRelay = TunnelRelays.create(environment);
+            GuacamoleTunnelRelay.setDefault(tunnelRelay);
         }
         catch (GuacamoleException e) {
             logger.error("Unable to read guacamole.properties: {}", e.getMessage());
@@ -77,13 +362,14 @@ public class GuacamoleServletContextListener extends GuiceServletContextListener
 
     @Override
     protected Injector getInjector() {
-        return Guice.createInjector(Stage.PRODUCTION,
+        injector = Guice.createInjector(Stage.PRODUCTION,
             new EnvironmentModule(environment),
             new LogModule(environment),
             new ExtensionModule(environment),
             new RESTServiceModule(sessionMap),
             new TunnelModule()
         );
+        return injector;
     }
 
     @Override
@@ -95,6 +381,83 @@ public class GuacamoleServletContextListener extends GuiceServletContextListener
         if (sessionMap != null)
             sessionMap.shutdown();
 
+        // Allow all authentication providers to complete pending work
+        if (injector != null) {
+
+            List<AuthenticationProvider> authProviders = injector.getInstance(
+                    Key.get(new TypeLiteral<List<AuthenticationProvider>>() {}));
+
+            for (AuthenticationProvider authProvider : authProviders) {
+
+                // Shutdown is optional for authentication providers
+                if (!(authProvider instanceof StoppableAuthenticationProvider))
+                    continue;
+
+                // Do not allow any one extension, which may have been built
+                // against a different guacamole-ext, to prevent the others
+                // from shutting down
+                try {
+                    ((StoppableAuthenticationProvider) authProvider).shutdown();
+                }
+                catch (Throwable t) {
+                    logger.error("Authentication provider \"{}\" failed to shut down: {}",
+                            authProvider.getIdentifier(), t.getMessage());
+                    logger.debug("Unexpected error shutting down authentication provider.", t);
+                }
+
+            }
+
+        }
+
+        // Stop closing idle tunnels of a draining node
+        if (injector != null)
+            injector.getInstance(TunnelDrainService.class).shutdown();
+
+        // Stop relaying requests for tunnels of this node
+        if (tunnelRelay != null) {
+            GuacamoleTunnelRelay.setDefault(null);
+            tunnelRelay.shutdown();
+        }
+
+        // Stop expiring sessions and tunnels
+        if (expirationWheel != null) {
+            ExpirationWheel.setDefault(null);
+            expirationWheel.shutdown();
+        }
+
+        // Stop accepting new connection attempts
+        if (connectExecutor != null) {
+            TunnelConnectExecutor.setDefault(null);
+            connectExecutor.shutdown();
+        }
+
+        // Stop accepting new tunnel pumps
+        if (pumpExecutor != null) {
+            TunnelPumpExecutors.setDefault(null);
+            pumpExecutor.shutdown();
+        }
+
+        // Stop health probes and close idle connections to guacd
+        GuacamoleProxyRouters.shutdown();
+
+        // Report distribution of batch sizes over the life of the webapp
+        if (batchSettings != null) {
+            GuacamoleBatchSettings.setDefault(null);
+            logger.info("Tunnel batch sizes: {}", batchSettings.getHistogram());
+        }
+
+        // Report total traffic over the life of the webapp
+        if (compressionSettings != null) {
+            GuacamoleCompressionSettings.setDefault(null);
+            logger.info("Tunnel traffic: {}", compressionSettings.getTotals());
+        }
+
+        // Report total throttling over the life of the webapp
+        if (shapingSettings != null) {
+            GuacamoleShapingSettings.setDefault(null);
+            logger.info("Tunnel throttling: {}", shapingSettings.getTotals());
+        }
+
     }
 
 }
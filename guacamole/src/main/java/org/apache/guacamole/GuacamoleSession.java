@@ -24,6 +24,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import org.apache.guacamole.environment.Environment;
+import org.apache.guacamole.net.ExpirationWheel;
 import org.apache.guacamole.net.GuacamoleTunnel;
 import org.apache.guacamole.net.auth.AuthenticatedUser;
 import org.apache.guacamole.net.auth.UserContext;
@@ -64,7 +65,7 @@ public class GuacamoleSession {
     /**
      * The last time this session was accessed.
      */
-    private long lastAccessedTime;
+    private volatile long lastAccessedTime;
     
     /**
      * Creates a new Guacamole session associated with the given
@@ -182,10 +183,13 @@ public class GuacamoleSession {
     }
 
     /**
-     * Updates this session, marking it as accessed.
+     * Updates this session, marking it as accessed. The time of access is
+     * read from the coarse-grained clock of the default ExpirationWheel, and
+     * thus may lag behind the true time of access by up to one tick of that
+     * wheel.
      */
     public void access() {
-        lastAccessedTime = System.currentTimeMillis();
+        lastAccessedTime = ExpirationWheel.getDefault().currentTimeMillis();
     }
 
     /**
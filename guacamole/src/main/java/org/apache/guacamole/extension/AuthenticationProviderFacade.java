@@ -25,6 +25,8 @@ import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.net.auth.AuthenticatedUser;
 import org.apache.guacamole.net.auth.AuthenticationProvider;
 import org.apache.guacamole.net.auth.Credentials;
+import org.apache.guacamole.net.auth.RestorableAuthenticationProvider;
+import org.apache.guacamole.net.auth.StoppableAuthenticationProvider;
 import org.apache.guacamole.net.auth.UserContext;
 import org.apache.guacamole.net.auth.credentials.CredentialsInfo;
 import org.apache.guacamole.net.auth.credentials.GuacamoleInvalidCredentialsException;
@@ -38,7 +40,8 @@ import org.slf4j.LoggerFactory;
  *
  * @author Michael Jumper
  */
-public class AuthenticationProviderFacade implements AuthenticationProvider {
+public class AuthenticationProviderFacade implements StoppableAuthenticationProvider,
+        RestorableAuthenticationProvider {
 
     /**
      * Logger for this class.
@@ -151,6 +154,21 @@ public class AuthenticationProviderFacade implements AuthenticationProvider {
 
     }
 
+    @Override
+    public AuthenticatedUser restoreAuthenticatedUser(String identifier,
+            Credentials credentials) throws GuacamoleException {
+
+        // Users cannot be restored if no auth provider could be loaded, or if
+        // the auth provider does not support restoring users
+        if (!(authProvider instanceof RestorableAuthenticationProvider))
+            return null;
+
+        // Delegate to underlying auth provider
+        return ((RestorableAuthenticationProvider) authProvider)
+                .restoreAuthenticatedUser(identifier, credentials);
+
+    }
+
     @Override
     public AuthenticatedUser updateAuthenticatedUser(AuthenticatedUser authenticatedUser,
             Credentials credentials) throws GuacamoleException {
@@ -197,4 +215,16 @@ public class AuthenticationProviderFacade implements AuthenticationProvider {
         
     }
 
+    @Override
+    public void shutdown() {
+
+        // Nothing to shut down if no auth provider could be loaded, or if
+        // the auth provider has nothing to shut down
+        if (!(authProvider instanceof StoppableAuthenticationProvider))
+            return;
+
+        // Delegate to underlying auth provider
+        ((StoppableAuthenticationProvider) authProvider).shutdown();
+
+    }
 }
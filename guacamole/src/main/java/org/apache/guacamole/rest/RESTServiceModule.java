@@ -33,10 +33,12 @@ import org.apache.guacamole.rest.auth.AuthTokenGenerator;
 import org.apache.guacamole.rest.auth.AuthenticationService;
 import org.apache.guacamole.rest.auth.SecureRandomAuthTokenGenerator;
 import org.apache.guacamole.rest.auth.TokenSessionMap;
+import org.apache.guacamole.rest.drain.DrainRESTService;
 import org.apache.guacamole.rest.history.HistoryRESTService;
 import org.apache.guacamole.rest.language.LanguageRESTService;
 import org.apache.guacamole.rest.patch.PatchRESTService;
 import org.apache.guacamole.rest.schema.SchemaRESTService;
+import org.apache.guacamole.rest.status.StatusRESTService;
 import org.apache.guacamole.rest.tunnel.TunnelRESTService;
 import org.apache.guacamole.rest.user.UserRESTService;
 
@@ -88,10 +90,12 @@ public class RESTServiceModule extends ServletModule {
         bind(ActiveConnectionRESTService.class);
         bind(ConnectionGroupRESTService.class);
         bind(ConnectionRESTService.class);
+        bind(DrainRESTService.class);
         bind(HistoryRESTService.class);
         bind(LanguageRESTService.class);
         bind(PatchRESTService.class);
         bind(SchemaRESTService.class);
+        bind(StatusRESTService.class);
         bind(TokenRESTService.class);
         bind(TunnelRESTService.class);
         bind(UserRESTService.class);
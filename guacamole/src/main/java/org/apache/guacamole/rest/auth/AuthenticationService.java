@@ -26,11 +26,13 @@ import java.util.regex.Pattern;
 import javax.servlet.http.HttpServletRequest;
 import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.GuacamoleSecurityException;
+import org.apache.guacamole.GuacamoleServerException;
 import org.apache.guacamole.GuacamoleUnauthorizedException;
 import org.apache.guacamole.environment.Environment;
 import org.apache.guacamole.net.auth.AuthenticatedUser;
 import org.apache.guacamole.net.auth.AuthenticationProvider;
 import org.apache.guacamole.net.auth.Credentials;
+import org.apache.guacamole.net.auth.RestorableAuthenticationProvider;
 import org.apache.guacamole.net.auth.UserContext;
 import org.apache.guacamole.net.auth.credentials.CredentialsInfo;
 import org.apache.guacamole.net.auth.credentials.GuacamoleCredentialsException;
@@ -400,6 +402,82 @@ public class AuthenticationService {
 
     }
 
+    /**
+     * Recreates a Guacamole session from the verified record shared via a
+     * TokenSessionStore, as may be necessary if the session was created by a
+     * different node. As no credentials are stored, the session can only be
+     * recreated if the AuthenticationProvider which authenticated the user
+     * implements RestorableAuthenticationProvider. That provider recreates
+     * the user without a password, applying any other restrictions it would
+     * apply at login. Users authenticated by any other provider, including
+     * providers which require the user's password to retrieve data, must log
+     * in again. UserContexts are retrieved from all AuthenticationProviders
+     * as if a new login. The recreated session is NOT added to the
+     * TokenSessionMap.
+     *
+     * @param record
+     *     The verified record of the session to recreate.
+     *
+     * @param request
+     *     The HTTP request currently being handled.
+     *
+     * @return
+     *     A new GuacamoleSession for the user identified by the given record,
+     *     or null if the session cannot be recreated.
+     *
+     * @throws GuacamoleException
+     *     If the AuthenticationProvider which authenticated the user is no
+     *     longer installed, if the user may not currently log in, or if an
+     *     error occurs while retrieving any UserContext.
+     */
+    GuacamoleSession restoreGuacamoleSession(TokenSessionRecord record,
+            HttpServletRequest request) throws GuacamoleException {
+
+        // Locate the AuthenticationProvider which authenticated the user
+        AuthenticationProvider authProvider = null;
+        for (AuthenticationProvider candidate : authProviders) {
+            if (candidate.getIdentifier().equals(record.getAuthProviderIdentifier())) {
+                authProvider = candidate;
+                break;
+            }
+        }
+
+        if (authProvider == null)
+            throw new GuacamoleServerException("Authentication provider \""
+                    + record.getAuthProviderIdentifier() + "\" is not installed.");
+
+        // Only providers which explicitly support restoring users may do so
+        if (!(authProvider instanceof RestorableAuthenticationProvider)) {
+            logger.debug("Authentication provider \"{}\" cannot restore sessions.",
+                    record.getAuthProviderIdentifier());
+            return null;
+        }
+
+        // Associate credentials with current request, as at login
+        Credentials credentials = new Credentials();
+        credentials.setUsername(record.getUserIdentifier());
+        credentials.setRequest(request);
+        credentials.setSession(request.getSession(true));
+
+        // Recreate user, subject to any restrictions of the provider
+        AuthenticatedUser authenticatedUser =
+                ((RestorableAuthenticationProvider) authProvider)
+                .restoreAuthenticatedUser(record.getUserIdentifier(), credentials);
+        if (authenticatedUser == null) {
+            logger.debug("Session of user \"{}\" could not be restored from "
+                    + "shared store.", record.getUserIdentifier());
+            return null;
+        }
+
+        List<UserContext> userContexts = getUserContexts(null, authenticatedUser);
+
+        logger.debug("Session of user \"{}\" restored from shared store.",
+                authenticatedUser.getIdentifier());
+
+        return new GuacamoleSession(environment, authenticatedUser, userContexts);
+
+    }
+
     /**
      * Finds the Guacamole session for a given auth token, if the auth token
      * represents a currently logged in user. Throws an unauthorized error
@@ -0,0 +1,284 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.rest.auth;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.GuacamoleServerException;
+import org.apache.guacamole.environment.Environment;
+import org.apache.guacamole.properties.FileGuacamoleProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A TokenSessionStore which stores each token as a file within a directory
+ * shared by all nodes, such as an NFS mount. Each file is named after a hash
+ * of its token, such that tokens cannot be recovered from directory listings,
+ * and the modification time of each file records when its token was last
+ * touched. Each file contains only the signed record of its token, as UTF-8
+ * text, and is readable only by the owner of the webapp process.
+ */
+public class DirectoryTokenSessionStore implements TokenSessionStore {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(DirectoryTokenSessionStore.class);
+
+    /**
+     * The suffix of files which are still being written, and are not yet
+     * valid tokens.
+     */
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    /**
+     * The directory shared by all nodes in which tokens should be stored.
+     */
+    private final FileGuacamoleProperty API_SESSION_STORE_DIRECTORY =
+            new FileGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "api-session-store-directory"; }
+
+    };
+
+    /**
+     * The directory containing all stored tokens.
+     */
+    private final File directory;
+
+    /**
+     * The amount of time a token may remain untouched before it expires, in
+     * milliseconds.
+     */
+    private final long sessionTimeout;
+
+    /**
+     * The time that expired tokens were last removed by this node, in
+     * milliseconds since midnight of January 1, 1970 UTC.
+     */
+    private volatile long lastSwept = System.currentTimeMillis();
+
+    /**
+     * Creates a new DirectoryTokenSessionStore which stores tokens within the
+     * directory given by the "api-session-store-directory" property.
+     *
+     * @param environment
+     *     The Guacamole server environment.
+     *
+     * @param sessionTimeout
+     *     The amount of time a token may remain untouched before it expires,
+     *     in milliseconds.
+     *
+     * @throws GuacamoleException
+     *     If the directory is not specified, or does not exist and cannot be
+     *     created.
+     */
+    public DirectoryTokenSessionStore(Environment environment,
+            long sessionTimeout) throws GuacamoleException {
+
+        this.directory = environment.getRequiredProperty(API_SESSION_STORE_DIRECTORY);
+        this.sessionTimeout = sessionTimeout;
+
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new GuacamoleServerException("Session store directory \""
+                    + directory + "\" cannot be created.");
+
+        logger.info("Sessions will be shared via directory \"{}\".", directory);
+
+    }
+
+    /**
+     * Returns the file in which the given auth token is stored.
+     *
+     * @param authToken
+     *     The auth token to locate.
+     *
+     * @return
+     *     The file in which the given token is stored, which may not exist.
+     */
+    private File getFile(String authToken) {
+        return new File(directory, DigestUtils.sha256Hex(authToken));
+    }
+
+    /**
+     * Returns whether the token stored in the given file has expired. Files
+     * which do not exist are considered expired.
+     *
+     * @param file
+     *     The file to check.
+     *
+     * @param now
+     *     The current time, in milliseconds since midnight of January 1,
+     *     1970 UTC.
+     *
+     * @return
+     *     true if the given file does not exist or contains an expired token,
+     *     false otherwise.
+     */
+    private boolean isExpired(File file, long now) {
+        long lastModified = file.lastModified();
+        return lastModified == 0 || now - lastModified > sessionTimeout;
+    }
+
+    /**
+     * Deletes all files within the store directory which contain expired
+     * tokens, including any files abandoned while being written. Expired
+     * files are deleted at most once per session timeout by each node.
+     */
+    private void sweep() {
+
+        long now = System.currentTimeMillis();
+        if (now - lastSwept <= sessionTimeout)
+            return;
+
+        lastSwept = now;
+
+        File[] files = directory.listFiles();
+        if (files == null)
+            return;
+
+        for (File file : files) {
+            if (isExpired(file, now) && !file.delete())
+                logger.debug("Unable to delete expired token \"{}\".", file);
+        }
+
+    }
+
+    @Override
+    public void put(String authToken, String record)
+            throws GuacamoleException {
+
+        sweep();
+
+        File file = getFile(authToken);
+        File temporary = new File(directory, file.getName() + TEMPORARY_SUFFIX);
+
+        try {
+
+            // Restrict access to the owner before writing the record
+            if (!temporary.createNewFile() && !temporary.isFile())
+                throw new GuacamoleServerException("Token file \"" + temporary + "\" cannot be created.");
+
+            temporary.setReadable(false, false);
+            temporary.setWritable(false, false);
+            temporary.setReadable(true, true);
+            temporary.setWritable(true, true);
+
+            Writer output = new OutputStreamWriter(new FileOutputStream(temporary), "UTF-8");
+            try {
+                output.write(record);
+            }
+            finally {
+                output.close();
+            }
+
+        }
+        catch (IOException e) {
+            temporary.delete();
+            throw new GuacamoleServerException("Unable to store token.", e);
+        }
+
+        // Replace any existing token only once fully written
+        if (!temporary.renameTo(file) && !(file.delete() && temporary.renameTo(file))) {
+            temporary.delete();
+            throw new GuacamoleServerException("Token file \"" + file + "\" cannot be replaced.");
+        }
+
+    }
+
+    @Override
+    public String get(String authToken) throws GuacamoleException {
+
+        File file = getFile(authToken);
+        if (isExpired(file, System.currentTimeMillis()))
+            return null;
+
+        try {
+
+            Reader input = new InputStreamReader(new FileInputStream(file), "UTF-8");
+            try {
+
+                // Read no more than the longest valid record, plus one
+                // character such that longer records remain invalid
+                char[] buffer = new char[TokenSessionRecordSigner.MAX_RECORD_LENGTH + 1];
+                int length = 0;
+                int read;
+                while (length < buffer.length
+                        && (read = input.read(buffer, length, buffer.length - length)) != -1)
+                    length += read;
+
+                return new String(buffer, 0, length);
+
+            }
+            finally {
+                input.close();
+            }
+
+        }
+
+        // The token may have been removed by another node since checked
+        catch (FileNotFoundException e) {
+            return null;
+        }
+
+        catch (IOException e) {
+            throw new GuacamoleServerException("Unable to read token.", e);
+        }
+
+    }
+
+    @Override
+    public boolean touch(String authToken) throws GuacamoleException {
+
+        File file = getFile(authToken);
+
+        long now = System.currentTimeMillis();
+        if (isExpired(file, now))
+            return false;
+
+        return file.setLastModified(now);
+
+    }
+
+    @Override
+    public void remove(String authToken) throws GuacamoleException {
+
+        File file = getFile(authToken);
+        if (!file.delete() && file.exists())
+            throw new GuacamoleServerException("Token file \"" + file + "\" cannot be deleted.");
+
+    }
+
+    @Override
+    public void shutdown() {
+        // Nothing to release
+    }
+
+}
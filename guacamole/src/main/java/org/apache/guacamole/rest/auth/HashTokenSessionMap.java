@@ -19,16 +19,12 @@
 
 package org.apache.guacamole.rest.auth;
 
-import java.util.Iterator;
-import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.environment.Environment;
 import org.apache.guacamole.GuacamoleSession;
+import org.apache.guacamole.net.ExpirationWheel;
 import org.apache.guacamole.properties.IntegerGuacamoleProperty;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,20 +43,27 @@ public class HashTokenSessionMap implements TokenSessionMap {
     private static final Logger logger = LoggerFactory.getLogger(HashTokenSessionMap.class);
 
     /**
-     * Executor service which runs the period session eviction task.
+     * The wheel which expires sessions that are no longer in use.
      */
-    private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(1);
-    
+    private final ExpirationWheel wheel = ExpirationWheel.getDefault();
+
+    /**
+     * Keeps track of the authToken to GuacamoleSession mapping, along with
+     * the expiration of each session.
+     */
+    private final ConcurrentMap<String, SessionExpiration> sessionMap =
+            new ConcurrentHashMap<String, SessionExpiration>();
+
     /**
-     * Keeps track of the authToken to GuacamoleSession mapping.
+     * The maximum amount of time that a session may remain unused before it
+     * is evicted, in milliseconds.
      */
-    private final ConcurrentMap<String, GuacamoleSession> sessionMap =
-            new ConcurrentHashMap<String, GuacamoleSession>();
+    private final long sessionTimeout;
 
     /**
      * The session timeout for the Guacamole REST API, in minutes.
      */
-    private final IntegerGuacamoleProperty API_SESSION_TIMEOUT =
+    private static final IntegerGuacamoleProperty API_SESSION_TIMEOUT =
             new IntegerGuacamoleProperty() {
 
         @Override
@@ -75,7 +78,35 @@ public class HashTokenSessionMap implements TokenSessionMap {
      *     The environment to use when configuring the token session map.
      */
     public HashTokenSessionMap(Environment environment) {
-        
+        this(getSessionTimeout(environment));
+    }
+
+    /**
+     * Create a new HashTokenSessionMap which evicts sessions that have not
+     * been used for the given amount of time.
+     *
+     * @param sessionTimeout
+     *     The maximum amount of time that a session may remain unused before
+     *     it is evicted, in milliseconds.
+     */
+    public HashTokenSessionMap(long sessionTimeout) {
+        this.sessionTimeout = sessionTimeout;
+    }
+
+    /**
+     * Returns the session timeout configured within guacamole.properties,
+     * falling back to the default of 60 minutes if the timeout cannot be
+     * read.
+     *
+     * @param environment
+     *     The environment to read the session timeout from.
+     *
+     * @return
+     *     The maximum amount of time that a session may remain unused before
+     *     it is evicted, in milliseconds.
+     */
+    static long getSessionTimeout(Environment environment) {
+
         int sessionTimeoutValue;
 
         // Read session timeout from guacamole.properties
@@ -88,69 +119,93 @@ public class HashTokenSessionMap implements TokenSessionMap {
             sessionTimeoutValue = 60;
         }
         
-        // Check for expired sessions every minute
+        // Expire sessions individually as they time out
         logger.info("Sessions will expire after {} minutes of inactivity.", sessionTimeoutValue);
-        executor.scheduleAtFixedRate(new SessionEvictionTask(sessionTimeoutValue * 60000l), 1, 1, TimeUnit.MINUTES);
-        
+        return sessionTimeoutValue * 60000l;
+
+    }
+
+    /**
+     * Called after a session has been evicted from this map due to
+     * inactivity, and has been invalidated. By default, this function has no
+     * effect.
+     *
+     * @param authToken
+     *     The auth token associated with the evicted session.
+     */
+    protected void sessionExpired(String authToken) {
+        // Nothing to do by default
     }
 
     /**
-     * Task which iterates through all active sessions, evicting those sessions
-     * which are beyond the session timeout.
+     * Expires a single session once it has not been accessed for the session
+     * timeout, evicting that session. Sessions which have active tunnels are
+     * never expired.
      */
-    private class SessionEvictionTask implements Runnable {
+    private class SessionExpiration implements ExpirationWheel.Expirable {
+
+        /**
+         * The auth token associated with the session.
+         */
+        private final String authToken;
 
         /**
-         * The maximum allowed age of any session, in milliseconds.
+         * The session to expire.
          */
-        private final long sessionTimeout;
+        private final GuacamoleSession session;
 
         /**
-         * Creates a new task which automatically evicts sessions which are
-         * older than the specified timeout.
-         * 
-         * @param sessionTimeout The maximum age of any session, in
-         *                       milliseconds.
+         * The registration of this session with the wheel, or null if the
+         * session has not yet been registered.
          */
-        public SessionEvictionTask(long sessionTimeout) {
-            this.sessionTimeout = sessionTimeout;
+        private volatile ExpirationWheel.Registration registration;
+
+        /**
+         * Creates a new SessionExpiration which expires the given session.
+         *
+         * @param authToken
+         *     The auth token associated with the session.
+         *
+         * @param session
+         *     The session to expire.
+         */
+        public SessionExpiration(String authToken, GuacamoleSession session) {
+            this.authToken = authToken;
+            this.session = session;
         }
-        
-        @Override
-        public void run() {
 
-            // Get start time of session check time
-            long sessionCheckStart = System.currentTimeMillis();
+        @Override
+        public long getExpirationTime() {
 
-            logger.debug("Checking for expired sessions...");
+            // Do not expire sessions which are active
+            if (session.hasTunnels())
+                return wheel.currentTimeMillis() + sessionTimeout;
 
-            // For each session, remove sesions which have expired
-            Iterator<Map.Entry<String, GuacamoleSession>> entries = sessionMap.entrySet().iterator();
-            while (entries.hasNext()) {
+            return session.getLastAccessedTime() + sessionTimeout;
 
-                Map.Entry<String, GuacamoleSession> entry = entries.next();
-                GuacamoleSession session = entry.getValue();
+        }
 
-                // Do not expire sessions which are active
-                if (session.hasTunnels())
-                    continue;
+        @Override
+        public void expire() {
 
-                // Get elapsed time since last access
-                long age = sessionCheckStart - session.getLastAccessedTime();
+            // Do not invalidate sessions which were already removed
+            if (!sessionMap.remove(authToken, this))
+                return;
 
-                // If session is too old, evict it and check the next one
-                if (age >= sessionTimeout) {
-                    logger.debug("Session \"{}\" has timed out.", entry.getKey());
-                    entries.remove();
-                    session.invalidate();
-                }
+            logger.debug("Session \"{}\" has timed out.", authToken);
+            session.invalidate();
+            sessionExpired(authToken);
 
-            }
+        }
 
-            // Log completion and duration
-            logger.debug("Session check completed in {} ms.",
-                    System.currentTimeMillis() - sessionCheckStart);
-            
+        /**
+         * Cancels the registration of this session with the wheel, if any,
+         * such that this session will not be expired.
+         */
+        public void cancel() {
+            ExpirationWheel.Registration current = registration;
+            if (current != null)
+                current.cancel();
         }
 
     }
@@ -163,9 +218,12 @@ public class HashTokenSessionMap implements TokenSessionMap {
             return null;
 
         // Update the last access time and return the GuacamoleSession
-        GuacamoleSession session = sessionMap.get(authToken);
-        if (session != null)
-            session.access();
+        SessionExpiration expiration = sessionMap.get(authToken);
+        if (expiration == null)
+            return null;
+
+        GuacamoleSession session = expiration.session;
+        session.access();
 
         return session;
 
@@ -173,7 +231,49 @@ public class HashTokenSessionMap implements TokenSessionMap {
 
     @Override
     public void put(String authToken, GuacamoleSession session) {
-        sessionMap.put(authToken, session);
+
+        // Stop tracking expiration of any replaced session
+        SessionExpiration expiration = new SessionExpiration(authToken, session);
+        SessionExpiration replaced = sessionMap.put(authToken, expiration);
+        if (replaced != null)
+            replaced.cancel();
+
+        // Expire session once no longer in use
+        expiration.registration = wheel.register(expiration);
+
+    }
+
+    /**
+     * Stores the given session under the given auth token only if no session
+     * is already stored under that token. If a session is already stored, it
+     * is marked as accessed and returned, and the given session is not
+     * stored.
+     *
+     * @param authToken
+     *     The auth token to store the session under.
+     *
+     * @param session
+     *     The session to store.
+     *
+     * @return
+     *     The session already stored under the given auth token, or null if
+     *     the given session was stored.
+     */
+    protected GuacamoleSession putIfAbsent(String authToken,
+            GuacamoleSession session) {
+
+        // Use any existing session instead of the given session
+        SessionExpiration expiration = new SessionExpiration(authToken, session);
+        SessionExpiration existing = sessionMap.putIfAbsent(authToken, expiration);
+        if (existing != null) {
+            existing.session.access();
+            return existing.session;
+        }
+
+        // Expire session once no longer in use
+        expiration.registration = wheel.register(expiration);
+        return null;
+
     }
 
     @Override
@@ -184,13 +284,20 @@ public class HashTokenSessionMap implements TokenSessionMap {
             return null;
 
         // Attempt to retrieve only if non-null
-        return sessionMap.remove(authToken);
+        SessionExpiration expiration = sessionMap.remove(authToken);
+        if (expiration == null)
+            return null;
+
+        // Stop tracking expiration of removed session
+        expiration.cancel();
+        return expiration.session;
 
     }
 
     @Override
     public void shutdown() {
-        executor.shutdownNow();
+        for (SessionExpiration expiration : sessionMap.values())
+            expiration.cancel();
     }
 
 }
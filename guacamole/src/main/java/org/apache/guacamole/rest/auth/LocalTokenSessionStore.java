@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.rest.auth;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.apache.guacamole.environment.Environment;
+
+/**
+ * A TokenSessionStore which stores tokens within the memory of the local JVM.
+ * Tokens stored here are not visible to any other node, thus this store is
+ * only useful as a stand-in for an external store when testing, or for
+ * exercising the near cache of ReplicatedTokenSessionMap on a single node.
+ */
+public class LocalTokenSessionStore implements TokenSessionStore {
+
+    /**
+     * A single stored token, along with the time it was last touched.
+     */
+    private static class StoredToken {
+
+        /**
+         * The signed record stored under the token.
+         */
+        private final String record;
+
+        /**
+         * The time the token was stored or last touched, in milliseconds
+         * since midnight of January 1, 1970 UTC.
+         */
+        private volatile long lastTouched = System.currentTimeMillis();
+
+        /**
+         * Creates a new StoredToken which stores the given signed record.
+         *
+         * @param record
+         *     The signed record to store.
+         */
+        public StoredToken(String record) {
+            this.record = record;
+        }
+
+    }
+
+    /**
+     * All stored tokens, including any which have expired but have not yet
+     * been removed.
+     */
+    private final ConcurrentMap<String, StoredToken> tokens =
+            new ConcurrentHashMap<String, StoredToken>();
+
+    /**
+     * The amount of time a token may remain untouched before it expires, in
+     * milliseconds.
+     */
+    private final long sessionTimeout;
+
+    /**
+     * The time that expired tokens were last removed, in milliseconds since
+     * midnight of January 1, 1970 UTC.
+     */
+    private volatile long lastSwept = System.currentTimeMillis();
+
+    /**
+     * Creates a new LocalTokenSessionStore whose tokens expire after the
+     * given amount of time.
+     *
+     * @param environment
+     *     The Guacamole server environment.
+     *
+     * @param sessionTimeout
+     *     The amount of time a token may remain untouched before it expires,
+     *     in milliseconds.
+     */
+    public LocalTokenSessionStore(Environment environment,
+            long sessionTimeout) {
+        this.sessionTimeout = sessionTimeout;
+    }
+
+    /**
+     * Returns the stored token having the given value, removing that token
+     * if it has expired.
+     *
+     * @param authToken
+     *     The auth token to retrieve.
+     *
+     * @return
+     *     The stored token, or null if the token is not stored or has
+     *     expired.
+     */
+    private StoredToken getStoredToken(String authToken) {
+
+        StoredToken stored = tokens.get(authToken);
+        if (stored == null)
+            return null;
+
+        // Remove expired tokens upon access
+        if (System.currentTimeMillis() - stored.lastTouched > sessionTimeout) {
+            tokens.remove(authToken, stored);
+            return null;
+        }
+
+        return stored;
+
+    }
+
+    @Override
+    public void put(String authToken, String record) {
+
+        // Remove any expired tokens once per timeout, as nothing else will
+        long now = System.currentTimeMillis();
+        if (now - lastSwept > sessionTimeout) {
+            lastSwept = now;
+            for (StoredToken stored : tokens.values()) {
+                if (now - stored.lastTouched > sessionTimeout)
+                    tokens.values().remove(stored);
+            }
+        }
+
+        tokens.put(authToken, new StoredToken(record));
+
+    }
+
+    @Override
+    public String get(String authToken) {
+
+        StoredToken stored = getStoredToken(authToken);
+        if (stored == null)
+            return null;
+
+        return stored.record;
+
+    }
+
+    @Override
+    public boolean touch(String authToken) {
+
+        StoredToken stored = getStoredToken(authToken);
+        if (stored == null)
+            return false;
+
+        stored.lastTouched = System.currentTimeMillis();
+        return true;
+
+    }
+
+    @Override
+    public void remove(String authToken) {
+        tokens.remove(authToken);
+    }
+
+    @Override
+    public void shutdown() {
+        // Nothing to release
+    }
+
+}
@@ -0,0 +1,402 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.rest.auth;
+
+import com.google.inject.Inject;
+import com.google.inject.OutOfScopeException;
+import com.google.inject.Provider;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.servlet.http.HttpServletRequest;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.GuacamoleSession;
+import org.apache.guacamole.net.ExpirationWheel;
+import org.apache.guacamole.net.auth.AuthenticatedUser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A TokenSessionMap which shares auth tokens with all other nodes of a
+ * cluster through a TokenSessionStore, while keeping the sessions used by
+ * this node in local memory as a near cache. Lookups of sessions already
+ * present in the near cache never wait on the store, except for a periodic
+ * refresh which keeps the stored token alive and detects tokens removed by
+ * other nodes. Sessions absent from the near cache, such as those created by
+ * other nodes, are recreated from the signed TokenSessionRecord within the
+ * store if the AuthenticationProvider which authenticated the user implements
+ * RestorableAuthenticationProvider; users of other providers must log in
+ * again. Records which are not validly signed for their token, or which have
+ * expired, are ignored. The expiration time of each record is renewed as the
+ * token is refreshed, thus a record copied out of the store is only usable
+ * for the session timeout.
+ *
+ * Failures of the store do not affect sessions already present in the near
+ * cache, but prevent sessions from being recreated from the store.
+ */
+public class ReplicatedTokenSessionMap extends HashTokenSessionMap {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(ReplicatedTokenSessionMap.class);
+
+    /**
+     * The wheel whose clock is used to determine when sessions should be
+     * refreshed.
+     */
+    private final ExpirationWheel wheel = ExpirationWheel.getDefault();
+
+    /**
+     * The store shared by all nodes.
+     */
+    private final TokenSessionStore store;
+
+    /**
+     * The signer which signs and verifies all records within the store.
+     */
+    private final TokenSessionRecordSigner signer;
+
+    /**
+     * The amount of time that each signed record remains valid, in
+     * milliseconds.
+     */
+    private final long recordLifetime;
+
+    /**
+     * The minimum amount of time between refreshes of each token against the
+     * store, in milliseconds.
+     */
+    private final long refreshInterval;
+
+    /**
+     * The time that each token within the near cache was last refreshed
+     * against the store, in milliseconds since midnight of January 1, 1970
+     * UTC.
+     */
+    private final ConcurrentMap<String, AtomicLong> lastRefreshed =
+            new ConcurrentHashMap<String, AtomicLong>();
+
+    /**
+     * The expiration time of the record most recently stored or restored by
+     * this node for each token within the near cache, in milliseconds since
+     * midnight of January 1, 1970 UTC.
+     */
+    private final ConcurrentMap<String, Long> recordExpirations =
+            new ConcurrentHashMap<String, Long>();
+
+    /**
+     * Provider of the service which recreates sessions from stored
+     * records. A Provider is used as that service itself depends on this
+     * map.
+     */
+    @Inject
+    private Provider<AuthenticationService> authenticationServiceProvider;
+
+    /**
+     * Provider of the HTTP request currently being handled, if any, which is
+     * provided to authentication providers when recreating sessions.
+     */
+    @Inject
+    private Provider<HttpServletRequest> requestProvider;
+
+    /**
+     * Creates a new ReplicatedTokenSessionMap which shares tokens through the
+     * given store.
+     *
+     * @param store
+     *     The store shared by all nodes.
+     *
+     * @param signer
+     *     The signer which signs and verifies all records within the store,
+     *     using a key shared by all nodes.
+     *
+     * @param sessionTimeout
+     *     The maximum amount of time that a session may remain unused before
+     *     it is evicted, in milliseconds.
+     *
+     * @param refreshInterval
+     *     The minimum amount of time between refreshes of each token against
+     *     the store, in milliseconds. This is the maximum amount of time that
+     *     a logout on one node may take to affect the other nodes.
+     */
+    public ReplicatedTokenSessionMap(TokenSessionStore store,
+            TokenSessionRecordSigner signer, long sessionTimeout,
+            long refreshInterval) {
+        super(sessionTimeout);
+        this.store = store;
+        this.signer = signer;
+        this.recordLifetime = sessionTimeout;
+        this.refreshInterval = refreshInterval;
+    }
+
+    /**
+     * Stores a newly-signed record of the given session under the given auth
+     * token, valid for the session timeout from now.
+     *
+     * @param authToken
+     *     The auth token of the session.
+     *
+     * @param session
+     *     The session to store.
+     *
+     * @throws GuacamoleException
+     *     If the record cannot be signed or stored.
+     */
+    private void share(String authToken, GuacamoleSession session)
+            throws GuacamoleException {
+
+        AuthenticatedUser authenticatedUser = session.getAuthenticatedUser();
+        long expires = wheel.currentTimeMillis() + recordLifetime;
+
+        TokenSessionRecord record = new TokenSessionRecord(
+                authenticatedUser.getIdentifier(),
+                authenticatedUser.getAuthenticationProvider().getIdentifier(),
+                expires);
+
+        store.put(authToken, signer.sign(authToken, record));
+        recordExpirations.put(authToken, expires);
+
+    }
+
+    /**
+     * Discards all state tracked by this node for the given auth token
+     * beyond the session within the near cache.
+     *
+     * @param authToken
+     *     The auth token to forget.
+     */
+    private void forget(String authToken) {
+        lastRefreshed.remove(authToken);
+        recordExpirations.remove(authToken);
+    }
+
+    /**
+     * Refreshes the given token against the store if it has not been
+     * refreshed within the refresh interval, touching the stored token and
+     * replacing its record once half of the record lifetime has passed. If
+     * the store cannot be reached, the token is assumed to still be valid.
+     *
+     * @param authToken
+     *     The auth token to refresh.
+     *
+     * @param session
+     *     The session associated with the given token within the near cache.
+     *
+     * @return
+     *     true if the token is still valid, false if the token has been
+     *     removed from the store.
+     */
+    private boolean refresh(String authToken, GuacamoleSession session) {
+
+        long now = wheel.currentTimeMillis();
+
+        // Refresh only if not refreshed recently by any thread
+        AtomicLong refreshed = lastRefreshed.get(authToken);
+        if (refreshed == null) {
+            refreshed = new AtomicLong(now);
+            AtomicLong existing = lastRefreshed.putIfAbsent(authToken, refreshed);
+            if (existing != null)
+                refreshed = existing;
+        }
+        else {
+            long last = refreshed.get();
+            if (now - last < refreshInterval || !refreshed.compareAndSet(last, now))
+                return true;
+        }
+
+        try {
+
+            if (store.touch(authToken)) {
+
+                // Renew the record before it expires for other nodes
+                Long expires = recordExpirations.get(authToken);
+                if (expires == null || expires - now < recordLifetime / 2)
+                    share(authToken, session);
+
+                return true;
+
+            }
+
+            // Sessions with active tunnels are kept alive regardless of REST
+            // API use, thus may legitimately outlive their stored token
+            if (session.hasTunnels()) {
+                share(authToken, session);
+                return true;
+            }
+
+            return false;
+
+        }
+        catch (GuacamoleException e) {
+            logger.warn("Unable to refresh session against shared store: {}", e.getMessage());
+            logger.debug("Error while touching stored token.", e);
+            return true;
+        }
+
+    }
+
+    /**
+     * Recreates the session associated with the given token from the signed
+     * record within the store, if the token is stored and its record is
+     * valid. As authentication providers may inspect the HTTP request
+     * associated with the user's credentials, sessions are only recreated
+     * while handling an HTTP request.
+     *
+     * @param authToken
+     *     The auth token of the session to recreate.
+     *
+     * @return
+     *     The recreated session, or null if the token is not stored, its
+     *     record is not valid, or the session cannot be recreated.
+     */
+    private GuacamoleSession restore(String authToken) {
+
+        try {
+
+            HttpServletRequest request;
+            try {
+                request = requestProvider.get();
+            }
+            catch (OutOfScopeException e) {
+                logger.debug("Session \"{}\" cannot be restored outside an HTTP request.", authToken);
+                return null;
+            }
+
+            String signed = store.get(authToken);
+            if (signed == null)
+                return null;
+
+            // Trust only records signed for this token which remain valid
+            TokenSessionRecord record = signer.verify(authToken, signed,
+                    wheel.currentTimeMillis());
+            if (record == null) {
+                logger.warn("Ignoring invalid or expired session record within shared store.");
+                return null;
+            }
+
+            GuacamoleSession session = authenticationServiceProvider.get()
+                    .restoreGuacamoleSession(record, request);
+
+            recordExpirations.put(authToken, record.getExpires());
+            return session;
+
+        }
+        catch (GuacamoleException e) {
+            logger.warn("Unable to restore session from shared store: {}", e.getMessage());
+            logger.debug("Error while restoring stored session.", e);
+            return null;
+        }
+
+    }
+
+    @Override
+    public GuacamoleSession get(String authToken) {
+
+        // There are no null auth tokens
+        if (authToken == null)
+            return null;
+
+        // Serve from near cache unless removed by another node
+        GuacamoleSession session = super.get(authToken);
+        if (session != null) {
+
+            if (refresh(authToken, session))
+                return session;
+
+            logger.debug("Session \"{}\" was removed by another node.", authToken);
+
+            forget(authToken);
+            GuacamoleSession removed = super.remove(authToken);
+            if (removed != null)
+                removed.invalidate();
+
+            return null;
+
+        }
+
+        // Otherwise, recreate the session if created by another node
+        session = restore(authToken);
+        if (session == null)
+            return null;
+
+        // Use the session restored by any concurrent request instead,
+        // discarding this one
+        lastRefreshed.putIfAbsent(authToken, new AtomicLong(wheel.currentTimeMillis()));
+        GuacamoleSession existing = super.putIfAbsent(authToken, session);
+        if (existing != null) {
+            session.invalidate();
+            return existing;
+        }
+
+        return session;
+
+    }
+
+    @Override
+    public void put(String authToken, GuacamoleSession session) {
+
+        lastRefreshed.put(authToken, new AtomicLong(wheel.currentTimeMillis()));
+        super.put(authToken, session);
+
+        // Share new session with other nodes
+        try {
+            share(authToken, session);
+        }
+        catch (GuacamoleException e) {
+            logger.error("Unable to share session with other nodes: {}", e.getMessage());
+            logger.debug("Error while storing token.", e);
+        }
+
+    }
+
+    @Override
+    public GuacamoleSession remove(String authToken) {
+
+        // There are no null auth tokens
+        if (authToken == null)
+            return null;
+
+        // Remove from all nodes
+        try {
+            store.remove(authToken);
+        }
+        catch (GuacamoleException e) {
+            logger.error("Unable to remove session from other nodes: {}", e.getMessage());
+            logger.debug("Error while removing stored token.", e);
+        }
+
+        forget(authToken);
+        return super.remove(authToken);
+
+    }
+
+    @Override
+    protected void sessionExpired(String authToken) {
+        forget(authToken);
+    }
+
+    @Override
+    public void shutdown() {
+        super.shutdown();
+        store.shutdown();
+    }
+
+}
@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.rest.auth;
+
+import java.lang.reflect.InvocationTargetException;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.GuacamoleServerException;
+import org.apache.guacamole.environment.Environment;
+import org.apache.guacamole.properties.IntegerGuacamoleProperty;
+import org.apache.guacamole.properties.StringGuacamoleProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Factory which creates the TokenSessionMap selected within
+ * guacamole.properties. By default, sessions are kept only within the local
+ * JVM by a HashTokenSessionMap. If the "api-session-store" property is set,
+ * sessions are instead shared by all nodes through the specified
+ * TokenSessionStore, with each node keeping its own sessions in a near
+ * cache. The records within a shared store are signed with the key given by
+ * the "api-session-store-key" property, which must be identical on all
+ * nodes and known to nothing else.
+ */
+public class TokenSessionMaps {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(TokenSessionMaps.class);
+
+    /**
+     * The default minimum amount of time between refreshes of each token
+     * against a shared store, in seconds.
+     */
+    public static final int DEFAULT_REFRESH_INTERVAL = 10;
+
+    /**
+     * The value of the "api-session-store" property which selects
+     * LocalTokenSessionStore.
+     */
+    private static final String LOCAL_STORE = "local";
+
+    /**
+     * The value of the "api-session-store" property which selects
+     * DirectoryTokenSessionStore.
+     */
+    private static final String DIRECTORY_STORE = "directory";
+
+    /**
+     * The store through which sessions should be shared with other nodes:
+     * "local", "directory", or the fully-qualified class name of a
+     * TokenSessionStore implementation.
+     */
+    private static final StringGuacamoleProperty API_SESSION_STORE =
+            new StringGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "api-session-store"; }
+
+    };
+
+    /**
+     * The minimum amount of time between refreshes of each token against the
+     * shared store, in seconds.
+     */
+    private static final IntegerGuacamoleProperty API_SESSION_STORE_REFRESH_INTERVAL =
+            new IntegerGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "api-session-store-refresh-interval"; }
+
+    };
+
+    /**
+     * The key used to sign the session records within the shared store, which
+     * must be identical on all nodes and at least
+     * TokenSessionRecordSigner.MIN_KEY_LENGTH bytes long.
+     */
+    private static final StringGuacamoleProperty API_SESSION_STORE_KEY =
+            new StringGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "api-session-store-key"; }
+
+    };
+
+    /**
+     * This class is a utility class and should not be instantiated.
+     */
+    private TokenSessionMaps() {}
+
+    /**
+     * Creates the TokenSessionStore having the given name, which may be
+     * "local", "directory", or the fully-qualified class name of any
+     * TokenSessionStore implementation.
+     *
+     * @param environment
+     *     The Guacamole server environment.
+     *
+     * @param name
+     *     The name of the store to create.
+     *
+     * @param sessionTimeout
+     *     The amount of time a token may remain untouched before it expires,
+     *     in milliseconds.
+     *
+     * @return
+     *     A new TokenSessionStore.
+     *
+     * @throws GuacamoleException
+     *     If the store cannot be created.
+     */
+    private static TokenSessionStore createStore(Environment environment,
+            String name, long sessionTimeout) throws GuacamoleException {
+
+        // Stores provided with Guacamole
+        if (LOCAL_STORE.equals(name))
+            return new LocalTokenSessionStore(environment, sessionTimeout);
+
+        if (DIRECTORY_STORE.equals(name))
+            return new DirectoryTokenSessionStore(environment, sessionTimeout);
+
+        // Any other store by class name
+        try {
+            Class<? extends TokenSessionStore> storeClass =
+                    Class.forName(name).asSubclass(TokenSessionStore.class);
+            return storeClass.getConstructor(Environment.class, Long.TYPE)
+                    .newInstance(environment, sessionTimeout);
+        }
+        catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof GuacamoleException)
+                throw (GuacamoleException) cause;
+            throw new GuacamoleServerException("Session store \"" + name + "\" could not be created.", cause);
+        }
+        catch (ClassNotFoundException e) {
+            throw new GuacamoleServerException("Session store \"" + name + "\" does not exist.", e);
+        }
+        catch (ClassCastException e) {
+            throw new GuacamoleServerException("Class \"" + name + "\" is not a TokenSessionStore.", e);
+        }
+        catch (NoSuchMethodException e) {
+            throw new GuacamoleServerException("Session store \"" + name + "\" lacks a suitable constructor.", e);
+        }
+        catch (InstantiationException e) {
+            throw new GuacamoleServerException("Session store \"" + name + "\" could not be created.", e);
+        }
+        catch (IllegalAccessException e) {
+            throw new GuacamoleServerException("Session store \"" + name + "\" could not be created.", e);
+        }
+
+    }
+
+    /**
+     * Creates the TokenSessionMap selected within guacamole.properties.
+     *
+     * @param environment
+     *     The environment to use when configuring the token session map.
+     *
+     * @return
+     *     A new TokenSessionMap.
+     *
+     * @throws GuacamoleException
+     *     If guacamole.properties cannot be read, the selected
+     *     TokenSessionStore cannot be created, or a shared store is selected
+     *     without a valid signing key.
+     */
+    public static TokenSessionMap create(Environment environment)
+            throws GuacamoleException {
+
+        long sessionTimeout = HashTokenSessionMap.getSessionTimeout(environment);
+
+        // Keep sessions local unless a shared store is requested
+        String storeName = environment.getProperty(API_SESSION_STORE);
+        if (storeName == null)
+            return new HashTokenSessionMap(sessionTimeout);
+
+        TokenSessionRecordSigner signer = new TokenSessionRecordSigner(
+                environment.getRequiredProperty(API_SESSION_STORE_KEY));
+
+        TokenSessionStore store = createStore(environment, storeName, sessionTimeout);
+        int refreshInterval = environment.getProperty(
+                API_SESSION_STORE_REFRESH_INTERVAL, DEFAULT_REFRESH_INTERVAL);
+
+        logger.info("Sessions will be shared through store \"{}\", "
+                + "refreshed every {} seconds.", storeName, refreshInterval);
+
+        return new ReplicatedTokenSessionMap(store, signer, sessionTimeout,
+                refreshInterval * 1000L);
+
+    }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.rest.auth;
+
+/**
+ * The portion of a GuacamoleSession which is shared with other nodes through
+ * a TokenSessionStore: the identity of the authenticated user, the
+ * AuthenticationProvider which authenticated that user, and the time after
+ * which the record must no longer be used to recreate the session. No
+ * credentials are included. Records are stored only in signed form, as
+ * produced by TokenSessionRecordSigner.
+ */
+public class TokenSessionRecord {
+
+    /**
+     * The identifier of the authenticated user.
+     */
+    private final String userIdentifier;
+
+    /**
+     * The identifier of the AuthenticationProvider which authenticated the
+     * user.
+     */
+    private final String authProviderIdentifier;
+
+    /**
+     * The time after which this record is no longer valid, in milliseconds
+     * since midnight of January 1, 1970 UTC.
+     */
+    private final long expires;
+
+    /**
+     * Creates a new TokenSessionRecord for the given user.
+     *
+     * @param userIdentifier
+     *     The identifier of the authenticated user, which may be null for
+     *     anonymous users.
+     *
+     * @param authProviderIdentifier
+     *     The identifier of the AuthenticationProvider which authenticated
+     *     the user.
+     *
+     * @param expires
+     *     The time after which this record is no longer valid, in
+     *     milliseconds since midnight of January 1, 1970 UTC.
+     */
+    public TokenSessionRecord(String userIdentifier,
+            String authProviderIdentifier, long expires) {
+        this.userIdentifier = userIdentifier;
+        this.authProviderIdentifier = authProviderIdentifier;
+        this.expires = expires;
+    }
+
+    /**
+     * Returns the identifier of the authenticated user.
+     *
+     * @return
+     *     The identifier of the authenticated user, which may be null for
+     *     anonymous users.
+     */
+    public String getUserIdentifier() {
+        return userIdentifier;
+    }
+
+    /**
+     * Returns the identifier of the AuthenticationProvider which
+     * authenticated the user.
+     *
+     * @return
+     *     The identifier of the AuthenticationProvider which authenticated
+     *     the user.
+     */
+    public String getAuthProviderIdentifier() {
+        return authProviderIdentifier;
+    }
+
+    /**
+     * Returns the time after which this record is no longer valid.
+     *
+     * @return
+     *     The time after which this record is no longer valid, in
+     *     milliseconds since midnight of January 1, 1970 UTC.
+     */
+    public long getExpires() {
+        return expires;
+    }
+
+}
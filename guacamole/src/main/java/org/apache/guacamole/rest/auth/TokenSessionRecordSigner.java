@@ -0,0 +1,292 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.rest.auth;
+
+import java.io.UnsupportedEncodingException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.GuacamoleServerException;
+
+/**
+ * Converts TokenSessionRecords to and from the opaque, signed strings kept
+ * within a TokenSessionStore. Each string is signed with HMAC-SHA256 using a
+ * key shared by all nodes, and the signature covers the auth token under
+ * which the record is stored, such that records can be neither forged,
+ * altered, nor moved to another token by anyone with access to the store
+ * alone. Records are parsed as plain text and never deserialized.
+ */
+public class TokenSessionRecordSigner {
+
+    /**
+     * The minimum length of the signing key, in bytes.
+     */
+    public static final int MIN_KEY_LENGTH = 16;
+
+    /**
+     * The maximum length of a signed record, in characters. Longer strings
+     * are rejected without being parsed.
+     */
+    public static final int MAX_RECORD_LENGTH = 4096;
+
+    /**
+     * The name of the MAC algorithm used to sign records.
+     */
+    private static final String ALGORITHM = "HmacSHA256";
+
+    /**
+     * The character which separates each field of a signed record.
+     */
+    private static final String SEPARATOR = ".";
+
+    /**
+     * The value of an identifier field which is null.
+     */
+    private static final String NULL_FIELD = "-";
+
+    /**
+     * The key used to sign and verify records.
+     */
+    private final SecretKeySpec key;
+
+    /**
+     * Creates a new TokenSessionRecordSigner which signs records using the
+     * given key.
+     *
+     * @param key
+     *     The key to use to sign and verify records, which must be identical
+     *     on all nodes.
+     *
+     * @throws GuacamoleException
+     *     If the key is shorter than MIN_KEY_LENGTH bytes, or HMAC-SHA256 is
+     *     not supported by the JVM.
+     */
+    public TokenSessionRecordSigner(String key) throws GuacamoleException {
+
+        byte[] keyBytes = getBytes(key);
+        if (keyBytes.length < MIN_KEY_LENGTH)
+            throw new GuacamoleServerException("Session store key must be "
+                    + "at least " + MIN_KEY_LENGTH + " bytes long.");
+
+        this.key = new SecretKeySpec(keyBytes, ALGORITHM);
+
+        // Fail now, rather than with each record, if HMAC is unavailable
+        createMac();
+
+    }
+
+    /**
+     * Returns the UTF-8 encoding of the given string.
+     *
+     * @param value
+     *     The string to encode.
+     *
+     * @return
+     *     The UTF-8 encoding of the given string.
+     */
+    private static byte[] getBytes(String value) {
+        try {
+            return value.getBytes("UTF-8");
+        }
+        catch (UnsupportedEncodingException e) {
+            throw new UnsupportedOperationException("Unexpected lack of UTF-8 support.", e);
+        }
+    }
+
+    /**
+     * Returns a new Mac initialized with the signing key. A new Mac is
+     * created for each record, as Mac instances are not threadsafe.
+     *
+     * @return
+     *     A new Mac initialized with the signing key.
+     *
+     * @throws GuacamoleException
+     *     If HMAC-SHA256 is not supported by the JVM.
+     */
+    private Mac createMac() throws GuacamoleException {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        }
+        catch (GeneralSecurityException e) {
+            throw new GuacamoleServerException("Session records cannot be signed.", e);
+        }
+    }
+
+    /**
+     * Returns the signature of the given record payload when stored under
+     * the given auth token, as a hexadecimal string.
+     *
+     * @param authToken
+     *     The auth token under which the record is stored.
+     *
+     * @param payload
+     *     The unsigned portion of the record.
+     *
+     * @return
+     *     The signature of the given payload, as a hexadecimal string.
+     *
+     * @throws GuacamoleException
+     *     If HMAC-SHA256 is not supported by the JVM.
+     */
+    private String getSignature(String authToken, String payload)
+            throws GuacamoleException {
+        Mac mac = createMac();
+        mac.update(getBytes(authToken));
+        mac.update(getBytes(SEPARATOR));
+        return Hex.encodeHexString(mac.doFinal(getBytes(payload)));
+    }
+
+    /**
+     * Encodes the given identifier as a single record field.
+     *
+     * @param identifier
+     *     The identifier to encode, which may be null.
+     *
+     * @return
+     *     The encoded identifier.
+     */
+    private static String encodeField(String identifier) {
+        if (identifier == null)
+            return NULL_FIELD;
+        return Hex.encodeHexString(getBytes(identifier));
+    }
+
+    /**
+     * Decodes a single record field produced by encodeField().
+     *
+     * @param field
+     *     The field to decode.
+     *
+     * @return
+     *     The decoded identifier, which may be null.
+     *
+     * @throws DecoderException
+     *     If the field is not valid hexadecimal.
+     *
+     * @throws UnsupportedEncodingException
+     *     If the JVM lacks UTF-8 support.
+     */
+    private static String decodeField(String field)
+            throws DecoderException, UnsupportedEncodingException {
+        if (NULL_FIELD.equals(field))
+            return null;
+        return new String(Hex.decodeHex(field.toCharArray()), "UTF-8");
+    }
+
+    /**
+     * Returns the signed form of the given record, to be stored under the
+     * given auth token.
+     *
+     * @param authToken
+     *     The auth token under which the record will be stored.
+     *
+     * @param record
+     *     The record to sign.
+     *
+     * @return
+     *     The signed form of the given record.
+     *
+     * @throws GuacamoleException
+     *     If HMAC-SHA256 is not supported by the JVM.
+     */
+    public String sign(String authToken, TokenSessionRecord record)
+            throws GuacamoleException {
+
+        String payload = encodeField(record.getUserIdentifier())
+                + SEPARATOR + encodeField(record.getAuthProviderIdentifier())
+                + SEPARATOR + record.getExpires();
+
+        return payload + SEPARATOR + getSignature(authToken, payload);
+
+    }
+
+    /**
+     * Returns the record represented by the given signed string, which was
+     * retrieved from the store under the given auth token. Strings which are
+     * malformed, whose signature does not match, or which contain an expired
+     * record are rejected.
+     *
+     * @param authToken
+     *     The auth token under which the record was stored.
+     *
+     * @param signed
+     *     The signed form of the record, as produced by sign().
+     *
+     * @param now
+     *     The current time, in milliseconds since midnight of January 1,
+     *     1970 UTC.
+     *
+     * @return
+     *     The verified record, or null if the given string is not a valid,
+     *     unexpired record for the given token.
+     *
+     * @throws GuacamoleException
+     *     If HMAC-SHA256 is not supported by the JVM.
+     */
+    public TokenSessionRecord verify(String authToken, String signed,
+            long now) throws GuacamoleException {
+
+        if (signed.length() > MAX_RECORD_LENGTH)
+            return null;
+
+        // Verify signature before interpreting anything else
+        int signatureStart = signed.lastIndexOf(SEPARATOR);
+        if (signatureStart == -1)
+            return null;
+
+        String payload = signed.substring(0, signatureStart);
+        String signature = signed.substring(signatureStart + 1);
+        if (!MessageDigest.isEqual(getBytes(signature),
+                getBytes(getSignature(authToken, payload))))
+            return null;
+
+        String[] fields = payload.split("\\.", -1);
+        if (fields.length != 3)
+            return null;
+
+        try {
+
+            long expires = Long.parseLong(fields[2]);
+            if (now > expires)
+                return null;
+
+            return new TokenSessionRecord(decodeField(fields[0]),
+                    decodeField(fields[1]), expires);
+
+        }
+        catch (NumberFormatException e) {
+            return null;
+        }
+        catch (DecoderException e) {
+            return null;
+        }
+        catch (UnsupportedEncodingException e) {
+            throw new UnsupportedOperationException("Unexpected lack of UTF-8 support.", e);
+        }
+
+    }
+
+}
@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.rest.auth;
+
+import org.apache.guacamole.GuacamoleException;
+
+/**
+ * Storage for the auth tokens of the REST API which is shared by all nodes of
+ * a Guacamole cluster. As the state of a GuacamoleSession (its
+ * AuthenticatedUser, UserContexts, and active tunnels) cannot be transferred
+ * between nodes, only a signed TokenSessionRecord identifying the user of
+ * each session is stored, allowing any node to recreate the session for a
+ * token issued by any other node. Records are opaque strings which contain no
+ * credentials, and are verified by each node before use, thus the store need
+ * only be protected against removal of tokens, not disclosure or tampering.
+ *
+ * Each stored token expires once it has not been touched for the session
+ * timeout given when the store is created. Implementations other than those
+ * provided with Guacamole may be used by specifying their fully-qualified
+ * class name for the "api-session-store" property, and must provide a public
+ * constructor accepting the Guacamole server Environment and the session
+ * timeout in milliseconds, in that order.
+ */
+public interface TokenSessionStore {
+
+    /**
+     * Stores the given signed record under the given auth token, replacing
+     * any record already stored for that token.
+     *
+     * @param authToken
+     *     The auth token to store.
+     *
+     * @param record
+     *     The signed record describing the session associated with the given
+     *     token.
+     *
+     * @throws GuacamoleException
+     *     If the token cannot be stored.
+     */
+    void put(String authToken, String record)
+            throws GuacamoleException;
+
+    /**
+     * Returns the signed record stored under the given auth token, if that
+     * token has not expired. The record is returned exactly as stored, and
+     * must be verified by the caller.
+     *
+     * @param authToken
+     *     The auth token to retrieve.
+     *
+     * @return
+     *     The signed record stored under the given token, or null if no such
+     *     token is stored or the token has expired.
+     *
+     * @throws GuacamoleException
+     *     If the store cannot be read.
+     */
+    String get(String authToken) throws GuacamoleException;
+
+    /**
+     * Records that the session associated with the given auth token is still
+     * in use, delaying the expiration of that token.
+     *
+     * @param authToken
+     *     The auth token to touch.
+     *
+     * @return
+     *     true if the given token is still stored, false if the token has
+     *     been removed or has expired.
+     *
+     * @throws GuacamoleException
+     *     If the store cannot be updated.
+     */
+    boolean touch(String authToken) throws GuacamoleException;
+
+    /**
+     * Removes the given auth token from this store, such that no node will
+     * recreate the associated session. If the token is not stored, this
+     * function has no effect.
+     *
+     * @param authToken
+     *     The auth token to remove.
+     *
+     * @throws GuacamoleException
+     *     If the token cannot be removed.
+     */
+    void remove(String authToken) throws GuacamoleException;
+
+    /**
+     * Releases any resources held by this store. Tokens already stored are
+     * NOT removed, and remain valid for other nodes.
+     */
+    void shutdown();
+
+}
@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.rest.drain;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import org.apache.guacamole.tunnel.TrackedTunnel;
+import org.apache.guacamole.tunnel.TunnelDrainService;
+
+/**
+ * The drain state of this server, along with all tunnels remaining active,
+ * which may be exposed through the REST endpoints.
+ */
+public class APIDrainStatus {
+
+    /**
+     * Whether this server is draining.
+     */
+    private final boolean draining;
+
+    /**
+     * The date and time draining began, or null if not draining.
+     */
+    private final Date startDate;
+
+    /**
+     * The date and time after which idle tunnels will be closed, or null if
+     * idle tunnels will not be closed.
+     */
+    private final Date deadline;
+
+    /**
+     * The amount of time without user input after which a tunnel is closed
+     * once the deadline has passed, in milliseconds.
+     */
+    private final long idleTimeout;
+
+    /**
+     * All tunnels remaining active, oldest first.
+     */
+    private final List<APIDrainTunnel> tunnels;
+
+    /**
+     * Creates a new APIDrainStatus, copying the current state of the given
+     * drain service.
+     *
+     * @param drainService
+     *     The drain service to copy state from.
+     */
+    public APIDrainStatus(TunnelDrainService drainService) {
+
+        long now = System.currentTimeMillis();
+        long start = drainService.getDrainStartTime();
+        long end = drainService.getDrainDeadline();
+
+        this.draining    = drainService.isDraining();
+        this.startDate   = start != 0 ? new Date(start) : null;
+        this.deadline    = end != 0 ? new Date(end) : null;
+        this.idleTimeout = drainService.getIdleTimeout();
+
+        // Copy all tunnels, oldest first
+        this.tunnels = new ArrayList<APIDrainTunnel>();
+        for (TrackedTunnel tunnel : drainService.getTunnels())
+            tunnels.add(new APIDrainTunnel(tunnel, now));
+
+        Collections.sort(tunnels, new Comparator<APIDrainTunnel>() {
+
+            @Override
+            public int compare(APIDrainTunnel a, APIDrainTunnel b) {
+                return a.getAge() > b.getAge() ? -1 : (a.getAge() < b.getAge() ? 1 : 0);
+            }
+
+        });
+
+    }
+
+    /**
+     * Returns whether this server is draining.
+     *
+     * @return
+     *     true if this server is draining, false otherwise.
+     */
+    public boolean isDraining() {
+        return draining;
+    }
+
+    /**
+     * Returns the date and time draining began.
+     *
+     * @return
+     *     The date and time draining began, or null if not draining.
+     */
+    public Date getStartDate() {
+        return startDate;
+    }
+
+    /**
+     * Returns the date and time after which idle tunnels will be closed.
+     *
+     * @return
+     *     The date and time after which idle tunnels will be closed, or null
+     *     if idle tunnels will not be closed.
+     */
+    public Date getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Returns the amount of time without user input after which a tunnel is
+     * closed once the deadline has passed.
+     *
+     * @return
+     *     The idle timeout, in milliseconds.
+     */
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Returns the number of tunnels remaining active.
+     *
+     * @return
+     *     The number of tunnels remaining active.
+     */
+    public int getActiveTunnels() {
+        return tunnels.size();
+    }
+
+    /**
+     * Returns all tunnels remaining active, oldest first.
+     *
+     * @return
+     *     All tunnels remaining active.
+     */
+    public List<APIDrainTunnel> getTunnels() {
+        return tunnels;
+    }
+
+}
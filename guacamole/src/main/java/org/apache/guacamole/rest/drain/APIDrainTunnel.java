@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.rest.drain;
+
+import org.apache.guacamole.io.TunnelThrottleCounters;
+import org.apache.guacamole.tunnel.TrackedTunnel;
+import org.apache.guacamole.tunnel.TunnelRequest;
+
+/**
+ * An active tunnel of this server which may be exposed through the REST
+ * endpoints while reporting on the progress of draining.
+ */
+public class APIDrainTunnel {
+
+    /**
+     * The UUID of the tunnel.
+     */
+    private final String uuid;
+
+    /**
+     * The identifier of the user who created the tunnel.
+     */
+    private final String username;
+
+    /**
+     * The type of object connected to (connection or group).
+     */
+    private final TunnelRequest.Type type;
+
+    /**
+     * The identifier of the connection or group connected to.
+     */
+    private final String identifier;
+
+    /**
+     * The age of the tunnel, in milliseconds.
+     */
+    private final long age;
+
+    /**
+     * The amount of time since user input was last sent over the tunnel, in
+     * milliseconds.
+     */
+    private final long idle;
+
+    /**
+     * The number of frames sent over the tunnel.
+     */
+    private final long frames;
+
+    /**
+     * The number of frames which were held back by bandwidth or frame rate
+     * limits.
+     */
+    private final long throttledFrames;
+
+    /**
+     * The total amount of time frames were held back, in milliseconds.
+     */
+    private final long throttledTime;
+
+    /**
+     * Creates a new APIDrainTunnel, copying the data from the given tracked
+     * tunnel.
+     *
+     * @param tunnel
+     *     The tunnel to copy data from.
+     *
+     * @param now
+     *     The current time, in milliseconds since midnight of January 1,
+     *     1970 UTC, relative to which ages should be calculated.
+     */
+    public APIDrainTunnel(TrackedTunnel tunnel, long now) {
+        this.uuid       = tunnel.getUUID();
+        this.username   = tunnel.getUsername();
+        this.type       = tunnel.getType();
+        this.identifier = tunnel.getIdentifier();
+        this.age        = now - tunnel.getStartTime();
+        this.idle       = Math.max(0, now - tunnel.getLastInputTime());
+
+        TunnelThrottleCounters counters = tunnel.getThrottleCounters();
+        this.frames          = counters.getFrames();
+        this.throttledFrames = counters.getThrottledFrames();
+        this.throttledTime   = counters.getThrottledTime();
+    }
+
+    /**
+     * Returns the UUID of the tunnel.
+     *
+     * @return
+     *     The UUID of the tunnel.
+     */
+    public String getUUID() {
+        return uuid;
+    }
+
+    /**
+     * Returns the identifier of the user who created the tunnel.
+     *
+     * @return
+     *     The identifier of the user who created the tunnel.
+     */
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * Returns the type of object connected to.
+     *
+     * @return
+     *     The type of object connected to (connection or group).
+     */
+    public TunnelRequest.Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns the identifier of the connection or group connected to.
+     *
+     * @return
+     *     The identifier of the connection or group connected to.
+     */
+    public String getIdentifier() {
+        return identifier;
+    }
+
+    /**
+     * Returns the age of the tunnel.
+     *
+     * @return
+     *     The age of the tunnel, in milliseconds.
+     */
+    public long getAge() {
+        return age;
+    }
+
+    /**
+     * Returns the amount of time since user input was last sent over the
+     * tunnel.
+     *
+     * @return
+     *     The amount of time since the last user input, in milliseconds.
+     */
+    public long getIdle() {
+        return idle;
+    }
+
+    /**
+     * Returns the number of frames sent over the tunnel. Frames are only
+     * counted if bandwidth or frame rate limits apply to the tunnel.
+     *
+     * @return
+     *     The number of frames sent over the tunnel.
+     */
+    public long getFrames() {
+        return frames;
+    }
+
+    /**
+     * Returns the number of frames which were held back by bandwidth or
+     * frame rate limits.
+     *
+     * @return
+     *     The number of frames which were held back.
+     */
+    public long getThrottledFrames() {
+        return throttledFrames;
+    }
+
+    /**
+     * Returns the total amount of time frames were held back by bandwidth or
+     * frame rate limits.
+     *
+     * @return
+     *     The total amount of time frames were held back, in milliseconds.
+     */
+    public long getThrottledTime() {
+        return throttledTime;
+    }
+
+}
@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.rest.drain;
+
+import com.google.inject.Inject;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
+import javax.ws.rs.PUT;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.GuacamoleSecurityException;
+import org.apache.guacamole.GuacamoleSession;
+import org.apache.guacamole.net.auth.UserContext;
+import org.apache.guacamole.net.auth.permission.SystemPermission;
+import org.apache.guacamole.rest.auth.AuthenticationService;
+import org.apache.guacamole.tunnel.TunnelDrainService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A REST Service for draining this server of tunnels prior to shutdown, and
+ * for reporting on the tunnels which remain. As draining affects the server
+ * as a whole, all operations require system administration permission
+ * within at least one UserContext.
+ */
+@Path("/drain")
+@Produces(MediaType.APPLICATION_JSON)
+@Consumes(MediaType.APPLICATION_JSON)
+public class DrainRESTService {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(DrainRESTService.class);
+
+    /**
+     * A service for authenticating users from auth tokens.
+     */
+    @Inject
+    private AuthenticationService authenticationService;
+
+    /**
+     * Service which tracks all tunnels of this server and its drain state.
+     */
+    @Inject
+    private TunnelDrainService drainService;
+
+    /**
+     * Verifies that the user associated with the given auth token is a
+     * system administrator.
+     *
+     * @param authToken
+     *     The authentication token that is used to authenticate the user
+     *     performing the operation.
+     *
+     * @return
+     *     The identifier of the user performing the operation.
+     *
+     * @throws GuacamoleException
+     *     If the user is not a system administrator, or the session
+     *     associated with the given auth token cannot be retrieved.
+     */
+    private String requireAdministrator(String authToken)
+            throws GuacamoleException {
+
+        GuacamoleSession session = authenticationService.getGuacamoleSession(authToken);
+
+        // Any UserContext granting administration suffices
+        for (UserContext userContext : session.getUserContexts()) {
+            if (userContext.self().getSystemPermissions().hasPermission(SystemPermission.Type.ADMINISTER))
+                return session.getAuthenticatedUser().getIdentifier();
+        }
+
+        throw new GuacamoleSecurityException("Permission denied.");
+
+    }
+
+    /**
+     * Returns the drain state of this server, along with all tunnels which
+     * remain active and their ages.
+     *
+     * @param authToken
+     *     The authentication token that is used to authenticate the user
+     *     performing the operation.
+     *
+     * @return
+     *     The drain state of this server.
+     *
+     * @throws GuacamoleException
+     *     If the user is not a system administrator, or the session
+     *     associated with the given auth token cannot be retrieved.
+     */
+    @GET
+    public APIDrainStatus getDrainStatus(@QueryParam("token") String authToken)
+            throws GuacamoleException {
+        requireAdministrator(authToken);
+        return new APIDrainStatus(drainService);
+    }
+
+    /**
+     * Begins draining this server, refusing all new tunnels. If a deadline
+     * is given, tunnels which are idle once the deadline passes are closed.
+     *
+     * @param authToken
+     *     The authentication token that is used to authenticate the user
+     *     performing the operation.
+     *
+     * @param deadline
+     *     The number of seconds after which idle tunnels should be closed, or
+     *     null if tunnels should never be closed.
+     *
+     * @param idle
+     *     The number of seconds without user input after which a tunnel is
+     *     considered idle, or null to use the default.
+     *
+     * @return
+     *     The drain state of this server.
+     *
+     * @throws GuacamoleException
+     *     If the user is not a system administrator, if the session
+     *     associated with the given auth token cannot be retrieved, or if the
+     *     given deadline or idle timeout is less than one second.
+     */
+    @PUT
+    public APIDrainStatus startDrain(@QueryParam("token") String authToken,
+            @QueryParam("deadline") Integer deadline,
+            @QueryParam("idle") Integer idle) throws GuacamoleException {
+
+        String username = requireAdministrator(authToken);
+        logger.info("User \"{}\" requested that this server be drained.", username);
+
+        drainService.startDrain(deadline, idle);
+        return new APIDrainStatus(drainService);
+
+    }
+
+    /**
+     * Stops draining this server, such that new tunnels are again accepted.
+     *
+     * @param authToken
+     *     The authentication token that is used to authenticate the user
+     *     performing the operation.
+     *
+     * @throws GuacamoleException
+     *     If the user is not a system administrator, or the session
+     *     associated with the given auth token cannot be retrieved.
+     */
+    @DELETE
+    public void stopDrain(@QueryParam("token") String authToken)
+            throws GuacamoleException {
+
+        String username = requireAdministrator(authToken);
+        logger.info("User \"{}\" cancelled draining of this server.", username);
+
+        drainService.stopDrain();
+
+    }
+
+}
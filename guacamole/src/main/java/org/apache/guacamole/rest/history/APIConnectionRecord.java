@@ -65,14 +65,35 @@ public class APIConnectionRecord {
      */
     private final boolean active;
 
+    /**
+     * The cursor identifying the position of this record within the
+     * connection history, or null if this record has no such position.
+     */
+    private final String cursor;
+
     /**
      * Creates a new APIConnectionRecord, copying the data from the given
-     * record.
+     * record. The new record has no cursor.
      *
      * @param record
      *     The record to copy data from.
      */
     public APIConnectionRecord(ConnectionRecord record) {
+        this(record, null);
+    }
+
+    /**
+     * Creates a new APIConnectionRecord, copying the data from the given
+     * record and associating it with the given cursor.
+     *
+     * @param record
+     *     The record to copy data from.
+     *
+     * @param cursor
+     *     The cursor identifying the position of the given record within the
+     *     connection history, or null if the record has no such position.
+     */
+    public APIConnectionRecord(ConnectionRecord record, String cursor) {
         this.connectionIdentifier = record.getConnectionIdentifier();
         this.connectionName       = record.getConnectionName();
         this.startDate            = record.getStartDate();
@@ -80,6 +101,7 @@ public class APIConnectionRecord {
         this.remoteHost           = record.getRemoteHost();
         this.username             = record.getUsername();
         this.active               = record.isActive();
+        this.cursor               = cursor;
     }
 
     /**
@@ -157,4 +179,18 @@ public class APIConnectionRecord {
         return active;
     }
 
+    /**
+     * Returns the cursor identifying the position of this record within the
+     * connection history. Passing this cursor as the "after" parameter of a
+     * subsequent history request retrieves the records following this
+     * record.
+     *
+     * @return
+     *     The cursor identifying the position of this record, or null if this
+     *     record has no such position.
+     */
+    public String getCursor() {
+        return cursor;
+    }
+
 }
@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.rest.history;
+
+import java.util.Date;
+import org.apache.guacamole.net.auth.ConnectionRecordSummary;
+
+/**
+ * The daily usage totals of a particular user and connection, which may be
+ * exposed through the REST endpoints.
+ */
+public class APIConnectionRecordSummary {
+
+    /**
+     * The day summarized.
+     */
+    private final Date date;
+
+    /**
+     * The name of the user whose usage is summarized.
+     */
+    private final String username;
+
+    /**
+     * The identifier of the connection whose usage is summarized.
+     */
+    private final String connectionIdentifier;
+
+    /**
+     * The name of the connection whose usage is summarized.
+     */
+    private final String connectionName;
+
+    /**
+     * The number of sessions which began on the summarized day.
+     */
+    private final int sessionCount;
+
+    /**
+     * The combined duration of all sessions which began on the summarized
+     * day, in seconds.
+     */
+    private final long totalDuration;
+
+    /**
+     * Creates a new APIConnectionRecordSummary, copying the data from the
+     * given summary.
+     *
+     * @param summary
+     *     The summary to copy data from.
+     */
+    public APIConnectionRecordSummary(ConnectionRecordSummary summary) {
+        this.date                 = summary.getDate();
+        this.username             = summary.getUsername();
+        this.connectionIdentifier = summary.getConnectionIdentifier();
+        this.connectionName       = summary.getConnectionName();
+        this.sessionCount         = summary.getSessionCount();
+        this.totalDuration        = summary.getTotalDuration();
+    }
+
+    /**
+     * Returns the day summarized.
+     *
+     * @return
+     *     The day summarized.
+     */
+    public Date getDate() {
+        return date;
+    }
+
+    /**
+     * Returns the name of the user whose usage is summarized.
+     *
+     * @return
+     *     The name of the user whose usage is summarized.
+     */
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * Returns the identifier of the connection whose usage is summarized.
+     *
+     * @return
+     *     The identifier of the connection whose usage is summarized, or null
+     *     if that connection no longer exists.
+     */
+    public String getConnectionIdentifier() {
+        return connectionIdentifier;
+    }
+
+    /**
+     * Returns the name of the connection whose usage is summarized.
+     *
+     * @return
+     *     The name of the connection whose usage is summarized.
+     */
+    public String getConnectionName() {
+        return connectionName;
+    }
+
+    /**
+     * Returns the number of sessions which began on the summarized day.
+     *
+     * @return
+     *     The number of sessions which began on the summarized day.
+     */
+    public int getSessionCount() {
+        return sessionCount;
+    }
+
+    /**
+     * Returns the combined duration of all sessions which began on the
+     * summarized day, in seconds.
+     *
+     * @return
+     *     The combined duration of all sessions which began on the summarized
+     *     day, in seconds.
+     */
+    public long getTotalDuration() {
+        return totalDuration;
+    }
+
+}
@@ -20,7 +20,10 @@
 package org.apache.guacamole.rest.history;
 
 import com.google.inject.Inject;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
@@ -29,13 +32,22 @@ import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
+import org.apache.guacamole.GuacamoleClientException;
 import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.net.auth.ConnectionRecord;
 import org.apache.guacamole.net.auth.ConnectionRecordSet;
+import org.apache.guacamole.net.auth.ConnectionRecordSummary;
+import org.apache.guacamole.net.auth.CursorPageableConnectionRecordSet;
+import org.apache.guacamole.net.auth.SummarizableConnectionRecordSet;
 import org.apache.guacamole.net.auth.UserContext;
 import org.apache.guacamole.GuacamoleSession;
 import org.apache.guacamole.rest.ObjectRetrievalService;
 import org.apache.guacamole.rest.auth.AuthenticationService;
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.map.SerializationConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -60,6 +72,14 @@ public class HistoryRESTService {
      */
     private static final int MAXIMUM_HISTORY_SIZE = 1000;
 
+    /**
+     * Object mapper used to write each history record as it is sent.
+     * Records are written without flushing, allowing the underlying stream to
+     * buffer output as it sees fit.
+     */
+    private static final ObjectMapper mapper = new ObjectMapper()
+            .configure(SerializationConfig.Feature.FLUSH_AFTER_WRITE_VALUE, false);
+
     /**
      * A service for authenticating users from auth tokens.
      */
@@ -72,6 +92,37 @@ public class HistoryRESTService {
     @Inject
     private ObjectRetrievalService retrievalService;
 
+    /**
+     * Parses the given cursor as the number of records preceding the
+     * requested page, as produced for connection histories which do not
+     * support paging by cursor.
+     *
+     * @param cursor
+     *     The cursor to parse.
+     *
+     * @return
+     *     The number of records preceding the requested page.
+     *
+     * @throws GuacamoleException
+     *     If the given cursor is not a non-negative integer.
+     */
+    private int parseOffset(String cursor) throws GuacamoleException {
+
+        int offset;
+        try {
+            offset = Integer.parseInt(cursor);
+        }
+        catch (NumberFormatException e) {
+            throw new GuacamoleClientException("Invalid history cursor: \"" + cursor + "\"", e);
+        }
+
+        if (offset < 0)
+            throw new GuacamoleClientException("Invalid history cursor: \"" + cursor + "\"");
+
+        return offset;
+
+    }
+
     /**
      * Retrieves the usage history for all connections, restricted by optional
      * filter parameters.
@@ -97,19 +148,34 @@ public class HistoryRESTService {
      *     records, describing the properties involved and the sort order for
      *     those properties.
      *
+     * @param cursor
+     *     The cursor of the record after which the returned records should
+     *     begin, as given by the cursor property of a previously-returned
+     *     record, or null if records should be returned from the beginning of
+     *     the sorted history. If the connection history does not support
+     *     paging by cursor, each cursor is the position of its record, and
+     *     only the first MAXIMUM_HISTORY_SIZE records can be retrieved.
+     *
+     * @param limit
+     *     The maximum number of records to return, or null if the maximum
+     *     allowed number of records should be returned. Values larger than
+     *     the maximum allowed number of records are ignored.
+     *
      * @return
-     *     A list of connection records, describing the start and end times of
-     *     various usages of this connection.
+     *     A streamed JSON array of connection records, describing the start
+     *     and end times of various usages of this connection.
      *
      * @throws GuacamoleException
      *     If an error occurs while retrieving the connection history.
      */
     @GET
     @Path("/connections")
-    public List<APIConnectionRecord> getConnectionHistory(@QueryParam("token") String authToken,
+    public StreamingOutput getConnectionHistory(@QueryParam("token") String authToken,
             @PathParam("dataSource") String authProviderIdentifier,
             @QueryParam("contains") List<String> requiredContents,
-            @QueryParam("order") List<APIConnectionRecordSortPredicate> sortPredicates)
+            @QueryParam("order") List<APIConnectionRecordSortPredicate> sortPredicates,
+            @QueryParam("after") String cursor,
+            @QueryParam("limit") Integer limit)
             throws GuacamoleException {
 
         GuacamoleSession session = authenticationService.getGuacamoleSession(authToken);
@@ -124,6 +190,147 @@ public class HistoryRESTService {
                 history = history.contains(required);
         }
 
+        // Sort according to specified ordering
+        for (APIConnectionRecordSortPredicate predicate : sortPredicates)
+            history = history.sort(predicate.getProperty(), predicate.isDescending());
+
+        // Determine requested page size, not exceeding the maximum
+        int pageSize = MAXIMUM_HISTORY_SIZE;
+        if (limit != null && limit > 0 && limit < MAXIMUM_HISTORY_SIZE)
+            pageSize = limit;
+
+        final List<APIConnectionRecord> apiRecords;
+
+        // Continue from the given record by cursor, if supported
+        if (history instanceof CursorPageableConnectionRecordSet) {
+
+            CursorPageableConnectionRecordSet pageableHistory =
+                    (CursorPageableConnectionRecordSet) history;
+
+            if (cursor != null && !cursor.isEmpty())
+                history = pageableHistory.after(cursor);
+
+            // Retrieve records before responding, such that any errors are
+            // reported normally
+            Collection<ConnectionRecord> records = history.limit(pageSize).asCollection();
+            apiRecords = new ArrayList<APIConnectionRecord>(records.size());
+            for (ConnectionRecord record : records)
+                apiRecords.add(new APIConnectionRecord(record,
+                        pageableHistory.getCursor(record)));
+
+        }
+
+        // Otherwise, page by offset within the first MAXIMUM_HISTORY_SIZE
+        // records, using the position of each record as its cursor
+        else {
+
+            int offset = 0;
+            if (cursor != null && !cursor.isEmpty())
+                offset = parseOffset(cursor);
+
+            apiRecords = new ArrayList<APIConnectionRecord>();
+            if (offset < MAXIMUM_HISTORY_SIZE) {
+
+                int end = Math.min(offset + pageSize, MAXIMUM_HISTORY_SIZE);
+                Collection<ConnectionRecord> records = history.limit(end).asCollection();
+
+                // Skip records preceding the requested page
+                int position = 0;
+                for (ConnectionRecord record : records) {
+                    position++;
+                    if (position > offset)
+                        apiRecords.add(new APIConnectionRecord(record,
+                                Integer.toString(position)));
+                }
+
+            }
+
+        }
+
+        // Send each record in turn, without first serializing the entire
+        // response in memory
+        return new StreamingOutput() {
+
+            @Override
+            public void write(OutputStream output) throws IOException {
+
+                JsonGenerator generator = mapper.getJsonFactory()
+                        .createJsonGenerator(output, JsonEncoding.UTF8);
+
+                generator.writeStartArray();
+                for (APIConnectionRecord record : apiRecords)
+                    mapper.writeValue(generator, record);
+                generator.writeEndArray();
+
+                generator.flush();
+
+            }
+
+        };
+
+    }
+
+    /**
+     * Retrieves the daily usage totals of all connections, restricted by
+     * optional filter parameters. Totals are read from separately-maintained
+     * daily summaries, and thus do not require examination of each
+     * connection record.
+     *
+     * @param authToken
+     *     The authentication token that is used to authenticate the user
+     *     performing the operation.
+     *
+     * @param authProviderIdentifier
+     *     The unique identifier of the AuthenticationProvider associated with
+     *     the UserContext containing the connections whose usage totals are
+     *     to be retrieved.
+     *
+     * @param requiredContents
+     *     The set of strings that each must occur somewhere within the
+     *     returned totals, whether within the associated username, the name
+     *     of the associated connection, or the associated day. If non-empty,
+     *     any total not matching each of the strings within the collection
+     *     will be excluded from the results.
+     *
+     * @param sortPredicates
+     *     A list of predicates to apply while sorting the resulting totals,
+     *     describing the properties involved and the sort order for those
+     *     properties.
+     *
+     * @return
+     *     A list of daily usage totals, one for each combination of day,
+     *     user, and connection. If the connection history does not maintain
+     *     daily usage totals, this list is empty.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while retrieving the usage totals.
+     */
+    @GET
+    @Path("/connections/summary")
+    public List<APIConnectionRecordSummary> getConnectionHistorySummary(
+            @QueryParam("token") String authToken,
+            @PathParam("dataSource") String authProviderIdentifier,
+            @QueryParam("contains") List<String> requiredContents,
+            @QueryParam("order") List<APIConnectionRecordSortPredicate> sortPredicates)
+            throws GuacamoleException {
+
+        GuacamoleSession session = authenticationService.getGuacamoleSession(authToken);
+        UserContext userContext = retrievalService.retrieveUserContext(session, authProviderIdentifier);
+
+        // Retrieve overall connection history
+        ConnectionRecordSet history = userContext.getConnectionHistory();
+
+        // There are no totals if the history does not maintain them
+        List<APIConnectionRecordSummary> apiSummaries = new ArrayList<APIConnectionRecordSummary>();
+        if (!(history instanceof SummarizableConnectionRecordSet))
+            return apiSummaries;
+
+        // Restrict to totals which contain the specified strings
+        for (String required : requiredContents) {
+            if (!required.isEmpty())
+                history = history.contains(required);
+        }
+
         // Sort according to specified ordering
         for (APIConnectionRecordSortPredicate predicate : sortPredicates)
             history = history.sort(predicate.getProperty(), predicate.isDescending());
@@ -131,13 +338,11 @@ public class HistoryRESTService {
         // Limit to maximum result size
         history = history.limit(MAXIMUM_HISTORY_SIZE);
 
-        // Convert record set to collection of API connection records
-        List<APIConnectionRecord> apiRecords = new ArrayList<APIConnectionRecord>();
-        for (ConnectionRecord record : history.asCollection())
-            apiRecords.add(new APIConnectionRecord(record));
+        // Convert totals to API summaries
+        for (ConnectionRecordSummary summary : ((SummarizableConnectionRecordSet) history).summarize())
+            apiSummaries.add(new APIConnectionRecordSummary(summary));
 
-        // Return the converted history
-        return apiRecords;
+        return apiSummaries;
 
     }
 
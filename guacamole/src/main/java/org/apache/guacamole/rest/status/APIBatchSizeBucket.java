@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.rest.status;
+
+/**
+ * A single bucket of the histogram of the sizes of the batches of instruction
+ * data sent to clients, which may be exposed through the REST endpoints.
+ */
+public class APIBatchSizeBucket {
+
+    /**
+     * The largest batch size counted by this bucket, or null if this bucket
+     * counts all batches larger than those of the preceding bucket.
+     */
+    private final Integer maxSize;
+
+    /**
+     * The number of batches counted by this bucket.
+     */
+    private final long count;
+
+    /**
+     * Creates a new APIBatchSizeBucket having the given upper bound and
+     * count.
+     *
+     * @param maxSize
+     *     The largest batch size counted by the bucket, or null if the bucket
+     *     has no upper bound.
+     *
+     * @param count
+     *     The number of batches counted by the bucket.
+     */
+    public APIBatchSizeBucket(Integer maxSize, long count) {
+        this.maxSize = maxSize;
+        this.count = count;
+    }
+
+    /**
+     * Returns the largest batch size counted by this bucket.
+     *
+     * @return
+     *     The largest batch size counted by this bucket, or null if this
+     *     bucket has no upper bound.
+     */
+    public Integer getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the number of batches counted by this bucket.
+     *
+     * @return
+     *     The number of batches counted by this bucket.
+     */
+    public long getCount() {
+        return count;
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.rest.status;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.guacamole.io.BatchSizeHistogram;
+
+/**
+ * The distribution of the sizes of the batches of instruction data sent to
+ * the clients of all tunnels of this server, which may be exposed through
+ * the REST endpoints.
+ */
+public class APIBatchStatus {
+
+    /**
+     * The total number of batches sent.
+     */
+    private final long batchCount;
+
+    /**
+     * The sum of the sizes of all batches sent.
+     */
+    private final long totalSize;
+
+    /**
+     * All non-empty buckets of the histogram, smallest first.
+     */
+    private final List<APIBatchSizeBucket> buckets;
+
+    /**
+     * Creates a new APIBatchStatus, copying the current state of the given
+     * histogram.
+     *
+     * @param histogram
+     *     The histogram to copy state from.
+     */
+    public APIBatchStatus(BatchSizeHistogram histogram) {
+
+        this.batchCount = histogram.getBatchCount();
+        this.totalSize  = histogram.getTotalSize();
+
+        // Copy only buckets which have counted at least one batch
+        this.buckets = new ArrayList<APIBatchSizeBucket>();
+        for (int bucket = 0; bucket < BatchSizeHistogram.BUCKETS; bucket++) {
+
+            long count = histogram.getCount(bucket);
+            if (count == 0)
+                continue;
+
+            int maxSize = BatchSizeHistogram.getUpperBound(bucket);
+            buckets.add(new APIBatchSizeBucket(
+                    maxSize != Integer.MAX_VALUE ? maxSize : null, count));
+
+        }
+
+    }
+
+    /**
+     * Returns the total number of batches sent.
+     *
+     * @return
+     *     The total number of batches sent.
+     */
+    public long getBatchCount() {
+        return batchCount;
+    }
+
+    /**
+     * Returns the sum of the sizes of all batches sent, in bytes or
+     * characters.
+     *
+     * @return
+     *     The sum of the sizes of all batches sent.
+     */
+    public long getTotalSize() {
+        return totalSize;
+    }
+
+    /**
+     * Returns all non-empty buckets of the histogram of batch sizes,
+     * smallest first.
+     *
+     * @return
+     *     All non-empty buckets of the histogram.
+     */
+    public List<APIBatchSizeBucket> getBuckets() {
+        return buckets;
+    }
+
+}
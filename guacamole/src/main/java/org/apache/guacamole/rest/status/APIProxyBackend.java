@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.rest.status;
+
+import org.apache.guacamole.net.GuacamoleProxyBackend;
+
+/**
+ * The state of a single guacd instance that connections are routed to,
+ * which may be exposed through the REST endpoints.
+ */
+public class APIProxyBackend {
+
+    /**
+     * The hostname or address of the guacd.
+     */
+    private final String hostname;
+
+    /**
+     * The port the guacd is listening on.
+     */
+    private final int port;
+
+    /**
+     * The relative share of connections routed to the guacd.
+     */
+    private final int weight;
+
+    /**
+     * Whether the guacd is believed to be reachable.
+     */
+    private final boolean healthy;
+
+    /**
+     * The number of sockets open to the guacd.
+     */
+    private final int activeConnections;
+
+    /**
+     * The number of times connecting to the guacd has failed.
+     */
+    private final long failures;
+
+    /**
+     * Creates a new APIProxyBackend, copying the current state of the given
+     * backend.
+     *
+     * @param backend
+     *     The backend to copy state from.
+     */
+    public APIProxyBackend(GuacamoleProxyBackend backend) {
+        this.hostname          = backend.getHostname();
+        this.port              = backend.getPort();
+        this.weight            = backend.getWeight();
+        this.healthy           = backend.isHealthy();
+        this.activeConnections = backend.getActiveCount();
+        this.failures          = backend.getFailureCount();
+    }
+
+    /**
+     * Returns the hostname or address of the guacd.
+     *
+     * @return
+     *     The hostname or address of the guacd.
+     */
+    public String getHostname() {
+        return hostname;
+    }
+
+    /**
+     * Returns the port the guacd is listening on.
+     *
+     * @return
+     *     The port the guacd is listening on.
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Returns the relative share of connections routed to the guacd.
+     *
+     * @return
+     *     The weight of the guacd.
+     */
+    public int getWeight() {
+        return weight;
+    }
+
+    /**
+     * Returns whether the guacd was believed to be reachable when this
+     * status was created.
+     *
+     * @return
+     *     true if the guacd is believed to be reachable, false otherwise.
+     */
+    public boolean isHealthy() {
+        return healthy;
+    }
+
+    /**
+     * Returns the number of sockets which were open to the guacd when this
+     * status was created, including sockets still completing the Guacamole
+     * protocol handshake.
+     *
+     * @return
+     *     The number of sockets open to the guacd.
+     */
+    public int getActiveConnections() {
+        return activeConnections;
+    }
+
+    /**
+     * Returns the total number of times connecting to the guacd has failed.
+     *
+     * @return
+     *     The number of failed attempts to connect to the guacd.
+     */
+    public long getFailures() {
+        return failures;
+    }
+
+}
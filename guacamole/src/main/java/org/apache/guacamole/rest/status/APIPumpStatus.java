@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.rest.status;
+
+import org.apache.guacamole.net.TunnelPumpExecutor;
+
+/**
+ * The state of the executor running the pumps of all tunnels of this server,
+ * which may be exposed through the REST endpoints.
+ */
+public class APIPumpStatus {
+
+    /**
+     * The number of pumps which are currently running.
+     */
+    private final int activePumps;
+
+    /**
+     * The number of pumps which are waiting to run.
+     */
+    private final int queuedPumps;
+
+    /**
+     * Creates a new APIPumpStatus, copying the current state of the given
+     * executor.
+     *
+     * @param executor
+     *     The executor to copy state from.
+     */
+    public APIPumpStatus(TunnelPumpExecutor executor) {
+        this.activePumps = executor.getActivePumps();
+        this.queuedPumps = executor.getQueuedPumps();
+    }
+
+    /**
+     * Returns the number of pumps which were running when this status was
+     * created.
+     *
+     * @return
+     *     The number of pumps which are currently running.
+     */
+    public int getActivePumps() {
+        return activePumps;
+    }
+
+    /**
+     * Returns the number of pumps which were waiting to run when this status
+     * was created.
+     *
+     * @return
+     *     The number of pumps which are waiting to run.
+     */
+    public int getQueuedPumps() {
+        return queuedPumps;
+    }
+
+}
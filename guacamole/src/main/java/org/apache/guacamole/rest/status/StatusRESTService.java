@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.rest.status;
+
+import com.google.inject.Inject;
+import java.util.ArrayList;
+import java.util.List;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.GuacamoleSecurityException;
+import org.apache.guacamole.GuacamoleSession;
+import org.apache.guacamole.environment.Environment;
+import org.apache.guacamole.environment.GuacamoleProxyRouters;
+import org.apache.guacamole.io.GuacamoleBatchSettings;
+import org.apache.guacamole.net.GuacamoleProxyBackend;
+import org.apache.guacamole.net.TunnelPumpExecutors;
+import org.apache.guacamole.net.auth.UserContext;
+import org.apache.guacamole.net.auth.permission.SystemPermission;
+import org.apache.guacamole.rest.auth.AuthenticationService;
+
+/**
+ * A REST Service for reporting the runtime status of the tunnels of this
+ * server. As this status covers the server as a whole, all operations require
+ * system administration permission within at least one UserContext.
+ */
+@Path("/status")
+@Produces(MediaType.APPLICATION_JSON)
+@Consumes(MediaType.APPLICATION_JSON)
+public class StatusRESTService {
+
+    /**
+     * A service for authenticating users from auth tokens.
+     */
+    @Inject
+    private AuthenticationService authenticationService;
+
+    /**
+     * The Guacamole server environment.
+     */
+    @Inject
+    private Environment environment;
+
+    /**
+     * Verifies that the user associated with the given auth token is a
+     * system administrator.
+     *
+     * @param authToken
+     *     The authentication token that is used to authenticate the user
+     *     performing the operation.
+     *
+     * @throws GuacamoleException
+     *     If the user is not a system administrator, or the session
+     *     associated with the given auth token cannot be retrieved.
+     */
+    private void requireAdministrator(String authToken)
+            throws GuacamoleException {
+
+        GuacamoleSession session = authenticationService.getGuacamoleSession(authToken);
+
+        // Any UserContext granting administration suffices
+        for (UserContext userContext : session.getUserContexts()) {
+            if (userContext.self().getSystemPermissions().hasPermission(SystemPermission.Type.ADMINISTER))
+                return;
+        }
+
+        throw new GuacamoleSecurityException("Permission denied.");
+
+    }
+
+    /**
+     * Returns the number of tunnel pumps which are running or waiting to run
+     * within the executor shared by all tunnels.
+     *
+     * @param authToken
+     *     The authentication token that is used to authenticate the user
+     *     performing the operation.
+     *
+     * @return
+     *     The state of the executor running all tunnel pumps.
+     *
+     * @throws GuacamoleException
+     *     If the user is not a system administrator, or the session
+     *     associated with the given auth token cannot be retrieved.
+     */
+    @GET
+    @Path("/pumps")
+    public APIPumpStatus getPumpStatus(@QueryParam("token") String authToken)
+            throws GuacamoleException {
+        requireAdministrator(authToken);
+        return new APIPumpStatus(TunnelPumpExecutors.getDefault());
+    }
+
+    /**
+     * Returns the distribution of the sizes of the batches of instruction
+     * data sent to the clients of all tunnels since this server started.
+     *
+     * @param authToken
+     *     The authentication token that is used to authenticate the user
+     *     performing the operation.
+     *
+     * @return
+     *     The histogram of batch sizes.
+     *
+     * @throws GuacamoleException
+     *     If the user is not a system administrator, or the session
+     *     associated with the given auth token cannot be retrieved.
+     */
+    @GET
+    @Path("/batches")
+    public APIBatchStatus getBatchStatus(@QueryParam("token") String authToken)
+            throws GuacamoleException {
+        requireAdministrator(authToken);
+        return new APIBatchStatus(GuacamoleBatchSettings.getDefault().getHistogram());
+    }
+
+    /**
+     * Returns the state of each guacd that connections are routed to,
+     * including the number of connections open to each guacd and the number
+     * of times connecting to each guacd has failed.
+     *
+     * @param authToken
+     *     The authentication token that is used to authenticate the user
+     *     performing the operation.
+     *
+     * @return
+     *     The state of each guacd, in the order configured.
+     *
+     * @throws GuacamoleException
+     *     If the user is not a system administrator, the session associated
+     *     with the given auth token cannot be retrieved, or the guacd-related
+     *     properties cannot be parsed.
+     */
+    @GET
+    @Path("/backends")
+    public List<APIProxyBackend> getBackends(@QueryParam("token") String authToken)
+            throws GuacamoleException {
+
+        requireAdministrator(authToken);
+
+        List<APIProxyBackend> backends = new ArrayList<APIProxyBackend>();
+        for (GuacamoleProxyBackend backend : GuacamoleProxyRouters.getRouter(environment).getBackends())
+            backends.add(new APIProxyBackend(backend));
+
+        return backends;
+
+    }
+
+}
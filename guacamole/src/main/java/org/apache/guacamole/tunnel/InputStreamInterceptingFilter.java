@@ -21,10 +21,12 @@ package org.apache.guacamole.tunnel;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Arrays;
 import java.util.List;
-import javax.xml.bind.DatatypeConverter;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.io.Base64Codec;
+import org.apache.guacamole.io.ByteArrayPool;
 import org.apache.guacamole.net.GuacamoleTunnel;
 import org.apache.guacamole.protocol.GuacamoleInstruction;
 import org.apache.guacamole.protocol.GuacamoleStatus;
@@ -36,6 +38,18 @@ import org.slf4j.LoggerFactory;
  * from or closing the stream given with interceptStream(). The required "blob"
  * and "end" instructions denoting the content and boundary of the stream are
  * sent automatically.
+ *
+ * Rather than waiting for each "blob" to be acknowledged before sending the
+ * next, up to a fixed number of blobs may be awaiting acknowledgement for each
+ * stream at any one time. Each successful "ack" frees space within the window
+ * of the stream having the index given in that "ack", allowing another blob to
+ * be sent, such that the connection to guacd can remain saturated despite the
+ * round trip required for each acknowledgement.
+ *
+ * Received "ack" instructions only update the send window of their stream.
+ * Reading from the InputStream and sending the resulting blobs is performed
+ * by the thread which called interceptStream(), such that a slow source of
+ * stream data never delays other instructions read from the tunnel.
  */
 public class InputStreamInterceptingFilter
         extends StreamInterceptingFilter<InputStream> {
@@ -46,36 +60,205 @@ public class InputStreamInterceptingFilter
     private static final Logger logger =
             LoggerFactory.getLogger(InputStreamInterceptingFilter.class);
 
+    /**
+     * The number of blobs which may be awaiting acknowledgement for each
+     * stream if no window size is specified.
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 16;
+
+    /**
+     * The maximum number of bytes sent within each blob if no chunk size is
+     * specified. Once base64-encoded, blobs of this size remain within the
+     * maximum instruction length accepted by guacd.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 6048;
+
+    /**
+     * The maximum number of read buffers of DEFAULT_CHUNK_SIZE bytes to
+     * retain for reuse by future streams.
+     */
+    private static final int MAX_POOLED_BUFFERS = 64;
+
+    /**
+     * Pool of the buffers into which data is read from each InputStream,
+     * shared by all filters.
+     */
+    private static final ByteArrayPool READ_BUFFERS =
+            new ByteArrayPool(DEFAULT_CHUNK_SIZE, MAX_POOLED_BUFFERS);
+
+    /**
+     * The maximum amount of time to wait for an acknowledgement before
+     * verifying that the stream is still being intercepted, in milliseconds.
+     */
+    private static final long ACK_WAIT_TIMEOUT = 1000;
+
+    /**
+     * The number of blobs which may be awaiting acknowledgement for each
+     * stream. A window size of 1 results in each blob being sent only after
+     * the previous blob has been acknowledged.
+     */
+    private final int windowSize;
+
+    /**
+     * The maximum number of bytes sent within each blob.
+     */
+    private final int chunkSize;
+
+    /**
+     * The send window of each stream currently being intercepted.
+     */
+    private final ConcurrentMap<InterceptedStream<InputStream>, SendWindow> windows =
+            new ConcurrentHashMap<InterceptedStream<InputStream>, SendWindow>();
+
+    /**
+     * The state of the send window of a single intercepted stream. All access
+     * to a SendWindow must be synchronized on that SendWindow, and threads
+     * waiting for space within the window wait on the SendWindow itself.
+     */
+    private static class SendWindow {
+
+        /**
+         * The number of blobs sent which have not yet been acknowledged.
+         */
+        private int unacknowledged = 0;
+
+    }
+
     /**
      * Creates a new InputStreamInterceptingFilter which selectively intercepts
-     * "ack" instructions. The required "blob" and "end" instructions will
-     * automatically be sent over the given tunnel based on the content of
-     * provided InputStreams.
+     * "ack" instructions, using the default window and chunk sizes. The
+     * required "blob" and "end" instructions will automatically be sent over
+     * the given tunnel based on the content of provided InputStreams.
      *
      * @param tunnel
      *     The GuacamoleTunnel over which any required "blob" and "end"
      *     instructions should be sent.
      */
     public InputStreamInterceptingFilter(GuacamoleTunnel tunnel) {
-        super(tunnel);
+        this(tunnel, DEFAULT_WINDOW_SIZE, DEFAULT_CHUNK_SIZE);
     }
 
     /**
-     * Injects a "blob" instruction into the outbound Guacamole protocol
-     * stream, as if sent by the connected client. "blob" instructions are used
-     * to send chunks of data along a stream.
+     * Creates a new InputStreamInterceptingFilter which selectively intercepts
+     * "ack" instructions, allowing the given number of blobs of the given size
+     * to be awaiting acknowledgement for each stream. The required "blob" and
+     * "end" instructions will automatically be sent over the given tunnel
+     * based on the content of provided InputStreams.
      *
-     * @param index
-     *     The index of the stream that this "blob" instruction relates to.
+     * @param tunnel
+     *     The GuacamoleTunnel over which any required "blob" and "end"
+     *     instructions should be sent.
+     *
+     * @param windowSize
+     *     The number of blobs which may be awaiting acknowledgement for each
+     *     stream. If less than 1, a window size of 1 is used.
      *
-     * @param blob
-     *     The chunk of data to send within the "blob" instruction.
+     * @param chunkSize
+     *     The maximum number of bytes to send within each blob. If less than
+     *     1, DEFAULT_CHUNK_SIZE is used.
      */
-    private void sendBlob(String index, byte[] blob) {
+    public InputStreamInterceptingFilter(GuacamoleTunnel tunnel,
+            int windowSize, int chunkSize) {
+        super(tunnel);
+        this.windowSize = Math.max(windowSize, 1);
+        this.chunkSize = chunkSize > 0 ? chunkSize : DEFAULT_CHUNK_SIZE;
+    }
+
+    /**
+     * Encoder which produces the raw form of the "blob" instructions of a
+     * single stream within a reusable buffer, such that no intermediate
+     * strings or arrays are created for each blob.
+     */
+    private static class BlobEncoder {
+
+        /**
+         * The buffer containing the raw form of the most recently encoded
+         * "blob" instruction.
+         */
+        private final char[] buffer;
+
+        /**
+         * The length of the portion of each "blob" instruction which precedes
+         * the length of its data, and which is identical for all blobs of the
+         * stream.
+         */
+        private final int prefixLength;
+
+        /**
+         * Creates a new BlobEncoder for the stream having the given index,
+         * allowing blobs containing up to the given number of bytes.
+         *
+         * @param index
+         *     The index of the stream that the encoded "blob" instructions
+         *     relate to.
+         *
+         * @param chunkSize
+         *     The maximum number of bytes within each blob.
+         */
+        public BlobEncoder(String index, int chunkSize) {
+
+            String prefix = "4.blob," + index.length() + "." + index + ",";
+            int maxEncodedLength = Base64Codec.getEncodedLength(chunkSize);
+
+            prefixLength = prefix.length();
+            buffer = new char[prefixLength
+                    + Integer.toString(maxEncodedLength).length() + 1
+                    + maxEncodedLength + 1];
+
+            prefix.getChars(0, prefixLength, buffer, 0);
+
+        }
+
+        /**
+         * Encodes a "blob" instruction containing the given data, returning
+         * the length of the resulting instruction. The instruction is stored
+         * at the beginning of the array returned by getBuffer(), and remains
+         * valid until the next call to encode().
+         *
+         * @param data
+         *     The array containing the data to send.
+         *
+         * @param length
+         *     The number of bytes of data to send, which must not exceed the
+         *     chunk size given when this BlobEncoder was created.
+         *
+         * @return
+         *     The length of the encoded "blob" instruction, in characters.
+         */
+        public int encode(byte[] data, int length) {
+
+            int encodedLength = Base64Codec.getEncodedLength(length);
+
+            // Write length prefix of data, most significant digit first
+            int digits = 1;
+            for (int remaining = encodedLength / 10; remaining > 0; remaining /= 10)
+                digits++;
+
+            int position = prefixLength + digits;
+            for (int i = position - 1, remaining = encodedLength; i >= prefixLength; i--) {
+                buffer[i] = (char) ('0' + remaining % 10);
+                remaining /= 10;
+            }
 
-        // Send "blob" containing provided data
-        sendInstruction(new GuacamoleInstruction("blob", index,
-            DatatypeConverter.printBase64Binary(blob)));
+            // Write data itself
+            buffer[position++] = '.';
+            position += Base64Codec.encode(data, 0, length, buffer, position);
+            buffer[position++] = ';';
+
+            return position;
+
+        }
+
+        /**
+         * Returns the buffer containing the raw form of the most recently
+         * encoded "blob" instruction.
+         *
+         * @return
+         *     The buffer containing the most recently encoded instruction.
+         */
+        public char[] getBuffer() {
+            return buffer;
+        }
 
     }
 
@@ -92,48 +275,120 @@ public class InputStreamInterceptingFilter
     }
 
     /**
-     * Reads the next chunk of data from the InputStream associated with an
-     * intercepted stream, sending that data as a "blob" instruction over the
-     * GuacamoleTunnel associated with this filter. If the end of the
-     * InputStream is reached, an "end" instruction will automatically be sent.
+     * Ends the given intercepted stream, sending an "end" instruction if the
+     * stream is still valid.
      *
      * @param stream
-     *     The stream from which the next chunk of data should be read.
+     *     The stream to end.
      */
-    private void readNextBlob(InterceptedStream<InputStream> stream) {
+    private void endStream(InterceptedStream<InputStream> stream) {
 
-        // Read blob from stream if it exists
-        try {
+        // Close stream, send end if the stream is still valid
+        if (closeInterceptedStream(stream))
+            sendEnd(stream.getIndex());
 
-            // Read raw data from input stream
-            byte[] blob = new byte[6048];
-            int length = stream.getStream().read(blob);
+    }
 
-            // End stream if no more data
-            if (length == -1) {
+    /**
+     * Waits until the number of unacknowledged blobs within the given send
+     * window is no greater than the given limit, or until the given stream is
+     * no longer being intercepted.
+     *
+     * @param stream
+     *     The stream associated with the given window.
+     *
+     * @param window
+     *     The send window to wait on.
+     *
+     * @param limit
+     *     The maximum number of unacknowledged blobs to wait for.
+     *
+     * @return
+     *     true if the window now contains no more than the given number of
+     *     unacknowledged blobs, false if the stream has been closed or the
+     *     current thread was interrupted.
+     */
+    private boolean awaitWindow(InterceptedStream<InputStream> stream,
+            SendWindow window, int limit) {
+
+        synchronized (window) {
+            while (window.unacknowledged > limit) {
 
-                // Close stream, send end if the stream is still valid
-                if (closeInterceptedStream(stream))
-                    sendEnd(stream.getIndex());
+                // Stop waiting if the stream has been closed
+                if (getInterceptedStream(stream.getIndex()) != stream)
+                    return false;
 
-                return;
+                try {
+                    window.wait(ACK_WAIT_TIMEOUT);
+                }
+                catch (InterruptedException e) {
+                    logger.debug("Interrupted while waiting for acknowledgement of intercepted stream.", e);
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
 
             }
+        }
+
+        return getInterceptedStream(stream.getIndex()) == stream;
+
+    }
+
+    /**
+     * Sends all data from the InputStream associated with the given
+     * intercepted stream as blobs, keeping no more blobs awaiting
+     * acknowledgement than the send window allows. Once the end of the
+     * InputStream is reached and all blobs have been acknowledged, an "end"
+     * instruction is automatically sent. This function blocks until all data
+     * has been sent or the stream has been closed.
+     *
+     * @param stream
+     *     The stream from which data should be read.
+     *
+     * @param window
+     *     The send window of the given stream.
+     */
+    private void sendAll(InterceptedStream<InputStream> stream,
+            SendWindow window) {
+
+        byte[] blob = READ_BUFFERS.acquire(chunkSize);
+        BlobEncoder encoder = new BlobEncoder(stream.getIndex(), chunkSize);
+
+        try {
 
-            // Inject corresponding "blob" instruction
-            sendBlob(stream.getIndex(), Arrays.copyOf(blob, length));
+            // Read and send blobs whenever space within the window permits
+            while (awaitWindow(stream, window, windowSize - 1)) {
+
+                // Read raw data from input stream
+                int length = stream.getStream().read(blob, 0, chunkSize);
+
+                // End stream only once all data has been acknowledged, such
+                // that errors reported for any blob are not lost
+                if (length == -1) {
+                    if (awaitWindow(stream, window, 0))
+                        endStream(stream);
+                    return;
+                }
+
+                synchronized (window) {
+                    window.unacknowledged++;
+                }
+
+                // Inject corresponding "blob" instruction
+                sendInstruction(encoder.getBuffer(), 0, encoder.encode(blob, length));
+
+            }
 
         }
 
         // Terminate stream if it cannot be read
         catch (IOException e) {
-
             logger.debug("Unable to read data of intercepted input stream.", e);
+            endStream(stream);
+        }
 
-            // Close stream, send end if the stream is still valid
-            if (closeInterceptedStream(stream))
-                sendEnd(stream.getIndex());
-
+        finally {
+            READ_BUFFERS.release(blob);
         }
 
     }
@@ -181,12 +436,20 @@ public class InputStreamInterceptingFilter
             // Flag error and close stream
             stream.setStreamError(code, args.get(1));
             closeInterceptedStream(stream);
-            return;
 
         }
 
-        // Send next blob
-        readNextBlob(stream);
+        // Wake the sending thread, which will send further blobs as the
+        // window allows, or will stop if the stream has been closed
+        SendWindow window = windows.get(stream);
+        if (window == null)
+            return;
+
+        synchronized (window) {
+            if (window.unacknowledged > 0)
+                window.unacknowledged--;
+            window.notifyAll();
+        }
 
     }
 
@@ -206,9 +469,32 @@ public class InputStreamInterceptingFilter
     @Override
     protected void handleInterceptedStream(InterceptedStream<InputStream> stream) {
 
-        // Read the first blob. Note that future blobs will be read in response
-        // to received "ack" instructions.
-        readNextBlob(stream);
+        // Send all blobs from the current thread. Note that blobs beyond the
+        // first window are sent only in response to received "ack"
+        // instructions.
+        SendWindow window = new SendWindow();
+        windows.put(stream, window);
+
+        try {
+            sendAll(stream, window);
+        }
+        finally {
+            windows.remove(stream);
+        }
+
+    }
+
+    @Override
+    public void closeAllInterceptedStreams() {
+
+        super.closeAllInterceptedStreams();
+
+        // Wake any threads still waiting for acknowledgement
+        for (SendWindow window : windows.values()) {
+            synchronized (window) {
+                window.notifyAll();
+            }
+        }
 
     }
 
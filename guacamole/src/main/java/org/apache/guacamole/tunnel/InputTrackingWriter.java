@@ -0,0 +1,248 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.tunnel;
+
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.io.ByteGuacamoleWriter;
+import org.apache.guacamole.io.GuacamoleWriter;
+import org.apache.guacamole.protocol.GuacamoleInstruction;
+
+/**
+ * GuacamoleWriter which records within a TrackedTunnel whenever user input
+ * (mouse or keyboard events) is written, such that tunnels whose users have
+ * walked away can be distinguished from those in use. Data is never parsed;
+ * it is merely scanned for the opcodes of input instructions, and at most
+ * once per tick of the coarse-grained clock. As scanning is per write, an
+ * input instruction which is split across writes may be missed, but the many
+ * other input instructions sent while a user is active will not.
+ */
+public class InputTrackingWriter implements GuacamoleWriter {
+
+    /**
+     * The encoded form of the start of every "mouse" instruction, following
+     * the length prefix of its opcode.
+     */
+    private static final String MOUSE_OPCODE = ".mouse,";
+
+    /**
+     * The encoded form of the start of every "key" instruction, following
+     * the length prefix of its opcode.
+     */
+    private static final String KEY_OPCODE = ".key,";
+
+    /**
+     * The writer to which all data is written.
+     */
+    private final GuacamoleWriter writer;
+
+    /**
+     * The tunnel within which user input should be recorded.
+     */
+    protected final TrackedTunnel tracked;
+
+    /**
+     * An InputTrackingWriter which also passes through UTF-8 data without
+     * decoding, for writers which support doing so.
+     */
+    private static class ByteInputTrackingWriter extends InputTrackingWriter
+            implements ByteGuacamoleWriter {
+
+        /**
+         * The writer to which all UTF-8 data is written.
+         */
+        private final ByteGuacamoleWriter byteWriter;
+
+        /**
+         * Creates a new ByteInputTrackingWriter which writes to the given
+         * writer, recording user input within the given tunnel.
+         *
+         * @param writer
+         *     The writer to which all data should be written.
+         *
+         * @param tracked
+         *     The tunnel within which user input should be recorded.
+         */
+        public ByteInputTrackingWriter(ByteGuacamoleWriter writer,
+                TrackedTunnel tracked) {
+            super(writer, tracked);
+            this.byteWriter = writer;
+        }
+
+        @Override
+        public void writeBytes(byte[] chunk, int off, int len)
+                throws GuacamoleException {
+
+            if (!tracked.isInputCurrent()
+                    && (contains(chunk, off, len, MOUSE_OPCODE)
+                        || contains(chunk, off, len, KEY_OPCODE)))
+                tracked.recordInput();
+
+            byteWriter.writeBytes(chunk, off, len);
+
+        }
+
+    }
+
+    /**
+     * Creates a new InputTrackingWriter which writes to the given writer,
+     * recording user input within the given tunnel.
+     *
+     * @param writer
+     *     The writer to which all data should be written.
+     *
+     * @param tracked
+     *     The tunnel within which user input should be recorded.
+     */
+    private InputTrackingWriter(GuacamoleWriter writer, TrackedTunnel tracked) {
+        this.writer = writer;
+        this.tracked = tracked;
+    }
+
+    /**
+     * Returns a writer which writes to the given writer, recording user
+     * input within the given tunnel. If the given writer accepts UTF-8 data
+     * directly, so does the returned writer.
+     *
+     * @param writer
+     *     The writer to which all data should be written.
+     *
+     * @param tracked
+     *     The tunnel within which user input should be recorded.
+     *
+     * @return
+     *     A writer which records user input within the given tunnel.
+     */
+    public static GuacamoleWriter wrap(GuacamoleWriter writer,
+            TrackedTunnel tracked) {
+
+        if (writer instanceof ByteGuacamoleWriter)
+            return new ByteInputTrackingWriter((ByteGuacamoleWriter) writer, tracked);
+
+        return new InputTrackingWriter(writer, tracked);
+
+    }
+
+    /**
+     * Returns whether the given range of the given character data contains
+     * the given ASCII string.
+     *
+     * @param chunk
+     *     The data to search.
+     *
+     * @param off
+     *     The offset of the first character to search.
+     *
+     * @param len
+     *     The number of characters to search.
+     *
+     * @param value
+     *     The ASCII string to search for.
+     *
+     * @return
+     *     true if the given string is present, false otherwise.
+     */
+    private static boolean contains(char[] chunk, int off, int len,
+            String value) {
+
+        int last = off + len - value.length();
+        for (int i = off; i <= last; i++) {
+
+            int j = 0;
+            while (j < value.length() && chunk[i + j] == value.charAt(j))
+                j++;
+
+            if (j == value.length())
+                return true;
+
+        }
+
+        return false;
+
+    }
+
+    /**
+     * Returns whether the given range of the given UTF-8 data contains the
+     * given ASCII string.
+     *
+     * @param chunk
+     *     The data to search.
+     *
+     * @param off
+     *     The offset of the first byte to search.
+     *
+     * @param len
+     *     The number of bytes to search.
+     *
+     * @param value
+     *     The ASCII string to search for.
+     *
+     * @return
+     *     true if the given string is present, false otherwise.
+     */
+    private static boolean contains(byte[] chunk, int off, int len,
+            String value) {
+
+        int last = off + len - value.length();
+        for (int i = off; i <= last; i++) {
+
+            int j = 0;
+            while (j < value.length() && chunk[i + j] == value.charAt(j))
+                j++;
+
+            if (j == value.length())
+                return true;
+
+        }
+
+        return false;
+
+    }
+
+    @Override
+    public void write(char[] chunk, int off, int len)
+            throws GuacamoleException {
+
+        if (!tracked.isInputCurrent()
+                && (contains(chunk, off, len, MOUSE_OPCODE)
+                    || contains(chunk, off, len, KEY_OPCODE)))
+            tracked.recordInput();
+
+        writer.write(chunk, off, len);
+
+    }
+
+    @Override
+    public void write(char[] chunk) throws GuacamoleException {
+        write(chunk, 0, chunk.length);
+    }
+
+    @Override
+    public void writeInstruction(GuacamoleInstruction instruction)
+            throws GuacamoleException {
+
+        String opcode = instruction.getOpcode();
+        if ("mouse".equals(opcode) || "key".equals(opcode))
+            tracked.recordInput();
+
+        writer.writeInstruction(instruction);
+
+    }
+
+}
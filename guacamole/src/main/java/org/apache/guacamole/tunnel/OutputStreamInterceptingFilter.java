@@ -22,11 +22,19 @@ package org.apache.guacamole.tunnel;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.List;
-import javax.xml.bind.DatatypeConverter;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.io.Base64Codec;
+import org.apache.guacamole.io.ByteArrayPool;
 import org.apache.guacamole.net.GuacamoleTunnel;
 import org.apache.guacamole.protocol.GuacamoleInstruction;
 import org.apache.guacamole.protocol.GuacamoleStatus;
+import org.apache.guacamole.protocol.LazyGuacamoleInstruction;
+import org.apache.guacamole.protocol.LazyUTF8GuacamoleInstruction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -36,6 +44,13 @@ import org.slf4j.LoggerFactory;
  * interceptStream(). The required "ack" responses to received blobs are
  * sent automatically.
  *
+ * Received blobs are only decoded and queued by the thread reading from the
+ * tunnel. Writing to the OutputStream, and acknowledging each blob once
+ * written, is performed by the thread which called interceptStream(), such
+ * that a slow recipient of the stream never delays other instructions read
+ * from the tunnel. As each blob is acknowledged only once written, guacd will
+ * not send further data while the recipient is falling behind.
+ *
  * @author Michael Jumper
  */
 public class OutputStreamInterceptingFilter
@@ -47,6 +62,83 @@ public class OutputStreamInterceptingFilter
     private static final Logger logger =
             LoggerFactory.getLogger(OutputStreamInterceptingFilter.class);
 
+    /**
+     * The maximum number of received blobs which may be awaiting write for
+     * each stream. As guacd waits for each blob to be acknowledged, this
+     * limit should only be reached if guacd disregards flow control.
+     */
+    private static final int MAX_QUEUED_BLOBS = 64;
+
+    /**
+     * The maximum amount of time to wait for a blob to be received before
+     * verifying that the stream is still being intercepted, in milliseconds.
+     */
+    private static final long BLOB_WAIT_TIMEOUT = 1000;
+
+    /**
+     * The size of each pooled buffer receiving decoded blob data, in bytes.
+     * This is sufficient for the largest blob guacd will send within a
+     * single instruction.
+     */
+    private static final int BLOB_BUFFER_SIZE = 6144;
+
+    /**
+     * The maximum number of blob buffers to retain for reuse.
+     */
+    private static final int MAX_POOLED_BUFFERS = 256;
+
+    /**
+     * Pool of the buffers receiving decoded blob data, shared by all filters.
+     */
+    private static final ByteArrayPool BLOB_BUFFERS =
+            new ByteArrayPool(BLOB_BUFFER_SIZE, MAX_POOLED_BUFFERS);
+
+    /**
+     * The decoded data of a single received blob, stored within a buffer from
+     * BLOB_BUFFERS.
+     */
+    private static class ReceivedBlob {
+
+        /**
+         * The buffer containing the decoded data.
+         */
+        private final byte[] buffer;
+
+        /**
+         * The number of bytes of decoded data within the buffer.
+         */
+        private final int length;
+
+        /**
+         * Creates a new ReceivedBlob containing the given number of bytes
+         * from the beginning of the given buffer.
+         *
+         * @param buffer
+         *     The buffer containing the decoded data.
+         *
+         * @param length
+         *     The number of bytes of decoded data within the buffer.
+         */
+        public ReceivedBlob(byte[] buffer, int length) {
+            this.buffer = buffer;
+            this.length = length;
+        }
+
+    }
+
+    /**
+     * Placeholder which is queued in place of a blob to denote the end of a
+     * stream.
+     */
+    private static final ReceivedBlob END_OF_STREAM = new ReceivedBlob(new byte[0], 0);
+
+    /**
+     * The blobs received for each stream currently being intercepted which
+     * have not yet been written.
+     */
+    private final ConcurrentMap<InterceptedStream<OutputStream>, BlockingQueue<ReceivedBlob>> queues =
+            new ConcurrentHashMap<InterceptedStream<OutputStream>, BlockingQueue<ReceivedBlob>>();
+
     /**
      * Creates a new OutputStreamInterceptingFilter which selectively intercepts
      * "blob" and "end" instructions. The required "ack" responses will
@@ -89,6 +181,110 @@ public class OutputStreamInterceptingFilter
 
     }
 
+    /**
+     * Decodes the base64 data within the given "blob" instruction into a
+     * buffer from BLOB_BUFFERS. If the raw form of the instruction is
+     * available, the data is decoded directly from that raw form, without
+     * first being converted into a String.
+     *
+     * @param instruction
+     *     The "blob" instruction to decode, which must have at least two
+     *     arguments.
+     *
+     * @return
+     *     The decoded data of the given "blob" instruction.
+     *
+     * @throws IllegalArgumentException
+     *     If the data within the "blob" instruction is not valid base64.
+     */
+    private ReceivedBlob decodeBlob(GuacamoleInstruction instruction) {
+
+        // Decode directly from received UTF-8, if available
+        if (instruction instanceof LazyUTF8GuacamoleInstruction) {
+            LazyUTF8GuacamoleInstruction lazy = (LazyUTF8GuacamoleInstruction) instruction;
+            return decodeBlob(lazy.toByteArray(), lazy.getArgumentOffset(1),
+                    lazy.getArgumentLength(1));
+        }
+
+        // Decode directly from received characters, if available
+        if (instruction instanceof LazyGuacamoleInstruction) {
+            LazyGuacamoleInstruction lazy = (LazyGuacamoleInstruction) instruction;
+            return decodeBlob(lazy.toCharArray(), lazy.getArgumentOffset(1),
+                    lazy.getArgumentLength(1));
+        }
+
+        // Otherwise, decode from parsed argument
+        char[] data = instruction.getArgs().get(1).toCharArray();
+        return decodeBlob(data, 0, data.length);
+
+    }
+
+    /**
+     * Decodes the given range of base64 characters into a buffer from
+     * BLOB_BUFFERS.
+     *
+     * @param raw
+     *     The array containing the base64 data.
+     *
+     * @param offset
+     *     The offset of the first character of base64 data.
+     *
+     * @param length
+     *     The number of characters of base64 data.
+     *
+     * @return
+     *     The decoded data.
+     *
+     * @throws IllegalArgumentException
+     *     If the given data is not valid base64.
+     */
+    private ReceivedBlob decodeBlob(char[] raw, int offset, int length) {
+
+        byte[] buffer = BLOB_BUFFERS.acquire(Base64Codec.getDecodedLength(length));
+        try {
+            return new ReceivedBlob(buffer, Base64Codec.decode(raw, offset,
+                    length, buffer, 0));
+        }
+        catch (IllegalArgumentException e) {
+            BLOB_BUFFERS.release(buffer);
+            throw e;
+        }
+
+    }
+
+    /**
+     * Decodes the given range of base64 data, stored as UTF-8, into a buffer
+     * from BLOB_BUFFERS.
+     *
+     * @param raw
+     *     The array containing the base64 data.
+     *
+     * @param offset
+     *     The offset of the first byte of base64 data.
+     *
+     * @param length
+     *     The number of bytes of base64 data.
+     *
+     * @return
+     *     The decoded data.
+     *
+     * @throws IllegalArgumentException
+     *     If the given data is not valid base64.
+     */
+    private ReceivedBlob decodeBlob(byte[] raw, int offset, int length) {
+
+        byte[] buffer = BLOB_BUFFERS.acquire(Base64Codec.getDecodedLength(length));
+        try {
+            return new ReceivedBlob(buffer, Base64Codec.decode(raw, offset,
+                    length, buffer, 0));
+        }
+        catch (IllegalArgumentException e) {
+            BLOB_BUFFERS.release(buffer);
+            throw e;
+        }
+
+    }
+
     /**
      * Handles a single "blob" instruction, decoding its base64 data,
      * sending that data to the associated OutputStream, and ultimately
@@ -118,10 +314,9 @@ public class OutputStreamInterceptingFilter
             return instruction;
 
         // Decode blob
-        byte[] blob;
+        ReceivedBlob blob;
         try {
-            String data = args.get(1);
-            blob = DatatypeConverter.parseBase64Binary(data);
+            blob = decodeBlob(instruction);
         }
         catch (IllegalArgumentException e) {
             logger.warn("Received base64 data for intercepted stream was invalid.");
@@ -129,14 +324,14 @@ public class OutputStreamInterceptingFilter
             return null;
         }
 
-        // Attempt to write data to stream
-        try {
-            stream.getStream().write(blob);
-            sendAck(index, "OK", GuacamoleStatus.SUCCESS);
-        }
-        catch (IOException e) {
-            sendAck(index, "FAIL", GuacamoleStatus.SERVER_ERROR);
-            logger.debug("Write failed for intercepted stream.", e);
+        // Queue data for writing, failing the stream if guacd has sent more
+        // data than can be buffered
+        BlockingQueue<ReceivedBlob> queue = queues.get(stream);
+        if (queue == null || !queue.offer(blob)) {
+            logger.debug("Too many blobs queued for intercepted stream.");
+            BLOB_BUFFERS.release(blob.buffer);
+            queues.remove(stream);
+            sendAck(index, "FAIL", GuacamoleStatus.SERVER_BUSY);
         }
 
         // Instruction was handled purely internally
@@ -159,8 +354,15 @@ public class OutputStreamInterceptingFilter
         if (args.size() < 1)
             return;
 
-        // Terminate stream
-        closeInterceptedStream(args.get(0));
+        // Pull associated stream
+        InterceptedStream<OutputStream> stream = getInterceptedStream(args.get(0));
+        if (stream == null)
+            return;
+
+        // Terminate stream once all queued data has been written
+        BlockingQueue<ReceivedBlob> queue = queues.get(stream);
+        if (queue == null || !queue.offer(END_OF_STREAM))
+            closeInterceptedStream(stream);
 
     }
 
@@ -186,9 +388,67 @@ public class OutputStreamInterceptingFilter
     @Override
     protected void handleInterceptedStream(InterceptedStream<OutputStream> stream) {
 
+        BlockingQueue<ReceivedBlob> queue = new LinkedBlockingQueue<ReceivedBlob>(MAX_QUEUED_BLOBS);
+        queues.put(stream, queue);
+
         // Acknowledge that the stream is ready to receive data
         sendAck(stream.getIndex(), "OK", GuacamoleStatus.SUCCESS);
 
+        try {
+
+            // Write each blob as received until the stream ends or is closed
+            while (getInterceptedStream(stream.getIndex()) == stream) {
+
+                ReceivedBlob blob;
+                try {
+                    blob = queue.poll(BLOB_WAIT_TIMEOUT, TimeUnit.MILLISECONDS);
+                }
+                catch (InterruptedException e) {
+                    logger.debug("Interrupted while waiting for data of intercepted stream.", e);
+                    closeInterceptedStream(stream);
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+
+                // Continue waiting if no data has yet been received
+                if (blob == null)
+                    continue;
+
+                // Close stream once all data has been written
+                if (blob == END_OF_STREAM) {
+                    closeInterceptedStream(stream);
+                    return;
+                }
+
+                // Attempt to write data to stream
+                try {
+                    stream.getStream().write(blob.buffer, 0, blob.length);
+                    sendAck(stream.getIndex(), "OK", GuacamoleStatus.SUCCESS);
+                }
+                catch (IOException e) {
+                    sendAck(stream.getIndex(), "FAIL", GuacamoleStatus.SERVER_ERROR);
+                    logger.debug("Write failed for intercepted stream.", e);
+                    return;
+                }
+
+                // Reuse buffer for future blobs
+                finally {
+                    BLOB_BUFFERS.release(blob.buffer);
+                }
+
+            }
+
+        }
+        finally {
+            queues.remove(stream);
+        }
+
+    }
+
+    @Override
+    public void closeAllInterceptedStreams() {
+        super.closeAllInterceptedStreams();
+        queues.clear();
     }
 
 }
@@ -101,6 +101,38 @@ public abstract class StreamInterceptingFilter<T extends Closeable>
 
     }
 
+    /**
+     * Injects the given range of a buffer containing one or more complete
+     * Guacamole instructions into the outbound Guacamole protocol stream of
+     * the tunnel associated with this StreamInterceptingFilter, as if the
+     * instructions were sent by the connected client. The buffer may be
+     * reused once this function returns.
+     *
+     * @param buffer
+     *     The buffer containing the instructions to inject.
+     *
+     * @param offset
+     *     The offset within the buffer of the first character to inject.
+     *
+     * @param length
+     *     The number of characters to inject.
+     */
+    protected void sendInstruction(char[] buffer, int offset, int length) {
+
+        GuacamoleWriter writer = tunnel.acquireWriter();
+
+        try {
+            writer.write(buffer, offset, length);
+        }
+        catch (GuacamoleException e) {
+            logger.debug("Unable to send data for intercepted stream.", e);
+        }
+
+        // Done writing
+        tunnel.releaseWriter();
+
+    }
+
     /**
      * Returns the stream having the given index and currently being intercepted
      * by this filter.
@@ -154,10 +186,14 @@ public abstract class StreamInterceptingFilter<T extends Closeable>
 
     /**
      * Begins handling the data of the given intercepted stream. This function
-     * will automatically be invoked by interceptStream() for any valid stream.
-     * It is not required that this function block until all data is handled;
-     * interceptStream() will do this automatically. Implementations are free
-     * to use asynchronous approaches to data handling.
+     * will automatically be invoked by interceptStream() for any valid stream,
+     * on the thread which called interceptStream(). As that thread is
+     * otherwise idle until the stream ends, implementations should perform
+     * all I/O against the stream object within this function, rather than
+     * within filter(), such that the thread reading from the tunnel never
+     * blocks on the producer or consumer of the stream. It is not required
+     * that this function block until all data is handled; interceptStream()
+     * will do this automatically.
      *
      * @param stream
      *     The stream being intercepted.
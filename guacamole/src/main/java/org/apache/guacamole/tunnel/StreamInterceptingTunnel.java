@@ -24,9 +24,11 @@ import java.io.BufferedOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
 import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.io.ByteGuacamoleReader;
 import org.apache.guacamole.io.GuacamoleReader;
 import org.apache.guacamole.net.DelegatingGuacamoleTunnel;
 import org.apache.guacamole.net.GuacamoleTunnel;
+import org.apache.guacamole.protocol.FilteredByteGuacamoleReader;
 import org.apache.guacamole.protocol.FilteredGuacamoleReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -57,14 +59,40 @@ public class StreamInterceptingTunnel extends DelegatingGuacamoleTunnel {
      *     interceptStream() is invoked.
      */
     public StreamInterceptingTunnel(GuacamoleTunnel tunnel) {
+        this(tunnel, InputStreamInterceptingFilter.DEFAULT_WINDOW_SIZE,
+                InputStreamInterceptingFilter.DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Creates a new StreamInterceptingTunnel which wraps the given tunnel,
+     * reading and intercepting stream-related instructions as necessary to
+     * fulfill calls to interceptStream(). Data from intercepted InputStreams
+     * is sent in blobs of at most the given size, with at most the given
+     * number of blobs awaiting acknowledgement per stream.
+     *
+     * @param tunnel
+     *     The tunnel whose stream-related instruction should be intercepted if
+     *     interceptStream() is invoked.
+     *
+     * @param uploadWindowSize
+     *     The number of blobs which may be awaiting acknowledgement for each
+     *     intercepted InputStream.
+     *
+     * @param uploadChunkSize
+     *     The maximum number of bytes to send within each blob read from an
+     *     intercepted InputStream.
+     */
+    public StreamInterceptingTunnel(GuacamoleTunnel tunnel,
+            int uploadWindowSize, int uploadChunkSize) {
         super(tunnel);
+        this.inputStreamFilter = new InputStreamInterceptingFilter(this,
+                uploadWindowSize, uploadChunkSize);
     }
 
     /**
      * The filter to use for providing stream data from InputStreams.
      */
-    private final InputStreamInterceptingFilter inputStreamFilter =
-            new InputStreamInterceptingFilter(this);
+    private final InputStreamInterceptingFilter inputStreamFilter;
 
     /**
      * The filter to use for rerouting received stream data to OutputStreams.
@@ -151,7 +179,15 @@ public class StreamInterceptingTunnel extends DelegatingGuacamoleTunnel {
 
         GuacamoleReader reader = super.acquireReader();
 
-        // Filter both input and output streams
+        // Filter both input and output streams, preserving access to the
+        // original UTF-8 data if available
+        if (reader instanceof ByteGuacamoleReader) {
+            ByteGuacamoleReader byteReader = (ByteGuacamoleReader) reader;
+            byteReader = new FilteredByteGuacamoleReader(byteReader, inputStreamFilter);
+            byteReader = new FilteredByteGuacamoleReader(byteReader, outputStreamFilter);
+            return byteReader;
+        }
+
         reader = new FilteredGuacamoleReader(reader, inputStreamFilter);
         reader = new FilteredGuacamoleReader(reader, outputStreamFilter);
 
@@ -0,0 +1,211 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.tunnel;
+
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.io.TunnelThrottleCounters;
+import org.apache.guacamole.net.ExpirationWheel;
+import org.apache.guacamole.net.GuacamoleTunnel;
+
+/**
+ * An active tunnel created by this node, along with the details required to
+ * report on that tunnel and to decide whether it may be closed while this
+ * node is draining.
+ */
+public class TrackedTunnel {
+
+    /**
+     * The wheel whose coarse clock records user input.
+     */
+    private final ExpirationWheel wheel = ExpirationWheel.getDefault();
+
+    /**
+     * The tunnel being tracked.
+     */
+    private final GuacamoleTunnel tunnel;
+
+    /**
+     * The identifier of the user who created the tunnel.
+     */
+    private final String username;
+
+    /**
+     * The type of object connected to (connection or group).
+     */
+    private final TunnelRequest.Type type;
+
+    /**
+     * The identifier of the connection or group connected to.
+     */
+    private final String identifier;
+
+    /**
+     * The time the tunnel was created, in milliseconds since midnight of
+     * January 1, 1970 UTC.
+     */
+    private final long startTime = System.currentTimeMillis();
+
+    /**
+     * The time that input from the user was last sent over the tunnel, in
+     * milliseconds since midnight of January 1, 1970 UTC, as read from the
+     * coarse-grained clock of the expiration wheel.
+     */
+    private volatile long lastInputTime = startTime;
+
+    /**
+     * The counters recording how often data sent over the tunnel has been
+     * held back by bandwidth or frame rate limits.
+     */
+    private final TunnelThrottleCounters throttleCounters;
+
+    /**
+     * Creates a new TrackedTunnel which tracks the given tunnel.
+     *
+     * @param tunnel
+     *     The tunnel to track.
+     *
+     * @param username
+     *     The identifier of the user who created the tunnel.
+     *
+     * @param type
+     *     The type of object connected to (connection or group).
+     *
+     * @param identifier
+     *     The identifier of the connection or group connected to.
+     *
+     * @param throttleCounters
+     *     The counters recording how often data sent over the tunnel has been
+     *     held back by bandwidth or frame rate limits.
+     */
+    public TrackedTunnel(GuacamoleTunnel tunnel, String username,
+            TunnelRequest.Type type, String identifier,
+            TunnelThrottleCounters throttleCounters) {
+        this.tunnel = tunnel;
+        this.username = username;
+        this.type = type;
+        this.identifier = identifier;
+        this.throttleCounters = throttleCounters;
+    }
+
+    /**
+     * Returns the UUID of the tracked tunnel.
+     *
+     * @return
+     *     The UUID of the tracked tunnel.
+     */
+    public String getUUID() {
+        return tunnel.getUUID().toString();
+    }
+
+    /**
+     * Returns the identifier of the user who created the tunnel.
+     *
+     * @return
+     *     The identifier of the user who created the tunnel.
+     */
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * Returns the type of object connected to.
+     *
+     * @return
+     *     The type of object connected to (connection or group).
+     */
+    public TunnelRequest.Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns the identifier of the connection or group connected to.
+     *
+     * @return
+     *     The identifier of the connection or group connected to.
+     */
+    public String getIdentifier() {
+        return identifier;
+    }
+
+    /**
+     * Returns the time the tunnel was created.
+     *
+     * @return
+     *     The time the tunnel was created, in milliseconds since midnight of
+     *     January 1, 1970 UTC.
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Returns the time that input from the user was last sent over the
+     * tunnel, or the time the tunnel was created if no input has been sent.
+     *
+     * @return
+     *     The time of the most recent user input, in milliseconds since
+     *     midnight of January 1, 1970 UTC.
+     */
+    public long getLastInputTime() {
+        return lastInputTime;
+    }
+
+    /**
+     * Returns the counters recording how often data sent over the tunnel has
+     * been held back by bandwidth or frame rate limits.
+     *
+     * @return
+     *     The throttling counters of the tunnel.
+     */
+    public TunnelThrottleCounters getThrottleCounters() {
+        return throttleCounters;
+    }
+
+    /**
+     * Returns whether user input has already been recorded within the
+     * current tick of the coarse-grained clock, in which case further input
+     * within that tick need not be detected.
+     *
+     * @return
+     *     true if user input was recorded within the current tick, false
+     *     otherwise.
+     */
+    public boolean isInputCurrent() {
+        return lastInputTime >= wheel.currentTimeMillis();
+    }
+
+    /**
+     * Records that input from the user has just been sent over the tunnel.
+     */
+    public void recordInput() {
+        lastInputTime = wheel.currentTimeMillis();
+    }
+
+    /**
+     * Closes the tracked tunnel.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while closing the tunnel.
+     */
+    public void close() throws GuacamoleException {
+        tunnel.close();
+    }
+
+}
@@ -0,0 +1,319 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.tunnel;
+
+import com.google.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.apache.guacamole.GuacamoleClientException;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.GuacamoleServerBusyException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Service which tracks all tunnels created by this node, and which allows
+ * this node to be drained prior to shutdown. While draining, new tunnels are
+ * refused with a retryable status, such that clients may reconnect through
+ * another node, while existing tunnels continue unaffected. Once an optional
+ * deadline passes, tunnels whose users have not sent any input for a given
+ * period are closed, with any remaining tunnels closed as they become idle.
+ */
+@Singleton
+public class TunnelDrainService {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(TunnelDrainService.class);
+
+    /**
+     * The default amount of time without user input after which a tunnel is
+     * considered idle, in seconds.
+     */
+    public static final int DEFAULT_IDLE_TIMEOUT = 300;
+
+    /**
+     * The interval at which idle tunnels are closed once the drain deadline
+     * has passed, in seconds.
+     */
+    private static final int IDLE_CHECK_INTERVAL = 10;
+
+    /**
+     * All tunnels created by this node which have not yet been closed,
+     * indexed by tunnel UUID.
+     */
+    private final ConcurrentMap<String, TrackedTunnel> tunnels =
+            new ConcurrentHashMap<String, TrackedTunnel>();
+
+    /**
+     * Executor which closes idle tunnels once the drain deadline has passed.
+     */
+    private final ScheduledExecutorService executor =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "guacamole-drain");
+            thread.setDaemon(true);
+            return thread;
+        }
+
+    });
+
+    /**
+     * Whether this node is currently draining.
+     */
+    private volatile boolean draining = false;
+
+    /**
+     * The time draining began, in milliseconds since midnight of January 1,
+     * 1970 UTC, or 0 if this node is not draining.
+     */
+    private volatile long drainStartTime;
+
+    /**
+     * The time after which idle tunnels will be closed, in milliseconds
+     * since midnight of January 1, 1970 UTC, or 0 if idle tunnels will not
+     * be closed.
+     */
+    private volatile long drainDeadline;
+
+    /**
+     * The amount of time without user input after which a tunnel is closed
+     * once the deadline has passed, in milliseconds.
+     */
+    private volatile long idleTimeout;
+
+    /**
+     * The pending closure of idle tunnels, or null if idle tunnels will not
+     * be closed.
+     */
+    private ScheduledFuture<?> idleClosure;
+
+    /**
+     * Begins tracking the given tunnel until it is closed.
+     *
+     * @param tunnel
+     *     The tunnel to track.
+     */
+    public void addTunnel(TrackedTunnel tunnel) {
+        tunnels.put(tunnel.getUUID(), tunnel);
+    }
+
+    /**
+     * Stops tracking the tunnel having the given UUID, as that tunnel has
+     * closed.
+     *
+     * @param tunnelUUID
+     *     The UUID of the closed tunnel.
+     */
+    public void removeTunnel(String tunnelUUID) {
+        tunnels.remove(tunnelUUID);
+    }
+
+    /**
+     * Returns all tunnels created by this node which have not yet been
+     * closed.
+     *
+     * @return
+     *     An unmodifiable view of all active tunnels of this node.
+     */
+    public Collection<TrackedTunnel> getTunnels() {
+        return Collections.unmodifiableCollection(tunnels.values());
+    }
+
+    /**
+     * Verifies that this node is accepting new tunnels.
+     *
+     * @throws GuacamoleException
+     *     If this node is draining and must refuse new tunnels.
+     */
+    public void checkAccepting() throws GuacamoleException {
+        if (draining)
+            throw new GuacamoleServerBusyException("This server is being "
+                    + "taken out of service. Please try again.");
+    }
+
+    /**
+     * Returns whether this node is draining.
+     *
+     * @return
+     *     true if this node is draining, false otherwise.
+     */
+    public boolean isDraining() {
+        return draining;
+    }
+
+    /**
+     * Returns the time draining began.
+     *
+     * @return
+     *     The time draining began, in milliseconds since midnight of January
+     *     1, 1970 UTC, or 0 if this node is not draining.
+     */
+    public long getDrainStartTime() {
+        return drainStartTime;
+    }
+
+    /**
+     * Returns the time after which idle tunnels will be closed.
+     *
+     * @return
+     *     The time after which idle tunnels will be closed, in milliseconds
+     *     since midnight of January 1, 1970 UTC, or 0 if idle tunnels will
+     *     not be closed.
+     */
+    public long getDrainDeadline() {
+        return drainDeadline;
+    }
+
+    /**
+     * Returns the amount of time without user input after which a tunnel is
+     * closed once the drain deadline has passed.
+     *
+     * @return
+     *     The idle timeout, in milliseconds.
+     */
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Closes all tunnels whose users have not sent input within the idle
+     * timeout.
+     */
+    private void closeIdleTunnels() {
+
+        long now = System.currentTimeMillis();
+        for (TrackedTunnel tunnel : new ArrayList<TrackedTunnel>(tunnels.values())) {
+
+            if (now - tunnel.getLastInputTime() < idleTimeout)
+                continue;
+
+            logger.info("Closing idle tunnel \"{}\" of user \"{}\" to drain server.",
+                    tunnel.getUUID(), tunnel.getUsername());
+
+            try {
+                tunnel.close();
+            }
+            catch (GuacamoleException e) {
+                logger.debug("Unable to close idle tunnel.", e);
+            }
+
+        }
+
+    }
+
+    /**
+     * Begins draining this node, refusing all new tunnels. If a deadline is
+     * given, tunnels which are idle at the deadline, and tunnels which
+     * become idle after the deadline, are closed. Draining a node which is
+     * already draining replaces the deadline and idle timeout.
+     *
+     * @param deadline
+     *     The number of seconds after which idle tunnels should be closed, or
+     *     null if tunnels should never be closed.
+     *
+     * @param idle
+     *     The number of seconds without user input after which a tunnel is
+     *     considered idle, or null to use the default.
+     *
+     * @throws GuacamoleException
+     *     If the given deadline or idle timeout is less than one second.
+     */
+    public synchronized void startDrain(Integer deadline, Integer idle)
+            throws GuacamoleException {
+
+        // Refuse deadlines and timeouts which cannot be scheduled
+        if (deadline != null && deadline < 1)
+            throw new GuacamoleClientException("The drain deadline must be at least one second.");
+
+        if (idle != null && idle < 1)
+            throw new GuacamoleClientException("The idle timeout must be at least one second.");
+
+        long now = System.currentTimeMillis();
+
+        if (!draining)
+            drainStartTime = now;
+
+        idleTimeout = (idle != null ? idle : DEFAULT_IDLE_TIMEOUT) * 1000L;
+
+        // Replace any previous deadline
+        if (idleClosure != null)
+            idleClosure.cancel(false);
+
+        if (deadline != null) {
+            drainDeadline = now + deadline * 1000L;
+            idleClosure = executor.scheduleWithFixedDelay(new Runnable() {
+
+                @Override
+                public void run() {
+                    closeIdleTunnels();
+                }
+
+            }, deadline, IDLE_CHECK_INTERVAL, TimeUnit.SECONDS);
+        }
+        else {
+            drainDeadline = 0;
+            idleClosure = null;
+        }
+
+        draining = true;
+        logger.info("Draining server. {} tunnel(s) remain active.", tunnels.size());
+
+    }
+
+    /**
+     * Stops draining this node, such that new tunnels are again accepted and
+     * no further tunnels are closed.
+     */
+    public synchronized void stopDrain() {
+
+        if (idleClosure != null)
+            idleClosure.cancel(false);
+
+        idleClosure = null;
+        draining = false;
+        drainStartTime = 0;
+        drainDeadline = 0;
+
+        logger.info("Server is no longer draining.");
+
+    }
+
+    /**
+     * Stops closing idle tunnels, releasing the thread used to do so. This
+     * function must be invoked when the Guacamole web application is shutting
+     * down. Tunnels which are still open are not closed.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+}
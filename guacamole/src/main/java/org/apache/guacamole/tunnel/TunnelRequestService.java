@@ -22,15 +22,24 @@ package org.apache.guacamole.tunnel;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import java.util.List;
+import java.util.Map;
 import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.GuacamoleSecurityException;
 import org.apache.guacamole.GuacamoleSession;
 import org.apache.guacamole.GuacamoleUnauthorizedException;
+import org.apache.guacamole.environment.Environment;
+import org.apache.guacamole.form.NumericField;
+import org.apache.guacamole.io.GuacamoleReader;
+import org.apache.guacamole.io.GuacamoleShapingSettings;
+import org.apache.guacamole.io.GuacamoleWriter;
+import org.apache.guacamole.io.ShapingGuacamoleReader;
+import org.apache.guacamole.io.TunnelShaper;
 import org.apache.guacamole.net.GuacamoleTunnel;
 import org.apache.guacamole.net.auth.Connection;
 import org.apache.guacamole.net.auth.ConnectionGroup;
 import org.apache.guacamole.net.auth.Directory;
 import org.apache.guacamole.net.auth.UserContext;
+import org.apache.guacamole.properties.IntegerGuacamoleProperty;
 import org.apache.guacamole.rest.ObjectRetrievalService;
 import org.apache.guacamole.rest.auth.AuthenticationService;
 import org.apache.guacamole.protocol.GuacamoleClientInformation;
@@ -55,6 +64,20 @@ public class TunnelRequestService {
      */
     private final Logger logger = LoggerFactory.getLogger(TunnelRequestService.class);
 
+    /**
+     * The name of the connection attribute which limits the rate at which
+     * data may be sent to the client of each tunnel, in kilobytes per second.
+     * If unset, the node-wide default applies.
+     */
+    public static final String MAX_BANDWIDTH_ATTRIBUTE = "max-bandwidth";
+
+    /**
+     * The name of the connection attribute which limits the number of frames
+     * per second which may be sent to the client of each tunnel. If unset,
+     * the node-wide default applies.
+     */
+    public static final String MAX_FRAME_RATE_ATTRIBUTE = "max-frame-rate";
+
     /**
      * A service for authenticating users from auth tokens.
      */
@@ -67,6 +90,43 @@ public class TunnelRequestService {
     @Inject
     private ObjectRetrievalService retrievalService;
 
+    /**
+     * The Guacamole server environment.
+     */
+    @Inject
+    private Environment environment;
+
+    /**
+     * Service which tracks all tunnels of this node, refusing new tunnels
+     * while this node is draining.
+     */
+    @Inject
+    private TunnelDrainService drainService;
+
+    /**
+     * The number of blobs of an uploaded file which may be awaiting
+     * acknowledgement by guacd at any one time.
+     */
+    private final IntegerGuacamoleProperty UPLOAD_WINDOW_SIZE =
+            new IntegerGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "upload-window-size"; }
+
+    };
+
+    /**
+     * The maximum number of bytes of an uploaded file to send within each
+     * blob.
+     */
+    private final IntegerGuacamoleProperty UPLOAD_CHUNK_SIZE =
+            new IntegerGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "upload-chunk-size"; }
+
+    };
+
     /**
      * Reads and returns the client information provided within the given
      * request.
@@ -201,6 +261,92 @@ public class TunnelRequestService {
 
     }
 
+    /**
+     * Parses the numeric limit stored within the given attribute, if any.
+     * Invalid values are logged and ignored.
+     *
+     * @param attributes
+     *     The attributes of the connection or connection group being
+     *     connected to.
+     *
+     * @param name
+     *     The name of the attribute containing the limit.
+     *
+     * @return
+     *     The limit stored within the given attribute, or null if the
+     *     attribute is unset or invalid.
+     */
+    private Integer getLimit(Map<String, String> attributes, String name) {
+
+        try {
+            return NumericField.parse(attributes.get(name));
+        }
+        catch (NumberFormatException e) {
+            logger.warn("Ignoring invalid \"{}\" attribute: {}", name, e.getMessage());
+            logger.debug("Unable to parse numeric attribute.", e);
+            return null;
+        }
+
+    }
+
+    /**
+     * Creates a new TunnelShaper which limits the rate at which data is sent
+     * to the client of a tunnel to the connection or connection group having
+     * the given ID. Limits of connections are read from their attributes,
+     * falling back to the node-wide defaults for any limit which is not set.
+     * Tunnels to connection groups are always subject to the node-wide
+     * defaults, as the connection ultimately used is not known here.
+     *
+     * @param context
+     *     The UserContext associated with the user for whom the tunnel is
+     *     being created.
+     *
+     * @param type
+     *     The type of object being connected to (connection or group).
+     *
+     * @param id
+     *     The id of the connection or group being connected to.
+     *
+     * @return
+     *     A new TunnelShaper applying the limits of the given connection, or
+     *     the node-wide defaults.
+     *
+     * @throws GuacamoleException
+     *     If an error occurs while retrieving the connection.
+     */
+    protected TunnelShaper createTunnelShaper(UserContext context,
+            TunnelRequest.Type type, String id) throws GuacamoleException {
+
+        GuacamoleShapingSettings settings = GuacamoleShapingSettings.getDefault();
+
+        // Retrieve attributes of the connection being connected to, if any
+        Map<String, String> attributes = null;
+        if (type == TunnelRequest.Type.CONNECTION) {
+            Connection connection = context.getConnectionDirectory().get(id);
+            if (connection != null)
+                attributes = connection.getAttributes();
+        }
+
+        // Use node-wide defaults if no attributes are available
+        if (attributes == null)
+            return new TunnelShaper(settings);
+
+        // Override bandwidth limit if specified (in kilobytes per second)
+        long maxBandwidth = settings.getMaxBandwidth();
+        Integer bandwidth = getLimit(attributes, MAX_BANDWIDTH_ATTRIBUTE);
+        if (bandwidth != null)
+            maxBandwidth = bandwidth * 1024L;
+
+        // Override frame rate limit if specified
+        int maxFrameRate = settings.getMaxFrameRate();
+        Integer frameRate = getLimit(attributes, MAX_FRAME_RATE_ATTRIBUTE);
+        if (frameRate != null)
+            maxFrameRate = frameRate;
+
+        return new TunnelShaper(settings, maxBandwidth, maxFrameRate);
+
+    }
+
     /**
      * Associates the given tunnel with the given session, returning a wrapped
      * version of the same tunnel which automatically handles closure and
@@ -224,6 +370,10 @@ public class TunnelRequestService {
      * @param id
      *     The id of the connection or group being connected to.
      *
+     * @param shaper
+     *     The shaper which should limit the rate at which data is sent to the
+     *     client of the tunnel.
+     *
      * @return
      *     A new tunnel, associated with the given session, which delegates all
      *     functionality to the given tunnel while monitoring and automatically
@@ -234,11 +384,16 @@ public class TunnelRequestService {
      */
     protected GuacamoleTunnel createAssociatedTunnel(GuacamoleTunnel tunnel,
             final String authToken,  final GuacamoleSession session,
-            final TunnelRequest.Type type, final String id)
-            throws GuacamoleException {
+            final TunnelRequest.Type type, final String id,
+            final TunnelShaper shaper) throws GuacamoleException {
 
-        // Monitor tunnel closure and data
-        StreamInterceptingTunnel monitoredTunnel = new StreamInterceptingTunnel(tunnel) {
+        // Monitor tunnel closure and data, uploading files using the
+        // configured send window
+        StreamInterceptingTunnel monitoredTunnel = new StreamInterceptingTunnel(tunnel,
+                environment.getProperty(UPLOAD_WINDOW_SIZE,
+                        InputStreamInterceptingFilter.DEFAULT_WINDOW_SIZE),
+                environment.getProperty(UPLOAD_CHUNK_SIZE,
+                        InputStreamInterceptingFilter.DEFAULT_CHUNK_SIZE)) {
 
             /**
              * The time the connection began, measured in milliseconds since
@@ -246,6 +401,28 @@ public class TunnelRequestService {
              */
             private final long connectionStartTime = System.currentTimeMillis();
 
+            /**
+             * This tunnel, as tracked by the drain service.
+             */
+            private final TrackedTunnel tracked = new TrackedTunnel(this,
+                    session.getAuthenticatedUser().getIdentifier(), type, id,
+                    shaper.getCounters());
+
+            // Track tunnel until closed
+            {
+                drainService.addTunnel(tracked);
+            }
+
+            @Override
+            public GuacamoleReader acquireReader() {
+                return ShapingGuacamoleReader.wrap(super.acquireReader(), shaper);
+            }
+
+            @Override
+            public GuacamoleWriter acquireWriter() {
+                return InputTrackingWriter.wrap(super.acquireWriter(), tracked);
+            }
+
             @Override
             public void close() throws GuacamoleException {
 
@@ -273,9 +450,15 @@ public class TunnelRequestService {
 
                 }
 
+                // Report throttling of tunnel, if any limits applied
+                if (shaper.isActive())
+                    logger.debug("Tunnel \"{}\" throttling: {}", getUUID(),
+                            shaper.getCounters());
+
                 try {
 
                     // Close and clean up tunnel
+                    drainService.removeTunnel(getUUID().toString());
                     session.removeTunnel(getUUID().toString());
                     super.close();
 
@@ -329,13 +512,23 @@ public class TunnelRequestService {
         GuacamoleSession session = authenticationService.getGuacamoleSession(authToken);
         UserContext userContext = retrievalService.retrieveUserContext(session, authProviderIdentifier);
 
+        // Refuse new tunnels while draining, such that the client retries
+        // through another node
+        drainService.checkAccepting();
+
         try {
 
+            // Limit outbound data as required by the connection, determining
+            // those limits before connecting such that no tunnel is left open
+            // if they cannot be read
+            TunnelShaper shaper = createTunnelShaper(userContext, type, id);
+
             // Create connected tunnel using provided connection ID and client information
             GuacamoleTunnel tunnel = createConnectedTunnel(userContext, type, id, info);
 
             // Associate tunnel with session
-            return createAssociatedTunnel(tunnel, authToken, session, type, id);
+            return createAssociatedTunnel(tunnel, authToken, session, type, id,
+                    shaper);
 
         }
 
@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.guacamole.tunnel.http;
+
+import java.lang.reflect.InvocationTargetException;
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.GuacamoleServerException;
+import org.apache.guacamole.environment.Environment;
+import org.apache.guacamole.properties.FileGuacamoleProperty;
+import org.apache.guacamole.properties.StringGuacamoleProperty;
+import org.apache.guacamole.servlet.FileTunnelDirectory;
+import org.apache.guacamole.servlet.GuacamoleTunnelDirectory;
+import org.apache.guacamole.servlet.GuacamoleTunnelRelay;
+import org.apache.guacamole.servlet.LocalTunnelDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Factory which creates the GuacamoleTunnelRelay configured within
+ * guacamole.properties. HTTP tunnel requests are relayed between nodes only
+ * if the "tunnel-relay-address" property is set, in which case the node
+ * holding each tunnel is recorded within the directory selected by the
+ * "tunnel-directory" property.
+ */
+public class TunnelRelays {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(TunnelRelays.class);
+
+    /**
+     * The value of the "tunnel-directory" property which selects
+     * LocalTunnelDirectory.
+     */
+    private static final String LOCAL_DIRECTORY = "local";
+
+    /**
+     * The value of the "tunnel-directory" property which selects
+     * FileTunnelDirectory.
+     */
+    private static final String FILE_DIRECTORY = "directory";
+
+    /**
+     * The absolute URL at which other nodes can reach the HTTP tunnel servlet
+     * of this node, such as "http://node1:8080/guacamole/tunnel".
+     */
+    private static final StringGuacamoleProperty TUNNEL_RELAY_ADDRESS =
+            new StringGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "tunnel-relay-address"; }
+
+    };
+
+    /**
+     * The directory recording the node holding each tunnel: "local",
+     * "directory", or the fully-qualified class name of a
+     * GuacamoleTunnelDirectory implementation having a public constructor
+     * which accepts the Guacamole server Environment.
+     */
+    private static final StringGuacamoleProperty TUNNEL_DIRECTORY =
+            new StringGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "tunnel-directory"; }
+
+    };
+
+    /**
+     * The directory shared by all nodes in which tunnels should be recorded,
+     * if the "directory" tunnel directory is selected.
+     */
+    private static final FileGuacamoleProperty TUNNEL_DIRECTORY_PATH =
+            new FileGuacamoleProperty() {
+
+        @Override
+        public String getName() { return "tunnel-directory-path"; }
+
+    };
+
+    /**
+     * This class is a utility class and should not be instantiated.
+     */
+    private TunnelRelays() {}
+
+    /**
+     * Creates the GuacamoleTunnelDirectory having the given name, which may
+     * be "local", "directory", or the fully-qualified class name of any
+     * GuacamoleTunnelDirectory implementation.
+     *
+     * @param environment
+     *     The Guacamole server environment.
+     *
+     * @param name
+     *     The name of the directory to create.
+     *
+     * @return
+     *     A new GuacamoleTunnelDirectory.
+     *
+     * @throws GuacamoleException
+     *     If the directory cannot be created.
+     */
+    private static GuacamoleTunnelDirectory createDirectory(
+            Environment environment, String name) throws GuacamoleException {
+
+        // Directories provided with Guacamole
+        if (LOCAL_DIRECTORY.equals(name))
+            return new LocalTunnelDirectory();
+
+        if (FILE_DIRECTORY.equals(name))
+            return new FileTunnelDirectory(environment.getRequiredProperty(TUNNEL_DIRECTORY_PATH));
+
+        // Any other directory by class name
+        try {
+            Class<? extends GuacamoleTunnelDirectory> directoryClass =
+                    Class.forName(name).asSubclass(GuacamoleTunnelDirectory.class);
+            return directoryClass.getConstructor(Environment.class)
+                    .newInstance(environment);
+        }
+        catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof GuacamoleException)
+                throw (GuacamoleException) cause;
+            throw new GuacamoleServerException("Tunnel directory \"" + name + "\" could not be created.", cause);
+        }
+        catch (ClassNotFoundException e) {
+            throw new GuacamoleServerException("Tunnel directory \"" + name + "\" does not exist.", e);
+        }
+        catch (ClassCastException e) {
+            throw new GuacamoleServerException("Class \"" + name + "\" is not a GuacamoleTunnelDirectory.", e);
+        }
+        catch (NoSuchMethodException e) {
+            throw new GuacamoleServerException("Tunnel directory \"" + name + "\" lacks a suitable constructor.", e);
+        }
+        catch (InstantiationException e) {
+            throw new GuacamoleServerException("Tunnel directory \"" + name + "\" could not be created.", e);
+        }
+        catch (IllegalAccessException e) {
+            throw new GuacamoleServerException("Tunnel directory \"" + name + "\" could not be created.", e);
+        }
+
+    }
+
+    /**
+     * Creates the GuacamoleTunnelRelay configured within guacamole.properties,
+     * if any.
+     *
+     * @param environment
+     *     The environment to use when configuring the relay.
+     *
+     * @return
+     *     A new GuacamoleTunnelRelay, or null if HTTP tunnel requests should
+     *     not be relayed between nodes.
+     *
+     * @throws GuacamoleException
+     *     If guacamole.properties cannot be read, or the selected
+     *     GuacamoleTunnelDirectory cannot be created.
+     */
+    public static GuacamoleTunnelRelay create(Environment environment)
+            throws GuacamoleException {
+
+        // Do not relay unless this node is reachable by other nodes
+        String address = environment.getProperty(TUNNEL_RELAY_ADDRESS);
+        if (address == null)
+            return null;
+
+        String directoryName = environment.getProperty(TUNNEL_DIRECTORY, LOCAL_DIRECTORY);
+        GuacamoleTunnelDirectory directory = createDirectory(environment, directoryName);
+
+        logger.info("HTTP tunnel requests will be relayed between nodes "
+                + "via \"{}\", recording tunnels in \"{}\".", address, directoryName);
+
+        return new GuacamoleTunnelRelay(directory, address);
+
+    }
+
+}
@@ -20,13 +20,17 @@
 package org.apache.guacamole.tunnel.websocket;
 
 import com.google.inject.Provider;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import javax.websocket.EndpointConfig;
+import javax.websocket.Extension;
 import javax.websocket.HandshakeResponse;
 import javax.websocket.Session;
 import javax.websocket.server.HandshakeRequest;
 import javax.websocket.server.ServerEndpointConfig;
 import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.io.GuacamoleCompressionSettings;
 import org.apache.guacamole.net.GuacamoleTunnel;
 import org.apache.guacamole.tunnel.TunnelRequest;
 import org.apache.guacamole.tunnel.TunnelRequestService;
@@ -90,6 +94,28 @@ public class RestrictedGuacamoleWebSocketTunnelEndpoint extends GuacamoleWebSock
             userProperties.put(TUNNEL_REQUEST_SERVICE_PROPERTY, tunnelRequestServiceProvider.get());
 
         }
+
+        @Override
+        public List<Extension> getNegotiatedExtensions(List<Extension> installed,
+                List<Extension> requested) {
+
+            List<Extension> negotiated = super.getNegotiatedExtensions(installed, requested);
+
+            // Accept all extensions if compression is enabled
+            if (GuacamoleCompressionSettings.getDefault().isEnabled())
+                return negotiated;
+
+            // Otherwise, refuse extensions which compress messages, such as
+            // "permessage-deflate"
+            List<Extension> uncompressed = new ArrayList<Extension>(negotiated.size());
+            for (Extension extension : negotiated) {
+                if (!isCompressionExtension(extension.getName()))
+                    uncompressed.add(extension);
+            }
+
+            return uncompressed;
+
+        }
         
     }
     
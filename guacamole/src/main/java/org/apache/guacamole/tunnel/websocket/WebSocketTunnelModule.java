@@ -27,6 +27,7 @@ import javax.websocket.server.ServerContainer;
 import javax.websocket.server.ServerEndpointConfig;
 import org.apache.guacamole.tunnel.TunnelLoader;
 import org.apache.guacamole.tunnel.TunnelRequestService;
+import org.apache.guacamole.websocket.GuacamoleWebSocketTunnelEndpoint;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -83,7 +84,10 @@ public class WebSocketTunnelModule extends ServletModule implements TunnelLoader
         ServerEndpointConfig config =
                 ServerEndpointConfig.Builder.create(RestrictedGuacamoleWebSocketTunnelEndpoint.class, "/websocket-tunnel")
                                             .configurator(new RestrictedGuacamoleWebSocketTunnelEndpoint.Configurator(tunnelRequestServiceProvider))
-                                            .subprotocols(Arrays.asList(new String[]{"guacamole"}))
+                                            .subprotocols(Arrays.asList(new String[]{
+                                                GuacamoleWebSocketTunnelEndpoint.BINARY_SUBPROTOCOL,
+                                                GuacamoleWebSocketTunnelEndpoint.SUBPROTOCOL
+                                            }))
                                             .build();
 
         try {
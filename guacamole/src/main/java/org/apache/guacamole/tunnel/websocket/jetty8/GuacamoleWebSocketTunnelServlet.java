@@ -22,20 +22,18 @@ package org.apache.guacamole.tunnel.websocket.jetty8;
 import java.io.IOException;
 import javax.servlet.http.HttpServletRequest;
 import org.apache.guacamole.GuacamoleException;
-import org.apache.guacamole.io.GuacamoleReader;
-import org.apache.guacamole.io.GuacamoleWriter;
+import org.apache.guacamole.io.GuacamoleBatchSettings;
 import org.apache.guacamole.net.GuacamoleTunnel;
+import org.apache.guacamole.net.TunnelConnectExecutor;
+import org.apache.guacamole.net.TunnelPumpExecutor;
+import org.apache.guacamole.net.TunnelPumpExecutors;
+import org.apache.guacamole.websocket.WebSocketTunnelConnection;
 import org.eclipse.jetty.websocket.WebSocket;
 import org.eclipse.jetty.websocket.WebSocket.Connection;
 import org.eclipse.jetty.websocket.WebSocketServlet;
-import org.apache.guacamole.GuacamoleClientException;
-import org.apache.guacamole.GuacamoleConnectionClosedException;
-import org.apache.guacamole.protocol.GuacamoleInstruction;
 import org.apache.guacamole.tunnel.http.HTTPTunnelRequest;
 import org.apache.guacamole.tunnel.TunnelRequest;
 import org.apache.guacamole.protocol.GuacamoleStatus;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 /**
  * A WebSocketServlet partial re-implementation of GuacamoleTunnelServlet.
@@ -44,16 +42,6 @@ import org.slf4j.LoggerFactory;
  */
 public abstract class GuacamoleWebSocketTunnelServlet extends WebSocketServlet {
 
-    /**
-     * Logger for this class.
-     */
-    private static final Logger logger = LoggerFactory.getLogger(GuacamoleWebSocketTunnelServlet.class);
-    
-    /**
-     * The default, minimum buffer size for instructions.
-     */
-    private static final int BUFFER_SIZE = 8192;
-
     /**
      * Sends the given status on the given WebSocket connection and closes the
      * connection.
@@ -78,138 +66,113 @@ public abstract class GuacamoleWebSocketTunnelServlet extends WebSocketServlet {
         return new WebSocket.OnTextMessage() {
 
             /**
-             * The GuacamoleTunnel associated with the connected WebSocket. If
-             * the WebSocket has not yet been connected, this will be null.
+             * The state of the tunnel associated with the connected
+             * WebSocket, or null if the WebSocket has not yet been
+             * connected.
              */
-            private GuacamoleTunnel tunnel = null;
+            private volatile WebSocketTunnelConnection tunnel = null;
 
             @Override
             public void onMessage(String string) {
 
-                // Ignore inbound messages if there is no associated tunnel
-                if (tunnel == null)
-                    return;
-
-                GuacamoleWriter writer = tunnel.acquireWriter();
-
-                // Write message received
-                try {
-                    writer.write(string.toCharArray());
-                }
-                catch (GuacamoleConnectionClosedException e) {
-                    logger.debug("Connection to guacd closed.", e);
-                }
-                catch (GuacamoleException e) {
-                    logger.debug("WebSocket tunnel write failed.", e);
-                }
-
-                tunnel.releaseWriter();
+                // Messages received before the tunnel is ready are buffered
+                WebSocketTunnelConnection current = tunnel;
+                if (current != null)
+                    current.receive(string);
 
             }
 
             @Override
             public void onOpen(final Connection connection) {
 
-                try {
-                    tunnel = doConnect(tunnelRequest);
-                }
-                catch (GuacamoleException e) {
-                    logger.error("Creation of WebSocket tunnel to guacd failed: {}", e.getMessage());
-                    logger.debug("Error connecting WebSocket tunnel.", e);
-                    closeConnection(connection, e.getStatus());
-                    return;
-                }
+                tunnel = new WebSocketTunnelConnection() {
+
+                    @Override
+                    protected GuacamoleTunnel createTunnel() throws GuacamoleException {
+                        return doConnect(tunnelRequest);
+                    }
+
+                    @Override
+                    protected void sendText(String message) throws IOException {
+                        connection.sendMessage(message);
+                    }
 
-                // Do not start connection if tunnel does not exist
-                if (tunnel == null) {
-                    closeConnection(connection, GuacamoleStatus.RESOURCE_NOT_FOUND);
-                    return;
-                }
+                    @Override
+                    protected void closeConnection(GuacamoleStatus status) {
+                        GuacamoleWebSocketTunnelServlet.closeConnection(connection, status);
+                    }
 
-                Thread readThread = new Thread() {
+                    @Override
+                    protected TunnelPumpExecutor getPumpExecutor() {
+                        return GuacamoleWebSocketTunnelServlet.this.getPumpExecutor();
+                    }
 
                     @Override
-                    public void run() {
-
-                        StringBuilder buffer = new StringBuilder(BUFFER_SIZE);
-                        GuacamoleReader reader = tunnel.acquireReader();
-                        char[] readMessage;
-
-                        try {
-
-                            // Send tunnel UUID
-                            connection.sendMessage(new GuacamoleInstruction(
-                                GuacamoleTunnel.INTERNAL_DATA_OPCODE,
-                                tunnel.getUUID().toString()
-                            ).toString());
-
-                            try {
-
-                                // Attempt to read
-                                while ((readMessage = reader.read()) != null) {
-
-                                    // Buffer message
-                                    buffer.append(readMessage);
-
-                                    // Flush if we expect to wait or buffer is getting full
-                                    if (!reader.available() || buffer.length() >= BUFFER_SIZE) {
-                                        connection.sendMessage(buffer.toString());
-                                        buffer.setLength(0);
-                                    }
-
-                                }
-
-                                // No more data
-                                closeConnection(connection, GuacamoleStatus.SUCCESS);
-                                
-                            }
-
-                            // Catch any thrown guacamole exception and attempt
-                            // to pass within the WebSocket connection, logging
-                            // each error appropriately.
-                            catch (GuacamoleClientException e) {
-                                logger.info("WebSocket connection terminated: {}", e.getMessage());
-                                logger.debug("WebSocket connection terminated due to client error.", e);
-                                closeConnection(connection, e.getStatus());
-                            }
-                            catch (GuacamoleConnectionClosedException e) {
-                                logger.debug("Connection to guacd closed.", e);
-                                closeConnection(connection, GuacamoleStatus.SUCCESS);
-                            }
-                            catch (GuacamoleException e) {
-                                logger.error("Connection to guacd terminated abnormally: {}", e.getMessage());
-                                logger.debug("Internal error during connection to guacd.", e);
-                                closeConnection(connection, e.getStatus());
-                            }
-
-                        }
-                        catch (IOException e) {
-                            logger.debug("WebSocket tunnel read failed due to I/O error.", e);
-                        }
+                    protected TunnelConnectExecutor getConnectExecutor() {
+                        return GuacamoleWebSocketTunnelServlet.this.getConnectExecutor();
+                    }
 
+                    @Override
+                    protected GuacamoleBatchSettings getBatchSettings() {
+                        return GuacamoleWebSocketTunnelServlet.this.getBatchSettings();
                     }
 
                 };
 
-                readThread.start();
+                // Create tunnel asynchronously, starting the pump once ready
+                tunnel.open();
 
             }
 
             @Override
             public void onClose(int i, String string) {
-                try {
-                    if (tunnel != null)
-                        tunnel.close();
-                }
-                catch (GuacamoleException e) {
-                    logger.debug("Unable to close connection to guacd.", e);
-                }
+
+                WebSocketTunnelConnection current = tunnel;
+                if (current != null)
+                    current.close();
+
             }
 
         };
 
     }
 
+    /**
+     * Returns the TunnelPumpExecutor which should run the pump forwarding
+     * data from each tunnel to its WebSocket connection. By default, the
+     * executor returned by TunnelPumpExecutors.getDefault() is used.
+     *
+     * @return
+     *     The TunnelPumpExecutor which should run all tunnel pumps.
+     */
+    protected TunnelPumpExecutor getPumpExecutor() {
+        return TunnelPumpExecutors.getDefault();
+    }
+
+    /**
+     * Returns the TunnelConnectExecutor which should create each tunnel,
+     * such that the thread handling the WebSocket handshake is not blocked
+     * while the tunnel is created. By default, the executor returned by
+     * TunnelConnectExecutor.getDefault() is used.
+     *
+     * @return
+     *     The TunnelConnectExecutor which should create all tunnels.
+     */
+    protected TunnelConnectExecutor getConnectExecutor() {
+        return TunnelConnectExecutor.getDefault();
+    }
+
+    /**
+     * Returns the GuacamoleBatchSettings determining how instructions read
+     * from each tunnel are combined into WebSocket messages. By default, the
+     * settings returned by GuacamoleBatchSettings.getDefault() are used.
+     *
+     * @return The GuacamoleBatchSettings to use for all tunnels.
+     */
+    protected GuacamoleBatchSettings getBatchSettings() {
+        return GuacamoleBatchSettings.getDefault();
+    }
+
     /**
      * Called whenever the JavaScript Guacamole client makes a connection
      * request. It it up to the implementor of this function to define what
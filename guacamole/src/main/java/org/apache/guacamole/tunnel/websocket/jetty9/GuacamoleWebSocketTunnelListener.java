@@ -20,18 +20,21 @@
 package org.apache.guacamole.tunnel.websocket.jetty9;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import org.eclipse.jetty.websocket.api.CloseStatus;
 import org.eclipse.jetty.websocket.api.RemoteEndpoint;
 import org.eclipse.jetty.websocket.api.Session;
 import org.eclipse.jetty.websocket.api.WebSocketListener;
-import org.apache.guacamole.GuacamoleClientException;
-import org.apache.guacamole.GuacamoleConnectionClosedException;
 import org.apache.guacamole.GuacamoleException;
-import org.apache.guacamole.io.GuacamoleReader;
-import org.apache.guacamole.io.GuacamoleWriter;
+import org.apache.guacamole.io.GuacamoleBatchSettings;
+import org.apache.guacamole.io.GuacamoleCompressionSettings;
 import org.apache.guacamole.net.GuacamoleTunnel;
-import org.apache.guacamole.protocol.GuacamoleInstruction;
+import org.apache.guacamole.net.TunnelConnectExecutor;
+import org.apache.guacamole.net.TunnelPumpExecutor;
+import org.apache.guacamole.net.TunnelPumpExecutors;
 import org.apache.guacamole.protocol.GuacamoleStatus;
+import org.apache.guacamole.websocket.GuacamoleWebSocketTunnelEndpoint;
+import org.apache.guacamole.websocket.WebSocketTunnelConnection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -42,21 +45,16 @@ import org.slf4j.LoggerFactory;
  */
 public abstract class GuacamoleWebSocketTunnelListener implements WebSocketListener {
 
-    /**
-     * The default, minimum buffer size for instructions.
-     */
-    private static final int BUFFER_SIZE = 8192;
-
     /**
      * Logger for this class.
      */
     private static final Logger logger = LoggerFactory.getLogger(RestrictedGuacamoleWebSocketTunnelServlet.class);
 
     /**
-     * The underlying GuacamoleTunnel. WebSocket reads/writes will be handled
-     * as reads/writes to this tunnel.
+     * The state of the tunnel associated with this WebSocket connection, or
+     * null if the connection has not yet been opened.
      */
-    private GuacamoleTunnel tunnel;
+    private volatile WebSocketTunnelConnection connection;
  
     /**
      * Sends the given status on the given WebSocket connection and closes the
@@ -78,6 +76,53 @@ public abstract class GuacamoleWebSocketTunnelListener implements WebSocketListe
 
     }
 
+    /**
+     * Returns the TunnelPumpExecutor which should run the pump forwarding
+     * data from each tunnel to its WebSocket connection. By default, the
+     * executor returned by TunnelPumpExecutors.getDefault() is used.
+     *
+     * @return The TunnelPumpExecutor which should run all tunnel pumps.
+     */
+    protected TunnelPumpExecutor getPumpExecutor() {
+        return TunnelPumpExecutors.getDefault();
+    }
+
+    /**
+     * Returns the TunnelConnectExecutor which should create each tunnel,
+     * such that the thread handling the WebSocket handshake is not blocked
+     * while the tunnel is created. By default, the executor returned by
+     * TunnelConnectExecutor.getDefault() is used.
+     *
+     * @return The TunnelConnectExecutor which should create all tunnels.
+     */
+    protected TunnelConnectExecutor getConnectExecutor() {
+        return TunnelConnectExecutor.getDefault();
+    }
+
+    /**
+     * Returns the GuacamoleBatchSettings determining how instructions read
+     * from each tunnel are combined into WebSocket messages. By default, the
+     * settings returned by GuacamoleBatchSettings.getDefault() are used.
+     *
+     * @return The GuacamoleBatchSettings to use for all tunnels.
+     */
+    protected GuacamoleBatchSettings getBatchSettings() {
+        return GuacamoleBatchSettings.getDefault();
+    }
+
+    /**
+     * Returns the GuacamoleCompressionSettings which record the total traffic
+     * of all tunnels. Compression of WebSocket messages, if any, is performed
+     * by Jetty and is invisible to the tunnel, thus all data sent is recorded
+     * as uncompressed. By default, the settings returned by
+     * GuacamoleCompressionSettings.getDefault() are used.
+     *
+     * @return The GuacamoleCompressionSettings to use for all tunnels.
+     */
+    protected GuacamoleCompressionSettings getCompressionSettings() {
+        return GuacamoleCompressionSettings.getDefault();
+    }
+
     /**
      * Returns a new tunnel for the given session. How this tunnel is created
      * or retrieved is implementation-dependent.
@@ -94,139 +139,90 @@ public abstract class GuacamoleWebSocketTunnelListener implements WebSocketListe
     @Override
     public void onWebSocketConnect(final Session session) {
 
-        try {
+        final RemoteEndpoint remote = session.getRemote();
+        final boolean binary = GuacamoleWebSocketTunnelEndpoint.BINARY_SUBPROTOCOL.equals(
+                session.getUpgradeResponse().getAcceptedSubProtocol());
 
-            // Get tunnel
-            tunnel = createTunnel(session);
-            if (tunnel == null) {
-                closeConnection(session, GuacamoleStatus.RESOURCE_NOT_FOUND);
-                return;
+        connection = new WebSocketTunnelConnection() {
+
+            @Override
+            protected GuacamoleTunnel createTunnel() throws GuacamoleException {
+                return GuacamoleWebSocketTunnelListener.this.createTunnel(session);
             }
 
-        }
-        catch (GuacamoleException e) {
-            logger.error("Creation of WebSocket tunnel to guacd failed: {}", e.getMessage());
-            logger.debug("Error connecting WebSocket tunnel.", e);
-            closeConnection(session, e.getStatus());
-            return;
-        }
+            @Override
+            protected void sendText(String message) throws IOException {
+                remote.sendString(message);
+            }
 
-        // Prepare read transfer thread
-        Thread readThread = new Thread() {
+            @Override
+            protected void sendBinary(ByteBuffer message) throws IOException {
+                remote.sendBytes(message);
+            }
 
-            /**
-             * Remote (client) side of this connection
-             */
-            private final RemoteEndpoint remote = session.getRemote();
-                
             @Override
-            public void run() {
-
-                StringBuilder buffer = new StringBuilder(BUFFER_SIZE);
-                GuacamoleReader reader = tunnel.acquireReader();
-                char[] readMessage;
-
-                try {
-
-                    // Send tunnel UUID
-                    remote.sendString(new GuacamoleInstruction(
-                        GuacamoleTunnel.INTERNAL_DATA_OPCODE,
-                        tunnel.getUUID().toString()
-                    ).toString());
-
-                    try {
-
-                        // Attempt to read
-                        while ((readMessage = reader.read()) != null) {
-
-                            // Buffer message
-                            buffer.append(readMessage);
-
-                            // Flush if we expect to wait or buffer is getting full
-                            if (!reader.available() || buffer.length() >= BUFFER_SIZE) {
-                                remote.sendString(buffer.toString());
-                                buffer.setLength(0);
-                            }
-
-                        }
-
-                        // No more data
-                        closeConnection(session, GuacamoleStatus.SUCCESS);
-
-                    }
-
-                    // Catch any thrown guacamole exception and attempt
-                    // to pass within the WebSocket connection, logging
-                    // each error appropriately.
-                    catch (GuacamoleClientException e) {
-                        logger.info("WebSocket connection terminated: {}", e.getMessage());
-                        logger.debug("WebSocket connection terminated due to client error.", e);
-                        closeConnection(session, e.getStatus());
-                    }
-                    catch (GuacamoleConnectionClosedException e) {
-                        logger.debug("Connection to guacd closed.", e);
-                        closeConnection(session, GuacamoleStatus.SUCCESS);
-                    }
-                    catch (GuacamoleException e) {
-                        logger.error("Connection to guacd terminated abnormally: {}", e.getMessage());
-                        logger.debug("Internal error during connection to guacd.", e);
-                        closeConnection(session, e.getStatus());
-                    }
-
-                }
-                catch (IOException e) {
-                    logger.debug("I/O error prevents further reads.", e);
-                }
+            protected boolean isBinary() {
+                return binary;
+            }
+
+            @Override
+            protected void closeConnection(GuacamoleStatus status) {
+                GuacamoleWebSocketTunnelListener.this.closeConnection(session, status);
+            }
+
+            @Override
+            protected TunnelPumpExecutor getPumpExecutor() {
+                return GuacamoleWebSocketTunnelListener.this.getPumpExecutor();
+            }
+
+            @Override
+            protected TunnelConnectExecutor getConnectExecutor() {
+                return GuacamoleWebSocketTunnelListener.this.getConnectExecutor();
+            }
+
+            @Override
+            protected GuacamoleBatchSettings getBatchSettings() {
+                return GuacamoleWebSocketTunnelListener.this.getBatchSettings();
+            }
 
+            @Override
+            protected GuacamoleCompressionSettings getCompressionSettings() {
+                return GuacamoleWebSocketTunnelListener.this.getCompressionSettings();
             }
 
         };
 
-        readThread.start();
+        // Create tunnel asynchronously, starting the pump once ready
+        connection.open();
 
     }
 
     @Override
     public void onWebSocketText(String message) {
 
-        // Ignore inbound messages if there is no associated tunnel
-        if (tunnel == null)
-            return;
-
-        GuacamoleWriter writer = tunnel.acquireWriter();
-
-        try {
-            // Write received message
-            writer.write(message.toCharArray());
-        }
-        catch (GuacamoleConnectionClosedException e) {
-            logger.debug("Connection to guacd closed.", e);
-        }
-        catch (GuacamoleException e) {
-            logger.debug("WebSocket tunnel write failed.", e);
-        }
-
-        tunnel.releaseWriter();
+        // Messages received before the tunnel is ready are buffered
+        WebSocketTunnelConnection current = connection;
+        if (current != null)
+            current.receive(message);
 
     }
 
     @Override
     public void onWebSocketBinary(byte[] payload, int offset, int length) {
-        throw new UnsupportedOperationException("Binary WebSocket messages are not supported.");
+
+        // Binary messages are only ever sent to the client
+        logger.debug("Ignoring unexpected binary WebSocket message ({} bytes).", length);
+
     }
 
     @Override
     public void onWebSocketError(Throwable t) {
 
         logger.debug("WebSocket tunnel closing due to error.", t);
-        
-        try {
-            if (tunnel != null)
-                tunnel.close();
-        }
-        catch (GuacamoleException e) {
-            logger.debug("Unable to close connection to guacd.", e);
-        }
+
+        WebSocketTunnelConnection current = connection;
+        if (current != null)
+            current.close();
 
      }
 
@@ -234,13 +230,9 @@ public abstract class GuacamoleWebSocketTunnelListener implements WebSocketListe
     @Override
     public void onWebSocketClose(int statusCode, String reason) {
 
-        try {
-            if (tunnel != null)
-                tunnel.close();
-        }
-        catch (GuacamoleException e) {
-            logger.debug("Unable to close connection to guacd.", e);
-        }
+        WebSocketTunnelConnection current = connection;
+        if (current != null)
+            current.close();
         
     }
 
@@ -19,14 +19,23 @@
 
 package org.apache.guacamole.tunnel.websocket.jetty9;
 
+import java.util.ArrayList;
+import java.util.List;
 import org.eclipse.jetty.websocket.api.UpgradeRequest;
 import org.eclipse.jetty.websocket.api.UpgradeResponse;
+import org.eclipse.jetty.websocket.api.extensions.ExtensionConfig;
 import org.eclipse.jetty.websocket.servlet.WebSocketCreator;
+import org.apache.guacamole.io.GuacamoleCompressionSettings;
 import org.apache.guacamole.tunnel.TunnelRequestService;
+import org.apache.guacamole.websocket.GuacamoleWebSocketTunnelEndpoint;
 
 /**
  * WebSocketCreator which selects the appropriate WebSocketListener
- * implementation if the "guacamole" subprotocol is in use.
+ * implementation if the "guacamole" or "guacamole-binary" subprotocol is in
+ * use. If the client offers both, the subprotocol listed first by the client
+ * is used. Extensions which compress messages, such as "permessage-deflate",
+ * are only accepted if compression is enabled within the shared
+ * GuacamoleCompressionSettings.
  * 
  * @author Michael Jumper
  */
@@ -51,11 +60,28 @@ public class RestrictedGuacamoleWebSocketCreator implements WebSocketCreator {
     @Override
     public Object createWebSocket(UpgradeRequest request, UpgradeResponse response) {
 
-        // Validate and use "guacamole" subprotocol
+        // Validate and use "guacamole" or "guacamole-binary" subprotocol
         for (String subprotocol : request.getSubProtocols()) {
 
-            if ("guacamole".equals(subprotocol)) {
+            if (GuacamoleWebSocketTunnelEndpoint.SUBPROTOCOL.equals(subprotocol)
+                    || GuacamoleWebSocketTunnelEndpoint.BINARY_SUBPROTOCOL.equals(subprotocol)) {
+
                 response.setAcceptedSubProtocol(subprotocol);
+
+                // Accept compression extensions only if compression is
+                // enabled
+                if (!GuacamoleCompressionSettings.getDefault().isEnabled()) {
+
+                    List<ExtensionConfig> extensions = new ArrayList<ExtensionConfig>();
+                    for (ExtensionConfig extension : request.getExtensions()) {
+                        if (!GuacamoleWebSocketTunnelEndpoint.isCompressionExtension(extension.getName()))
+                            extensions.add(extension);
+                    }
+
+                    response.setExtensions(extensions);
+
+                }
+
                 return new RestrictedGuacamoleWebSocketTunnelListener(tunnelRequestService);
             }
 